@@ -0,0 +1,53 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Esecuzione delle richieste HTTP e dei task asincroni su virtual thread (Java 21).
+ * La classe viene compilata solo con il profilo Maven {@code virtual-threads} e si può disattivare
+ * con la proprietà {@code biblioteca.virtual-threads.enabled=false}, così da confrontare le due modalità
+ * con lo stesso build.
+ * Con i virtual thread un thread in attesa di MySQL non occupa più un thread di Tomcat, quindi il numero
+ * di richieste concorrenti va limitato con {@link AdmissionControlFilter} e il pool HikariCP va
+ * dimensionato sul database ({@code spring.datasource.hikari.maximum-pool-size}), non sui thread.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+@ConditionalOnProperty(name = "biblioteca.virtual-threads.enabled", havingValue = "true", matchIfMissing = true)
+public class VirtualThreadConfig {
+
+    /**
+     * Sostituisce il pool di thread di Tomcat con un executor che crea un virtual thread per ogni richiesta.
+     *
+     * @return Ritorna il customizer del protocollo di Tomcat
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+    }
+
+    /**
+     * Esegue i task asincroni, comprese le risposte in streaming di Spring MVC, su virtual thread.
+     *
+     * @return Ritorna l'executor dei task asincroni dell'applicazione
+     */
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.BibliotecaTestApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Avvia l'applicazione per i benchmark su un database H2 in memoria e popola le tabelle.
+ * Ogni benchmark usa un database con nome diverso, così che i dati di un benchmark non influenzino gli altri.
+ *
+ * @author Drumstyle92
+ */
+final class BenchmarkContext {
+
+    /**
+     * Numero di righe inserite per ogni batch JDBC durante il popolamento.
+     */
+    private static final int INSERT_BATCH = 1000;
+
+    /**
+     * Classe di sole utilità, non istanziabile.
+     */
+    private BenchmarkContext() {}
+
+    /**
+     * Avvia l'applicazione senza server web su un database H2 in memoria creato dalle migrazioni Flyway.
+     *
+     * @param database        il nome del database H2
+     * @param extraProperties proprietà aggiuntive nel formato {@code chiave=valore}
+     * @return Ritorna il contesto Spring avviato
+     */
+    static ConfigurableApplicationContext start(String database, String... extraProperties) {
+
+        return start(WebApplicationType.NONE, database, extraProperties);
+
+    }
+
+    /**
+     * Avvia l'applicazione con il tipo di applicazione web indicato su un database H2 in memoria creato
+     * dalle migrazioni Flyway in {@code db/migration/h2}.
+     *
+     * @param webApplicationType il tipo di applicazione web, {@code SERVLET} per avviare anche Tomcat
+     * @param database           il nome del database H2
+     * @param extraProperties    proprietà aggiuntive nel formato {@code chiave=valore}
+     * @return Ritorna il contesto Spring avviato
+     */
+    static ConfigurableApplicationContext start(WebApplicationType webApplicationType, String database,
+                                                String... extraProperties) {
+
+        String indexDirectory;
+        String statsDirectory;
+
+        try {
+            indexDirectory = Files.createTempDirectory("biblioteca-bench-index").toString();
+            statsDirectory = Files.createTempDirectory("biblioteca-bench-stats").toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<String> properties = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "biblioteca.search.index-dir=" + indexDirectory,
+                "biblioteca.stats.checkpoint-file=" + statsDirectory + "/availability-stats.json",
+                "logging.level.root=WARN"));
+        properties.addAll(Arrays.asList(extraProperties));
+
+        // Passate come argomenti da riga di comando hanno la precedenza su biblioteca-defaults.properties
+        return new SpringApplicationBuilder(BibliotecaTestApplication.class)
+                .web(webApplicationType)
+                .run(properties.stream().map(property -> "--" + property).toArray(String[]::new));
+
+    }
+
+    /**
+     * Inserisce i libri direttamente con JDBC, con ID da 1 a {@code count}, e riallinea la sequenza degli ID.
+     *
+     * @param dataSource il DataSource dell'applicazione
+     * @param count      il numero di libri da inserire
+     * @param copies     il numero di copie disponibili di ogni libro
+     */
+    static void insertBooks(DataSource dataSource, int count, int copies) {
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO book (book_id, title, author, description, copies_available, version) VALUES (?, ?, ?, ?, ?, 0)")) {
+
+            connection.setAutoCommit(false);
+
+            for (int i = 1; i <= count; i++) {
+
+                insert.setLong(1, i);
+                insert.setString(2, "Title " + i);
+                insert.setString(3, "Author " + (i % 1000));
+                insert.setString(4, "Description of book number " + i);
+                insert.setInt(5, copies);
+                insert.addBatch();
+
+                if (i % INSERT_BATCH == 0) {
+                    insert.executeBatch();
+                }
+            }
+
+            insert.executeBatch();
+
+            // Hibernate usa i 50 ID che precedono il valore letto, quindi il primo blocco inizia da count + 1
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER SEQUENCE book_seq RESTART WITH " + (count + 50));
+            }
+
+            connection.commit();
+
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to insert benchmark books", e);
+        }
+
+    }
+
+    /**
+     * Inserisce gli utenti direttamente con JDBC, con ID da 1 a {@code count}.
+     *
+     * @param dataSource il DataSource dell'applicazione
+     * @param count      il numero di utenti da inserire
+     */
+    static void insertUsers(DataSource dataSource, int count) {
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO user_ (user_id, first_name, last_name, address, telephone, version) VALUES (?, ?, ?, ?, ?, 0)")) {
+
+            connection.setAutoCommit(false);
+
+            for (int i = 1; i <= count; i++) {
+
+                insert.setLong(1, i);
+                insert.setString(2, "Name " + i);
+                insert.setString(3, "Surname " + i);
+                insert.setString(4, "Street " + i);
+                insert.setLong(5, 3_000_000_000L + i);
+                insert.addBatch();
+            }
+
+            insert.executeBatch();
+            connection.commit();
+
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to insert benchmark users", e);
+        }
+
+    }
+
+    /**
+     * Esegue un'istruzione SQL di servizio, ad esempio per riportare le copie al valore iniziale.
+     *
+     * @param dataSource il DataSource dell'applicazione
+     * @param sql        l'istruzione da eseguire
+     */
+    static void execute(DataSource dataSource, String sql) {
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+
+            statement.execute(sql);
+
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to execute " + sql, e);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.services.BookImportService;
+import com.bibliotecaTest.BibliotecaTest.services.BookService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronta l'importazione in blocco dei libri con la creazione di un libro per volta tramite
+ * {@code BookService.createBook}. Il risultato è espresso in libri salvati al secondo.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class BookImportBenchmark {
+
+    /**
+     * Numero di libri salvati in ogni invocazione.
+     */
+    private static final int ROWS = 5000;
+
+    /**
+     * Contesto Spring dell'applicazione.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Servizio dei libri, usato per la creazione un libro per volta.
+     */
+    private BookService bookService;
+
+    /**
+     * Servizio di importazione in blocco.
+     */
+    private BookImportService bookImportService;
+
+    /**
+     * I libri da importare come array JSON.
+     */
+    private byte[] json;
+
+    /**
+     * I libri da creare uno per volta.
+     */
+    private List<BookEntity> books;
+
+    /**
+     * Avvia l'applicazione e prepara i libri da salvare.
+     *
+     * @throws JsonProcessingException se la serializzazione dei libri fallisce
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+
+        context = BenchmarkContext.start("import");
+        bookService = context.getBean(BookService.class);
+        bookImportService = context.getBean(BookImportService.class);
+
+        books = new ArrayList<>(ROWS);
+
+        for (int i = 0; i < ROWS; i++) {
+            books.add(new BookEntity(null, "Imported description " + i, "Imported title " + i, "Author " + i, 3));
+        }
+
+        json = new ObjectMapper().writeValueAsBytes(books);
+
+    }
+
+    /**
+     * Chiude l'applicazione.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        context.close();
+
+    }
+
+    /**
+     * Importa i libri con l'importazione in blocco, a blocchi transazionali e batch JDBC.
+     *
+     * @return il report dell'importazione
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object importBatched() {
+
+        return bookImportService.importJson(new ByteArrayInputStream(json)).getBody();
+
+    }
+
+    /**
+     * Crea i libri uno per volta, ognuno nella propria transazione.
+     *
+     * @return l'ultimo libro creato
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public Object createOneByOne() {
+
+        Object last = null;
+
+        for (BookEntity book : books) {
+            last = bookService.createBook(new BookEntity(null, book.getDescription(), book.getTitle(),
+                    book.getAuthor(), book.getNumberOfCopiesAvailable())).getBody();
+        }
+
+        return last;
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.services.BookService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura {@code BookService.getAllBooks} al crescere del catalogo.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BookListingBenchmark {
+
+    /**
+     * Numero di libri nel catalogo.
+     */
+    @Param({"10000", "100000", "1000000"})
+    public int books;
+
+    /**
+     * Contesto Spring dell'applicazione.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * Servizio dei libri misurato.
+     */
+    private BookService bookService;
+
+    /**
+     * Avvia l'applicazione e popola il catalogo.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        context = BenchmarkContext.start("listing" + books);
+        bookService = context.getBean(BookService.class);
+
+        BenchmarkContext.insertBooks(context.getBean(DataSource.class), books, 5);
+
+    }
+
+    /**
+     * Chiude l'applicazione.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        context.close();
+
+    }
+
+    /**
+     * Legge l'intero catalogo in un'unica lista.
+     *
+     * @return la risposta del servizio
+     */
+    @Benchmark
+    public ResponseEntity<List<BookEntity>> getAllBooks() {
+
+        return bookService.getAllBooks();
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura la serializzazione JSON di una lista di libri, come avviene nella risposta di {@code /allBooks}.
+ * Non serve avviare l'applicazione: si usa un ObjectMapper con la configurazione predefinita di Jackson.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BookSerializationBenchmark {
+
+    /**
+     * Numero di libri nella lista.
+     */
+    @Param({"100", "10000"})
+    public int books;
+
+    /**
+     * ObjectMapper usato per la serializzazione.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Lista di libri da serializzare.
+     */
+    private List<BookEntity> bookList;
+
+    /**
+     * Crea la lista di libri.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        bookList = new ArrayList<>(books);
+
+        for (long i = 1; i <= books; i++) {
+            bookList.add(new BookEntity(i, "Description of book number " + i, "Title " + i, "Author " + (i % 1000), 5));
+        }
+
+    }
+
+    /**
+     * Serializza la lista di libri in JSON.
+     *
+     * @return il JSON prodotto
+     * @throws JsonProcessingException se la serializzazione fallisce
+     */
+    @Benchmark
+    public byte[] serializeBooks() throws JsonProcessingException {
+
+        return objectMapper.writeValueAsBytes(bookList);
+
+    }
+
+}
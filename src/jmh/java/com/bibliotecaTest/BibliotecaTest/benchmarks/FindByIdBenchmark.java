@@ -0,0 +1,137 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura la lettura di un libro per ID passando dalla cache di secondo livello oppure direttamente dal database.
+ * Ogni lettura usa un EntityManager nuovo, come avviene per una richiesta HTTP, così che la cache
+ * di primo livello non nasconda la differenza.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FindByIdBenchmark {
+
+    /**
+     * Numero di libri nel catalogo, tutti contenuti nella cache.
+     */
+    private static final int BOOKS = 5000;
+
+    /**
+     * Proprietà che fanno ignorare la cache di secondo livello.
+     */
+    private static final Map<String, Object> BYPASS_CACHE = Map.of(
+            "jakarta.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS,
+            "jakarta.persistence.cache.storeMode", CacheStoreMode.BYPASS);
+
+    /**
+     * Contesto Spring dell'applicazione.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * EntityManagerFactory dell'applicazione.
+     */
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Avvia l'applicazione, popola il catalogo e riempie la cache.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        context = BenchmarkContext.start("findById");
+        entityManagerFactory = context.getBean(EntityManagerFactory.class);
+
+        BenchmarkContext.insertBooks(context.getBean(DataSource.class), BOOKS, 5);
+
+        for (long id = 1; id <= BOOKS; id++) {
+            find(id, Map.of());
+        }
+
+    }
+
+    /**
+     * Chiude l'applicazione.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        context.close();
+
+    }
+
+    /**
+     * Legge un libro casuale dalla cache di secondo livello.
+     *
+     * @return il libro letto
+     */
+    @Benchmark
+    public BookEntity findByIdCached() {
+
+        return find(ThreadLocalRandom.current().nextLong(1, BOOKS + 1), Map.of());
+
+    }
+
+    /**
+     * Legge un libro casuale direttamente dal database.
+     *
+     * @return il libro letto
+     */
+    @Benchmark
+    public BookEntity findByIdUncached() {
+
+        return find(ThreadLocalRandom.current().nextLong(1, BOOKS + 1), BYPASS_CACHE);
+
+    }
+
+    /**
+     * Legge un libro con un EntityManager nuovo.
+     *
+     * @param id         l'ID del libro
+     * @param properties le proprietà della lettura
+     * @return il libro letto
+     */
+    private BookEntity find(long id, Map<String, Object> properties) {
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+        try {
+
+            return entityManager.find(BookEntity.class, id, properties);
+
+        } finally {
+
+            entityManager.close();
+        }
+
+    }
+
+}
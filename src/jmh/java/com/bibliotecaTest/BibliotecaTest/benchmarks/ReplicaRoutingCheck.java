@@ -0,0 +1,161 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifica in locale l'instradamento tra primario e replica con due database H2 in memoria.
+ * Il libro 1 ha un titolo diverso sui due database: una lettura senza scritture recenti deve vedere
+ * quello della replica, mentre dopo una prenotazione il client, con il cookie ricevuto, deve vedere il primario.
+ * Si esegue con:
+ * {@code ./mvnw -Pjmh compile exec:java -Dexec.mainClass=com.bibliotecaTest.BibliotecaTest.benchmarks.ReplicaRoutingCheck}.
+ *
+ * @author Drumstyle92
+ */
+public final class ReplicaRoutingCheck {
+
+    /**
+     * URL JDBC della replica.
+     */
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Classe con solo il metodo main, non istanziabile.
+     */
+    private ReplicaRoutingCheck() {}
+
+    /**
+     * Avvia l'applicazione con primario e replica ed esegue le verifiche.
+     *
+     * @param args non usati
+     * @throws Exception se una richiesta o una verifica fallisce
+     */
+    public static void main(String[] args) throws Exception {
+
+        ConfigurableApplicationContext context = BenchmarkContext.start(WebApplicationType.SERVLET, "primary",
+                "server.port=0",
+                "management.server.port=-1",
+                "biblioteca.datasource.replica.url=" + REPLICA_URL,
+                "biblioteca.datasource.replica.policy=read-your-writes");
+
+        try {
+
+            DataSource primary = context.getBean("primaryDataSource", DataSource.class);
+            DataSource replica = context.getBean("replicaDataSource", DataSource.class);
+
+            copySchema(primary);
+
+            for (DataSource dataSource : List.of(primary, replica)) {
+
+                BenchmarkContext.insertBooks(dataSource, 1, 10);
+                BenchmarkContext.insertUsers(dataSource, 1);
+            }
+
+            BenchmarkContext.execute(replica, "UPDATE book SET title = 'Replica title' WHERE book_id = 1");
+
+            String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient client = HttpClient.newHttpClient();
+
+            String read = get(client, base + "/apiBook/getBook/1", null).body();
+            check(read.contains("Replica title"), "read-only request should use the replica: " + read);
+
+            HttpResponse<String> write = client.send(HttpRequest.newBuilder(
+                            URI.create(base + "/apiReservation/createReservation?userId=1&bookId=1"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+            String cookie = write.headers().firstValue("Set-Cookie").map(value -> value.split(";", 2)[0]).orElse(null);
+            check(write.statusCode() == 200 && cookie != null, "write should set the stickiness cookie");
+
+            String sticky = get(client, base + "/apiBook/getBook/1", cookie).body();
+            check(sticky.contains("Title 1"), "read after write should use the primary: " + sticky);
+
+            System.out.println("Replica routing OK");
+
+        } finally {
+
+            context.close();
+        }
+
+    }
+
+    /**
+     * Crea sulla replica le tabelle e le sequenze create dalle migrazioni sul primario.
+     *
+     * @param primary il DataSource del primario
+     * @throws SQLException se la copia fallisce
+     */
+    private static void copySchema(DataSource primary) throws SQLException {
+
+        List<String> statements = new ArrayList<>();
+
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet script = statement.executeQuery("SCRIPT NODATA")) {
+
+            while (script.next()) {
+                statements.add(script.getString(1));
+            }
+        }
+
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+
+    }
+
+    /**
+     * Esegue una richiesta GET, con il cookie indicato se presente.
+     *
+     * @param client il client HTTP
+     * @param uri    l'indirizzo da leggere
+     * @param cookie il cookie da inviare, null per nessuno
+     * @return la risposta
+     * @throws IOException          se la richiesta fallisce
+     * @throws InterruptedException se la richiesta viene interrotta
+     */
+    private static HttpResponse<String> get(HttpClient client, String uri, String cookie)
+            throws IOException, InterruptedException {
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri)).GET();
+
+        if (cookie != null) {
+            request.header("Cookie", cookie);
+        }
+
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+
+    }
+
+    /**
+     * Interrompe la verifica se la condizione non è rispettata.
+     *
+     * @param condition la condizione
+     * @param message   il messaggio di errore
+     */
+    private static void check(boolean condition, String message) {
+
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.services.ReservationService;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Misura {@code ReservationService.createReservation} con molti thread che prenotano lo stesso libro,
+ * il caso di un titolo molto richiesto appena uscito.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReservationBenchmark {
+
+    /**
+     * Numero di utenti che prenotano il libro.
+     */
+    private static final int USERS = 1000;
+
+    /**
+     * ID del libro conteso.
+     */
+    private static final long HOT_BOOK_ID = 1L;
+
+    /**
+     * Contesto Spring dell'applicazione.
+     */
+    private ConfigurableApplicationContext context;
+
+    /**
+     * DataSource dell'applicazione.
+     */
+    private DataSource dataSource;
+
+    /**
+     * Servizio delle prenotazioni misurato.
+     */
+    private ReservationService reservationService;
+
+    /**
+     * Avvia l'applicazione e crea il libro conteso e gli utenti.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        context = BenchmarkContext.start("reservations");
+        dataSource = context.getBean(DataSource.class);
+        reservationService = context.getBean(ReservationService.class);
+
+        BenchmarkContext.insertBooks(dataSource, 1, Integer.MAX_VALUE / 2);
+        BenchmarkContext.insertUsers(dataSource, USERS);
+
+    }
+
+    /**
+     * Riporta le copie del libro al valore iniziale e svuota le prenotazioni prima di ogni iterazione.
+     */
+    @Setup(Level.Iteration)
+    public void resetCopies() {
+
+        BenchmarkContext.execute(dataSource, "DELETE FROM reservation");
+        BenchmarkContext.execute(dataSource,
+                "UPDATE book SET copies_available = " + (Integer.MAX_VALUE / 2) + " WHERE book_id = " + HOT_BOOK_ID);
+        context.getBean(EntityManagerFactory.class).getCache().evictAll();
+
+    }
+
+    /**
+     * Chiude l'applicazione.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+
+        context.close();
+
+    }
+
+    /**
+     * Prenota il libro conteso da 8 thread in parallelo, ognuno con un utente casuale.
+     *
+     * @return la risposta del servizio
+     */
+    @Benchmark
+    @Threads(8)
+    public ResponseEntity<String> createReservationContended() {
+
+        long userId = ThreadLocalRandom.current().nextLong(1, USERS + 1);
+
+        return reservationService.createReservation(userId, HOT_BOOK_ID);
+
+    }
+
+}
@@ -0,0 +1,258 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Test di carico su {@code /apiReservation/createReservation} che confronta l'esecuzione delle richieste
+ * su thread della piattaforma e su virtual thread, con lo stesso carico e lo stesso database.
+ * Per ogni modalità stampa throughput, latenza p50 e p99 e richieste rifiutate, e salva i risultati in
+ * {@code target/loadtest-result.json} e, come tabella Markdown con la JVM e i core usati,
+ * in {@code target/loadtest-result.md}, da riportare nella documentazione. Va eseguito con entrambi i profili, ad esempio:
+ * {@code ./mvnw -Pjmh,virtual-threads compile exec:java -Dexec.mainClass=com.bibliotecaTest.BibliotecaTest.benchmarks.ReservationLoadTest}.
+ * Eventuali argomenti {@code chiave=valore} vengono passati all'applicazione, ad esempio per puntare
+ * a un database MySQL reale invece di H2.
+ *
+ * @author Drumstyle92
+ */
+public final class ReservationLoadTest {
+
+    /**
+     * Numero di client che inviano richieste contemporaneamente.
+     */
+    private static final int CLIENTS = 500;
+
+    /**
+     * Numero di richieste inviate per ogni modalità.
+     */
+    private static final int REQUESTS = 50_000;
+
+    /**
+     * Numero di libri prenotabili.
+     */
+    private static final int BOOKS = 100;
+
+    /**
+     * Numero di utenti che prenotano.
+     */
+    private static final int USERS = 1000;
+
+    /**
+     * Classe con solo il metodo main, non istanziabile.
+     */
+    private ReservationLoadTest() {}
+
+    /**
+     * Esegue il test di carico prima su thread della piattaforma e poi su virtual thread.
+     *
+     * @param args proprietà aggiuntive dell'applicazione nel formato {@code chiave=valore}
+     * @throws InterruptedException se il test viene interrotto
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        List<Result> results = new ArrayList<>();
+        results.add(run("platform", false, args));
+        results.add(run("virtual", true, args));
+
+        try {
+            Path output = Path.of("target", "loadtest-result.json");
+            Files.createDirectories(output.getParent());
+            Files.writeString(output, "[" + String.join(",", results.stream().map(Result::toJson).toList()) + "]");
+            Files.writeString(output.resolveSibling("loadtest-result.md"), toMarkdown(results));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+    }
+
+    /**
+     * Avvia l'applicazione nella modalità indicata ed esegue il carico.
+     *
+     * @param mode           il nome della modalità
+     * @param virtualThreads true per usare i virtual thread
+     * @param args           proprietà aggiuntive dell'applicazione
+     * @return Ritorna i risultati della modalità
+     * @throws InterruptedException se il test viene interrotto
+     */
+    private static Result run(String mode, boolean virtualThreads, String[] args) throws InterruptedException {
+
+        List<String> properties = new ArrayList<>(List.of(
+                "server.port=0",
+                "management.server.port=-1",
+                "biblioteca.admission.enabled=true",
+                "biblioteca.virtual-threads.enabled=" + virtualThreads,
+                "spring.datasource.hikari.maximum-pool-size=20"));
+        properties.addAll(Arrays.asList(args));
+
+        ConfigurableApplicationContext context = BenchmarkContext.start(WebApplicationType.SERVLET, "load" + mode,
+                properties.toArray(String[]::new));
+
+        try {
+
+            DataSource dataSource = context.getBean(DataSource.class);
+            BenchmarkContext.insertBooks(dataSource, BOOKS, Integer.MAX_VALUE / 2);
+            BenchmarkContext.insertUsers(dataSource, USERS);
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            return load(mode, port);
+
+        } finally {
+
+            context.close();
+        }
+
+    }
+
+    /**
+     * Invia le richieste con {@code CLIENTS} client concorrenti e misura le latenze.
+     *
+     * @param mode il nome della modalità
+     * @param port la porta del server
+     * @return Ritorna i risultati della modalità
+     * @throws InterruptedException se il test viene interrotto
+     */
+    private static Result load(String mode, int port) throws InterruptedException {
+
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(16)).build();
+        AtomicLongArray latencies = new AtomicLongArray(REQUESTS);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+
+        for (int c = 0; c < CLIENTS; c++) {
+
+            clients.execute(() -> {
+
+                int i;
+
+                while ((i = next.getAndIncrement()) < REQUESTS) {
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    URI uri = URI.create("http://localhost:" + port + "/apiReservation/createReservation?userId="
+                            + random.nextInt(1, USERS + 1) + "&bookId=" + random.nextInt(1, BOOKS + 1));
+                    long sent = System.nanoTime();
+
+                    try {
+                        HttpResponse<Void> response = client.send(
+                                HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                                HttpResponse.BodyHandlers.discarding());
+
+                        if (response.statusCode() == 503) {
+                            rejected.incrementAndGet();
+                        } else if (response.statusCode() != 200) {
+                            failed.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    latencies.set(i, System.nanoTime() - sent);
+                }
+
+            });
+        }
+
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] sorted = new long[REQUESTS];
+
+        for (int i = 0; i < REQUESTS; i++) {
+            sorted[i] = latencies.get(i);
+        }
+
+        Arrays.sort(sorted);
+
+        double throughput = REQUESTS / seconds;
+        double p50 = sorted[REQUESTS / 2] / 1e6;
+        double p99 = sorted[(int) (REQUESTS * 0.99)] / 1e6;
+
+        System.out.printf("%s: %.0f req/s, p50 %.2f ms, p99 %.2f ms, rejected %d, failed %d%n",
+                mode, throughput, p50, p99, rejected.get(), failed.get());
+
+        return new Result(mode, throughput, p50, p99, rejected.get(), failed.get());
+
+    }
+
+    /**
+     * Formatta i risultati come tabella Markdown, preceduta dall'ambiente in cui sono stati misurati:
+     * senza JVM, core e carico i numeri non sono confrontabili tra un'esecuzione e l'altra.
+     *
+     * @param results i risultati di ogni modalità
+     * @return Ritorna il testo Markdown
+     */
+    private static String toMarkdown(List<Result> results) {
+
+        StringBuilder markdown = new StringBuilder(String.format(Locale.ROOT,
+                "%s %s, %d core, %d client, %d richieste per modalità%n%n",
+                System.getProperty("java.vm.name"), System.getProperty("java.version"),
+                Runtime.getRuntime().availableProcessors(), CLIENTS, REQUESTS));
+
+        markdown.append("| Modalità | Throughput (req/s) | p50 (ms) | p99 (ms) | Rifiutate | Fallite |\n");
+        markdown.append("|---|---|---|---|---|---|\n");
+
+        for (Result result : results) {
+            markdown.append(String.format(Locale.ROOT, "| %s | %.0f | %.2f | %.2f | %d | %d |%n",
+                    result.mode(), result.throughput(), result.p50Ms(), result.p99Ms(), result.rejected(), result.failed()));
+        }
+
+        return markdown.toString();
+
+    }
+
+    /**
+     * Risultati del carico in una modalità.
+     *
+     * @param mode       il nome della modalità
+     * @param throughput le richieste completate al secondo
+     * @param p50Ms      la latenza mediana in millisecondi
+     * @param p99Ms      il 99° percentile della latenza in millisecondi
+     * @param rejected   le richieste rifiutate con "503 Service Unavailable"
+     * @param failed     le richieste fallite per altri motivi
+     */
+    private record Result(String mode, double throughput, double p50Ms, double p99Ms, int rejected, int failed) {
+
+        /**
+         * Formatta i risultati in JSON.
+         *
+         * @return Ritorna l'oggetto JSON
+         */
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"mode\":\"%s\",\"requests\":%d,\"clients\":%d,\"throughput\":%.1f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,"
+                            + "\"rejected\":%d,\"failed\":%d}",
+                    mode, REQUESTS, CLIENTS, throughput, p50Ms, p99Ms, rejected, failed);
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.bibliotecaTest.BibliotecaTest.benchmarks;
+
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationListing;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronta JSON, Smile e CBOR nella serializzazione degli elenchi di {@code /allBooks} e {@code /allReservations}.
+ * Con JSON le prenotazioni vengono scritte come oggi, con libro e utente annidati in ogni prenotazione;
+ * con i formati binari viene scritto l'elenco piatto {@link ReservationListing}, come fa l'endpoint.
+ * Il tempo di codifica è il risultato del benchmark, mentre la dimensione del payload viene stampata
+ * all'avvio di ogni combinazione di parametri.
+ *
+ * @author Drumstyle92
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    /**
+     * Numero di libri del catalogo.
+     */
+    private static final int BOOKS = 500;
+
+    /**
+     * Numero di utenti.
+     */
+    private static final int USERS = 1000;
+
+    /**
+     * Formato della risposta.
+     */
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    /**
+     * Numero di righe dell'elenco.
+     */
+    @Param({"10000"})
+    public int rows;
+
+    /**
+     * ObjectMapper del formato scelto.
+     */
+    private ObjectMapper objectMapper;
+
+    /**
+     * Libri da serializzare.
+     */
+    private List<BookEntity> books;
+
+    /**
+     * Prenotazioni da serializzare, nella forma usata dal formato scelto.
+     */
+    private Object reservations;
+
+    /**
+     * Crea i dati e l'ObjectMapper e stampa la dimensione dei payload.
+     *
+     * @throws JsonProcessingException se la serializzazione fallisce
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+
+        objectMapper = switch (format) {
+            case "json" -> new ObjectMapper();
+            case "smile" -> new ObjectMapper(SmileFactory.builder()
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                    .build());
+            case "cbor" -> new ObjectMapper(new CBORFactory());
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        objectMapper.findAndRegisterModules();
+
+        List<BookEntity> catalog = new ArrayList<>(BOOKS);
+        List<UserEntity> userList = new ArrayList<>(USERS);
+
+        for (long i = 1; i <= BOOKS; i++) {
+            catalog.add(new BookEntity(i, "Description of book number " + i, "Title " + i, "Author " + (i % 100), 5));
+        }
+
+        for (long i = 1; i <= USERS; i++) {
+            userList.add(new UserEntity(i, "Name " + i, "Surname " + i, "Street " + i, 3_000_000_000L + i));
+        }
+
+        books = new ArrayList<>(rows);
+        List<ReservationEntity> reservationList = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            books.add(new BookEntity((long) i + 1, "Description of book number " + i, "Title " + i,
+                    "Author " + (i % 100), 5));
+            reservationList.add(new ReservationEntity((long) i + 1, LocalDate.of(2023, 1, 1).plusDays(i % 365),
+                    catalog.get(i % BOOKS), userList.get(i % USERS)));
+        }
+
+        reservations = format.equals("json") ? reservationList : ReservationListing.of(reservationList);
+
+        System.out.printf("%n%s: books %d bytes, reservations %d bytes%n",
+                format, serializeBooks().length, serializeReservations().length);
+
+    }
+
+    /**
+     * Serializza l'elenco dei libri.
+     *
+     * @return il payload prodotto
+     * @throws JsonProcessingException se la serializzazione fallisce
+     */
+    @Benchmark
+    public byte[] serializeBooks() throws JsonProcessingException {
+
+        return objectMapper.writeValueAsBytes(books);
+
+    }
+
+    /**
+     * Serializza l'elenco delle prenotazioni.
+     *
+     * @return il payload prodotto
+     * @throws JsonProcessingException se la serializzazione fallisce
+     */
+    @Benchmark
+    public byte[] serializeReservations() throws JsonProcessingException {
+
+        return objectMapper.writeValueAsBytes(reservations);
+
+    }
+
+}
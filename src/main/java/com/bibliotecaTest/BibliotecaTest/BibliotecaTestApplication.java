@@ -3,6 +3,8 @@ package com.bibliotecaTest.BibliotecaTest;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Classe principale di Spring Boot per l'applicazione BibliotecaTest.
@@ -14,11 +16,21 @@ import org.springframework.boot.autoconfigure.domain.EntityScan;
  * L'annotazione {@code @EntityScan} è utilizzata per aiutare Hibernate a costruire automaticamente
  * le tabelle nel database, indicando il package in cui si trovano le entità.
  * </p>
+ * <p>
+ * L'annotazione {@code @EnableScheduling} abilita l'esecuzione dei metodi annotati con {@code @Scheduled},
+ * come la scrittura e il riallineamento dell'inventario delle prenotazioni.
+ * </p>
+ * <p>
+ * L'annotazione {@code @PropertySource} carica i valori predefiniti di tutta l'applicazione da
+ * {@code biblioteca-defaults.properties}, con priorità più bassa di application.properties.
+ * </p>
  *
  * @author Drumstyle92
  */
 @SpringBootApplication
 @EntityScan(basePackages = "com.bibliotecaTest.BibliotecaTest.entities")
+@EnableScheduling
+@PropertySource("classpath:biblioteca-defaults.properties")
 public class BibliotecaTestApplication {
 
     /**
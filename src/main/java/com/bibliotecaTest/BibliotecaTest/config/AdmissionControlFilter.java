@@ -0,0 +1,149 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Filtro che limita il numero di richieste elaborate contemporaneamente.
+ * Oltre il limite le richieste aspettano in una coda di dimensione limitata per un tempo massimo;
+ * se la coda è piena o l'attesa scade la richiesta viene rifiutata subito con "503 Service Unavailable".
+ * È indispensabile con i virtual thread, dove il numero di thread non limita più le richieste concorrenti
+ * e senza questo filtro tutte finirebbero in attesa di una connessione del pool HikariCP.
+ * Si abilita con la proprietà {@code biblioteca.admission.enabled}.
+ *
+ * @author Drumstyle92
+ */
+@Component
+@ConditionalOnProperty(name = "biblioteca.admission.enabled", havingValue = "true")
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    /**
+     * Permessi per le richieste in elaborazione.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Numero di richieste in attesa di un permesso.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Numero massimo di richieste in attesa.
+     */
+    private final int maxQueued;
+
+    /**
+     * Tempo massimo di attesa di un permesso, in millisecondi.
+     */
+    private final long queueTimeoutMillis;
+
+    /**
+     * Contatore delle richieste rifiutate.
+     */
+    private final Counter rejected;
+
+    /**
+     * Crea il filtro con i limiti indicati.
+     *
+     * @param maxConcurrent      il numero massimo di richieste elaborate contemporaneamente
+     * @param maxQueued          il numero massimo di richieste in attesa
+     * @param queueTimeoutMillis il tempo massimo di attesa in millisecondi
+     * @param meterRegistry      il registro delle metriche
+     */
+    public AdmissionControlFilter(@Value("${biblioteca.admission.max-concurrent:200}") int maxConcurrent,
+                                  @Value("${biblioteca.admission.max-queued:1000}") int maxQueued,
+                                  @Value("${biblioteca.admission.queue-timeout-ms:500}") long queueTimeoutMillis,
+                                  MeterRegistry meterRegistry) {
+
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.rejected = meterRegistry.counter("biblioteca.admission.rejected");
+
+        Gauge.builder("biblioteca.admission.queued", queued, AtomicInteger::get).register(meterRegistry);
+
+    }
+
+    /**
+     * Fa passare la richiesta se c'è un permesso libero, altrimenti la mette in coda o la rifiuta.
+     *
+     * @param request     la richiesta HTTP
+     * @param response    la risposta HTTP
+     * @param filterChain la catena dei filtri
+     * @throws ServletException se la catena dei filtri fallisce
+     * @throws IOException      se la scrittura della risposta fallisce
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        if (!acquire()) {
+
+            rejected.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        try {
+
+            filterChain.doFilter(request, response);
+
+        } finally {
+
+            permits.release();
+        }
+
+    }
+
+    /**
+     * Prova a ottenere un permesso, aspettando in coda se la coda non è piena.
+     *
+     * @return true se il permesso è stato ottenuto
+     */
+    private boolean acquire() {
+
+        if (permits.tryAcquire()) {
+
+            return true;
+        }
+
+        if (queued.incrementAndGet() > maxQueued) {
+
+            queued.decrementAndGet();
+            return false;
+        }
+
+        try {
+
+            return permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return false;
+
+        } finally {
+
+            queued.decrementAndGet();
+        }
+
+    }
+
+}
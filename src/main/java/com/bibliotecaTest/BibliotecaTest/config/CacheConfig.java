@@ -0,0 +1,148 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheEventListenerConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.event.EventType;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Configurazione della cache di secondo livello di Hibernate.
+ * Come provider JCache viene usato Ehcache in memoria; le regioni vengono create qui in modo programmatico
+ * così che dimensione e durata delle voci siano configurabili con le proprietà {@code biblioteca.cache.*}.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class CacheConfig {
+
+    /**
+     * Nome della regione di cache dei libri.
+     */
+    public static final String BOOK_REGION = "book";
+
+    /**
+     * Nome della regione di cache degli utenti.
+     */
+    public static final String USER_REGION = "user_";
+
+    /**
+     * Nome della regione di cache dei risultati delle query.
+     */
+    public static final String QUERY_RESULTS_REGION = RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME;
+
+    /**
+     * Nome della regione che registra l'ultima modifica di ogni tabella, usata per invalidare le query in cache.
+     */
+    public static final String UPDATE_TIMESTAMPS_REGION = RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME;
+
+    /**
+     * Crea il CacheManager JCache con le regioni della cache di secondo livello.
+     * Il CacheManager è di questo contesto, con un URI univoco, e non quello predefinito condiviso dalla JVM:
+     * più contesti nella stessa JVM (test con configurazioni diverse, riavvii di devtools) creano così
+     * le proprie regioni senza conflitti, e chiudendo un contesto si chiude solo il suo CacheManager.
+     * La regione dei timestamp contiene una voce per tabella e non ha scadenza: se perdesse delle voci
+     * le query in cache potrebbero restituire dati non aggiornati.
+     *
+     * @param evictionCounter    il contatore delle voci rimosse o scadute
+     * @param bookMaxEntries     il numero massimo di libri in cache
+     * @param bookTtlSeconds     la durata in secondi di un libro in cache
+     * @param userMaxEntries     il numero massimo di utenti in cache
+     * @param userTtlSeconds     la durata in secondi di un utente in cache
+     * @param queryMaxEntries    il numero massimo di risultati di query in cache
+     * @param queryTtlSeconds    la durata in secondi di un risultato di query in cache
+     * @return Ritorna il CacheManager JCache configurato
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(CacheEvictionCounter evictionCounter,
+                                              @Value("${biblioteca.cache.book.max-entries:10000}") long bookMaxEntries,
+                                              @Value("${biblioteca.cache.book.ttl-seconds:600}") long bookTtlSeconds,
+                                              @Value("${biblioteca.cache.user.max-entries:10000}") long userMaxEntries,
+                                              @Value("${biblioteca.cache.user.ttl-seconds:600}") long userTtlSeconds,
+                                              @Value("${biblioteca.cache.query.max-entries:10000}") long queryMaxEntries,
+                                              @Value("${biblioteca.cache.query.ttl-seconds:60}") long queryTtlSeconds) {
+
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(
+                EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create("urn:biblioteca:hibernate-cache:" + UUID.randomUUID()),
+                new DefaultConfiguration(getClass().getClassLoader()));
+
+        createRegion(cacheManager, BOOK_REGION, bookMaxEntries, Duration.ofSeconds(bookTtlSeconds), evictionCounter);
+        createRegion(cacheManager, USER_REGION, userMaxEntries, Duration.ofSeconds(userTtlSeconds), evictionCounter);
+        createRegion(cacheManager, QUERY_RESULTS_REGION, queryMaxEntries, Duration.ofSeconds(queryTtlSeconds),
+                evictionCounter);
+        createRegion(cacheManager, UPDATE_TIMESTAMPS_REGION, 1000, null, evictionCounter);
+
+        return cacheManager;
+
+    }
+
+    /**
+     * Passa a Hibernate le impostazioni della cache di secondo livello, della cache delle query
+     * e delle statistiche, insieme al CacheManager da usare.
+     *
+     * @param hibernateCacheManager il CacheManager JCache con le regioni già create
+     * @param statisticsEnabled     indica se raccogliere le statistiche di Hibernate
+     * @return Ritorna il customizer delle proprietà di Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager,
+                                                                  @Value("${biblioteca.cache.statistics:true}") boolean statisticsEnabled) {
+
+        return properties -> {
+            properties.put("hibernate.cache.use_second_level_cache", true);
+            properties.put("hibernate.cache.use_query_cache", true);
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.cache_manager", hibernateCacheManager);
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+            properties.put("hibernate.generate_statistics", statisticsEnabled);
+        };
+
+    }
+
+    /**
+     * Crea una regione di cache con il limite di voci e la durata indicati.
+     *
+     * @param cacheManager     il CacheManager in cui creare la regione
+     * @param name             il nome della regione
+     * @param maxEntries       il numero massimo di voci in memoria
+     * @param timeToLive       la durata di una voce, null per nessuna scadenza
+     * @param evictionCounter  il contatore delle voci rimosse o scadute
+     */
+    private void createRegion(CacheManager cacheManager, String name, long maxEntries, Duration timeToLive,
+                              CacheEvictionCounter evictionCounter) {
+
+        CacheConfiguration<Object, Object> configuration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(timeToLive == null
+                        ? ExpiryPolicyBuilder.noExpiration()
+                        : ExpiryPolicyBuilder.timeToLiveExpiration(timeToLive))
+                .withService(CacheEventListenerConfigurationBuilder
+                        .newEventListenerConfiguration(evictionCounter.listenerFor(name), EventType.EVICTED, EventType.EXPIRED)
+                        .unordered()
+                        .asynchronous())
+                .build();
+
+        cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+        cacheManager.enableStatistics(name, true);
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conta le voci rimosse per mancanza di spazio e quelle scadute in ogni regione della cache di secondo livello.
+ * Hibernate espone hit, miss e inserimenti, ma non le rimozioni fatte dal provider della cache,
+ * che vengono quindi ricevute come eventi di Ehcache.
+ *
+ * @author Drumstyle92
+ */
+@Component
+public class CacheEvictionCounter {
+
+    /**
+     * Voci rimosse per mancanza di spazio, per regione.
+     */
+    private final Map<String, LongAdder> evictions = new ConcurrentHashMap<>();
+
+    /**
+     * Voci scadute, per regione.
+     */
+    private final Map<String, LongAdder> expirations = new ConcurrentHashMap<>();
+
+    /**
+     * Crea il listener di Ehcache che aggiorna i contatori della regione indicata.
+     *
+     * @param region il nome della regione
+     * @return Ritorna il listener da registrare sulla regione
+     */
+    public CacheEventListener<Object, Object> listenerFor(String region) {
+
+        LongAdder evicted = evictions.computeIfAbsent(region, name -> new LongAdder());
+        LongAdder expired = expirations.computeIfAbsent(region, name -> new LongAdder());
+
+        return event -> {
+            if (event.getType() == EventType.EVICTED) {
+                evicted.increment();
+            } else if (event.getType() == EventType.EXPIRED) {
+                expired.increment();
+            }
+        };
+
+    }
+
+    /**
+     * Ottieni il numero di voci rimosse per mancanza di spazio nella regione.
+     *
+     * @param region il nome della regione
+     * @return il numero di voci rimosse
+     */
+    public long getEvictions(String region) {
+
+        LongAdder evicted = evictions.get(region);
+
+        return evicted == null ? 0 : evicted.sum();
+
+    }
+
+    /**
+     * Ottieni il numero di voci scadute nella regione.
+     *
+     * @param region il nome della regione
+     * @return il numero di voci scadute
+     */
+    public long getExpirations(String region) {
+
+        LongAdder expired = expirations.get(region);
+
+        return expired == null ? 0 : expired.sum();
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configurazione dei batch JDBC di Hibernate.
+ * Con una dimensione di batch maggiore di zero Hibernate invia più INSERT e UPDATE della stessa tabella
+ * in un solo round trip verso il database. Con MySQL conviene aggiungere anche
+ * {@code rewriteBatchedStatements=true} all'URL di connessione, così che il driver unisca il batch
+ * in un unico INSERT multi-riga.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class JdbcBatchConfig {
+
+    /**
+     * Passa a Hibernate la dimensione dei batch JDBC e l'ordinamento di INSERT e UPDATE per tabella,
+     * necessario perché istruzioni di tabelle diverse alternate non possono stare nello stesso batch.
+     *
+     * @param batchSize il numero massimo di istruzioni per batch
+     * @return Ritorna il customizer delle proprietà di Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchCustomizer(@Value("${biblioteca.jdbc.batch-size:50}") int batchSize) {
+
+        return properties -> {
+            properties.put("hibernate.jdbc.batch_size", batchSize);
+            properties.put("hibernate.order_inserts", true);
+            properties.put("hibernate.order_updates", true);
+        };
+
+    }
+
+}
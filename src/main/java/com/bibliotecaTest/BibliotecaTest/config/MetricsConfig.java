@@ -0,0 +1,33 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configurazione delle metriche dell'applicazione con Micrometer.
+ * Le latenze degli endpoint HTTP, dei repository, il pool HikariCP e le statistiche di Hibernate
+ * vengono registrate automaticamente da Spring Boot Actuator; qui si aggiunge il supporto all'annotazione
+ * {@code @Timed} usata sui servizi.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * Crea l'aspetto che misura i metodi delle classi annotate con {@code @Timed}.
+     *
+     * @param meterRegistry il registro delle metriche
+     * @return Ritorna l'aspetto di Micrometer per {@code @Timed}
+     */
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+
+        return new TimedAspect(meterRegistry);
+
+    }
+
+}
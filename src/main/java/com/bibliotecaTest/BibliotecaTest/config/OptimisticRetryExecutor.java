@@ -0,0 +1,116 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Esegue un'operazione in una transazione e la ripete, un numero limitato di volte, se fallisce per un
+ * conflitto di versione ({@code @Version}) con una modifica concorrente.
+ * Ogni tentativo rilegge le entità in una nuova transazione: dopo il rollback il contesto di persistenza
+ * viene svuotato, quindi il tentativo successivo parte dai dati attuali invece di sovrascriverli.
+ * Tra un tentativo e l'altro aspetta un tempo casuale crescente, così che le richieste in conflitto non
+ * si scontrino di nuovo allo stesso istante. Se anche l'ultimo tentativo fallisce l'eccezione viene
+ * rilanciata e il chiamante risponde con "409 Conflict".
+ * Conflitti e tentativi ripetuti vengono contati in {@code biblioteca.optimistic.conflicts} e
+ * {@code biblioteca.optimistic.retries}, con l'operazione come tag.
+ *
+ * @author Drumstyle92
+ */
+@Component
+public class OptimisticRetryExecutor {
+
+    /**
+     * Gestore delle transazioni, usato per eseguire ogni tentativo in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Registro delle metriche, usato per contare conflitti e tentativi ripetuti.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Numero massimo di tentativi, compreso il primo.
+     */
+    @Value("${biblioteca.optimistic.max-attempts:3}")
+    int maxAttempts;
+
+    /**
+     * Attesa di base tra due tentativi in millisecondi, raddoppiata a ogni tentativo.
+     */
+    @Value("${biblioteca.optimistic.backoff-ms:10}")
+    long backoffMillis;
+
+    /**
+     * Esegue l'operazione ripetendola in caso di conflitto di versione.
+     * Va chiamato fuori da una transazione, altrimenti i tentativi farebbero parte di quella esterna.
+     *
+     * @param operation Il nome dell'operazione, usato come tag delle metriche
+     * @param action    L'operazione da eseguire nella transazione
+     * @param <T>       Il tipo del risultato
+     * @return          Ritorna il risultato dell'operazione
+     * @throws OptimisticLockingFailureException se tutti i tentativi falliscono per un conflitto
+     */
+    public <T> T execute(String operation, TransactionCallback<T> action) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        for (int attempt = 1; ; attempt++) {
+
+            try {
+
+                return transaction.execute(action);
+
+            } catch (OptimisticLockingFailureException e) {
+
+                meterRegistry.counter("biblioteca.optimistic.conflicts", "operation", operation).increment();
+
+                if (attempt >= maxAttempts) {
+
+                    throw e;
+                }
+
+                meterRegistry.counter("biblioteca.optimistic.retries", "operation", operation).increment();
+                backoff(attempt);
+            }
+        }
+
+    }
+
+    /**
+     * Aspetta un tempo casuale tra 0 e {@code backoffMillis * 2^(attempt - 1)} millisecondi.
+     *
+     * @param attempt Il numero del tentativo appena fallito
+     */
+    private void backoff(int attempt) {
+
+        long bound = backoffMillis << Math.min(attempt - 1, 10);
+
+        if (bound <= 0) {
+
+            return;
+        }
+
+        try {
+
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockingFailureException("Interrupted while waiting to retry", e);
+        }
+
+    }
+
+}
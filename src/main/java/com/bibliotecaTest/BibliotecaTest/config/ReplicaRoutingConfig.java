@@ -0,0 +1,121 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Configurazione della replica in lettura del database.
+ * È attiva solo se è impostata la proprietà {@code biblioteca.datasource.replica.url}: in quel caso il DataSource
+ * dell'applicazione diventa un {@link ReplicaRoutingDataSource} con due pool HikariCP, uno per il primario
+ * configurato con le solite proprietà {@code spring.datasource.*} e uno per la replica configurato con
+ * {@code biblioteca.datasource.replica.*}. I metodi dei servizi annotati con
+ * {@code @Transactional(readOnly = true)} leggono dalla replica.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+@ConditionalOnProperty(name = "biblioteca.datasource.replica.url")
+public class ReplicaRoutingConfig {
+
+    /**
+     * Crea il pool di connessioni del primario, con le proprietà {@code spring.datasource.*}
+     * e {@code spring.datasource.hikari.*}. Con l'annotazione {@code @FlywayDataSource} le migrazioni
+     * dello schema vengono eseguite sempre sul primario.
+     *
+     * @param properties le proprietà del DataSource di Spring Boot
+     * @return Ritorna il pool del primario
+     */
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+
+        return dataSource;
+
+    }
+
+    /**
+     * Crea il pool di connessioni della replica, con le proprietà {@code biblioteca.datasource.replica.*}
+     * e {@code biblioteca.datasource.replica.hikari.*}.
+     *
+     * @param url      l'URL JDBC della replica
+     * @param username l'utente della replica, per default lo stesso del primario
+     * @param password la password della replica, per default la stessa del primario
+     * @return Ritorna il pool della replica
+     */
+    @Bean
+    @ConfigurationProperties("biblioteca.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(@Value("${biblioteca.datasource.replica.url}") String url,
+                                              @Value("${biblioteca.datasource.replica.username:${spring.datasource.username:}}") String username,
+                                              @Value("${biblioteca.datasource.replica.password:${spring.datasource.password:}}") String password) {
+
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+
+        return dataSource;
+
+    }
+
+    /**
+     * Crea il DataSource usato da JPA e dal resto dell'applicazione, che sceglie primario o replica
+     * a ogni transazione.
+     *
+     * @param primary          il pool del primario
+     * @param replica          il pool della replica
+     * @param policy           la politica di lettura dalla replica
+     * @param stickinessMillis per quanti millisecondi un client legge dal primario dopo una scrittura
+     * @return Ritorna il DataSource con instradamento tra primario e replica
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 @Value("${biblioteca.datasource.replica.policy:read-your-writes}") ReplicaRoutingDataSource.Policy policy,
+                                 @Value("${biblioteca.datasource.replica.stickiness-ms:5000}") long stickinessMillis) {
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(policy, stickinessMillis);
+        routing.setTargetDataSources(Map.of(
+                ReplicaRoutingDataSource.Target.PRIMARY, primary,
+                ReplicaRoutingDataSource.Target.REPLICA, replica));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+
+    }
+
+    /**
+     * Crea il filtro che manda al primario le letture dei client che hanno scritto da poco.
+     *
+     * @return Ritorna il filtro
+     */
+    @Bean
+    public ReplicaStickinessFilter replicaStickinessFilter() {
+
+        return new ReplicaStickinessFilter();
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource che invia le transazioni di sola lettura alla replica e tutte le altre al primario.
+ * La scelta avviene quando la transazione chiede la prima connessione, per questo il DataSource va
+ * avvolto in un {@code LazyConnectionDataSourceProxy}: senza il proxy la connessione verrebbe presa
+ * all'inizio della transazione, prima che Spring la segni come di sola lettura.
+ * Con la politica {@link Policy#READ_YOUR_WRITES}, dopo il commit di una scrittura il client riceve un cookie
+ * che per qualche secondo manda anche le sue letture al primario, così che veda subito le proprie modifiche
+ * anche se la replica è in ritardo.
+ *
+ * @author Drumstyle92
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Nome del cookie con l'istante fino al quale il client legge dal primario.
+     */
+    public static final String STICKY_COOKIE = "biblioteca-primary-until";
+
+    /**
+     * Stato della richiesta HTTP in corso sul thread, impostato da {@link ReplicaStickinessFilter}.
+     */
+    private static final ThreadLocal<RequestState> REQUEST = new ThreadLocal<>();
+
+    /**
+     * Politica di lettura dalla replica.
+     */
+    private final Policy policy;
+
+    /**
+     * Durata in millisecondi delle letture dal primario dopo una scrittura.
+     */
+    private final long stickinessMillis;
+
+    /**
+     * Crea il DataSource con la politica indicata.
+     *
+     * @param policy           la politica di lettura dalla replica
+     * @param stickinessMillis la durata delle letture dal primario dopo una scrittura, in millisecondi
+     */
+    public ReplicaRoutingDataSource(Policy policy, long stickinessMillis) {
+
+        this.policy = policy;
+        this.stickinessMillis = stickinessMillis;
+
+    }
+
+    /**
+     * Associa al thread la richiesta HTTP in corso.
+     *
+     * @param primaryRequired true se il client ha scritto da poco e deve leggere dal primario
+     * @param response        la risposta HTTP, usata per impostare il cookie dopo una scrittura
+     */
+    static void bindRequest(boolean primaryRequired, HttpServletResponse response) {
+
+        REQUEST.set(new RequestState(primaryRequired, response));
+
+    }
+
+    /**
+     * Rimuove dal thread la richiesta HTTP terminata.
+     */
+    static void unbindRequest() {
+
+        REQUEST.remove();
+
+    }
+
+    /**
+     * Sceglie il DataSource per la connessione richiesta dalla transazione corrente.
+     *
+     * @return Ritorna {@link Target#REPLICA} per le transazioni di sola lettura, altrimenti {@link Target#PRIMARY}
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+
+        RequestState request = REQUEST.get();
+
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+
+            boolean primaryRequired = request != null && request.primaryRequired;
+            return policy == Policy.PRIMARY || primaryRequired ? Target.PRIMARY : Target.REPLICA;
+        }
+
+        if (policy == Policy.READ_YOUR_WRITES && request != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    request.stick(stickinessMillis);
+                }
+            });
+        }
+
+        return Target.PRIMARY;
+
+    }
+
+    /**
+     * DataSource di destinazione.
+     */
+    public enum Target {
+
+        /**
+         * Il database primario, che riceve tutte le scritture.
+         */
+        PRIMARY,
+
+        /**
+         * La replica, che riceve le transazioni di sola lettura.
+         */
+        REPLICA
+    }
+
+    /**
+     * Politica di lettura dalla replica, scelta con la proprietà {@code biblioteca.datasource.replica.policy}.
+     */
+    public enum Policy {
+
+        /**
+         * Tutte le transazioni di sola lettura vanno alla replica, anche subito dopo una scrittura.
+         */
+        REPLICA,
+
+        /**
+         * Le transazioni di sola lettura vanno alla replica, tranne per i client che hanno scritto da poco.
+         */
+        READ_YOUR_WRITES,
+
+        /**
+         * La replica non viene usata, ad esempio quando è troppo in ritardo.
+         */
+        PRIMARY
+    }
+
+    /**
+     * Stato della richiesta HTTP in corso.
+     */
+    private static final class RequestState {
+
+        /**
+         * La risposta HTTP.
+         */
+        private final HttpServletResponse response;
+
+        /**
+         * true se le letture della richiesta devono andare al primario.
+         */
+        private boolean primaryRequired;
+
+        /**
+         * Crea lo stato della richiesta.
+         *
+         * @param primaryRequired true se le letture devono andare al primario
+         * @param response        la risposta HTTP
+         */
+        private RequestState(boolean primaryRequired, HttpServletResponse response) {
+            this.primaryRequired = primaryRequired;
+            this.response = response;
+        }
+
+        /**
+         * Manda al primario le letture successive della richiesta e, con il cookie, quelle del client
+         * per la durata indicata.
+         *
+         * @param stickinessMillis la durata in millisecondi
+         */
+        private void stick(long stickinessMillis) {
+            primaryRequired = true;
+            Cookie cookie = new Cookie(STICKY_COOKIE, Long.toString(System.currentTimeMillis() + stickinessMillis));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (stickinessMillis + 999) / 1000));
+            response.addCookie(cookie);
+        }
+
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Filtro che legge il cookie impostato da {@link ReplicaRoutingDataSource} dopo una scrittura e,
+ * finché non è scaduto, manda al primario anche le letture del client.
+ * Viene registrato solo quando è configurata una replica.
+ *
+ * @author Drumstyle92
+ */
+public class ReplicaStickinessFilter extends OncePerRequestFilter {
+
+    /**
+     * Associa la richiesta al thread per tutta la durata della catena dei filtri.
+     *
+     * @param request     la richiesta HTTP
+     * @param response    la risposta HTTP
+     * @param filterChain la catena dei filtri
+     * @throws ServletException se la catena dei filtri fallisce
+     * @throws IOException      se la scrittura della risposta fallisce
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        ReplicaRoutingDataSource.bindRequest(primaryRequired(request), response);
+
+        try {
+
+            filterChain.doFilter(request, response);
+
+        } finally {
+
+            ReplicaRoutingDataSource.unbindRequest();
+        }
+
+    }
+
+    /**
+     * Controlla se il client ha un cookie di lettura dal primario non ancora scaduto.
+     *
+     * @param request la richiesta HTTP
+     * @return true se le letture devono andare al primario
+     */
+    private boolean primaryRequired(HttpServletRequest request) {
+
+        if (request.getCookies() == null) {
+
+            return false;
+        }
+
+        for (Cookie cookie : request.getCookies()) {
+
+            if (ReplicaRoutingDataSource.STICKY_COOKIE.equals(cookie.getName())) {
+
+                try {
+
+                    return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+
+                } catch (NumberFormatException e) {
+
+                    return false;
+                }
+            }
+        }
+
+        return false;
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.services.AvailabilityFeedService;
+import com.bibliotecaTest.BibliotecaTest.services.ResourceVersionService;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA di libri e utenti che rimuove la versione dell'entità dalla mappa delle versioni
+ * quando l'entità viene modificata o eliminata tramite Hibernate, e segnala i libri cambiati
+ * al flusso della disponibilità.
+ * Gli UPDATE in blocco non passano dai listener JPA e devono rimuovere la versione e segnalare il libro
+ * esplicitamente.
+ * Hibernate ottiene il listener da Spring, che ne inietta le dipendenze mentre l'EntityManagerFactory
+ * è ancora in costruzione: il flusso della disponibilità dipende dai repository, quindi viene risolto
+ * solo al primo evento, altrimenti Spring non potrebbe creare il listener e Hibernate ne userebbe
+ * un'istanza senza dipendenze.
+ *
+ * @author Drumstyle92
+ */
+@Component
+public class ResourceVersionListener {
+
+    /**
+     * Mappa delle versioni di libri e utenti.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Flusso della disponibilità dei libri, risolto al primo libro modificato.
+     */
+    @Autowired
+    ObjectProvider<AvailabilityFeedService> availabilityFeedService;
+
+    /**
+     * Rimuove la versione dell'entità modificata o eliminata e, per i libri, ne segnala il cambiamento.
+     *
+     * @param entity il libro o l'utente modificato o eliminato
+     */
+    @PostUpdate
+    @PostRemove
+    public void evict(Object entity) {
+
+        if (entity instanceof BookEntity book) {
+
+            resourceVersionService.evictBook(book.getBookId());
+            availabilityFeedService.getObject().bookChanged(book.getBookId());
+        } else if (entity instanceof UserEntity user) {
+
+            resourceVersionService.evictUser(user.getUserId());
+        }
+
+    }
+
+}
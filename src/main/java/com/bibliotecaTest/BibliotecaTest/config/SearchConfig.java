@@ -0,0 +1,68 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import org.apache.lucene.analysis.core.LowerCaseFilterFactory;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilterFactory;
+import org.apache.lucene.analysis.standard.StandardTokenizerFactory;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurationContext;
+import org.hibernate.search.backend.lucene.analysis.LuceneAnalysisConfigurer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configurazione della ricerca full-text sul catalogo con Hibernate Search e Lucene.
+ * L'indice viene salvato su una cartella locale configurabile con la proprietà
+ * {@code biblioteca.search.index-dir}.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class SearchConfig {
+
+    /**
+     * Passa a Hibernate Search il backend Lucene su filesystem e l'analizzatore dei libri.
+     *
+     * @param indexDirectory la cartella in cui salvare l'indice
+     * @return Ritorna il customizer delle proprietà di Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateSearchCustomizer(
+            @Value("${biblioteca.search.index-dir:./data/search-index}") String indexDirectory) {
+
+        return properties -> {
+            properties.put("hibernate.search.backend.type", "lucene");
+            properties.put("hibernate.search.backend.directory.type", "local-filesystem");
+            properties.put("hibernate.search.backend.directory.root", indexDirectory);
+            properties.put("hibernate.search.backend.analysis.configurer",
+                    "class:" + BookAnalysisConfigurer.class.getName());
+        };
+
+    }
+
+    /**
+     * Definisce l'analizzatore "book" usato per titolo, autore e descrizione:
+     * divide il testo in parole, le porta in minuscolo e rimuove gli accenti,
+     * così che la ricerca per prefisso e la ricerca approssimata funzionino senza distinzione di maiuscole.
+     */
+    public static class BookAnalysisConfigurer implements LuceneAnalysisConfigurer {
+
+        /**
+         * Registra l'analizzatore nel contesto di configurazione di Lucene.
+         *
+         * @param context il contesto di configurazione dell'analisi
+         */
+        @Override
+        public void configure(LuceneAnalysisConfigurationContext context) {
+
+            context.analyzer("book").custom()
+                    .tokenizer(StandardTokenizerFactory.class)
+                    .tokenFilter(LowerCaseFilterFactory.class)
+                    .tokenFilter(ASCIIFoldingFilterFactory.class);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.bibliotecaTest.BibliotecaTest.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Configurazione dei formati binari delle risposte, in alternativa al JSON.
+ * Il client sceglie il formato con l'header {@code Accept}: {@code application/cbor} per CBOR
+ * oppure {@code application/x-jackson-smile} per Smile. Le risposte JSON restano invariate.
+ * I convertitori usano la stessa configurazione di Jackson dell'applicazione, così che date e
+ * annotazioni Jackson delle entità vengano scritte come nel JSON.
+ * L'annotazione {@code @Configuration} indica a Spring che la classe definisce dei bean.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class WireFormatConfig {
+
+    /**
+     * Tipo MIME del formato Smile.
+     */
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    /**
+     * Convertitore per il formato Smile.
+     * Oltre ai nomi delle proprietà vengono condivise anche le stringhe brevi ripetute,
+     * come autori e cognomi, che sono così scritte una sola volta per risposta.
+     *
+     * @param builder il builder dell'ObjectMapper configurato da Spring Boot
+     * @return Ritorna il convertitore Smile
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+
+        SmileFactory smileFactory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(smileFactory).build());
+
+    }
+
+    /**
+     * Convertitore per il formato CBOR.
+     *
+     * @param builder il builder dell'ObjectMapper configurato da Spring Boot
+     * @return Ritorna il convertitore CBOR
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+
+    }
+
+}
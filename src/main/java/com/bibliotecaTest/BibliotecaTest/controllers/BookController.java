@@ -1,10 +1,32 @@
 package com.bibliotecaTest.BibliotecaTest.controllers;
 
+import com.bibliotecaTest.BibliotecaTest.dto.BookImportReport;
+import com.bibliotecaTest.BibliotecaTest.dto.BookPage;
+import com.bibliotecaTest.BibliotecaTest.dto.BookSearchResult;
+import com.bibliotecaTest.BibliotecaTest.dto.BulkDeleteReport;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary;
 import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.services.AvailabilityFeedService;
+import com.bibliotecaTest.BibliotecaTest.services.BookImportService;
+import com.bibliotecaTest.BibliotecaTest.services.BookSearchService;
 import com.bibliotecaTest.BibliotecaTest.services.BookService;
+import com.bibliotecaTest.BibliotecaTest.services.BulkDeleteService;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationService;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -12,11 +34,14 @@ import java.util.List;
  * Facciamo diventare la classe un controller con l'annotazione {@code @RestController} proprio per poter
  * creare e gestire richieste HTTP del sistema, inoltre con l'annotazione {@code @RequestMapping} diamo
  * un percorso base a tutte le varie richieste del controller.
+ * Con il profilo Spring {@code reactive} il controller non viene registrato, dato che usa tipi di Spring MVC
+ * come {@code SseEmitter}, {@code StreamingResponseBody} e {@code WebRequest} che WebFlux non gestisce.
  *
  * @author Drumstyle92
  */
 @RestController
 @RequestMapping("/apiBook")
+@Profile("!reactive")
 public class BookController {
 
     /**
@@ -28,6 +53,36 @@ public class BookController {
     @Autowired
     BookService bookService;
 
+    /**
+     * Viene iniettato automaticamente il servizio che elimina in blocco i libri con le loro prenotazioni.
+     */
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    /**
+     * Viene iniettato automaticamente il servizio di ricerca full-text sul catalogo dei libri.
+     */
+    @Autowired
+    BookSearchService bookSearchService;
+
+    /**
+     * Viene iniettato automaticamente il servizio di importazione in blocco dei libri.
+     */
+    @Autowired
+    BookImportService bookImportService;
+
+    /**
+     * Viene iniettato automaticamente il servizio del flusso della disponibilità dei libri.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Viene iniettato automaticamente il servizio delle prenotazioni, usato per lo storico di ogni libro.
+     */
+    @Autowired
+    ReservationService reservationService;
+
     /**
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
      * GET verso la specifica route designata.
@@ -42,6 +97,38 @@ public class BookController {
 
     }
 
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene una pagina di libri usando la paginazione a cursore sull'ID del libro.
+     *
+     * @param cursor il cursore opaco restituito dalla pagina precedente, assente per la prima pagina
+     * @param size   il numero di libri per pagina, assente per usare quello predefinito
+     * @return       Ritorna un oggetto ResponseEntity contenente la pagina di libri e il cursore successivo
+     */
+    @GetMapping("/allBooks/page")
+    public ResponseEntity<BookPage> getBooksPage(@RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false) Integer size) {
+
+        return bookService.getBooksPage(cursor, size);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo scrive tutti i libri nella risposta in formato NDJSON, un libro per riga,
+     * man mano che vengono letti dal database.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente il corpo della risposta in streaming
+     */
+    @GetMapping(value = "/allBooks/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllBooks() {
+
+        return bookService.streamAllBooks();
+
+    }
+
     /**
      * L'annotazione {@code @PostMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo POST verso la specifica route designata.
@@ -61,14 +148,17 @@ public class BookController {
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo GET verso la specifica route designata.
      * Il metodo attraverso la richiesta HTTP ottiene il libro con l'ID specificato.
+     * La risposta contiene gli header ETag e Last-Modified, e se il client invia la versione
+     * che ha già ricevuto la risposta è "304 Not Modified" senza corpo.
      *
-     * @param id l'ID del libro
-     * @return   Ritorna un oggetto ResponseEntity contenente il libro con l'ID specificato
+     * @param id      l'ID del libro
+     * @param request la richiesta HTTP con gli eventuali header If-None-Match e If-Modified-Since
+     * @return        Ritorna un oggetto ResponseEntity contenente il libro con l'ID specificato
      */
     @GetMapping("/getBook/{id}")
-    public ResponseEntity<BookEntity> getBook(@PathVariable Long id){
+    public ResponseEntity<BookEntity> getBook(@PathVariable Long id, WebRequest request){
 
-        return bookService.getBookById(id);
+        return bookService.getBookById(id, request);
 
     }
 
@@ -78,14 +168,42 @@ public class BookController {
      * Il metodo aggiorna un libro esistente utilizzando l'ID del libro e
      * l'oggetto BookEntity che contiene i nuovi dati del libro.
      *
-     * @param id   l'ID del libro da aggiornare
-     * @param book l'oggetto BookEntity contenente i nuovi dati del libro
-     * @return     Ritorna un oggetto ResponseEntity contenente il libro aggiornato
+     * Con l'header If-Match il client indica la versione (ETag) che ha letto: se il libro nel frattempo
+     * è cambiato la risposta è "409 Conflict" con il libro e la versione attuali.
+     *
+     * @param id      l'ID del libro da aggiornare
+     * @param book    l'oggetto BookEntity contenente i nuovi dati del libro
+     * @param ifMatch l'ETag della versione letta dal client, facoltativo
+     * @return        Ritorna un oggetto ResponseEntity contenente il libro aggiornato
      */
     @PutMapping("/putBook/{id}")
-    public ResponseEntity<BookEntity> updateBook(@PathVariable Long id, @RequestBody BookEntity book) {
+    public ResponseEntity<BookEntity> updateBook(@PathVariable Long id, @RequestBody BookEntity book,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return bookService.updateBook(id, book, ifMatch);
+
+    }
 
-        return bookService.updateBook(id, book);
+    /**
+     * L'annotazione {@code @PatchMapping} indica che il metodo gestisce le richieste HTTP
+     * di tipo PATCH verso la specifica route designata.
+     * Il metodo modifica solo i campi del libro indicati in un documento JSON Merge Patch (RFC 7396),
+     * ad esempio {@code {"numberOfCopiesAvailable": 3}}: i campi assenti restano invariati.
+     *
+     * Con l'header If-Match il client indica la versione (ETag) che ha letto: la modifica può allora
+     * essere eseguita senza leggere prima il libro, e se nel frattempo è cambiato la risposta è "409 Conflict".
+     *
+     * @param id      l'ID del libro da modificare
+     * @param patch   il documento JSON Merge Patch con i campi da modificare
+     * @param ifMatch l'ETag della versione letta dal client, facoltativo
+     * @return        Ritorna un oggetto ResponseEntity contenente il libro aggiornato,
+     *                oppure solo la nuova versione se il libro non è stato letto
+     */
+    @PatchMapping(value = "/patchBook/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<BookEntity> patchBook(@PathVariable Long id, @RequestBody JsonNode patch,
+                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return bookService.patchBook(id, patch, ifMatch);
 
     }
 
@@ -104,18 +222,145 @@ public class BookController {
 
     }
 
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Il metodo elimina i libri indicati da una lista JSON di ID, insieme alle loro prenotazioni,
+     * a blocchi eliminati ognuno con poche istruzioni in blocco.
+     *
+     * @param ids la lista degli ID dei libri da eliminare
+     * @return    Ritorna un oggetto ResponseEntity contenente il report dell'eliminazione
+     *            con la durata di ogni blocco
+     */
+    @PostMapping("/deleteBooks")
+    public ResponseEntity<BulkDeleteReport> deleteBooks(@RequestBody List<Long> ids) {
+
+        return bulkDeleteService.deleteBooks(ids);
+
+    }
+
     /**
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo GET verso la specifica route designata.
      * Il metodo ottiene il numero di copie disponibili di un libro specifico.
+     * Come per il libro, la risposta supporta le GET condizionali con ETag e Last-Modified.
      *
-     * @param bookId l'ID del libro di cui si vuole conoscere il numero di copie disponibili
-     * @return       Ritorna un oggetto ResponseEntity contenente il numero di copie disponibili come stringa
+     * @param bookId  l'ID del libro di cui si vuole conoscere il numero di copie disponibili
+     * @param request la richiesta HTTP con gli eventuali header If-None-Match e If-Modified-Since
+     * @return        Ritorna un oggetto ResponseEntity contenente il numero di copie disponibili come stringa
      */
     @GetMapping("/getCopies/{bookId}")
-    public ResponseEntity<String> getAvailableCopies(@PathVariable Long bookId) {
+    public ResponseEntity<String> getAvailableCopies(@PathVariable Long bookId, WebRequest request) {
+
+        return bookService.copiesAvailableByBookId(bookId, request);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo GET verso la specifica route designata.
+     * Il metodo apre un flusso Server-Sent Events con le copie disponibili dei libri indicati:
+     * il client riceve subito le copie attuali e poi un evento {@code availability} a ogni cambiamento,
+     * senza dover interrogare {@code /getCopies} a intervalli regolari.
+     *
+     * @param bookIds gli ID dei libri da seguire, ad esempio {@code ?bookIds=1,2,3}
+     * @return        Ritorna un oggetto ResponseEntity contenente la connessione SSE
+     */
+    @GetMapping(value = "/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamAvailability(@RequestParam List<Long> bookIds) {
+
+        return availabilityFeedService.subscribe(bookIds);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo GET verso la specifica route designata.
+     * Il metodo cerca i libri per titolo, autore e descrizione, con ricerca per prefisso e approssimata,
+     * e restituisce i risultati ordinati per rilevanza.
+     *
+     * @param q    il testo da cercare
+     * @param page il numero della pagina, partendo da 0
+     * @param size il numero di risultati per pagina, assente per usare quello predefinito
+     * @return     Ritorna un oggetto ResponseEntity contenente la pagina di risultati
+     */
+    @GetMapping("/search")
+    public ResponseEntity<BookSearchResult> searchBooks(@RequestParam String q,
+                                                        @RequestParam(defaultValue = "0") int page,
+                                                        @RequestParam(required = false) Integer size) {
+
+        return bookSearchService.searchBooks(q, page, size);
+
+    }
+
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Il metodo ricostruisce da zero l'indice di ricerca del catalogo.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente il tempo impiegato per la reindicizzazione
+     */
+    @PostMapping("/search/reindex")
+    public ResponseEntity<String> reindexBooks() {
+
+        return bookSearchService.reindexBooks();
+
+    }
+
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Il metodo importa in blocco i libri da un array JSON o da un file NDJSON,
+     * leggendo il corpo della richiesta un libro alla volta.
+     *
+     * @param body il corpo della richiesta
+     * @return     Ritorna un oggetto ResponseEntity contenente il report dell'importazione
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BookImportReport> importBooksJson(InputStream body) {
+
+        return bookImportService.importJson(body);
+
+    }
+
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Il metodo importa in blocco i libri da un file CSV con intestazione,
+     * leggendo il corpo della richiesta una riga alla volta.
+     *
+     * @param body il corpo della richiesta
+     * @return     Ritorna un oggetto ResponseEntity contenente il report dell'importazione
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<BookImportReport> importBooksCsv(InputStream body) {
+
+        return bookImportService.importCsv(body);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene una pagina delle prenotazioni del libro, dalla più recente, eventualmente
+     * limitate alle date comprese tra {@code from} e {@code to} nel formato {@code yyyy-MM-dd}.
+     *
+     * @param id   l'ID del libro
+     * @param from la prima data compresa, facoltativa
+     * @param to   l'ultima data compresa, facoltativa
+     * @param page il numero della pagina, partendo da 0
+     * @param size il numero di prenotazioni per pagina
+     * @return     Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni
+     */
+    @GetMapping("/{id}/reservations")
+    public ResponseEntity<Slice<ReservationSummary>> getBookReservations(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
 
-        return bookService.copiesAvailableByBookId(bookId);
+        return reservationService.getBookReservations(id, from, to, page, size);
 
     }
 
@@ -0,0 +1,46 @@
+package com.bibliotecaTest.BibliotecaTest.controllers;
+
+import com.bibliotecaTest.BibliotecaTest.services.CacheStatisticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * La classe CacheController è un controller che espone le statistiche della cache di secondo livello.
+ * Con l'annotazione {@code @RestController} la classe gestisce richieste HTTP e con l'annotazione
+ * {@code @RequestMapping} diamo un percorso base a tutte le varie richieste del controller.
+ * Con il profilo Spring {@code reactive} il controller non viene registrato, come tutte le API servlet.
+ *
+ * @author Drumstyle92
+ */
+@RestController
+@RequestMapping("/apiCache")
+@Profile("!reactive")
+public class CacheController {
+
+    /**
+     * Viene iniettato automaticamente il servizio che raccoglie le statistiche della cache.
+     */
+    @Autowired
+    CacheStatisticsService cacheStatisticsService;
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene hit, miss, inserimenti e rimozioni di ogni regione della cache.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente le statistiche di ogni regione
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Map<String, Long>>> getCacheStatistics() {
+
+        return cacheStatisticsService.getCacheStatistics();
+
+    }
+
+}
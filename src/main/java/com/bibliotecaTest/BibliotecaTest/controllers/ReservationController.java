@@ -1,10 +1,24 @@
 package com.bibliotecaTest.BibliotecaTest.controllers;
 
+import com.bibliotecaTest.BibliotecaTest.config.WireFormatConfig;
+import com.bibliotecaTest.BibliotecaTest.dto.BatchReservationResult;
+import com.bibliotecaTest.BibliotecaTest.dto.PendingReservationStatus;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationListing;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary;
+import com.bibliotecaTest.BibliotecaTest.dto.WaitlistStatus;
 import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEventEntity;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationEventService;
 import com.bibliotecaTest.BibliotecaTest.services.ReservationService;
+import com.bibliotecaTest.BibliotecaTest.services.WaitlistService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -13,11 +27,13 @@ import java.util.List;
  * Facciamo diventare la classe un controller con l'annotazione {@code @RestController} proprio per poter
  * creare e gestire richieste HTTP del sistema, inoltre con l'annotazione {@code @RequestMapping} diamo
  * un percorso base a tutte le varie richieste del controller.
+ * Con il profilo Spring {@code reactive} il controller viene sostituito dalla versione reattiva.
  *
  * @author Drumstyle92
  */
 @RestController
 @RequestMapping("/apiReservation")
+@Profile("!reactive")
 public class ReservationController {
 
     /**
@@ -29,6 +45,18 @@ public class ReservationController {
     @Autowired
     ReservationService reservationService;
 
+    /**
+     * Viene iniettato automaticamente il registro degli eventi delle prenotazioni.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Viene iniettato automaticamente il servizio delle code di attesa dei libri.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
 
     /**
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
@@ -44,6 +72,39 @@ public class ReservationController {
 
     }
 
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo risponde alla stessa route di {@link #getAllReservations()} quando il client chiede
+     * un formato binario (CBOR o Smile) e restituisce le prenotazioni in forma piatta,
+     * senza ripetere libro e utente in ogni prenotazione.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente l'elenco piatto delle prenotazioni
+     */
+    @GetMapping(value = "/allReservations", produces = {MediaType.APPLICATION_CBOR_VALUE, WireFormatConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<ReservationListing> getReservationListing() {
+
+        return reservationService.getReservationListing();
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene una pagina di prenotazioni con solo ID, titolo del libro e nome dell'utente.
+     *
+     * @param page il numero della pagina, partendo da 0
+     * @param size il numero di prenotazioni per pagina
+     * @return     Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni
+     */
+    @GetMapping("/allReservations/page")
+    public ResponseEntity<Slice<ReservationSummary>> getReservationsPage(@RequestParam(defaultValue = "0") int page,
+                                                                         @RequestParam(defaultValue = "50") int size) {
+
+        return reservationService.getReservationsPage(page, size);
+
+    }
+
     /**
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo GET verso la specifica route designata.
@@ -68,15 +129,18 @@ public class ReservationController {
      * @param date          la data di prenotazione aggiornata
      * @param userId        l'ID dell'utente associato alla prenotazione
      * @param bookId        l'ID del libro associato alla prenotazione
+     * @param ifMatch       l'ETag della versione letta dal client, facoltativo: se la prenotazione
+     *                      nel frattempo è cambiata la risposta è "409 Conflict" con quella attuale
      * @return              Ritorna un oggetto ResponseEntity contenente la prenotazione aggiornata
      */
     @PutMapping("/putReservation/{reservationId}")
     public ResponseEntity<ReservationEntity> updateReservation(@PathVariable Long reservationId,
                                                                @RequestParam LocalDate date,
                                                                @RequestParam Long userId,
-                                                               @RequestParam Long bookId) {
+                                                               @RequestParam Long bookId,
+                                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
-        return reservationService.updateReservation(reservationId,date,userId,bookId);
+        return reservationService.updateReservation(reservationId,date,userId,bookId,ifMatch);
 
     }
 
@@ -111,4 +175,108 @@ public class ReservationController {
 
     }
 
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo restituisce lo stato della scrittura di una prenotazione accettata dall'inventario in memoria,
+     * il cui indirizzo è nell'header Location della risposta "202 Accepted".
+     *
+     * @param ticket l'ID assegnato alla prenotazione accettata
+     * @return       Ritorna un oggetto ResponseEntity contenente lo stato della scrittura
+     */
+    @GetMapping("/pending/{ticket}")
+    public ResponseEntity<PendingReservationStatus> getPendingReservation(@PathVariable long ticket) {
+
+        return reservationService.getPendingReservation(ticket);
+
+    }
+
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Metodo che prenota più libri per lo stesso utente con una sola richiesta.
+     * Il corpo della richiesta è un array JSON con gli ID dei libri.
+     *
+     * @param userId  l'ID dell'utente per cui creare le prenotazioni
+     * @param partial se true prenota i libri disponibili anche se altri non lo sono
+     * @param bookIds gli ID dei libri da prenotare
+     * @return        Ritorna un oggetto ResponseEntity contenente l'esito di ogni libro
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchReservationResult> createReservations(@RequestParam Long userId,
+                                                                     @RequestParam(defaultValue = "false") boolean partial,
+                                                                     @RequestBody List<Long> bookIds) {
+
+        return reservationService.createReservations(userId, bookIds, partial);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo legge il registro degli eventi delle prenotazioni a partire da una posizione:
+     * il consumatore passa come {@code after} il {@code logPosition} dell'ultimo evento ricevuto.
+     *
+     * @param after la posizione dell'ultimo evento già letto, 0 per leggere dall'inizio
+     * @param limit il numero massimo di eventi da leggere
+     * @return      Ritorna un oggetto ResponseEntity contenente gli eventi successivi
+     */
+    @GetMapping("/events")
+    public ResponseEntity<List<ReservationEventEntity>> getEvents(@RequestParam(defaultValue = "0") Long after,
+                                                                  @RequestParam(defaultValue = "100") int limit) {
+
+        return reservationEventService.getEvents(after, limit);
+
+    }
+
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Metodo che mette l'utente in coda per un libro senza copie disponibili: la prima copia restituita
+     * diventa una prenotazione della richiesta più vecchia della coda.
+     *
+     * @param userId l'ID dell'utente da mettere in coda
+     * @param bookId l'ID del libro
+     * @return       Ritorna un oggetto ResponseEntity contenente lo stato della richiesta e la posizione in coda
+     */
+    @PostMapping("/waitlist")
+    public ResponseEntity<WaitlistStatus> joinWaitlist(@RequestParam Long userId, @RequestParam Long bookId) {
+
+        return waitlistService.join(userId, bookId);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo attende l'esito di una richiesta in coda (long-poll): risponde appena la richiesta viene
+     * promossa o annullata, oppure dopo {@code waitMs} millisecondi con lo stato attuale.
+     *
+     * @param entryId l'ID della richiesta
+     * @param waitMs  il tempo massimo di attesa in millisecondi, 0 per leggere subito lo stato
+     * @return        Ritorna il risultato differito con lo stato della richiesta
+     */
+    @GetMapping("/waitlist/{entryId}")
+    public DeferredResult<ResponseEntity<WaitlistStatus>> awaitWaitlist(@PathVariable Long entryId,
+                                                                        @RequestParam(defaultValue = "30000") long waitMs) {
+
+        return waitlistService.await(entryId, waitMs);
+
+    }
+
+    /**
+     * L'annotazione {@code @DeleteMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo DELETE verso la specifica route designata.
+     * Metodo che annulla una richiesta ancora in coda.
+     *
+     * @param entryId l'ID della richiesta
+     * @return        Ritorna un oggetto ResponseEntity vuoto con l'esito dell'annullamento
+     */
+    @DeleteMapping("/waitlist/{entryId}")
+    public ResponseEntity<Void> cancelWaitlist(@PathVariable Long entryId) {
+
+        return waitlistService.cancel(entryId);
+
+    }
+
 }
@@ -0,0 +1,46 @@
+package com.bibliotecaTest.BibliotecaTest.controllers;
+
+import com.bibliotecaTest.BibliotecaTest.dto.AvailabilitySummary;
+import com.bibliotecaTest.BibliotecaTest.services.AvailabilityStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * La classe StatsController è un controller che espone gli aggregati usati dalla dashboard operativa.
+ * Con l'annotazione {@code @RestController} la classe gestisce richieste HTTP e con l'annotazione
+ * {@code @RequestMapping} diamo un percorso base a tutte le varie richieste del controller.
+ * Con il profilo Spring {@code reactive} il controller non viene registrato, come tutte le API servlet.
+ *
+ * @author Drumstyle92
+ */
+@RestController
+@RequestMapping("/apiStats")
+@Profile("!reactive")
+public class StatsController {
+
+    /**
+     * Viene iniettato automaticamente il servizio che mantiene gli aggregati sulla disponibilità.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene copie totali, libri esauriti, prenotazioni per giorno e titoli più prenotati
+     * dagli aggregati in memoria, senza interrogare il database.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente il riepilogo della disponibilità
+     */
+    @GetMapping("/availability")
+    public ResponseEntity<AvailabilitySummary> getAvailability() {
+
+        return availabilityStatsService.getSummary();
+
+    }
+
+}
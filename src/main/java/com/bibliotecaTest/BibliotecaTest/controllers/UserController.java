@@ -1,12 +1,24 @@
 package com.bibliotecaTest.BibliotecaTest.controllers;
 
 
+import com.bibliotecaTest.BibliotecaTest.dto.BulkDeleteReport;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary;
 import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.services.BulkDeleteService;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationService;
 import com.bibliotecaTest.BibliotecaTest.services.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Slice;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
 import java.util.List;
 
 
@@ -15,11 +27,14 @@ import java.util.List;
  * Facciamo diventare la classe un controller con l'annotazione {@code @RestController} proprio per poter
  * creare e gestire richieste HTTP del sistema, inoltre con l'annotazione {@code @RequestMapping} diamo
  * un percorso base a tutte le varie richieste del controller.
+ * Con il profilo Spring {@code reactive} il controller non viene registrato, dato che usa {@code WebRequest}
+ * di Spring MVC e servizi JPA bloccanti che non devono girare sui thread di WebFlux.
  *
  * @author Drumstyle92
  */
 @RestController
 @RequestMapping("/apiUser")
+@Profile("!reactive")
 public class UserController {
 
     /**
@@ -31,6 +46,18 @@ public class UserController {
     @Autowired
     UserService userService;
 
+    /**
+     * Viene iniettato automaticamente il servizio che elimina in blocco gli utenti con le loro prenotazioni.
+     */
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    /**
+     * Viene iniettato automaticamente il servizio delle prenotazioni, usato per lo storico di ogni utente.
+     */
+    @Autowired
+    ReservationService reservationService;
+
     /**
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
      * GET verso la specifica route designata.
@@ -49,14 +76,17 @@ public class UserController {
      * L'annotazione {@code @GetMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo GET verso la specifica route designata.
      * Il metodo attraverso la richiesta HTTP ottiene l'utente con l'ID specificato.
+     * La risposta contiene gli header ETag e Last-Modified, e se il client invia la versione
+     * che ha già ricevuto la risposta è "304 Not Modified" senza corpo.
      *
-     * @param id l'ID dell'utente
-     * @return   Ritorna un oggetto ResponseEntity contenente l'utente con l'ID specificato
+     * @param id      l'ID dell'utente
+     * @param request la richiesta HTTP con gli eventuali header If-None-Match e If-Modified-Since
+     * @return        Ritorna un oggetto ResponseEntity contenente l'utente con l'ID specificato
      */
     @GetMapping("/getUser/{id}")
-    public ResponseEntity<UserEntity> getUserById(@PathVariable Long id) {
+    public ResponseEntity<UserEntity> getUserById(@PathVariable Long id, WebRequest request) {
 
-        return userService.getUserById(id);
+        return userService.getUserById(id, request);
 
     }
 
@@ -92,6 +122,29 @@ public class UserController {
 
     }
 
+    /**
+     * L'annotazione {@code @PatchMapping} indica che il metodo gestisce le richieste HTTP
+     * di tipo PATCH verso la specifica route designata.
+     * Il metodo modifica solo i campi dell'utente indicati in un documento JSON Merge Patch (RFC 7396),
+     * ad esempio {@code {"telephone": 3331234567}}: i campi assenti restano invariati.
+     *
+     * Con l'header If-Match il client indica la versione (ETag) che ha letto: la modifica può allora
+     * essere eseguita senza leggere prima l'utente, e se nel frattempo è cambiato la risposta è "409 Conflict".
+     *
+     * @param id      l'ID dell'utente da modificare
+     * @param patch   il documento JSON Merge Patch con i campi da modificare
+     * @param ifMatch l'ETag della versione letta dal client, facoltativo
+     * @return        Ritorna un oggetto ResponseEntity contenente l'utente aggiornato,
+     *                oppure solo la nuova versione se l'utente non è stato letto
+     */
+    @PatchMapping(value = "/patchUser/{id}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<UserEntity> patchUser(@PathVariable Long id, @RequestBody JsonNode patch,
+                                                @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return userService.patchUser(id, patch, ifMatch);
+
+    }
+
     /**
      * L'annotazione {@code @DeleteMapping} indica che il metodo gestisce
      * le richieste HTTP di tipo DELETE verso la specifica route designata.
@@ -107,4 +160,47 @@ public class UserController {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * L'annotazione {@code @PostMapping} indica che il metodo gestisce
+     * le richieste HTTP di tipo POST verso la specifica route designata.
+     * Il metodo elimina gli utenti indicati da una lista JSON di ID, insieme alle loro prenotazioni,
+     * a blocchi eliminati ognuno con poche istruzioni in blocco.
+     * Le copie delle prenotazioni eliminate tornano disponibili ai libri.
+     *
+     * @param ids la lista degli ID degli utenti da eliminare
+     * @return    Ritorna un oggetto ResponseEntity contenente il report dell'eliminazione
+     *            con la durata di ogni blocco
+     */
+    @PostMapping("/deleteUsers")
+    public ResponseEntity<BulkDeleteReport> deleteUsers(@RequestBody List<Long> ids) {
+
+        return bulkDeleteService.deleteUsers(ids);
+
+    }
+
+    /**
+     * L'annotazione {@code @GetMapping} indica che il metodo gestisce le richieste HTTP di tipo
+     * GET verso la specifica route designata.
+     * Il metodo ottiene una pagina delle prenotazioni dell'utente, dalla più recente, eventualmente
+     * limitate alle date comprese tra {@code from} e {@code to} nel formato {@code yyyy-MM-dd}.
+     *
+     * @param id   l'ID dell'utente
+     * @param from la prima data compresa, facoltativa
+     * @param to   l'ultima data compresa, facoltativa
+     * @param page il numero della pagina, partendo da 0
+     * @param size il numero di prenotazioni per pagina
+     * @return     Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni
+     */
+    @GetMapping("/{id}/reservations")
+    public ResponseEntity<Slice<ReservationSummary>> getUserReservations(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+
+        return reservationService.getUserReservations(id, from, to, page, size);
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Riepilogo della disponibilità del catalogo per la dashboard operativa.
+ * I valori provengono da aggregati in memoria aggiornati a ogni modifica, non da query sulle tabelle.
+ *
+ * @author Drumstyle92
+ */
+public class AvailabilitySummary {
+
+    /**
+     * Numero di libri nel catalogo
+     */
+    private final long totalBooks;
+
+    /**
+     * Somma delle copie disponibili di tutti i libri
+     */
+    private final long totalCopiesAvailable;
+
+    /**
+     * Numero di libri senza copie disponibili
+     */
+    private final long booksWithZeroCopies;
+
+    /**
+     * Numero di prenotazioni per data di prenotazione, negli ultimi giorni
+     */
+    private final SortedMap<LocalDate, Long> reservationsPerDay;
+
+    /**
+     * Titoli più prenotati, in ordine decrescente di prenotazioni
+     */
+    private final List<TopTitle> topReservedTitles;
+
+    /**
+     * Istante in cui è stata calcolata la classifica dei titoli
+     */
+    private final Instant topTitlesAt;
+
+    /**
+     * Istante dell'ultimo ricalcolo completo dal database
+     */
+    private final Instant rebuiltAt;
+
+    /**
+     * Crea una nuova istanza di AvailabilitySummary con i parametri specificati.
+     *
+     * @param totalBooks           il numero di libri nel catalogo
+     * @param totalCopiesAvailable la somma delle copie disponibili
+     * @param booksWithZeroCopies  il numero di libri senza copie disponibili
+     * @param reservationsPerDay   il numero di prenotazioni per giorno
+     * @param topReservedTitles    i titoli più prenotati
+     * @param topTitlesAt          l'istante di calcolo della classifica
+     * @param rebuiltAt            l'istante dell'ultimo ricalcolo dal database
+     */
+    public AvailabilitySummary(long totalBooks, long totalCopiesAvailable, long booksWithZeroCopies,
+                               SortedMap<LocalDate, Long> reservationsPerDay, List<TopTitle> topReservedTitles,
+                               Instant topTitlesAt, Instant rebuiltAt) {
+        this.totalBooks = totalBooks;
+        this.totalCopiesAvailable = totalCopiesAvailable;
+        this.booksWithZeroCopies = booksWithZeroCopies;
+        this.reservationsPerDay = reservationsPerDay;
+        this.topReservedTitles = topReservedTitles;
+        this.topTitlesAt = topTitlesAt;
+        this.rebuiltAt = rebuiltAt;
+    }
+
+    /**
+     * Ottieni il numero di libri nel catalogo.
+     * @return il numero di libri
+     */
+    public long getTotalBooks() {
+        return totalBooks;
+    }
+
+    /**
+     * Ottieni la somma delle copie disponibili di tutti i libri.
+     * @return il numero di copie disponibili
+     */
+    public long getTotalCopiesAvailable() {
+        return totalCopiesAvailable;
+    }
+
+    /**
+     * Ottieni il numero di libri senza copie disponibili.
+     * @return il numero di libri esauriti
+     */
+    public long getBooksWithZeroCopies() {
+        return booksWithZeroCopies;
+    }
+
+    /**
+     * Ottieni il numero di prenotazioni per giorno.
+     * @return le prenotazioni per data, in ordine di data
+     */
+    public SortedMap<LocalDate, Long> getReservationsPerDay() {
+        return reservationsPerDay;
+    }
+
+    /**
+     * Ottieni i titoli più prenotati.
+     * @return la classifica dei titoli
+     */
+    public List<TopTitle> getTopReservedTitles() {
+        return topReservedTitles;
+    }
+
+    /**
+     * Ottieni l'istante di calcolo della classifica dei titoli.
+     * @return l'istante di calcolo, null se non ancora calcolata
+     */
+    public Instant getTopTitlesAt() {
+        return topTitlesAt;
+    }
+
+    /**
+     * Ottieni l'istante dell'ultimo ricalcolo completo dal database.
+     * @return l'istante del ricalcolo, null se non ancora eseguito
+     */
+    public Instant getRebuiltAt() {
+        return rebuiltAt;
+    }
+
+    /**
+     * Titolo nella classifica dei più prenotati.
+     *
+     * @param bookId       l'ID del libro
+     * @param title        il titolo del libro
+     * @param reservations il numero di prenotazioni del libro
+     */
+    public record TopTitle(Long bookId, String title, long reservations) {}
+
+}
@@ -0,0 +1,113 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.util.List;
+
+/**
+ * Rappresenta l'esito di una prenotazione multipla di libri per lo stesso utente.
+ * Per ogni libro richiesto indica se è stato prenotato oppure perché non lo è stato.
+ *
+ * @author Drumstyle92
+ */
+public class BatchReservationResult {
+
+    /**
+     * ID dell'utente che ha prenotato
+     */
+    private final Long userId;
+
+    /**
+     * Indica se la richiesta era in modalità parziale
+     */
+    private final boolean partial;
+
+    /**
+     * Numero di libri prenotati
+     */
+    private final int reserved;
+
+    /**
+     * Esito di ogni libro richiesto, nell'ordine della richiesta
+     */
+    private final List<Item> items;
+
+    /**
+     * Crea una nuova istanza di BatchReservationResult con i parametri specificati.
+     *
+     * @param userId  l'ID dell'utente che ha prenotato
+     * @param partial true se la richiesta era in modalità parziale
+     * @param items   l'esito di ogni libro richiesto
+     */
+    public BatchReservationResult(Long userId, boolean partial, List<Item> items) {
+        this.userId = userId;
+        this.partial = partial;
+        this.reserved = (int) items.stream().filter(item -> item.outcome() == Outcome.ACCEPTED).count();
+        this.items = items;
+    }
+
+    /**
+     * Ottieni l'ID dell'utente che ha prenotato.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Indica se la richiesta era in modalità parziale.
+     * @return true se i libri disponibili sono stati prenotati anche in presenza di errori
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Ottieni il numero di libri prenotati.
+     * @return il numero di libri prenotati
+     */
+    public int getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Ottieni l'esito di ogni libro richiesto.
+     * @return la lista degli esiti
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Esito della prenotazione di un singolo libro.
+     */
+    public enum Outcome {
+
+        /**
+         * Il libro è stato prenotato.
+         */
+        ACCEPTED,
+
+        /**
+         * Il libro non ha abbastanza copie disponibili.
+         */
+        NO_COPIES,
+
+        /**
+         * Il libro non esiste.
+         */
+        NOT_FOUND,
+
+        /**
+         * Il libro era disponibile, ma la richiesta è stata annullata per l'errore su un altro libro.
+         */
+        ROLLED_BACK
+    }
+
+    /**
+     * Esito di un libro richiesto.
+     *
+     * @param bookId  l'ID del libro
+     * @param outcome l'esito della prenotazione
+     */
+    public record Item(Long bookId, Outcome outcome) {}
+
+}
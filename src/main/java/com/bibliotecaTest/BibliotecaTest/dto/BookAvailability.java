@@ -0,0 +1,49 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+/**
+ * Copie disponibili di un libro, inviate ai client iscritti al flusso della disponibilità.
+ * Un libro eliminato viene inviato con copie null, così che il client smetta di mostrarlo.
+ *
+ * @author Drumstyle92
+ */
+public class BookAvailability {
+
+    /**
+     * ID del libro
+     */
+    private final Long bookId;
+
+    /**
+     * Numero di copie disponibili, null se il libro non esiste più
+     */
+    private final Integer copiesAvailable;
+
+    /**
+     * Crea una nuova istanza di BookAvailability con i parametri specificati.
+     * Il costruttore viene usato direttamente dalle query JPQL con l'espressione {@code SELECT new}.
+     *
+     * @param bookId          l'ID del libro
+     * @param copiesAvailable il numero di copie disponibili, null se il libro non esiste più
+     */
+    public BookAvailability(Long bookId, Integer copiesAvailable) {
+        this.bookId = bookId;
+        this.copiesAvailable = copiesAvailable;
+    }
+
+    /**
+     * Ottieni l'ID del libro.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+
+    /**
+     * Ottieni il numero di copie disponibili.
+     * @return il numero di copie disponibili, null se il libro non esiste più
+     */
+    public Integer getCopiesAvailable() {
+        return copiesAvailable;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.util.List;
+
+/**
+ * Rappresenta l'esito di un'importazione in blocco di libri.
+ * Ogni blocco viene salvato in una transazione separata, quindi il report indica per ogni blocco
+ * quante righe sono state importate e l'eventuale errore che ne ha annullato il salvataggio.
+ *
+ * @author Drumstyle92
+ */
+public class BookImportReport {
+
+    /**
+     * Numero totale di libri importati
+     */
+    private final long imported;
+
+    /**
+     * Numero totale di libri scartati
+     */
+    private final long failed;
+
+    /**
+     * Durata totale dell'importazione in millisecondi
+     */
+    private final long elapsedMillis;
+
+    /**
+     * Libri importati al secondo
+     */
+    private final double rowsPerSecond;
+
+    /**
+     * Esito di ogni blocco
+     */
+    private final List<Chunk> chunks;
+
+    /**
+     * Errore di lettura del file che ha interrotto l'importazione, null se il file è stato letto tutto
+     */
+    private final String parseError;
+
+    /**
+     * Crea una nuova istanza di BookImportReport con i parametri specificati.
+     *
+     * @param imported      il numero totale di libri importati
+     * @param failed        il numero totale di libri scartati
+     * @param elapsedMillis la durata totale in millisecondi
+     * @param chunks        l'esito di ogni blocco
+     * @param parseError    l'errore di lettura che ha interrotto l'importazione, null se assente
+     */
+    public BookImportReport(long imported, long failed, long elapsedMillis, List<Chunk> chunks, String parseError) {
+        this.imported = imported;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = elapsedMillis == 0 ? imported : imported * 1000.0 / elapsedMillis;
+        this.chunks = chunks;
+        this.parseError = parseError;
+    }
+
+    /**
+     * Ottieni il numero totale di libri importati.
+     * @return il numero di libri importati
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Ottieni il numero totale di libri scartati.
+     * @return il numero di libri scartati
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Ottieni la durata totale dell'importazione.
+     * @return la durata in millisecondi
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Ottieni il numero di libri importati al secondo.
+     * @return i libri importati al secondo
+     */
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    /**
+     * Ottieni l'esito di ogni blocco.
+     * @return la lista degli esiti dei blocchi
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Ottieni l'errore di lettura che ha interrotto l'importazione.
+     * @return l'errore di lettura, null se il file è stato letto tutto
+     */
+    public String getParseError() {
+        return parseError;
+    }
+
+    /**
+     * Esito del salvataggio di un singolo blocco di libri.
+     *
+     * @param index         il numero del blocco, partendo da 0
+     * @param firstRow      il numero della prima riga del blocco, partendo da 0
+     * @param rows          il numero di righe del blocco
+     * @param imported      il numero di libri salvati
+     * @param elapsedMillis la durata del salvataggio in millisecondi
+     * @param error         l'errore che ha annullato il blocco, null se salvato correttamente
+     */
+    public record Chunk(int index, long firstRow, int rows, int imported, long elapsedMillis, String error) {}
+
+}
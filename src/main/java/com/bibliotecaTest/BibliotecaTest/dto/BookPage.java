@@ -0,0 +1,53 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+
+import java.util.List;
+
+/**
+ * Rappresenta una pagina del catalogo dei libri ottenuta con la paginazione a cursore (keyset).
+ * Oltre ai libri della pagina contiene il cursore opaco da passare alla richiesta successiva,
+ * che vale null quando non ci sono altri libri da leggere.
+ *
+ * @author Drumstyle92
+ */
+public class BookPage {
+
+    /**
+     * I libri contenuti nella pagina, ordinati per ID crescente
+     */
+    private final List<BookEntity> books;
+
+    /**
+     * Il cursore opaco per ottenere la pagina successiva
+     */
+    private final String nextCursor;
+
+    /**
+     * Crea una nuova istanza di BookPage con i parametri specificati.
+     *
+     * @param books      i libri contenuti nella pagina
+     * @param nextCursor il cursore della pagina successiva, null se è l'ultima pagina
+     */
+    public BookPage(List<BookEntity> books, String nextCursor) {
+        this.books = books;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Ottieni i libri contenuti nella pagina.
+     * @return i libri della pagina
+     */
+    public List<BookEntity> getBooks() {
+        return books;
+    }
+
+    /**
+     * Ottieni il cursore della pagina successiva.
+     * @return il cursore della pagina successiva, null se è l'ultima pagina
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+}
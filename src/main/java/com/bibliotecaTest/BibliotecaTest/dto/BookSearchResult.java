@@ -0,0 +1,52 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+
+import java.util.List;
+
+/**
+ * Rappresenta una pagina di risultati della ricerca full-text sul catalogo.
+ * I libri sono ordinati per rilevanza e il totale indica quanti libri corrispondono alla ricerca.
+ *
+ * @author Drumstyle92
+ */
+public class BookSearchResult {
+
+    /**
+     * Numero totale di libri che corrispondono alla ricerca
+     */
+    private final long totalHits;
+
+    /**
+     * I libri della pagina richiesta, ordinati per rilevanza
+     */
+    private final List<BookEntity> books;
+
+    /**
+     * Crea una nuova istanza di BookSearchResult con i parametri specificati.
+     *
+     * @param totalHits il numero totale di libri trovati
+     * @param books     i libri della pagina richiesta
+     */
+    public BookSearchResult(long totalHits, List<BookEntity> books) {
+        this.totalHits = totalHits;
+        this.books = books;
+    }
+
+    /**
+     * Ottieni il numero totale di libri trovati.
+     * @return il numero totale di libri trovati
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Ottieni i libri della pagina richiesta.
+     * @return i libri della pagina, ordinati per rilevanza
+     */
+    public List<BookEntity> getBooks() {
+        return books;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.util.List;
+
+/**
+ * Rappresenta l'esito di un'eliminazione in blocco di libri o utenti.
+ * Gli ID vengono eliminati a blocchi, ognuno in una transazione separata, quindi il report indica per ogni blocco
+ * quanti ID sono stati eliminati, quante prenotazioni collegate sono state eliminate, quanto è durato
+ * e l'eventuale errore che ne ha annullato l'eliminazione.
+ *
+ * @author Drumstyle92
+ */
+public class BulkDeleteReport {
+
+    /**
+     * Numero di ID distinti richiesti
+     */
+    private final int requested;
+
+    /**
+     * Numero totale di ID eliminati
+     */
+    private final int deleted;
+
+    /**
+     * Numero di ID non trovati nel database
+     */
+    private final int notFound;
+
+    /**
+     * Numero di ID dei blocchi annullati da un errore
+     */
+    private final int failed;
+
+    /**
+     * Numero totale di prenotazioni collegate eliminate
+     */
+    private final long reservationsDeleted;
+
+    /**
+     * Durata totale dell'eliminazione in millisecondi
+     */
+    private final long elapsedMillis;
+
+    /**
+     * Esito di ogni blocco
+     */
+    private final List<Chunk> chunks;
+
+    /**
+     * Crea una nuova istanza di BulkDeleteReport calcolando i totali dall'esito dei blocchi.
+     *
+     * @param requested     il numero di ID distinti richiesti
+     * @param elapsedMillis la durata totale in millisecondi
+     * @param chunks        l'esito di ogni blocco
+     */
+    public BulkDeleteReport(int requested, long elapsedMillis, List<Chunk> chunks) {
+        this.requested = requested;
+        this.deleted = chunks.stream().mapToInt(Chunk::deleted).sum();
+        this.failed = chunks.stream().filter(chunk -> chunk.error() != null).mapToInt(Chunk::ids).sum();
+        this.notFound = requested - deleted - failed;
+        this.reservationsDeleted = chunks.stream().mapToLong(Chunk::reservationsDeleted).sum();
+        this.elapsedMillis = elapsedMillis;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Ottieni il numero di ID distinti richiesti.
+     * @return il numero di ID richiesti
+     */
+    public int getRequested() {
+        return requested;
+    }
+
+    /**
+     * Ottieni il numero totale di ID eliminati.
+     * @return il numero di ID eliminati
+     */
+    public int getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Ottieni il numero di ID non trovati nel database.
+     * @return il numero di ID non trovati
+     */
+    public int getNotFound() {
+        return notFound;
+    }
+
+    /**
+     * Ottieni il numero di ID dei blocchi annullati da un errore.
+     * @return il numero di ID non eliminati per un errore
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * Ottieni il numero totale di prenotazioni collegate eliminate.
+     * @return il numero di prenotazioni eliminate
+     */
+    public long getReservationsDeleted() {
+        return reservationsDeleted;
+    }
+
+    /**
+     * Ottieni la durata totale dell'eliminazione.
+     * @return la durata in millisecondi
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Ottieni l'esito di ogni blocco.
+     * @return la lista degli esiti dei blocchi
+     */
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Esito dell'eliminazione di un singolo blocco di ID.
+     *
+     * @param index               il numero del blocco, partendo da 0
+     * @param ids                 il numero di ID del blocco
+     * @param deleted             il numero di ID eliminati
+     * @param reservationsDeleted il numero di prenotazioni collegate eliminate
+     * @param elapsedMillis       la durata dell'eliminazione in millisecondi
+     * @param error               l'errore che ha annullato il blocco, null se eliminato correttamente
+     */
+    public record Chunk(int index, int ids, int deleted, int reservationsDeleted, long elapsedMillis, String error) {}
+
+}
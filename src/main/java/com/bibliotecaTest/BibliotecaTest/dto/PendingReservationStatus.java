@@ -0,0 +1,149 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.time.Instant;
+
+/**
+ * Rappresenta lo stato di una prenotazione accettata dall'inventario in memoria e scritta in modo asincrono.
+ * Finché la prenotazione è in attesa di scrittura lo stato è {@code PENDING}; dopo la scrittura contiene
+ * l'ID della prenotazione creata, se la scrittura è fallita il motivo.
+ *
+ * @author Drumstyle92
+ */
+public class PendingReservationStatus {
+
+    /**
+     * Stato della scrittura di una prenotazione accettata.
+     */
+    public enum Status {
+
+        /**
+         * La prenotazione è in attesa di essere scritta sul database.
+         */
+        PENDING,
+
+        /**
+         * La prenotazione è stata scritta sul database.
+         */
+        WRITTEN,
+
+        /**
+         * La prenotazione non è stata scritta e la copia non è stata tolta al libro.
+         */
+        FAILED
+
+    }
+
+    /**
+     * ID assegnato alla prenotazione accettata
+     */
+    private final long ticket;
+
+    /**
+     * ID dell'utente che ha prenotato
+     */
+    private final Long userId;
+
+    /**
+     * ID del libro prenotato
+     */
+    private final Long bookId;
+
+    /**
+     * Stato della scrittura
+     */
+    private final Status status;
+
+    /**
+     * ID della prenotazione scritta, null se non è ancora stata scritta
+     */
+    private final Long reservationId;
+
+    /**
+     * Motivo del fallimento della scrittura, null se non è fallita
+     */
+    private final String error;
+
+    /**
+     * Momento in cui la scrittura è terminata, null se è ancora in attesa
+     */
+    private final Instant completedAt;
+
+    /**
+     * Crea lo stato di una prenotazione accettata.
+     *
+     * @param ticket        l'ID assegnato alla prenotazione accettata
+     * @param userId        l'ID dell'utente
+     * @param bookId        l'ID del libro
+     * @param status        lo stato della scrittura
+     * @param reservationId l'ID della prenotazione scritta, null se non è ancora stata scritta
+     * @param error         il motivo del fallimento, null se non è fallita
+     * @param completedAt   il momento in cui la scrittura è terminata, null se è ancora in attesa
+     */
+    public PendingReservationStatus(long ticket, Long userId, Long bookId, Status status, Long reservationId,
+                                    String error, Instant completedAt) {
+        this.ticket = ticket;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.status = status;
+        this.reservationId = reservationId;
+        this.error = error;
+        this.completedAt = completedAt;
+    }
+
+    /**
+     * Ottieni l'ID assegnato alla prenotazione accettata.
+     * @return l'ID della prenotazione accettata
+     */
+    public long getTicket() {
+        return ticket;
+    }
+
+    /**
+     * Ottieni l'ID dell'utente che ha prenotato.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Ottieni l'ID del libro prenotato.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+
+    /**
+     * Ottieni lo stato della scrittura.
+     * @return lo stato della scrittura
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Ottieni l'ID della prenotazione scritta.
+     * @return l'ID della prenotazione, null se non è ancora stata scritta
+     */
+    public Long getReservationId() {
+        return reservationId;
+    }
+
+    /**
+     * Ottieni il motivo del fallimento della scrittura.
+     * @return il motivo del fallimento, null se non è fallita
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Ottieni il momento in cui la scrittura è terminata.
+     * @return il momento della fine della scrittura, null se è ancora in attesa
+     */
+    public Instant getCompletedAt() {
+        return completedAt;
+    }
+
+}
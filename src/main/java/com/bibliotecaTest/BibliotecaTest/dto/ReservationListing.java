@@ -0,0 +1,111 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Elenco delle prenotazioni in forma piatta, usato dai formati binari.
+ * Ogni prenotazione contiene solo gli ID del libro e dell'utente, mentre libri e utenti sono elencati
+ * una sola volta a parte: un libro prenotato molte volte non viene ripetuto in ogni prenotazione.
+ *
+ * @author Drumstyle92
+ */
+public class ReservationListing {
+
+    /**
+     * Le prenotazioni, con i soli ID di libro e utente
+     */
+    private final List<Row> reservations;
+
+    /**
+     * I libri prenotati, senza ripetizioni
+     */
+    private final List<BookEntity> books;
+
+    /**
+     * Gli utenti che hanno prenotato, senza ripetizioni
+     */
+    private final List<UserEntity> users;
+
+    /**
+     * Crea una nuova istanza di ReservationListing con i parametri specificati.
+     *
+     * @param reservations le prenotazioni
+     * @param books        i libri prenotati
+     * @param users        gli utenti che hanno prenotato
+     */
+    public ReservationListing(List<Row> reservations, List<BookEntity> books, List<UserEntity> users) {
+        this.reservations = reservations;
+        this.books = books;
+        this.users = users;
+    }
+
+    /**
+     * Crea l'elenco piatto a partire dalle prenotazioni con libro e utente già caricati.
+     *
+     * @param entities le prenotazioni
+     * @return l'elenco piatto
+     */
+    public static ReservationListing of(List<ReservationEntity> entities) {
+
+        List<Row> reservations = new ArrayList<>(entities.size());
+        Map<Long, BookEntity> books = new LinkedHashMap<>();
+        Map<Long, UserEntity> users = new LinkedHashMap<>();
+
+        for (ReservationEntity reservation : entities) {
+
+            BookEntity book = reservation.getBookReservation();
+            UserEntity user = reservation.getUserReservation();
+
+            books.putIfAbsent(book.getBookId(), book);
+            users.putIfAbsent(user.getUserId(), user);
+            reservations.add(new Row(reservation.getReservationId(), reservation.getDateReservation(),
+                    book.getBookId(), user.getUserId()));
+        }
+
+        return new ReservationListing(reservations, new ArrayList<>(books.values()), new ArrayList<>(users.values()));
+
+    }
+
+    /**
+     * Ottieni le prenotazioni.
+     * @return la lista delle prenotazioni
+     */
+    public List<Row> getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Ottieni i libri prenotati.
+     * @return la lista dei libri
+     */
+    public List<BookEntity> getBooks() {
+        return books;
+    }
+
+    /**
+     * Ottieni gli utenti che hanno prenotato.
+     * @return la lista degli utenti
+     */
+    public List<UserEntity> getUsers() {
+        return users;
+    }
+
+    /**
+     * Prenotazione con i soli ID di libro e utente.
+     *
+     * @param reservationId   l'ID della prenotazione
+     * @param dateReservation la data della prenotazione
+     * @param bookId          l'ID del libro prenotato
+     * @param userId          l'ID dell'utente che ha prenotato
+     */
+    public record Row(Long reservationId, LocalDate dateReservation, Long bookId, Long userId) {}
+
+}
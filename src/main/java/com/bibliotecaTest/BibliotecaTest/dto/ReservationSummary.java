@@ -0,0 +1,128 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Proiezione ridotta di una prenotazione usata negli elenchi.
+ * Contiene solo gli ID, il titolo del libro e il nome dell'utente, così che l'elenco venga letto
+ * con un'unica query e senza serializzare per intero libro e utente di ogni prenotazione.
+ *
+ * @author Drumstyle92
+ */
+public class ReservationSummary {
+
+    /**
+     * ID della prenotazione
+     */
+    private final Long reservationId;
+
+    /**
+     * Data della prenotazione
+     */
+    private final LocalDate dateReservation;
+
+    /**
+     * ID del libro prenotato
+     */
+    private final Long bookId;
+
+    /**
+     * Titolo del libro prenotato
+     */
+    private final String bookTitle;
+
+    /**
+     * ID dell'utente che ha prenotato
+     */
+    private final Long userId;
+
+    /**
+     * Nome dell'utente che ha prenotato
+     */
+    private final String userFirstName;
+
+    /**
+     * Cognome dell'utente che ha prenotato
+     */
+    private final String userLastName;
+
+    /**
+     * Crea una nuova istanza di ReservationSummary con i parametri specificati.
+     * Il costruttore viene usato direttamente dalle query JPQL con l'espressione {@code SELECT new}.
+     *
+     * @param reservationId   l'ID della prenotazione
+     * @param dateReservation la data della prenotazione
+     * @param bookId          l'ID del libro prenotato
+     * @param bookTitle       il titolo del libro prenotato
+     * @param userId          l'ID dell'utente
+     * @param userFirstName   il nome dell'utente
+     * @param userLastName    il cognome dell'utente
+     */
+    public ReservationSummary(Long reservationId, LocalDate dateReservation, Long bookId, String bookTitle,
+                              Long userId, String userFirstName, String userLastName) {
+        this.reservationId = reservationId;
+        this.dateReservation = dateReservation;
+        this.bookId = bookId;
+        this.bookTitle = bookTitle;
+        this.userId = userId;
+        this.userFirstName = userFirstName;
+        this.userLastName = userLastName;
+    }
+
+    /**
+     * Ottieni l'ID della prenotazione.
+     * @return l'ID della prenotazione
+     */
+    public Long getReservationId() {
+        return reservationId;
+    }
+
+    /**
+     * Ottieni la data della prenotazione.
+     * @return la data della prenotazione
+     */
+    public LocalDate getDateReservation() {
+        return dateReservation;
+    }
+
+    /**
+     * Ottieni l'ID del libro prenotato.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+
+    /**
+     * Ottieni il titolo del libro prenotato.
+     * @return il titolo del libro
+     */
+    public String getBookTitle() {
+        return bookTitle;
+    }
+
+    /**
+     * Ottieni l'ID dell'utente che ha prenotato.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Ottieni il nome dell'utente che ha prenotato.
+     * @return il nome dell'utente
+     */
+    public String getUserFirstName() {
+        return userFirstName;
+    }
+
+    /**
+     * Ottieni il cognome dell'utente che ha prenotato.
+     * @return il cognome dell'utente
+     */
+    public String getUserLastName() {
+        return userLastName;
+    }
+
+}
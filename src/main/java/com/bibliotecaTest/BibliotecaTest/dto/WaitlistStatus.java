@@ -0,0 +1,107 @@
+package com.bibliotecaTest.BibliotecaTest.dto;
+
+import com.bibliotecaTest.BibliotecaTest.entities.WaitlistEntryEntity;
+
+/**
+ * Rappresenta lo stato di una richiesta nella coda di attesa di un libro.
+ * Finché la richiesta è in attesa contiene il numero di richieste che la precedono,
+ * dopo la promozione l'ID della prenotazione creata.
+ *
+ * @author Drumstyle92
+ */
+public class WaitlistStatus {
+
+    /**
+     * ID della richiesta
+     */
+    private final Long entryId;
+
+    /**
+     * ID del libro atteso
+     */
+    private final Long bookId;
+
+    /**
+     * ID dell'utente in attesa
+     */
+    private final Long userId;
+
+    /**
+     * Stato della richiesta
+     */
+    private final WaitlistEntryEntity.Status status;
+
+    /**
+     * Numero di richieste che precedono questa nella coda, null se la richiesta non è in attesa
+     */
+    private final Long position;
+
+    /**
+     * ID della prenotazione creata dalla promozione, null se la richiesta non è promossa
+     */
+    private final Long reservationId;
+
+    /**
+     * Crea lo stato della richiesta indicata.
+     *
+     * @param entry    la richiesta
+     * @param position il numero di richieste che la precedono, null se non è in attesa
+     */
+    public WaitlistStatus(WaitlistEntryEntity entry, Long position) {
+        this.entryId = entry.getEntryId();
+        this.bookId = entry.getBookId();
+        this.userId = entry.getUserId();
+        this.status = entry.getStatus();
+        this.position = position;
+        this.reservationId = entry.getReservationId();
+    }
+
+    /**
+     * Ottieni l'ID della richiesta.
+     * @return l'ID della richiesta
+     */
+    public Long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * Ottieni l'ID del libro atteso.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+
+    /**
+     * Ottieni l'ID dell'utente in attesa.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Ottieni lo stato della richiesta.
+     * @return lo stato della richiesta
+     */
+    public WaitlistEntryEntity.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Ottieni il numero di richieste che precedono questa nella coda.
+     * @return la posizione nella coda, null se la richiesta non è in attesa
+     */
+    public Long getPosition() {
+        return position;
+    }
+
+    /**
+     * Ottieni l'ID della prenotazione creata dalla promozione.
+     * @return l'ID della prenotazione, null se la richiesta non è promossa
+     */
+    public Long getReservationId() {
+        return reservationId;
+    }
+
+}
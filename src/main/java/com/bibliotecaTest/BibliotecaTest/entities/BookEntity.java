@@ -1,39 +1,71 @@
 package com.bibliotecaTest.BibliotecaTest.entities;
 
+import com.bibliotecaTest.BibliotecaTest.config.CacheConfig;
+import com.bibliotecaTest.BibliotecaTest.config.ResourceVersionListener;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.FullTextField;
+import org.hibernate.search.mapper.pojo.mapping.definition.annotation.Indexed;
+
+import java.time.Instant;
 
 /**
  * Entità che rappresenta un libro nel database.
+ * Con le annotazioni {@code @Cacheable} e {@code @Cache} l'entità viene salvata nella cache di secondo livello
+ * di Hibernate: le modifiche fatte tramite il repository aggiornano la cache, gli UPDATE delle copie
+ * rimuovono dalla cache solo i libri aggiornati, mentre gli altri UPDATE in blocco invalidano la regione.
+ * Con l'annotazione {@code @Indexed} titolo, autore e descrizione vengono indicizzati da Hibernate Search
+ * per la ricerca full-text; l'indice viene aggiornato automaticamente a ogni salvataggio o eliminazione.
+ * Con l'annotazione {@code @Version} ogni modifica incrementa la versione, che insieme alla data
+ * dell'ultima modifica viene usata per le richieste GET condizionali (ETag e Last-Modified).
+ * Con l'annotazione {@code @DynamicUpdate} l'UPDATE generato da Hibernate contiene solo le colonne cambiate,
+ * così che le modifiche parziali (PATCH) non riscrivano tutta la riga.
  *
  * @author Drumstyle92
  */
 @Entity
+@EntityListeners(ResourceVersionListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.BOOK_REGION)
+@Indexed(index = "book")
+@DynamicUpdate
 @Table(name = "book")
 public class BookEntity {
 
     /**
-     * ID del libro
+     * ID del libro.
+     * L'ID viene generato da una sequenza con ottimizzatore pooled: Hibernate riserva 50 ID alla volta
+     * e può quindi raggruppare gli INSERT in batch JDBC, cosa impossibile con {@code GenerationType.IDENTITY}.
+     * Su MySQL, che non ha sequenze, Hibernate usa la tabella {@code book_seq}.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
     private Long bookId;
 
     /**
      * la descrizione del libro
      */
-    @Column
+    @Column(length = 2000)
+    @FullTextField(analyzer = "book")
     private String description;
 
     /**
      * Il titolo del libro
      */
     @Column
+    @FullTextField(analyzer = "book")
     private String title;
 
     /**
      * l'autore del libro
      */
-    @Column
+    @Column(length = 150)
+    @FullTextField(analyzer = "book")
     private String author;
 
     /**
@@ -42,6 +74,23 @@ public class BookEntity {
     @Column(name = "copies_available")
     private int numberOfCopiesAvailable;
 
+    /**
+     * Versione del libro, incrementata da Hibernate a ogni modifica e usata come ETag nelle risposte HTTP.
+     * Non può essere impostata dal client.
+     */
+    @Version
+    @Column(nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+
+    /**
+     * Data e ora dell'ultima modifica del libro, usata per l'header Last-Modified.
+     */
+    @UpdateTimestamp
+    @Column(name = "last_modified")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant lastModified;
+
     /**
      * Costruttore di default di BookEntity.
      */
@@ -144,4 +193,20 @@ public class BookEntity {
         this.numberOfCopiesAvailable = numberOfCopiesAvailable;
     }
 
+    /**
+     * Ottieni la versione del libro.
+     * @return la versione del libro
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Ottieni la data dell'ultima modifica del libro.
+     * @return la data dell'ultima modifica, null se non ancora registrata
+     */
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
 }
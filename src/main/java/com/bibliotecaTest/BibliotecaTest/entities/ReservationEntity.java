@@ -1,22 +1,37 @@
 package com.bibliotecaTest.BibliotecaTest.entities;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import java.time.LocalDate;
 
 /**
  * Entità che rappresenta una prenotazione nel database.
+ * Gli indici composti su utente e data e su libro e data servono alle ricerche delle prenotazioni
+ * di un utente o di un libro in un intervallo di date, quello sulla sola data ai conteggi per giorno.
+ * Lo schema è creato dalle migrazioni Flyway in {@code db/migration}: gli indici dichiarati qui
+ * devono restare allineati a quelle.
+ * Con l'annotazione {@code @Version} due modifiche concorrenti della stessa prenotazione non possono
+ * sovrascriversi: la seconda fallisce invece di annullare la prima.
  *
  * @author Drumstyle92
  */
 @Entity
-@Table(name="reservation")
+@Table(name="reservation", indexes = {
+        @Index(name = "idx_reservation_user_date", columnList = "user_reservation, date_reservation"),
+        @Index(name = "idx_reservation_book_date", columnList = "book_reservation, date_reservation"),
+        @Index(name = "idx_reservation_date", columnList = "date_reservation")
+})
 public class ReservationEntity {
 
     /**
      * ID della prenotazione.
+     * Come per i libri, l'ID viene generato da una sequenza con ottimizzatore pooled così che
+     * gli INSERT di più prenotazioni possano essere raggruppati in batch JDBC.
+     * Su MySQL Hibernate usa la tabella {@code reservation_seq}.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_seq")
+    @SequenceGenerator(name = "reservation_seq", sequenceName = "reservation_seq", allocationSize = 50)
     private Long reservationId;
 
     /**
@@ -45,6 +60,15 @@ public class ReservationEntity {
     @JoinColumn(name="user_reservation")
     UserEntity userReservation;
 
+    /**
+     * Versione della prenotazione, incrementata da Hibernate a ogni modifica e usata come ETag nelle risposte HTTP.
+     * Non può essere impostata dal client.
+     */
+    @Version
+    @Column(nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+
     /**
      * Costruttore di default di ReservationEntity.
      */
@@ -119,5 +143,12 @@ public class ReservationEntity {
     public void setUserReservation(UserEntity userReservation) {
         this.userReservation = userReservation;
     }
+    /**
+     * Ottieni la versione della prenotazione.
+     * @return la versione della prenotazione
+     */
+    public long getVersion() {
+        return version;
+    }
 
 }
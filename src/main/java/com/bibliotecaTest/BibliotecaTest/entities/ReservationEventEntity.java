@@ -0,0 +1,218 @@
+package com.bibliotecaTest.BibliotecaTest.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Entità che rappresenta un evento del registro delle prenotazioni.
+ * Il registro è in sola aggiunta: gli eventi non vengono mai modificati né eliminati e non hanno chiavi esterne,
+ * così che restino leggibili anche dopo l'eliminazione di prenotazioni, libri o utenti.
+ * I consumatori riprendono la lettura dalla posizione nel registro, assegnata dopo la scrittura in ordine di commit:
+ * l'ID viene da una sequenza pooled, quindi con più istanze non segue l'ordine dei commit.
+ *
+ * @author Drumstyle92
+ */
+@Entity
+@Table(name = "reservation_event")
+public class ReservationEventEntity {
+
+    /**
+     * Tipo di modifica della prenotazione.
+     */
+    public enum Type {
+
+        /**
+         * La prenotazione è stata creata e il libro ha una copia in meno.
+         */
+        CREATED,
+
+        /**
+         * La prenotazione è stata spostata su un'altra data, un altro utente o un altro libro.
+         */
+        MOVED,
+
+        /**
+         * La prenotazione è stata eliminata e il libro ha una copia in più.
+         */
+        DELETED,
+
+        /**
+         * La prenotazione è scaduta ed è stata eliminata, e il libro ha una copia in più.
+         */
+        EXPIRED
+
+    }
+
+    /**
+     * ID dell'evento, generato da una sequenza con ottimizzatore pooled così che gli INSERT
+     * di ogni blocco di eventi vengano raggruppati in batch JDBC.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservation_event_seq")
+    @SequenceGenerator(name = "reservation_event_seq", sequenceName = "reservation_event_seq", allocationSize = 50)
+    private Long eventId;
+
+    /**
+     * Tipo dell'evento.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    /**
+     * ID della prenotazione modificata.
+     */
+    @Column(name = "reservation_id", nullable = false)
+    private Long reservationId;
+
+    /**
+     * ID dell'utente della prenotazione dopo la modifica.
+     */
+    @Column(name = "user_id")
+    private Long userId;
+
+    /**
+     * ID del libro della prenotazione dopo la modifica.
+     */
+    @Column(name = "book_id")
+    private Long bookId;
+
+    /**
+     * Data della prenotazione dopo la modifica.
+     */
+    @Column(name = "date_reservation")
+    private LocalDate dateReservation;
+
+    /**
+     * ID del libro prima dello spostamento, solo per gli eventi {@code MOVED}.
+     */
+    @Column(name = "previous_book_id")
+    private Long previousBookId;
+
+    /**
+     * Data della prenotazione prima dello spostamento, solo per gli eventi {@code MOVED}.
+     */
+    @Column(name = "previous_date_reservation")
+    private LocalDate previousDateReservation;
+
+    /**
+     * Istante del commit della modifica.
+     */
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    /**
+     * Posizione nel registro, assegnata da {@code ReservationEventService} in ordine di commit;
+     * null finché l'evento non è stato ordinato.
+     */
+    @Column(name = "log_position", unique = true)
+    private Long logPosition;
+
+    /**
+     * Costruttore richiesto da JPA.
+     */
+    protected ReservationEventEntity() {}
+
+    /**
+     * Crea un nuovo evento con i parametri specificati.
+     *
+     * @param type                    il tipo dell'evento
+     * @param reservationId           l'ID della prenotazione
+     * @param userId                  l'ID dell'utente
+     * @param bookId                  l'ID del libro
+     * @param dateReservation         la data della prenotazione
+     * @param previousBookId          l'ID del libro prima dello spostamento, null se non spostata
+     * @param previousDateReservation la data prima dello spostamento, null se non spostata
+     * @param occurredAt              l'istante della modifica
+     */
+    public ReservationEventEntity(Type type, Long reservationId, Long userId, Long bookId, LocalDate dateReservation,
+                                  Long previousBookId, LocalDate previousDateReservation, Instant occurredAt) {
+        this.type = type;
+        this.reservationId = reservationId;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.dateReservation = dateReservation;
+        this.previousBookId = previousBookId;
+        this.previousDateReservation = previousDateReservation;
+        this.occurredAt = occurredAt;
+    }
+    /**
+     * Ottieni l'ID dell'evento.
+     * @return l'ID dell'evento
+     */
+    public Long getEventId() {
+        return eventId;
+    }
+    /**
+     * Ottieni il tipo dell'evento.
+     * @return il tipo dell'evento
+     */
+    public Type getType() {
+        return type;
+    }
+    /**
+     * Ottieni l'ID della prenotazione.
+     * @return l'ID della prenotazione
+     */
+    public Long getReservationId() {
+        return reservationId;
+    }
+    /**
+     * Ottieni l'ID dell'utente.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+    /**
+     * Ottieni l'ID del libro.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+    /**
+     * Ottieni la data della prenotazione.
+     * @return la data della prenotazione
+     */
+    public LocalDate getDateReservation() {
+        return dateReservation;
+    }
+    /**
+     * Ottieni l'ID del libro prima dello spostamento.
+     * @return l'ID del libro precedente, null se la prenotazione non è stata spostata
+     */
+    public Long getPreviousBookId() {
+        return previousBookId;
+    }
+    /**
+     * Ottieni la data della prenotazione prima dello spostamento.
+     * @return la data precedente, null se la prenotazione non è stata spostata
+     */
+    public LocalDate getPreviousDateReservation() {
+        return previousDateReservation;
+    }
+    /**
+     * Ottieni l'istante della modifica.
+     * @return l'istante della modifica
+     */
+    public Instant getOccurredAt() {
+        return occurredAt;
+    }
+    /**
+     * Ottieni la posizione dell'evento nel registro, da usare per riprendere la lettura.
+     * @return la posizione nel registro, null se l'evento non è ancora stato ordinato
+     */
+    public Long getLogPosition() {
+        return logPosition;
+    }
+    /**
+     * Imposta la posizione dell'evento nel registro.
+     * @param logPosition la posizione nel registro
+     */
+    public void setLogPosition(Long logPosition) {
+        this.logPosition = logPosition;
+    }
+}
@@ -0,0 +1,63 @@
+package com.bibliotecaTest.BibliotecaTest.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Entità che rappresenta il lease di un'attività pianificata.
+ * Quando l'applicazione gira su più istanze, un'attività che non deve essere eseguita in parallelo
+ * viene eseguita solo dall'istanza che possiede il lease, fino alla sua scadenza.
+ * Le righe dei lease vengono create dalle migrazioni dello schema.
+ *
+ * @author Drumstyle92
+ */
+@Entity
+@Table(name = "scheduler_lease")
+public class SchedulerLeaseEntity {
+
+    /**
+     * Nome dell'attività.
+     */
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    /**
+     * Istanza che possiede il lease, null se mai assegnato.
+     */
+    @Column(length = 128)
+    private String owner;
+
+    /**
+     * Istante di scadenza del lease, null se mai assegnato.
+     */
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    /**
+     * Costruttore richiesto da JPA.
+     */
+    protected SchedulerLeaseEntity() {}
+    /**
+     * Ottieni il nome dell'attività.
+     * @return il nome dell'attività
+     */
+    public String getName() {
+        return name;
+    }
+    /**
+     * Ottieni l'istanza che possiede il lease.
+     * @return l'istanza che possiede il lease
+     */
+    public String getOwner() {
+        return owner;
+    }
+    /**
+     * Ottieni l'istante di scadenza del lease.
+     * @return l'istante di scadenza
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -1,13 +1,33 @@
 package com.bibliotecaTest.BibliotecaTest.entities;
 
+import com.bibliotecaTest.BibliotecaTest.config.CacheConfig;
+import com.bibliotecaTest.BibliotecaTest.config.ResourceVersionListener;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
 
 /**
- * Entità che rappresenta un utente nel database
+ * Entità che rappresenta un utente nel database.
+ * Con le annotazioni {@code @Cacheable} e {@code @Cache} l'entità viene salvata nella cache di secondo livello
+ * di Hibernate: le modifiche fatte tramite il repository aggiornano la cache, mentre gli UPDATE in blocco
+ * invalidano la regione.
+ * Con l'annotazione {@code @Version} ogni modifica incrementa la versione, che insieme alla data
+ * dell'ultima modifica viene usata per le richieste GET condizionali (ETag e Last-Modified).
+ * Con l'annotazione {@code @DynamicUpdate} l'UPDATE generato da Hibernate contiene solo le colonne cambiate,
+ * così che le modifiche parziali (PATCH) non riscrivano tutta la riga.
  *
  * @author Drumstyle92
  */
 @Entity
+@EntityListeners(ResourceVersionListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheConfig.USER_REGION)
+@DynamicUpdate
 @Table(name="user_")
 public class UserEntity {
 
@@ -21,13 +41,13 @@ public class UserEntity {
     /**
      *  il nome dell'utente
      */
-    @Column(name="first_name")
+    @Column(name="first_name", length = 100)
     private String firstName;
 
     /**
      * il cognome dell'utente
      */
-    @Column(name="last_name")
+    @Column(name="last_name", length = 100)
     private String lastName;
 
     /**
@@ -42,6 +62,23 @@ public class UserEntity {
     @Column
     private long telephone;
 
+    /**
+     * Versione dell'utente, incrementata da Hibernate a ogni modifica e usata come ETag nelle risposte HTTP.
+     * Non può essere impostata dal client.
+     */
+    @Version
+    @Column(nullable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long version;
+
+    /**
+     * Data e ora dell'ultima modifica dell'utente, usata per l'header Last-Modified.
+     */
+    @UpdateTimestamp
+    @Column(name = "last_modified")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant lastModified;
+
     /**
      * Costruttore di default di UserEntity.
      */
@@ -134,4 +171,21 @@ public class UserEntity {
     public void setTelephone(long telephone) {
         this.telephone = telephone;
     }
-}
\ No newline at end of file
+
+    /**
+     * Ottieni la versione dell'utente.
+     * @return la versione dell'utente
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Ottieni la data dell'ultima modifica dell'utente.
+     * @return la data dell'ultima modifica, null se non ancora registrata
+     */
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+}
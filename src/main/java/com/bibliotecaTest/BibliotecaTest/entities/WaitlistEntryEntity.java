@@ -0,0 +1,151 @@
+package com.bibliotecaTest.BibliotecaTest.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Entità che rappresenta un utente in attesa di una copia di un libro.
+ * Le richieste in attesa di ogni libro vengono servite in ordine di ID: quando una copia torna disponibile
+ * la prima richiesta viene promossa a prenotazione. Le righe promosse o annullate restano nella tabella,
+ * così che il client possa leggerne l'esito anche se la promozione è avvenuta su un'altra istanza.
+ *
+ * @author Drumstyle92
+ */
+@Entity
+@Table(name = "waitlist_entry", indexes = {
+        @Index(name = "idx_waitlist_book_status", columnList = "book_id, status, entry_id")
+})
+public class WaitlistEntryEntity {
+
+    /**
+     * Stato di una richiesta in attesa.
+     */
+    public enum Status {
+
+        /**
+         * La richiesta è in coda.
+         */
+        WAITING,
+
+        /**
+         * La richiesta è stata promossa a prenotazione.
+         */
+        PROMOTED,
+
+        /**
+         * La richiesta è stata annullata dall'utente o perché il libro è stato eliminato.
+         */
+        CANCELLED
+
+    }
+
+    /**
+     * ID della richiesta, che ne stabilisce l'ordine nella coda del libro.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "waitlist_entry_seq")
+    @SequenceGenerator(name = "waitlist_entry_seq", sequenceName = "waitlist_entry_seq", allocationSize = 50)
+    @Column(name = "entry_id")
+    private Long entryId;
+
+    /**
+     * ID del libro atteso.
+     */
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    /**
+     * ID dell'utente in attesa.
+     */
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * Stato della richiesta.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+
+    /**
+     * Istante in cui l'utente è entrato in coda.
+     */
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    /**
+     * ID della prenotazione creata dalla promozione, null finché la richiesta non è promossa.
+     */
+    @Column(name = "reservation_id")
+    private Long reservationId;
+
+    /**
+     * Costruttore richiesto da JPA.
+     */
+    protected WaitlistEntryEntity() {}
+
+    /**
+     * Crea una nuova richiesta in coda.
+     *
+     * @param bookId    l'ID del libro atteso
+     * @param userId    l'ID dell'utente in attesa
+     * @param createdAt l'istante di ingresso in coda
+     */
+    public WaitlistEntryEntity(Long bookId, Long userId, Instant createdAt) {
+        this.bookId = bookId;
+        this.userId = userId;
+        this.status = Status.WAITING;
+        this.createdAt = createdAt;
+    }
+    /**
+     * Segna la richiesta come promossa alla prenotazione indicata.
+     * @param reservationId l'ID della prenotazione creata
+     */
+    public void promote(Long reservationId) {
+        this.status = Status.PROMOTED;
+        this.reservationId = reservationId;
+    }
+    /**
+     * Ottieni l'ID della richiesta.
+     * @return l'ID della richiesta
+     */
+    public Long getEntryId() {
+        return entryId;
+    }
+    /**
+     * Ottieni l'ID del libro atteso.
+     * @return l'ID del libro
+     */
+    public Long getBookId() {
+        return bookId;
+    }
+    /**
+     * Ottieni l'ID dell'utente in attesa.
+     * @return l'ID dell'utente
+     */
+    public Long getUserId() {
+        return userId;
+    }
+    /**
+     * Ottieni lo stato della richiesta.
+     * @return lo stato della richiesta
+     */
+    public Status getStatus() {
+        return status;
+    }
+    /**
+     * Ottieni l'istante di ingresso in coda.
+     * @return l'istante di ingresso in coda
+     */
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+    /**
+     * Ottieni l'ID della prenotazione creata dalla promozione.
+     * @return l'ID della prenotazione, null se la richiesta non è promossa
+     */
+    public Long getReservationId() {
+        return reservationId;
+    }
+}
@@ -0,0 +1,37 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Frammento di {@link BookRepository} con gli UPDATE in blocco delle copie disponibili.
+ * Sono i più frequenti sotto carico di prenotazioni, quindi invece di invalidare l'intera regione dei libri
+ * nella cache di secondo livello, come farebbe un UPDATE JPQL, rimuovono dalla cache solo i libri aggiornati.
+ *
+ * @author Drumstyle92
+ */
+public interface BookCopiesRepository {
+
+    /**
+     * Toglie una copia disponibile al libro selezionato solo se ne ha almeno una, con un unico UPDATE condizionale
+     * che incrementa anche la versione e aggiorna la data dell'ultima modifica del libro.
+     *
+     * @param bookId l'ID del libro da prenotare
+     * @param now    la data dell'ultima modifica da registrare
+     * @return Ritorna il numero di righe aggiornate: 1 se la copia è stata tolta,
+     *         0 se il libro non esiste o non ha copie disponibili.
+     */
+    int decrementCopiesAvailable(Long bookId, Instant now);
+
+    /**
+     * Restituisce lo stesso numero di copie a tutti i libri indicati con un unico UPDATE,
+     * incrementando anche la versione e aggiornando la data dell'ultima modifica.
+     *
+     * @param bookIds gli ID dei libri
+     * @param copies  il numero di copie da restituire a ogni libro
+     * @param now     la data dell'ultima modifica da registrare
+     * @return Ritorna il numero di libri aggiornati
+     */
+    int incrementCopiesAvailable(Collection<Long> bookIds, int copies, Instant now);
+
+}
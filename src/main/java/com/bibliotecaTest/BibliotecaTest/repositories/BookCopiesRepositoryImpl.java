@@ -0,0 +1,116 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implementazione di {@link BookCopiesRepository}, che Spring Data unisce a {@link BookRepository}.
+ * Gli UPDATE sono query native sincronizzate con uno spazio che nessuna entità usa: così Hibernate
+ * non invalida la regione dei libri, e i libri aggiornati vengono rimossi dalla cache uno per uno,
+ * subito e di nuovo alla fine della transazione, così che una lettura concorrente non possa lasciare
+ * in cache le copie precedenti al commit.
+ *
+ * @author Drumstyle92
+ */
+class BookCopiesRepositoryImpl implements BookCopiesRepository {
+
+    /**
+     * Spazio delle query native sulle copie: non corrisponde alla tabella di nessuna entità,
+     * quindi l'esecuzione non invalida nessuna regione della cache di secondo livello.
+     */
+    static final String COPIES_QUERY_SPACE = "book_copies";
+
+    /**
+     * EntityManager condiviso, usato per eseguire gli UPDATE e accedere alla cache di secondo livello.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int decrementCopiesAvailable(Long bookId, Instant now) {
+
+        int updated = nativeUpdate("UPDATE book SET copies_available = copies_available - 1, version = version + 1, " +
+                "last_modified = :now WHERE book_id = :bookId AND copies_available > 0")
+                .setParameter("now", now)
+                .setParameter("bookId", bookId)
+                .executeUpdate();
+
+        if (updated > 0) {
+
+            evict(List.of(bookId));
+        }
+
+        return updated;
+
+    }
+
+    @Override
+    @Transactional
+    public int incrementCopiesAvailable(Collection<Long> bookIds, int copies, Instant now) {
+
+        int updated = nativeUpdate("UPDATE book SET copies_available = copies_available + :copies, version = version + 1, " +
+                "last_modified = :now WHERE book_id IN (:bookIds)")
+                .setParameter("copies", copies)
+                .setParameter("now", now)
+                .setParameterList("bookIds", bookIds)
+                .executeUpdate();
+
+        evict(bookIds);
+
+        return updated;
+
+    }
+
+    /**
+     * Crea un UPDATE nativo sincronizzato con {@link #COPIES_QUERY_SPACE}.
+     *
+     * @param sql il testo dell'UPDATE
+     * @return Ritorna la query da completare con i parametri
+     */
+    private NativeQuery<?> nativeUpdate(String sql) {
+
+        NativeQuery<?> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+
+        // Senza spazi sincronizzati Hibernate invaliderebbe tutte le regioni della cache
+        query.addSynchronizedQuerySpace(COPIES_QUERY_SPACE);
+
+        return query;
+
+    }
+
+    /**
+     * Rimuove i libri dalla cache di secondo livello, subito e alla fine della transazione in corso.
+     *
+     * @param bookIds gli ID dei libri aggiornati
+     */
+    private void evict(Collection<Long> bookIds) {
+
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        List<Long> evicted = List.copyOf(bookIds);
+
+        evicted.forEach(bookId -> cache.evict(BookEntity.class, bookId));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evicted.forEach(bookId -> cache.evict(BookEntity.class, bookId));
+                }
+            });
+        }
+
+    }
+
+}
@@ -1,12 +1,24 @@
 package com.bibliotecaTest.BibliotecaTest.repositories;
 
+import com.bibliotecaTest.BibliotecaTest.dto.BookAvailability;
 import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
 import jakarta.annotation.Nullable;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
 
 /**
  * Mi dà la possibilità di facilitarmi la gestione delle entità libri all'interno del database.
@@ -18,7 +30,7 @@ import org.springframework.stereotype.Repository;
  * @author Drumstyle92
  */
 @Repository
-public interface BookRepository extends JpaRepository<BookEntity, Long> {
+public interface BookRepository extends JpaRepository<BookEntity, Long>, BookCopiesRepository {
 
     /**
      * Selezionando l'ID del libro possiamo vedere quante copie ha ancora disponibili.
@@ -26,13 +38,129 @@ public interface BookRepository extends JpaRepository<BookEntity, Long> {
      * di fare query personalizzate, inoltre ho usato il linguaggio JPQL in modo tale da poter interrogare
      * adattandosi al database relazionale che si sta gestendo.
      * Annotazione {@code @Nullable} che mi dà la possibilità che ritorni come risposta null.
+     * Il libro viene letto con {@code findById}, quindi dalla cache di secondo livello quando è presente:
+     * gli UPDATE delle copie di {@link BookCopiesRepository} rimuovono dalla cache solo il libro aggiornato,
+     * mentre una query nella cache delle query verrebbe invalidata da qualsiasi modifica alla tabella.
      *
      * @param bookId l'ID del libro selezionato
      * @return Ritorna il numero di copie che ha il libro selezionato.
      */
-    @Query("SELECT b.numberOfCopiesAvailable FROM BookEntity b WHERE b.bookId = :bookId")
     @Nullable
-    Integer copiesAvailableByBookId(@Param("bookId") Long bookId);
+    default Integer copiesAvailableByBookId(Long bookId) {
 
-}
+        return findById(bookId).map(BookEntity::getNumberOfCopiesAvailable).orElse(null);
+
+    }
+
+    /**
+     * Recupera i libri con ID maggiore di quello indicato, ordinati per ID crescente.
+     * È la query della paginazione a cursore (keyset): invece di usare un OFFSET, che costringe il database
+     * a scorrere tutte le righe precedenti, si riparte dall'ultimo ID letto sfruttando la chiave primaria.
+     * Il parametro Pageable viene usato solo per limitare il numero di righe restituite.
+     *
+     * @param bookId   l'ultimo ID letto nella pagina precedente
+     * @param pageable il limite di righe da leggere
+     * @return Ritorna la lista dei libri successivi all'ID indicato
+     */
+    List<BookEntity> findByBookIdGreaterThanOrderByBookIdAsc(Long bookId, Pageable pageable);
+
+    /**
+     * Legge tutti i libri come uno Stream ordinato per ID, senza caricare l'intera tabella in memoria.
+     * Con l'annotazione {@code @QueryHints} si indica al driver JDBC di leggere le righe a blocchi
+     * attraverso un cursore (con MySQL è necessario il parametro {@code useCursorFetch=true} nell'URL).
+     * Lo Stream deve essere consumato all'interno di una transazione e poi chiuso.
+     *
+     * @return Ritorna uno Stream con tutti i libri del catalogo
+     */
+    @Query("SELECT b FROM BookEntity b ORDER BY b.bookId")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    Stream<BookEntity> streamAllOrderByBookId();
+
+    /**
+     * Toglie una copia disponibile al libro selezionato solo se ne ha almeno una.
+     * L'aggiornamento avviene con un unico UPDATE condizionale, quindi il controllo delle copie e il decremento
+     * sono atomici per il database: richieste concorrenti sullo stesso libro non possono portare le copie
+     * sotto zero e non serve bloccare la riga con un lock pessimistico.
+     * L'UPDATE è quello di {@link BookCopiesRepository#decrementCopiesAvailable(Long, Instant)}.
+     *
+     * @param bookId l'ID del libro da prenotare
+     * @return Ritorna il numero di righe aggiornate: 1 se la copia è stata tolta,
+     *         0 se il libro non esiste o non ha copie disponibili.
+     */
+    default int decrementCopiesAvailable(Long bookId) {
+
+        return decrementCopiesAvailable(bookId, Instant.now());
+
+    }
+
+    /**
+     * Legge in un'unica query i libri con gli ID indicati, bloccandone le righe fino alla fine della transazione.
+     * È l'equivalente di {@code findAllById} usato dalle prenotazioni multiple: con il lock pessimistico
+     * le copie lette non possono cambiare prima che vengano decrementate, e l'ordinamento per ID fa sì che
+     * transazioni concorrenti blocchino le righe sempre nello stesso ordine, senza deadlock.
+     *
+     * @param bookIds gli ID dei libri da leggere
+     * @return Ritorna i libri trovati, ordinati per ID
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM BookEntity b WHERE b.bookId IN :bookIds ORDER BY b.bookId")
+    List<BookEntity> findAllByIdForUpdate(@Param("bookIds") Collection<Long> bookIds);
 
+    /**
+     * Blocca le righe dei libri indicati fino alla fine della transazione leggendone solo l'ID,
+     * così che nessuna prenotazione possa essere creata mentre vengono eliminati.
+     * L'ordinamento per ID evita deadlock tra transazioni concorrenti.
+     *
+     * @param bookIds gli ID dei libri
+     * @return Ritorna gli ID dei libri esistenti, ordinati
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b.bookId FROM BookEntity b WHERE b.bookId IN :bookIds ORDER BY b.bookId")
+    List<Long> lockExistingIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Elimina i libri indicati con un solo DELETE, senza caricare le entità.
+     * Le prenotazioni dei libri devono essere già state eliminate.
+     *
+     * @param bookIds gli ID dei libri
+     * @return Ritorna il numero di libri eliminati
+     */
+    @Modifying
+    @Query("DELETE FROM BookEntity b WHERE b.bookId IN :bookIds")
+    int deleteByBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Legge ID, titolo e copie disponibili di tutti i libri come uno Stream, a blocchi come
+     * {@link #streamAllOrderByBookId()}. Usata solo per ricalcolare le statistiche di disponibilità.
+     *
+     * @return Ritorna uno Stream di terne (ID, titolo, copie disponibili)
+     */
+    @Query("SELECT b.bookId, b.title, b.numberOfCopiesAvailable FROM BookEntity b")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    Stream<Object[]> streamAvailability();
+
+    /**
+     * Legge le copie disponibili dei libri indicati con un'unica query, usata dal flusso della disponibilità
+     * per leggere una sola volta i libri cambiati, indipendentemente dal numero di client iscritti.
+     *
+     * @param bookIds gli ID dei libri
+     * @return Ritorna le copie disponibili dei libri trovati
+     */
+    @Query("SELECT new com.bibliotecaTest.BibliotecaTest.dto.BookAvailability(b.bookId, b.numberOfCopiesAvailable) " +
+            "FROM BookEntity b WHERE b.bookId IN :bookIds")
+    List<BookAvailability> findAvailabilityByBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Legge le copie disponibili dei libri indicati modificati dopo l'istante indicato, usata dal flusso
+     * della disponibilità per accorgersi dei cambiamenti fatti da altre istanze.
+     *
+     * @param bookIds gli ID dei libri
+     * @param since   l'istante dopo il quale cercare le modifiche
+     * @return Ritorna le copie disponibili dei libri modificati
+     */
+    @Query("SELECT new com.bibliotecaTest.BibliotecaTest.dto.BookAvailability(b.bookId, b.numberOfCopiesAvailable) " +
+            "FROM BookEntity b WHERE b.bookId IN :bookIds AND b.lastModified > :since")
+    List<BookAvailability> findAvailabilityModifiedSince(@Param("bookIds") Collection<Long> bookIds,
+                                                         @Param("since") Instant since);
+
+}
@@ -0,0 +1,48 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEventEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository del registro degli eventi delle prenotazioni.
+ * Usando l'annotazione {@code @Repository} indico a Spring che questa classe si occuperà dell'accesso
+ * agli eventi; gli eventi vengono inseriti, ordinati una sola volta assegnando la posizione nel registro
+ * e letti in ordine di posizione.
+ *
+ * @author Drumstyle92
+ */
+@Repository
+public interface ReservationEventRepository extends JpaRepository<ReservationEventEntity, Long> {
+
+    /**
+     * Legge gli eventi successivi alla posizione indicata, in ordine di posizione, usando il suo indice.
+     * Gli eventi non ancora ordinati non hanno posizione e non vengono restituiti.
+     *
+     * @param logPosition la posizione dell'ultimo evento già letto
+     * @param pageable    il numero massimo di eventi da leggere
+     * @return Ritorna gli eventi successivi
+     */
+    List<ReservationEventEntity> findByLogPositionGreaterThanOrderByLogPositionAsc(Long logPosition, Pageable pageable);
+
+    /**
+     * Legge gli eventi scritti ma non ancora ordinati, nell'ordine in cui sono avvenuti.
+     *
+     * @param pageable il numero massimo di eventi da leggere
+     * @return Ritorna gli eventi senza posizione
+     */
+    List<ReservationEventEntity> findByLogPositionIsNullOrderByOccurredAtAscEventIdAsc(Pageable pageable);
+
+    /**
+     * Restituisce l'ultima posizione assegnata.
+     *
+     * @return Ritorna la posizione più alta, 0 se nessun evento è stato ordinato
+     */
+    @Query("SELECT COALESCE(MAX(e.logPosition), 0) FROM ReservationEventEntity e")
+    long maxLogPosition();
+
+}
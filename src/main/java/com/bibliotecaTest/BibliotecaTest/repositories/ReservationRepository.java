@@ -1,9 +1,22 @@
 package com.bibliotecaTest.BibliotecaTest.repositories;
 
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary;
 import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Mi dà la possibilità di facilitarmi la gestione delle entità prenotazione all'interno del database.
  * Usando l'annotazione {@code @Repository} indico a Spring che questa classe si occuperà della gestione
@@ -16,4 +29,154 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface ReservationRepository extends JpaRepository<ReservationEntity, Long> {
 
+    /**
+     * Recupera tutte le prenotazioni caricando libro e utente nella stessa query.
+     * Con l'annotazione {@code @EntityGraph} le relazioni vengono lette con una JOIN invece che con
+     * una SELECT aggiuntiva per ogni libro e utente distinto (problema N+1).
+     *
+     * @return Ritorna la lista di tutte le prenotazioni con libro e utente già caricati
+     */
+    @Override
+    @EntityGraph(attributePaths = {"bookReservation", "userReservation"})
+    List<ReservationEntity> findAll();
+
+    /**
+     * Recupera una pagina di prenotazioni come proiezione ridotta, ordinate per ID.
+     * La query legge con una sola istruzione SQL solo le colonne necessarie all'elenco; restituendo uno
+     * {@code Slice} non viene eseguita la COUNT sull'intera tabella.
+     *
+     * @param pageable la pagina richiesta
+     * @return Ritorna la pagina di prenotazioni
+     */
+    @Query("SELECT new com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary(" +
+            "r.reservationId, r.dateReservation, b.bookId, b.title, u.userId, u.firstName, u.lastName) " +
+            "FROM ReservationEntity r JOIN r.bookReservation b JOIN r.userReservation u " +
+            "ORDER BY r.reservationId")
+    Slice<ReservationSummary> findAllSummaries(Pageable pageable);
+
+    /**
+     * Recupera una pagina delle prenotazioni di un utente in un intervallo di date, dalla più recente.
+     * Filtro e ordinamento corrispondono all'indice {@code idx_reservation_user_date}, quindi il database
+     * legge solo le righe della pagina anche quando l'utente ha moltissime prenotazioni.
+     *
+     * @param userId   l'ID dell'utente
+     * @param from     la prima data compresa
+     * @param to       l'ultima data compresa
+     * @param pageable la pagina richiesta
+     * @return Ritorna la pagina di prenotazioni
+     */
+    @Query("SELECT new com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary(" +
+            "r.reservationId, r.dateReservation, b.bookId, b.title, u.userId, u.firstName, u.lastName) " +
+            "FROM ReservationEntity r JOIN r.bookReservation b JOIN r.userReservation u " +
+            "WHERE r.userReservation.userId = :userId AND r.dateReservation BETWEEN :from AND :to " +
+            "ORDER BY r.dateReservation DESC, r.reservationId DESC")
+    Slice<ReservationSummary> findUserHistory(@Param("userId") Long userId, @Param("from") LocalDate from,
+                                              @Param("to") LocalDate to, Pageable pageable);
+
+    /**
+     * Recupera una pagina delle prenotazioni di un libro in un intervallo di date, dalla più recente.
+     * Filtro e ordinamento corrispondono all'indice {@code idx_reservation_book_date}.
+     *
+     * @param bookId   l'ID del libro
+     * @param from     la prima data compresa
+     * @param to       l'ultima data compresa
+     * @param pageable la pagina richiesta
+     * @return Ritorna la pagina di prenotazioni
+     */
+    @Query("SELECT new com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary(" +
+            "r.reservationId, r.dateReservation, b.bookId, b.title, u.userId, u.firstName, u.lastName) " +
+            "FROM ReservationEntity r JOIN r.bookReservation b JOIN r.userReservation u " +
+            "WHERE r.bookReservation.bookId = :bookId AND r.dateReservation BETWEEN :from AND :to " +
+            "ORDER BY r.dateReservation DESC, r.reservationId DESC")
+    Slice<ReservationSummary> findBookHistory(@Param("bookId") Long bookId, @Param("from") LocalDate from,
+                                              @Param("to") LocalDate to, Pageable pageable);
+
+    /**
+     * Legge le prenotazioni con data precedente a quella indicata, dalla più vecchia, bloccandone le righe
+     * fino alla fine della transazione così che non possano essere modificate o eliminate da altre richieste
+     * mentre scadono. La query usa l'indice {@code idx_reservation_date} e legge solo le colonne necessarie.
+     *
+     * @param cutoff   la prima data non scaduta
+     * @param pageable il numero massimo di prenotazioni da leggere
+     * @return Ritorna quadruple (ID della prenotazione, ID dell'utente, ID del libro, data)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r.reservationId, r.userReservation.userId, r.bookReservation.bookId, r.dateReservation " +
+            "FROM ReservationEntity r WHERE r.dateReservation < :cutoff ORDER BY r.dateReservation, r.reservationId")
+    List<Object[]> findExpiredForUpdate(@Param("cutoff") LocalDate cutoff, Pageable pageable);
+
+    /**
+     * Legge le prenotazioni dei libri indicati bloccandone le righe fino alla fine della transazione,
+     * come {@link #findExpiredForUpdate}. Usata dall'eliminazione in blocco dei libri.
+     *
+     * @param bookIds gli ID dei libri
+     * @return Ritorna quadruple (ID della prenotazione, ID dell'utente, ID del libro, data)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r.reservationId, r.userReservation.userId, r.bookReservation.bookId, r.dateReservation " +
+            "FROM ReservationEntity r WHERE r.bookReservation.bookId IN :bookIds ORDER BY r.reservationId")
+    List<Object[]> findByBookIdsForUpdate(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Legge le prenotazioni degli utenti indicati bloccandone le righe fino alla fine della transazione,
+     * come {@link #findExpiredForUpdate}. Usata dall'eliminazione in blocco degli utenti.
+     *
+     * @param userIds gli ID degli utenti
+     * @return Ritorna quadruple (ID della prenotazione, ID dell'utente, ID del libro, data)
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r.reservationId, r.userReservation.userId, r.bookReservation.bookId, r.dateReservation " +
+            "FROM ReservationEntity r WHERE r.userReservation.userId IN :userIds ORDER BY r.reservationId")
+    List<Object[]> findByUserIdsForUpdate(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * Elimina con un solo DELETE tutte le prenotazioni dei libri indicati, senza caricare le entità.
+     *
+     * @param bookIds gli ID dei libri
+     * @return Ritorna il numero di prenotazioni eliminate
+     */
+    @Modifying
+    @Query("DELETE FROM ReservationEntity r WHERE r.bookReservation.bookId IN :bookIds")
+    int deleteByBookIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Elimina con un solo DELETE tutte le prenotazioni degli utenti indicati, senza caricare le entità.
+     *
+     * @param userIds gli ID degli utenti
+     * @return Ritorna il numero di prenotazioni eliminate
+     */
+    @Modifying
+    @Query("DELETE FROM ReservationEntity r WHERE r.userReservation.userId IN :userIds")
+    int deleteByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * Elimina la prenotazione indicata con un solo DELETE, senza controllarne la versione.
+     *
+     * @param reservationId l'ID della prenotazione
+     * @return Ritorna 1 se la prenotazione è stata eliminata, 0 se non esiste più
+     */
+    @Modifying
+    @Query("DELETE FROM ReservationEntity r WHERE r.reservationId = :reservationId")
+    int deleteByReservationId(@Param("reservationId") Long reservationId);
+
+    /**
+     * Conta le prenotazioni per data a partire dalla data indicata.
+     * Usata solo per ricalcolare le statistiche di disponibilità, non a ogni richiesta.
+     *
+     * @param from la prima data da contare
+     * @return Ritorna coppie (data, numero di prenotazioni)
+     */
+    @Query("SELECT r.dateReservation, COUNT(r) FROM ReservationEntity r " +
+            "WHERE r.dateReservation >= :from GROUP BY r.dateReservation")
+    List<Object[]> countByDaySince(@Param("from") LocalDate from);
+
+    /**
+     * Conta le prenotazioni di ogni libro.
+     * Usata solo per ricalcolare le statistiche di disponibilità, non a ogni richiesta.
+     *
+     * @return Ritorna coppie (ID del libro, numero di prenotazioni)
+     */
+    @Query("SELECT r.bookReservation.bookId, COUNT(r) FROM ReservationEntity r GROUP BY r.bookReservation.bookId")
+    List<Object[]> countByBook();
+
 }
@@ -0,0 +1,38 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import com.bibliotecaTest.BibliotecaTest.entities.SchedulerLeaseEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+/**
+ * Repository dei lease delle attività pianificate.
+ * Usando l'annotazione {@code @Repository} indico a Spring che questa classe si occuperà dell'accesso ai lease.
+ *
+ * @author Drumstyle92
+ */
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLeaseEntity, String> {
+
+    /**
+     * Acquisisce o rinnova il lease dell'attività indicata con un unico UPDATE condizionale:
+     * riesce solo se il lease è già dell'istanza indicata oppure è scaduto, quindi due istanze
+     * non possono ottenerlo contemporaneamente.
+     *
+     * @param name      il nome dell'attività
+     * @param owner     l'istanza che chiede il lease
+     * @param now       l'istante attuale
+     * @param expiresAt la nuova scadenza del lease
+     * @return Ritorna 1 se il lease è stato acquisito o rinnovato, 0 se è di un'altra istanza
+     */
+    @Modifying
+    @Query("UPDATE SchedulerLeaseEntity l SET l.owner = :owner, l.expiresAt = :expiresAt " +
+            "WHERE l.name = :name AND (l.owner = :owner OR l.expiresAt IS NULL OR l.expiresAt < :now)")
+    int acquire(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now,
+                @Param("expiresAt") Instant expiresAt);
+
+}
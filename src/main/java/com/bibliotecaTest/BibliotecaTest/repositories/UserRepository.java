@@ -1,9 +1,17 @@
 package com.bibliotecaTest.BibliotecaTest.repositories;
 
 import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Mi dà la possibilità di facilitarmi la gestione delle entità utenti all'interno del database.
  * Usando l'annotazione {@code @Repository} indico a Spring che questa classe si occuperà della gestione
@@ -16,4 +24,27 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
 
+    /**
+     * Blocca le righe degli utenti indicati fino alla fine della transazione leggendone solo l'ID,
+     * così che nessuna prenotazione possa essere creata mentre vengono eliminati.
+     * L'ordinamento per ID evita deadlock tra transazioni concorrenti.
+     *
+     * @param userIds gli ID degli utenti
+     * @return Ritorna gli ID degli utenti esistenti, ordinati
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u.userId FROM UserEntity u WHERE u.userId IN :userIds ORDER BY u.userId")
+    List<Long> lockExistingIds(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * Elimina gli utenti indicati con un solo DELETE, senza caricare le entità.
+     * Le prenotazioni degli utenti devono essere già state eliminate.
+     *
+     * @param userIds gli ID degli utenti
+     * @return Ritorna il numero di utenti eliminati
+     */
+    @Modifying
+    @Query("DELETE FROM UserEntity u WHERE u.userId IN :userIds")
+    int deleteByUserIds(@Param("userIds") Collection<Long> userIds);
+
 }
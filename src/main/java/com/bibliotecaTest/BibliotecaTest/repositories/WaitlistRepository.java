@@ -0,0 +1,163 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import com.bibliotecaTest.BibliotecaTest.entities.WaitlistEntryEntity;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository delle code di attesa dei libri.
+ * Usando l'annotazione {@code @Repository} indico a Spring che questa classe si occuperà dell'accesso
+ * alle richieste in attesa; le query sulla coda di un libro usano l'indice {@code idx_waitlist_book_status}.
+ * Gli stati delle query JPQL sono passati come parametri, perché Hibernate 6 non interpreta
+ * il nome qualificato di un enum annidato come letterale.
+ *
+ * @author Drumstyle92
+ */
+@Repository
+public interface WaitlistRepository extends JpaRepository<WaitlistEntryEntity, Long> {
+
+    /**
+     * Legge la prima richiesta in attesa del libro indicato, bloccandone la riga fino alla fine della transazione,
+     * così che due istanze non possano promuovere la stessa richiesta.
+     * Le richieste di utenti eliminati vengono saltate.
+     *
+     * @param bookId   l'ID del libro
+     * @param waiting  lo stato delle richieste in attesa, {@code WAITING}
+     * @param pageable il limite di una riga
+     * @return Ritorna la prima richiesta in attesa, se presente
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM WaitlistEntryEntity w WHERE w.bookId = :bookId " +
+            "AND w.status = :waiting " +
+            "AND EXISTS (SELECT u.userId FROM UserEntity u WHERE u.userId = w.userId) ORDER BY w.entryId")
+    List<WaitlistEntryEntity> findHeadForUpdate(@Param("bookId") Long bookId,
+                                               @Param("waiting") WaitlistEntryEntity.Status waiting,
+                                               Pageable pageable);
+
+    /**
+     * Cerca la richiesta dell'utente ancora in attesa del libro indicato.
+     *
+     * @param bookId l'ID del libro
+     * @param userId l'ID dell'utente
+     * @param status lo stato della richiesta
+     * @return Ritorna la richiesta, se presente
+     */
+    Optional<WaitlistEntryEntity> findFirstByBookIdAndUserIdAndStatus(Long bookId, Long userId,
+                                                                      WaitlistEntryEntity.Status status);
+
+    /**
+     * Indica se il libro ha almeno una richiesta nello stato indicato, leggendo una sola riga dell'indice.
+     *
+     * @param bookId l'ID del libro
+     * @param status lo stato delle richieste
+     * @return Ritorna true se esiste almeno una richiesta
+     */
+    boolean existsByBookIdAndStatus(Long bookId, WaitlistEntryEntity.Status status);
+
+    /**
+     * Conta le richieste di un libro nello stato indicato con ID minore di quello indicato,
+     * cioè quelle che precedono una richiesta nella coda.
+     *
+     * @param bookId  l'ID del libro
+     * @param status  lo stato delle richieste
+     * @param entryId l'ID della richiesta
+     * @return Ritorna il numero di richieste precedenti
+     */
+    long countByBookIdAndStatusAndEntryIdLessThan(Long bookId, WaitlistEntryEntity.Status status, Long entryId);
+
+    /**
+     * Legge libro e ID di tutte le richieste in attesa, usata per riallineare l'indice in memoria.
+     * Come in {@link #findHeadForUpdate}, le richieste di utenti eliminati vengono saltate.
+     *
+     * @param waiting lo stato delle richieste in attesa, {@code WAITING}
+     * @return Ritorna coppie (ID del libro, ID della richiesta)
+     */
+    @Query("SELECT w.bookId, w.entryId FROM WaitlistEntryEntity w " +
+            "WHERE w.status = :waiting " +
+            "AND EXISTS (SELECT u.userId FROM UserEntity u WHERE u.userId = w.userId)")
+    List<Object[]> findWaitingEntries(@Param("waiting") WaitlistEntryEntity.Status waiting);
+
+    /**
+     * Cerca i libri che hanno richieste in attesa e almeno una copia disponibile, ad esempio perché la copia
+     * è stata restituita su un'altra istanza.
+     *
+     * @param waiting lo stato delle richieste in attesa, {@code WAITING}
+     * @return Ritorna gli ID dei libri
+     */
+    @Query("SELECT DISTINCT w.bookId FROM WaitlistEntryEntity w, BookEntity b WHERE b.bookId = w.bookId " +
+            "AND w.status = :waiting " +
+            "AND b.numberOfCopiesAvailable > 0")
+    List<Long> findPromotableBookIds(@Param("waiting") WaitlistEntryEntity.Status waiting);
+
+    /**
+     * Annulla una richiesta se è ancora in attesa.
+     *
+     * @param entryId   l'ID della richiesta
+     * @param waiting   lo stato delle richieste in attesa, {@code WAITING}
+     * @param cancelled lo stato delle richieste annullate, {@code CANCELLED}
+     * @return Ritorna 1 se la richiesta è stata annullata, 0 se non era in attesa
+     */
+    @Modifying
+    @Query("UPDATE WaitlistEntryEntity w " +
+            "SET w.status = :cancelled " +
+            "WHERE w.entryId = :entryId " +
+            "AND w.status = :waiting")
+    int cancel(@Param("entryId") Long entryId, @Param("waiting") WaitlistEntryEntity.Status waiting,
+               @Param("cancelled") WaitlistEntryEntity.Status cancelled);
+
+    /**
+     * Legge libro e ID delle richieste in attesa degli utenti indicati.
+     *
+     * @param userIds gli ID degli utenti
+     * @param waiting lo stato delle richieste in attesa, {@code WAITING}
+     * @return Ritorna coppie (ID del libro, ID della richiesta)
+     */
+    @Query("SELECT w.bookId, w.entryId FROM WaitlistEntryEntity w WHERE w.userId IN :userIds " +
+            "AND w.status = :waiting")
+    List<Object[]> findWaitingByUserIds(@Param("userIds") Collection<Long> userIds,
+                                        @Param("waiting") WaitlistEntryEntity.Status waiting);
+
+    /**
+     * Annulla tutte le richieste in attesa degli utenti indicati, ad esempio dopo la loro eliminazione.
+     *
+     * @param userIds   gli ID degli utenti
+     * @param waiting   lo stato delle richieste in attesa, {@code WAITING}
+     * @param cancelled lo stato delle richieste annullate, {@code CANCELLED}
+     * @return Ritorna il numero di richieste annullate
+     */
+    @Modifying
+    @Query("UPDATE WaitlistEntryEntity w " +
+            "SET w.status = :cancelled " +
+            "WHERE w.userId IN :userIds " +
+            "AND w.status = :waiting")
+    int cancelAllByUserIds(@Param("userIds") Collection<Long> userIds,
+                           @Param("waiting") WaitlistEntryEntity.Status waiting,
+                           @Param("cancelled") WaitlistEntryEntity.Status cancelled);
+
+    /**
+     * Annulla tutte le richieste in attesa di un libro, ad esempio dopo la sua eliminazione.
+     *
+     * @param bookId    l'ID del libro
+     * @param waiting   lo stato delle richieste in attesa, {@code WAITING}
+     * @param cancelled lo stato delle richieste annullate, {@code CANCELLED}
+     * @return Ritorna il numero di richieste annullate
+     */
+    @Modifying
+    @Query("UPDATE WaitlistEntryEntity w " +
+            "SET w.status = :cancelled " +
+            "WHERE w.bookId = :bookId " +
+            "AND w.status = :waiting")
+    int cancelAllByBookId(@Param("bookId") Long bookId, @Param("waiting") WaitlistEntryEntity.Status waiting,
+                          @Param("cancelled") WaitlistEntryEntity.Status cancelled);
+
+}
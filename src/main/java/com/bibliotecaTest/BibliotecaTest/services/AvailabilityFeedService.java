@@ -0,0 +1,721 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.BookAvailability;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Flusso Server-Sent Events della disponibilità dei libri, che sostituisce il polling di {@code /getCopies}.
+ * Un client si iscrive a un insieme di libri e riceve subito le copie attuali, poi un evento per ogni cambiamento.
+ * I servizi segnalano i libri cambiati dopo il commit; ogni {@code biblioteca.feed.flush-interval-ms} millisecondi
+ * le copie dei libri cambiati vengono lette con un'unica query e distribuite in memoria a tutti gli iscritti.
+ * I cambiamenti fatti da altre istanze non vengono segnalati: ogni {@code biblioteca.feed.poll-interval-ms}
+ * millisecondi vengono letti anche i libri seguiti con {@code last_modified} successivo all'ultima lettura,
+ * meno un margine per i commit più lenti e la differenza tra gli orologi, e inviati solo se le copie sono cambiate.
+ * Ogni client ha un buffer con al massimo un valore per libro: i cambiamenti ravvicinati dello stesso libro
+ * si sovrascrivono e al client arriva solo l'ultimo, così che un client lento non possa far crescere la memoria.
+ * Gli eventi vengono scritti da un pool di thread dedicato, con al massimo un invio in corso per client.
+ * Un client che non legge blocca la scrittura: dopo {@code biblioteca.feed.send-timeout-ms} millisecondi viene
+ * scollegato, e il pool crea altri thread fino a {@code biblioteca.feed.max-sender-threads}, così che i client
+ * bloccati non fermino gli invii agli altri.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class AvailabilityFeedService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityFeedService.class);
+
+    /**
+     * Numero massimo di libri letti con una sola query.
+     */
+    private static final int QUERY_CHUNK = 1000;
+
+    /**
+     * Repository dei libri, usato per leggere le copie dei libri cambiati.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Gestore delle transazioni, usato per leggere le copie dal database principale anche con una replica.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Registro delle metriche, usato per contare iscritti ed eventi inviati.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Numero massimo di client iscritti contemporaneamente.
+     */
+    @Value("${biblioteca.feed.max-subscribers:10000}")
+    int maxSubscribers;
+
+    /**
+     * Numero massimo di libri per iscrizione, che limita anche il buffer di ogni client.
+     */
+    @Value("${biblioteca.feed.max-books:200}")
+    int maxBooks;
+
+    /**
+     * Durata massima di un'iscrizione in millisecondi, dopo la quale il client si riconnette.
+     */
+    @Value("${biblioteca.feed.timeout-ms:1800000}")
+    long timeoutMillis;
+
+    /**
+     * Numero di thread che scrivono gli eventi ai client, mantenuti anche senza invii.
+     */
+    @Value("${biblioteca.feed.sender-threads:4}")
+    int senderThreads;
+
+    /**
+     * Numero massimo di thread che scrivono gli eventi ai client, compresi quelli bloccati da client che non leggono.
+     */
+    @Value("${biblioteca.feed.max-sender-threads:64}")
+    int maxSenderThreads;
+
+    /**
+     * Tempo massimo di una singola scrittura in millisecondi, oltre il quale il client viene scollegato.
+     */
+    @Value("${biblioteca.feed.send-timeout-ms:5000}")
+    long sendTimeoutMillis;
+
+    /**
+     * Intervallo minimo tra due letture dei libri cambiati su altre istanze, in millisecondi.
+     */
+    @Value("${biblioteca.feed.poll-interval-ms:1000}")
+    long pollIntervalMillis;
+
+    /**
+     * Margine sottratto all'ultima lettura dei libri cambiati su altre istanze, in millisecondi:
+     * copre i commit avvenuti dopo l'aggiornamento di {@code last_modified} e la differenza tra gli orologi.
+     */
+    @Value("${biblioteca.feed.poll-lag-ms:5000}")
+    long pollLagMillis;
+
+    /**
+     * Client iscritti a ogni libro.
+     */
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Libri cambiati dall'ultimo invio.
+     */
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Numero di client iscritti.
+     */
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    /**
+     * Ultimo valore distribuito di ogni libro seguito, usato per non inviare di nuovo i libri letti
+     * più volte dalla lettura dei cambiamenti delle altre istanze.
+     */
+    private final Map<Long, BookAvailability> lastKnown = new ConcurrentHashMap<>();
+
+    /**
+     * Client con valori da inviare per cui il pool ha rifiutato l'invio, da riprovare al prossimo giro.
+     */
+    private final Set<Subscriber> deferred = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Istante dell'ultima lettura dei libri cambiati su altre istanze.
+     */
+    private volatile Instant pollWatermark = Instant.now();
+
+    /**
+     * Pool dei thread che scrivono gli eventi.
+     */
+    private ThreadPoolExecutor senders;
+
+    /**
+     * Contatore degli eventi inviati.
+     */
+    private Counter sentEvents;
+
+    /**
+     * Contatore dei client scollegati per un errore di scrittura.
+     */
+    private Counter failedSubscribers;
+
+    /**
+     * Contatore dei client scollegati perché una scrittura ha superato {@code sendTimeoutMillis}.
+     */
+    private Counter stalledSubscribers;
+
+    /**
+     * Client iscritto al flusso, con il buffer dei cambiamenti non ancora inviati.
+     */
+    private static final class Subscriber {
+
+        /**
+         * Connessione SSE del client.
+         */
+        final SseEmitter emitter;
+
+        /**
+         * Libri a cui il client è iscritto.
+         */
+        final Set<Long> bookIds;
+
+        /**
+         * Ultimo valore non ancora inviato di ogni libro.
+         */
+        final Map<Long, BookAvailability> pending = new ConcurrentHashMap<>();
+
+        /**
+         * Indica se un invio per il client è in corso o in coda nel pool.
+         */
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        /**
+         * Indica se il client è già stato rimosso.
+         */
+        final AtomicBoolean removed = new AtomicBoolean();
+
+        /**
+         * Indica se al prossimo invio va scritto un heartbeat.
+         */
+        volatile boolean heartbeat;
+
+        /**
+         * Valore di {@link System#nanoTime()} all'inizio della scrittura in corso, 0 se nessuna scrittura è in corso.
+         */
+        volatile long writeStartedAt;
+
+        /**
+         * Crea il client con la sua connessione e i libri a cui è iscritto.
+         *
+         * @param emitter la connessione SSE
+         * @param bookIds gli ID dei libri
+         */
+        Subscriber(SseEmitter emitter, Set<Long> bookIds) {
+            this.emitter = emitter;
+            this.bookIds = bookIds;
+        }
+
+    }
+
+    /**
+     * Avvia il pool dei thread di invio e registra le metriche del flusso.
+     */
+    @PostConstruct
+    public void start() {
+
+        // Senza coda: se tutti i thread sono occupati ne viene creato un altro, fino a maxSenderThreads
+        senders = new ThreadPoolExecutor(senderThreads, Math.max(senderThreads, maxSenderThreads),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        sentEvents = meterRegistry.counter("biblioteca.feed.events", "outcome", "sent");
+        failedSubscribers = meterRegistry.counter("biblioteca.feed.events", "outcome", "failed");
+        stalledSubscribers = meterRegistry.counter("biblioteca.feed.events", "outcome", "stalled");
+
+        Gauge.builder("biblioteca.feed.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+
+    }
+
+    /**
+     * Iscrive un client ai libri indicati e gli invia subito le copie attuali.
+     *
+     * @param bookIds Gli ID dei libri da seguire
+     * @return        Ritorna un oggetto ResponseEntity contenente la connessione SSE,
+     *                status "400 Bad Request" se la lista dei libri è vuota o troppo lunga,
+     *                status "503 Service Unavailable" se è stato raggiunto il numero massimo di iscritti.
+     */
+    public ResponseEntity<SseEmitter> subscribe(List<Long> bookIds) {
+
+        if (bookIds == null || bookIds.isEmpty() || bookIds.stream().anyMatch(Objects::isNull)) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        Set<Long> books = new LinkedHashSet<>(bookIds);
+
+        if (books.size() > maxBooks) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+
+            subscriberCount.decrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), books);
+
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> remove(subscriber));
+        subscriber.emitter.onError(e -> remove(subscriber));
+
+        books.forEach(bookId -> subscribers.computeIfAbsent(bookId, id -> ConcurrentHashMap.newKeySet()).add(subscriber));
+
+        try {
+
+            // Le copie attuali vengono lette dopo l'iscrizione, così che un cambiamento intermedio non vada perso
+            readAvailability(books).forEach(availability -> {
+
+                subscriber.pending.put(availability.getBookId(), availability);
+                lastKnown.put(availability.getBookId(), availability);
+            });
+
+        } catch (RuntimeException e) {
+
+            remove(subscriber);
+            throw e;
+        }
+
+        schedule(subscriber);
+
+        return ResponseEntity.ok(subscriber.emitter);
+
+    }
+
+    /**
+     * Segnala che le copie di un libro sono cambiate, dopo il commit se è in corso una transazione.
+     * Se nessun client segue il libro la segnalazione viene ignorata.
+     *
+     * @param bookId L'ID del libro cambiato o eliminato
+     */
+    public void bookChanged(Long bookId) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    markChanged(bookId);
+                }
+            });
+        } else {
+
+            markChanged(bookId);
+        }
+
+    }
+
+    /**
+     * Legge una volta le copie dei libri cambiati e le mette nel buffer di ogni client che li segue.
+     * Se è passato almeno {@code pollIntervalMillis} dall'ultima volta legge anche i libri seguiti
+     * cambiati su altre istanze, e riprova gli invii rifiutati dal pool.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.feed.flush-interval-ms:250}")
+    public void flush() {
+
+        Set<Subscriber> touched = new HashSet<>();
+
+        if (!changed.isEmpty()) {
+
+            List<Long> bookIds = new ArrayList<>();
+
+            for (Iterator<Long> iterator = changed.iterator(); iterator.hasNext(); ) {
+
+                bookIds.add(iterator.next());
+                iterator.remove();
+            }
+
+            try {
+
+                distribute(readAvailability(bookIds), false, touched);
+
+            } catch (RuntimeException e) {
+
+                // I libri tornano tra quelli cambiati e vengono riletti al prossimo giro
+                log.warn("Unable to read the availability of {} changed books", bookIds.size(), e);
+                changed.addAll(bookIds);
+            }
+        }
+
+        if (!pollWatermark.plusMillis(pollIntervalMillis).isAfter(Instant.now())) {
+
+            pollRemoteChanges(touched);
+        }
+
+        for (Iterator<Subscriber> iterator = deferred.iterator(); iterator.hasNext(); ) {
+
+            touched.add(iterator.next());
+            iterator.remove();
+        }
+
+        touched.forEach(this::schedule);
+
+    }
+
+    /**
+     * Legge i libri seguiti modificati dopo l'ultima lettura, meno {@code pollLagMillis}, anche da altre istanze.
+     * I libri già distribuiti con le stesse copie vengono ignorati, quindi il margine non produce invii doppi.
+     * Un libro eliminato da un'altra istanza non ha più una riga da leggere e non viene segnalato.
+     *
+     * @param touched I client a cui aggiungere quelli con nuovi valori da inviare
+     */
+    private void pollRemoteChanges(Set<Subscriber> touched) {
+
+        if (subscribers.isEmpty()) {
+
+            pollWatermark = Instant.now();
+            return;
+        }
+
+        Instant now = Instant.now();
+        Instant since = pollWatermark.minusMillis(pollLagMillis);
+        List<Long> ids = new ArrayList<>(subscribers.keySet());
+        List<BookAvailability> modified = new ArrayList<>();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        try {
+
+            for (int from = 0; from < ids.size(); from += QUERY_CHUNK) {
+
+                List<Long> chunk = ids.subList(from, Math.min(from + QUERY_CHUNK, ids.size()));
+
+                transaction.executeWithoutResult(status ->
+                        modified.addAll(bookRepository.findAvailabilityModifiedSince(chunk, since)));
+            }
+
+        } catch (RuntimeException e) {
+
+            // L'ultima lettura non avanza, quindi i libri vengono riletti al prossimo giro
+            log.warn("Unable to read the availability of books changed on other instances", e);
+            return;
+        }
+
+        pollWatermark = now;
+        distribute(modified, true, touched);
+
+    }
+
+    /**
+     * Mette le copie lette nel buffer di ogni client che segue il libro.
+     *
+     * @param availabilities Le copie lette
+     * @param onlyIfChanged  true per ignorare i libri già distribuiti con le stesse copie
+     * @param touched        I client a cui aggiungere quelli con nuovi valori da inviare
+     */
+    private void distribute(List<BookAvailability> availabilities, boolean onlyIfChanged, Set<Subscriber> touched) {
+
+        for (BookAvailability availability : availabilities) {
+
+            Set<Subscriber> bookSubscribers = subscribers.get(availability.getBookId());
+
+            if (bookSubscribers == null) {
+
+                continue;
+            }
+
+            BookAvailability previous = lastKnown.put(availability.getBookId(), availability);
+
+            if (onlyIfChanged && previous != null
+                    && Objects.equals(previous.getCopiesAvailable(), availability.getCopiesAvailable())) {
+
+                continue;
+            }
+
+            for (Subscriber subscriber : bookSubscribers) {
+
+                subscriber.pending.put(availability.getBookId(), availability);
+                touched.add(subscriber);
+            }
+        }
+
+    }
+
+    /**
+     * Scollega i client con una scrittura in corso da più di {@code sendTimeoutMillis}: il client non legge
+     * e il thread resta bloccato finché il container non fa fallire la scrittura. Rimuovendo subito il client
+     * non gli vengono più assegnati valori né altri thread.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.feed.stall-check-interval-ms:1000}")
+    public void dropStalledSubscribers() {
+
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        Set<Subscriber> all = new HashSet<>();
+        subscribers.values().forEach(all::addAll);
+
+        for (Subscriber subscriber : all) {
+
+            long startedAt = subscriber.writeStartedAt;
+
+            if (startedAt != 0 && now - startedAt > timeout) {
+
+                stalledSubscribers.increment();
+                remove(subscriber);
+            }
+        }
+
+    }
+
+    /**
+     * Scrive un heartbeat a tutti i client, così che le connessioni chiuse vengano scoperte
+     * anche se i loro libri non cambiano.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.feed.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+
+        Set<Subscriber> all = new HashSet<>();
+        subscribers.values().forEach(all::addAll);
+
+        for (Subscriber subscriber : all) {
+
+            subscriber.heartbeat = true;
+            schedule(subscriber);
+        }
+
+    }
+
+    /**
+     * Chiude le connessioni e ferma il pool dei thread di invio.
+     */
+    @PreDestroy
+    public void shutdown() {
+
+        Set<Subscriber> all = new HashSet<>();
+        subscribers.values().forEach(all::addAll);
+        all.forEach(subscriber -> subscriber.emitter.complete());
+
+        senders.shutdown();
+
+        try {
+
+            senders.awaitTermination(5, TimeUnit.SECONDS);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /**
+     * Aggiunge il libro a quelli cambiati se almeno un client lo segue.
+     *
+     * @param bookId L'ID del libro
+     */
+    private void markChanged(Long bookId) {
+
+        if (subscribers.containsKey(bookId)) {
+
+            changed.add(bookId);
+        }
+
+    }
+
+    /**
+     * Mette in coda nel pool l'invio al client, se non ce n'è già uno in corso.
+     *
+     * @param subscriber Il client
+     */
+    private void schedule(Subscriber subscriber) {
+
+        if (!subscriber.sending.compareAndSet(false, true)) {
+
+            return;
+        }
+
+        try {
+
+            senders.execute(() -> send(subscriber));
+
+        } catch (RejectedExecutionException e) {
+
+            subscriber.sending.set(false);
+
+            if (!subscriber.removed.get()) {
+
+                deferred.add(subscriber);
+            }
+        }
+
+    }
+
+    /**
+     * Scrive al client i valori nel buffer finché ce ne sono. Se la scrittura fallisce il client viene rimosso;
+     * se il client è stato rimosso durante una scrittura bloccata, la connessione viene chiusa appena la scrittura termina.
+     *
+     * @param subscriber Il client
+     */
+    private void send(Subscriber subscriber) {
+
+        try {
+
+            do {
+
+                for (Long bookId : subscriber.pending.keySet()) {
+
+                    BookAvailability availability = subscriber.pending.remove(bookId);
+
+                    if (availability != null) {
+
+                        write(subscriber, SseEmitter.event()
+                                .name("availability")
+                                .data(availability, MediaType.APPLICATION_JSON));
+                        sentEvents.increment();
+                    }
+                }
+
+                if (subscriber.heartbeat) {
+
+                    subscriber.heartbeat = false;
+                    write(subscriber, SseEmitter.event().comment("heartbeat"));
+                }
+
+                if (subscriber.removed.get()) {
+
+                    subscriber.sending.set(false);
+                    subscriber.emitter.complete();
+                    return;
+                }
+
+                subscriber.sending.set(false);
+
+                // Un valore arrivato dopo il ciclo ma prima del reset va inviato da questo thread
+            } while ((!subscriber.pending.isEmpty() || subscriber.heartbeat)
+                    && subscriber.sending.compareAndSet(false, true));
+
+        } catch (IOException | IllegalStateException e) {
+
+            // Il container chiude la connessione e notifica l'errore; il client viene rimosso subito
+            failedSubscribers.increment();
+            subscriber.sending.set(false);
+            remove(subscriber);
+        }
+
+    }
+
+    /**
+     * Scrive un evento al client, registrando l'inizio della scrittura per {@link #dropStalledSubscribers()}.
+     *
+     * @param subscriber Il client
+     * @param event      L'evento da scrivere
+     * @throws IOException se la scrittura fallisce
+     */
+    private void write(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+
+        subscriber.writeStartedAt = System.nanoTime();
+
+        try {
+
+            subscriber.emitter.send(event);
+
+        } finally {
+
+            subscriber.writeStartedAt = 0;
+        }
+
+    }
+
+    /**
+     * Rimuove il client da tutti i libri che segue.
+     *
+     * @param subscriber Il client
+     */
+    private void remove(Subscriber subscriber) {
+
+        if (!subscriber.removed.compareAndSet(false, true)) {
+
+            return;
+        }
+
+        subscriberCount.decrementAndGet();
+        subscriber.pending.clear();
+
+        for (Long bookId : subscriber.bookIds) {
+
+            subscribers.computeIfPresent(bookId, (id, bookSubscribers) -> {
+
+                bookSubscribers.remove(subscriber);
+
+                if (bookSubscribers.isEmpty()) {
+
+                    lastKnown.remove(id);
+                    return null;
+                }
+
+                return bookSubscribers;
+            });
+        }
+
+        deferred.remove(subscriber);
+
+    }
+
+    /**
+     * Legge le copie dei libri indicati a blocchi di {@code QUERY_CHUNK}, in una transazione di lettura
+     * e scrittura così che con una replica la lettura avvenga sul database principale.
+     * I libri non trovati vengono restituiti con copie null.
+     *
+     * @param bookIds Gli ID dei libri
+     * @return        Ritorna le copie di ogni libro
+     */
+    private List<BookAvailability> readAvailability(Collection<Long> bookIds) {
+
+        List<Long> ids = new ArrayList<>(bookIds);
+        Map<Long, BookAvailability> found = new HashMap<>();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        for (int from = 0; from < ids.size(); from += QUERY_CHUNK) {
+
+            List<Long> chunk = ids.subList(from, Math.min(from + QUERY_CHUNK, ids.size()));
+
+            transaction.executeWithoutResult(status -> bookRepository.findAvailabilityByBookIds(chunk)
+                    .forEach(availability -> found.put(availability.getBookId(), availability)));
+        }
+
+        List<BookAvailability> result = new ArrayList<>(ids.size());
+
+        for (Long bookId : ids) {
+
+            result.add(found.getOrDefault(bookId, new BookAvailability(bookId, null)));
+        }
+
+        return result;
+
+    }
+
+}
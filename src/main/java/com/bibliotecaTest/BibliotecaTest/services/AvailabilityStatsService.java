@@ -0,0 +1,748 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.AvailabilitySummary;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Aggregati in memoria sulla disponibilità del catalogo, letti dalla dashboard operativa.
+ * Copie totali, libri esauriti, prenotazioni per giorno e prenotazioni per libro vengono aggiornati
+ * in modo incrementale dai servizi a ogni modifica, dopo il commit della transazione, così che la lettura
+ * del riepilogo non interroghi mai il database. La classifica dei titoli più prenotati viene ricalcolata
+ * in memoria a intervalli regolari.
+ * Gli aggregati vengono salvati periodicamente in un file di checkpoint, da cui ripartono al riavvio,
+ * e ricalcolati dal database a intervalli lunghi per correggere eventuali scostamenti, ad esempio
+ * dovuti a modifiche fatte da altre istanze. Le modifiche registrate durante il ricalcolo vengono
+ * riapplicate agli aggregati ricalcolati prima di sostituire quelli correnti.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class AvailabilityStatsService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityStatsService.class);
+
+    /**
+     * Repository dei libri, usato solo per il ricalcolo completo.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Repository delle prenotazioni, usato solo per il ricalcolo completo.
+     */
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Gestore delle transazioni, usato per leggere i libri in streaming durante il ricalcolo.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * ObjectMapper di Jackson configurato da Spring, usato per il file di checkpoint.
+     */
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * Percorso del file di checkpoint.
+     */
+    @Value("${biblioteca.stats.checkpoint-file:./data/availability-stats.json}")
+    Path checkpointFile;
+
+    /**
+     * Numero di giorni di prenotazioni mantenuti nel riepilogo.
+     */
+    @Value("${biblioteca.stats.days:30}")
+    int days;
+
+    /**
+     * Numero di titoli nella classifica dei più prenotati.
+     */
+    @Value("${biblioteca.stats.top-titles:10}")
+    int topTitles;
+
+    /**
+     * Intervallo minimo tra due ricalcoli completi dal database, in millisecondi.
+     */
+    @Value("${biblioteca.stats.rebuild-interval-ms:21600000}")
+    long rebuildIntervalMillis;
+
+    /**
+     * Aggregati correnti, sostituiti in blocco a ogni ricalcolo.
+     */
+    private volatile State state = new State(null);
+
+    /**
+     * Classifica dei titoli più prenotati calcolata per ultima.
+     */
+    private volatile List<AvailabilitySummary.TopTitle> topTitleSnapshot = List.of();
+
+    /**
+     * Istante di calcolo della classifica.
+     */
+    private volatile Instant topTitlesAt;
+
+    /**
+     * Lock tra gli aggiornamenti, che prendono il lock di lettura e possono procedere in parallelo,
+     * e l'inizio e la fine di un ricalcolo, che prendono quello di scrittura: così nessun aggiornamento
+     * può essere applicato agli aggregati che stanno per essere sostituiti senza essere registrato.
+     */
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    /**
+     * Aggiornamenti arrivati durante il ricalcolo in corso, da riapplicare agli aggregati ricalcolati;
+     * null se nessun ricalcolo è in corso.
+     */
+    private Queue<Consumer<State>> rebuildDeltas;
+
+    /**
+     * Restituisce il riepilogo della disponibilità senza accedere al database.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente il riepilogo
+     */
+    public ResponseEntity<AvailabilitySummary> getSummary() {
+
+        State current = state;
+        LocalDate since = LocalDate.now().minusDays(days - 1L);
+        TreeMap<LocalDate, Long> perDay = new TreeMap<>();
+
+        current.reservationsPerDay.tailMap(since).forEach((date, count) -> perDay.put(date, count.sum()));
+
+        return ResponseEntity.ok(new AvailabilitySummary(current.books.size(), current.totalCopies.sum(),
+                current.zeroCopyBooks.sum(), perDay, topTitleSnapshot, topTitlesAt, current.rebuiltAt));
+
+    }
+
+    /**
+     * Registra una nuova prenotazione: una copia in meno e una prenotazione in più per il libro e per la data.
+     *
+     * @param bookId L'ID del libro prenotato
+     * @param date   La data della prenotazione
+     */
+    public void reservationCreated(Long bookId, LocalDate date) {
+
+        afterCommit(current -> {
+
+            changeCopies(current, bookId, -1);
+            changeReservations(current, bookId, date, 1);
+        });
+
+    }
+
+    /**
+     * Registra lo spostamento di una prenotazione su un altro libro o un'altra data.
+     *
+     * @param previousBookId L'ID del libro prenotato in precedenza
+     * @param previousDate   La data precedente
+     * @param bookId         L'ID del nuovo libro
+     * @param date           La nuova data
+     */
+    public void reservationMoved(Long previousBookId, LocalDate previousDate, Long bookId, LocalDate date) {
+
+        afterCommit(current -> {
+
+            changeCopies(current, previousBookId, 1);
+            changeReservations(current, previousBookId, previousDate, -1);
+            changeCopies(current, bookId, -1);
+            changeReservations(current, bookId, date, 1);
+        });
+
+    }
+
+    /**
+     * Registra l'eliminazione di una prenotazione: la copia torna disponibile.
+     *
+     * @param bookId L'ID del libro prenotato
+     * @param date   La data della prenotazione
+     */
+    public void reservationDeleted(Long bookId, LocalDate date) {
+
+        afterCommit(current -> {
+
+            changeCopies(current, bookId, 1);
+            changeReservations(current, bookId, date, -1);
+        });
+
+    }
+
+    /**
+     * Registra la creazione o la modifica di un libro, con il titolo e le copie salvate.
+     *
+     * @param book Il libro salvato
+     */
+    public void bookSaved(BookEntity book) {
+
+        Long bookId = book.getBookId();
+        String title = book.getTitle();
+        int copies = book.getNumberOfCopiesAvailable();
+
+        afterCommit(current -> {
+
+            BookStats stats = bookStats(current, bookId, title);
+            stats.title = title;
+            changeCopies(current, bookId, copies - stats.copies.get());
+        });
+
+    }
+
+    /**
+     * Registra le nuove copie di un libro modificato senza leggerlo, ad esempio con un UPDATE parziale.
+     * Se il libro non è ancora negli aggregati viene ignorato fino alla prossima ricostruzione.
+     *
+     * @param bookId L'ID del libro modificato
+     * @param copies Le copie salvate
+     */
+    public void copiesSet(Long bookId, int copies) {
+
+        afterCommit(current -> {
+
+            BookStats stats = current.books.get(bookId);
+
+            if (stats != null) {
+
+                changeCopies(current, bookId, copies - stats.copies.get());
+            }
+        });
+
+    }
+
+    /**
+     * Registra l'eliminazione di un libro.
+     *
+     * @param bookId L'ID del libro eliminato
+     */
+    public void bookDeleted(Long bookId) {
+
+        afterCommit(current -> {
+
+            BookStats stats = current.books.remove(bookId);
+
+            if (stats != null) {
+
+                int copies = stats.copies.get();
+                current.totalCopies.add(-copies);
+
+                if (copies == 0) {
+
+                    current.zeroCopyBooks.decrement();
+                }
+            }
+        });
+
+    }
+
+    /**
+     * Ricalcola la classifica dei titoli più prenotati dagli aggregati in memoria.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.stats.top-refresh-ms:10000}")
+    public void refreshTopTitles() {
+
+        topTitleSnapshot = state.books.entrySet().stream()
+                .map(entry -> new AvailabilitySummary.TopTitle(entry.getKey(), entry.getValue().title,
+                        entry.getValue().reservations.sum()))
+                .filter(topTitle -> topTitle.reservations() > 0)
+                .sorted(Comparator.comparingLong(AvailabilitySummary.TopTitle::reservations).reversed())
+                .limit(topTitles)
+                .toList();
+        topTitlesAt = Instant.now();
+
+    }
+
+    /**
+     * Salva gli aggregati nel file di checkpoint, scrivendo prima un file temporaneo e poi sostituendo
+     * quello precedente, così che un'interruzione non lasci mai un checkpoint incompleto.
+     */
+    @Scheduled(initialDelayString = "${biblioteca.stats.checkpoint-interval-ms:60000}",
+            fixedDelayString = "${biblioteca.stats.checkpoint-interval-ms:60000}")
+    public void checkpoint() {
+
+        State current = state;
+
+        if (current.rebuiltAt == null) {
+
+            return;
+        }
+
+        current.reservationsPerDay.headMap(LocalDate.now().minusDays(days - 1L)).clear();
+
+        List<BookCheckpoint> books = new ArrayList<>(current.books.size());
+        current.books.forEach((bookId, stats) -> books.add(
+                new BookCheckpoint(bookId, stats.title, stats.copies.get(), stats.reservations.sum())));
+
+        Map<LocalDate, Long> perDay = new TreeMap<>();
+        current.reservationsPerDay.forEach((date, count) -> perDay.put(date, count.sum()));
+
+        try {
+
+            Files.createDirectories(checkpointFile.toAbsolutePath().getParent());
+            Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), new Checkpoint(current.rebuiltAt, books, perDay));
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+
+            log.warn("Unable to write availability checkpoint {}", checkpointFile, e);
+        }
+
+    }
+
+    /**
+     * Ricalcola gli aggregati dal database se l'ultimo ricalcolo, anche quello salvato nel checkpoint,
+     * è più vecchio di {@code rebuildIntervalMillis}. Alla prima esecuzione senza checkpoint il ricalcolo
+     * avviene subito.
+     * Le letture avvengono in una transazione REPEATABLE READ, quindi vedono tutte lo stesso istante.
+     * Gli aggiornamenti arrivati dopo l'inizio della prima lettura vengono registrati e riapplicati
+     * agli aggregati ricalcolati prima della sostituzione; solo un aggiornamento il cui commit precede
+     * la lettura ma che viene notificato dopo può essere contato due volte, fino al ricalcolo successivo.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${biblioteca.stats.rebuild-check-interval-ms:60000}")
+    public synchronized void rebuild() {
+
+        Instant rebuiltAt = state.rebuiltAt;
+
+        if (rebuiltAt != null && Duration.between(rebuiltAt, Instant.now()).toMillis() < rebuildIntervalMillis) {
+
+            return;
+        }
+
+        long start = System.nanoTime();
+        State rebuilt = new State(Instant.now());
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        try {
+
+            transaction.executeWithoutResult(status -> {
+
+                // Gli aggiornamenti notificati prima della prima lettura sono già nel database
+                startRecording();
+                read(rebuilt);
+            });
+
+            swap(rebuilt);
+
+        } finally {
+
+            stopRecording();
+        }
+
+        refreshTopTitles();
+
+        log.info("Availability stats rebuilt for {} books in {} ms", rebuilt.books.size(),
+                (System.nanoTime() - start) / 1_000_000);
+
+    }
+
+    /**
+     * Legge dal database libri, copie e prenotazioni negli aggregati indicati.
+     *
+     * @param rebuilt Gli aggregati da riempire
+     */
+    private void read(State rebuilt) {
+
+        try (Stream<Object[]> books = bookRepository.streamAvailability()) {
+
+            books.forEach(row -> {
+
+                int copies = ((Number) row[2]).intValue();
+                rebuilt.books.put((Long) row[0], new BookStats((String) row[1], copies, 0));
+                rebuilt.totalCopies.add(copies);
+
+                if (copies == 0) {
+
+                    rebuilt.zeroCopyBooks.increment();
+                }
+            });
+        }
+
+        for (Object[] row : reservationRepository.countByBook()) {
+
+            BookStats stats = rebuilt.books.get((Long) row[0]);
+
+            if (stats != null) {
+
+                stats.reservations.add(((Number) row[1]).longValue());
+            }
+        }
+
+        for (Object[] row : reservationRepository.countByDaySince(LocalDate.now().minusDays(days - 1L))) {
+
+            rebuilt.reservationsPerDay.computeIfAbsent((LocalDate) row[0], date -> new LongAdder())
+                    .add(((Number) row[1]).longValue());
+        }
+
+    }
+
+    /**
+     * Inizia a registrare gli aggiornamenti da riapplicare dopo il ricalcolo.
+     */
+    private void startRecording() {
+
+        rebuildLock.writeLock().lock();
+
+        try {
+
+            rebuildDeltas = new ConcurrentLinkedQueue<>();
+
+        } finally {
+
+            rebuildLock.writeLock().unlock();
+        }
+
+    }
+
+    /**
+     * Riapplica agli aggregati ricalcolati gli aggiornamenti registrati e li rende correnti.
+     * Gli aggiornamenti in attesa del lock vengono applicati dopo la sostituzione, direttamente ai nuovi aggregati.
+     *
+     * @param rebuilt Gli aggregati ricalcolati
+     */
+    private void swap(State rebuilt) {
+
+        rebuildLock.writeLock().lock();
+
+        try {
+
+            rebuildDeltas.forEach(update -> update.accept(rebuilt));
+            rebuildDeltas = null;
+            state = rebuilt;
+
+        } finally {
+
+            rebuildLock.writeLock().unlock();
+        }
+
+    }
+
+    /**
+     * Smette di registrare gli aggiornamenti, anche se il ricalcolo è fallito.
+     */
+    private void stopRecording() {
+
+        rebuildLock.writeLock().lock();
+
+        try {
+
+            rebuildDeltas = null;
+
+        } finally {
+
+            rebuildLock.writeLock().unlock();
+        }
+
+    }
+
+    /**
+     * Carica gli aggregati dal file di checkpoint, se presente.
+     */
+    @PostConstruct
+    public void loadCheckpoint() {
+
+        if (!Files.exists(checkpointFile)) {
+
+            return;
+        }
+
+        try {
+
+            Checkpoint checkpoint = objectMapper.readValue(checkpointFile.toFile(), Checkpoint.class);
+            State loaded = new State(checkpoint.rebuiltAt());
+
+            for (BookCheckpoint book : checkpoint.books()) {
+
+                loaded.books.put(book.bookId(), new BookStats(book.title(), book.copies(), book.reservations()));
+                loaded.totalCopies.add(book.copies());
+
+                if (book.copies() == 0) {
+
+                    loaded.zeroCopyBooks.increment();
+                }
+            }
+
+            checkpoint.reservationsPerDay().forEach((date, count) ->
+                    loaded.reservationsPerDay.computeIfAbsent(date, key -> new LongAdder()).add(count));
+
+            state = loaded;
+            refreshTopTitles();
+
+        } catch (IOException e) {
+
+            log.warn("Ignoring unreadable availability checkpoint {}", checkpointFile, e);
+        }
+
+    }
+
+    /**
+     * Salva un ultimo checkpoint alla chiusura dell'applicazione.
+     */
+    @PreDestroy
+    public void shutdown() {
+
+        checkpoint();
+
+    }
+
+    /**
+     * Esegue l'aggiornamento dopo il commit della transazione in corso, oppure subito se non c'è transazione.
+     *
+     * @param update L'aggiornamento degli aggregati
+     */
+    private void afterCommit(Consumer<State> update) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(update);
+                }
+            });
+        } else {
+
+            apply(update);
+        }
+
+    }
+
+    /**
+     * Applica l'aggiornamento agli aggregati correnti e, durante un ricalcolo, lo registra
+     * per riapplicarlo agli aggregati ricalcolati.
+     *
+     * @param update L'aggiornamento degli aggregati
+     */
+    private void apply(Consumer<State> update) {
+
+        rebuildLock.readLock().lock();
+
+        try {
+
+            if (rebuildDeltas != null) {
+
+                rebuildDeltas.add(update);
+            }
+
+            update.accept(state);
+
+        } finally {
+
+            rebuildLock.readLock().unlock();
+        }
+
+    }
+
+    /**
+     * Cambia le copie disponibili di un libro aggiornando il totale e il numero di libri esauriti.
+     *
+     * @param current Gli aggregati
+     * @param bookId  L'ID del libro
+     * @param delta   La variazione delle copie
+     */
+    private void changeCopies(State current, Long bookId, int delta) {
+
+        BookStats stats = current.books.get(bookId);
+
+        if (stats == null || delta == 0) {
+
+            return;
+        }
+
+        int after = stats.copies.addAndGet(delta);
+        int before = after - delta;
+        current.totalCopies.add(delta);
+
+        if (before == 0) {
+
+            current.zeroCopyBooks.decrement();
+        }
+
+        if (after == 0) {
+
+            current.zeroCopyBooks.increment();
+        }
+
+    }
+
+    /**
+     * Cambia il numero di prenotazioni di un libro e di una data.
+     *
+     * @param current Gli aggregati
+     * @param bookId  L'ID del libro
+     * @param date    La data della prenotazione
+     * @param delta   La variazione delle prenotazioni
+     */
+    private void changeReservations(State current, Long bookId, LocalDate date, int delta) {
+
+        BookStats stats = current.books.get(bookId);
+
+        if (stats != null) {
+
+            stats.reservations.add(delta);
+        }
+
+        if (date != null) {
+
+            current.reservationsPerDay.computeIfAbsent(date, key -> new LongAdder()).add(delta);
+        }
+
+    }
+
+    /**
+     * Restituisce gli aggregati di un libro, creandoli senza copie se il libro è nuovo.
+     *
+     * @param current Gli aggregati
+     * @param bookId  L'ID del libro
+     * @param title   Il titolo del libro
+     * @return        Ritorna gli aggregati del libro
+     */
+    private BookStats bookStats(State current, Long bookId, String title) {
+
+        return current.books.computeIfAbsent(bookId, key -> {
+
+            current.zeroCopyBooks.increment();
+            return new BookStats(title, 0, 0);
+        });
+
+    }
+
+    /**
+     * Aggregati di tutto il catalogo.
+     */
+    private static final class State {
+
+        /**
+         * Aggregati per libro.
+         */
+        private final Map<Long, BookStats> books = new ConcurrentHashMap<>();
+
+        /**
+         * Somma delle copie disponibili.
+         */
+        private final LongAdder totalCopies = new LongAdder();
+
+        /**
+         * Numero di libri senza copie.
+         */
+        private final LongAdder zeroCopyBooks = new LongAdder();
+
+        /**
+         * Prenotazioni per data.
+         */
+        private final ConcurrentSkipListMap<LocalDate, LongAdder> reservationsPerDay = new ConcurrentSkipListMap<>();
+
+        /**
+         * Istante del ricalcolo dal database da cui derivano gli aggregati, null se mai eseguito.
+         */
+        private final Instant rebuiltAt;
+
+        /**
+         * Crea aggregati vuoti.
+         *
+         * @param rebuiltAt l'istante del ricalcolo dal database
+         */
+        private State(Instant rebuiltAt) {
+            this.rebuiltAt = rebuiltAt;
+        }
+
+    }
+
+    /**
+     * Aggregati di un libro.
+     */
+    private static final class BookStats {
+
+        /**
+         * Titolo del libro.
+         */
+        private volatile String title;
+
+        /**
+         * Copie disponibili.
+         */
+        private final AtomicInteger copies;
+
+        /**
+         * Numero di prenotazioni.
+         */
+        private final LongAdder reservations = new LongAdder();
+
+        /**
+         * Crea gli aggregati di un libro.
+         *
+         * @param title        il titolo
+         * @param copies       le copie disponibili
+         * @param reservations il numero di prenotazioni
+         */
+        private BookStats(String title, int copies, long reservations) {
+            this.title = title;
+            this.copies = new AtomicInteger(copies);
+            this.reservations.add(reservations);
+        }
+
+    }
+
+    /**
+     * Contenuto del file di checkpoint.
+     *
+     * @param rebuiltAt          l'istante dell'ultimo ricalcolo dal database
+     * @param books              gli aggregati di ogni libro
+     * @param reservationsPerDay le prenotazioni per data
+     */
+    record Checkpoint(Instant rebuiltAt, List<BookCheckpoint> books, Map<LocalDate, Long> reservationsPerDay) {}
+
+    /**
+     * Aggregati di un libro nel file di checkpoint.
+     *
+     * @param bookId       l'ID del libro
+     * @param title        il titolo
+     * @param copies       le copie disponibili
+     * @param reservations il numero di prenotazioni
+     */
+    record BookCheckpoint(Long bookId, String title, int copies, long reservations) {}
+
+}
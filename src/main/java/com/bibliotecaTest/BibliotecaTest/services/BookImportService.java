@@ -0,0 +1,203 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.BookImportReport;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contiene la logica dell'importazione in blocco dei libri.
+ * Il file viene letto un libro alla volta e i libri vengono salvati a blocchi, ognuno nella propria
+ * transazione, con gli INSERT raggruppati in batch JDBC. Un errore annulla solo il blocco in cui avviene.
+ * Utilizzando l'annotazione {@code @Service} si indica a Spring che questa classe è un componente di servizio.
+ * Con l'annotazione {@code @Timed} ogni metodo pubblico viene misurato nella metrica {@code biblioteca.service}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+@Timed("biblioteca.service")
+public class BookImportService {
+
+    /**
+     * Schema delle colonne del CSV: la prima riga del file deve contenere questi nomi.
+     */
+    private static final CsvSchema CSV_SCHEMA = CsvSchema.emptySchema().withHeader();
+
+    /**
+     * Mapper per il formato CSV.
+     */
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    /**
+     * ObjectMapper di Jackson configurato da Spring, usato per leggere JSON e NDJSON.
+     */
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * Gestore delle transazioni, usato per salvare ogni blocco in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * EntityManager condiviso, usato per salvare i libri e svuotare il contesto di persistenza.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Aggregati della dashboard, aggiornati con i libri di ogni blocco salvato.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Numero di libri salvati in ogni transazione.
+     */
+    @Value("${biblioteca.import.chunk-size:1000}")
+    int chunkSize;
+
+    /**
+     * Numero di libri inviati al database prima di svuotare il contesto di persistenza,
+     * allineato alla dimensione dei batch JDBC.
+     */
+    @Value("${biblioteca.jdbc.batch-size:50}")
+    int batchSize;
+
+    /**
+     * Importa i libri da un array JSON oppure da un file NDJSON (un libro JSON per riga).
+     *
+     * @param inputStream Il corpo della richiesta
+     * @return            Ritorna un oggetto ResponseEntity contenente il report dell'importazione
+     */
+    public ResponseEntity<BookImportReport> importJson(InputStream inputStream) {
+
+        return importBooks(objectMapper.readerFor(BookEntity.class), inputStream);
+
+    }
+
+    /**
+     * Importa i libri da un file CSV con intestazione.
+     * Le colonne riconosciute sono {@code title}, {@code author}, {@code description}
+     * e {@code numberOfCopiesAvailable}.
+     *
+     * @param inputStream Il corpo della richiesta
+     * @return            Ritorna un oggetto ResponseEntity contenente il report dell'importazione
+     */
+    public ResponseEntity<BookImportReport> importCsv(InputStream inputStream) {
+
+        return importBooks(CSV_MAPPER.readerFor(BookEntity.class).with(CSV_SCHEMA), inputStream);
+
+    }
+
+    /**
+     * Legge i libri uno alla volta e li salva a blocchi.
+     * Se il file non è leggibile l'importazione si interrompe, ma i blocchi già salvati restano nel database.
+     *
+     * @param reader      Il reader di Jackson per il formato del file
+     * @param inputStream Il corpo della richiesta
+     * @return            Ritorna un oggetto ResponseEntity contenente il report dell'importazione
+     */
+    private ResponseEntity<BookImportReport> importBooks(ObjectReader reader, InputStream inputStream) {
+
+        long start = System.nanoTime();
+        List<BookImportReport.Chunk> chunks = new ArrayList<>();
+        List<BookEntity> chunk = new ArrayList<>(chunkSize);
+        long rows = 0;
+        String parseError = null;
+
+        try (MappingIterator<BookEntity> books = reader.readValues(inputStream)) {
+
+            while (books.hasNextValue()) {
+
+                chunk.add(books.nextValue());
+                rows++;
+
+                if (chunk.size() == chunkSize) {
+
+                    chunks.add(saveChunk(chunks.size(), rows - chunk.size(), chunk));
+                    chunk.clear();
+                }
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            parseError = "Row " + rows + ": " + e.getMessage();
+        }
+
+        if (!chunk.isEmpty()) {
+
+            chunks.add(saveChunk(chunks.size(), rows - chunk.size(), chunk));
+        }
+
+        long imported = chunks.stream().mapToLong(BookImportReport.Chunk::imported).sum();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return ResponseEntity.ok(new BookImportReport(imported, rows - imported, elapsedMillis, chunks, parseError));
+
+    }
+
+    /**
+     * Salva un blocco di libri in una sola transazione, svuotando il contesto di persistenza
+     * ogni {@code batchSize} libri così che la memoria usata resti costante.
+     *
+     * @param index    Il numero del blocco
+     * @param firstRow Il numero della prima riga del blocco
+     * @param chunk    I libri da salvare
+     * @return         Ritorna l'esito del salvataggio del blocco
+     */
+    private BookImportReport.Chunk saveChunk(int index, long firstRow, List<BookEntity> chunk) {
+
+        long start = System.nanoTime();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        try {
+
+            transaction.executeWithoutResult(status -> {
+
+                for (int i = 0; i < chunk.size(); i++) {
+
+                    BookEntity book = chunk.get(i);
+                    book.setBookId(null);
+                    entityManager.persist(book);
+                    availabilityStatsService.bookSaved(book);
+
+                    if ((i + 1) % batchSize == 0) {
+
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+
+            });
+
+        } catch (RuntimeException e) {
+
+            return new BookImportReport.Chunk(index, firstRow, chunk.size(), 0,
+                    (System.nanoTime() - start) / 1_000_000, e.getMessage());
+        }
+
+        return new BookImportReport.Chunk(index, firstRow, chunk.size(), chunk.size(),
+                (System.nanoTime() - start) / 1_000_000, null);
+
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.BookSearchResult;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.search.engine.search.predicate.dsl.PredicateFinalStep;
+import org.hibernate.search.engine.search.predicate.dsl.SearchPredicateFactory;
+import org.hibernate.search.engine.search.query.SearchResult;
+import org.hibernate.search.mapper.orm.Search;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Contiene la logica della ricerca full-text sul catalogo dei libri.
+ * La ricerca usa l'indice Lucene di Hibernate Search su titolo, autore e descrizione,
+ * che viene aggiornato automaticamente quando un libro viene creato, modificato o eliminato.
+ * Utilizzando l'annotazione {@code @Service} si indica a Spring che questa classe è un componente di servizio.
+ * Con l'annotazione {@code @Timed} ogni metodo pubblico viene misurato nella metrica {@code biblioteca.service}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+@Timed("biblioteca.service")
+public class BookSearchService {
+
+    /**
+     * EntityManager condiviso, usato per aprire la sessione di ricerca di Hibernate Search.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * EntityManagerFactory, usata per la reindicizzazione completa del catalogo.
+     */
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Numero di risultati per pagina usato quando il client non ne specifica uno.
+     */
+    @Value("${biblioteca.search.page-size:20}")
+    int defaultPageSize;
+
+    /**
+     * Numero massimo di risultati per pagina che un client può richiedere.
+     */
+    @Value("${biblioteca.search.max-page-size:100}")
+    int maxPageSize;
+
+    /**
+     * Posizione massima del primo risultato di una pagina: Lucene deve raccogliere tutti i risultati
+     * che precedono la pagina, quindi le pagine troppo lontane vengono rifiutate.
+     */
+    @Value("${biblioteca.search.max-offset:10000}")
+    int maxOffset;
+
+    /**
+     * Numero di thread usati per caricare i libri durante la reindicizzazione completa.
+     */
+    @Value("${biblioteca.search.reindex-threads:4}")
+    int reindexThreads;
+
+    /**
+     * Cerca i libri il cui titolo, autore o descrizione contengono tutte le parole indicate.
+     * Ogni parola viene cercata sia come prefisso sia in modo approssimato, per tollerare errori di battitura;
+     * i risultati sono ordinati per rilevanza dando più peso al titolo e poi all'autore.
+     *
+     * @param query Il testo da cercare
+     * @param page  Il numero della pagina, partendo da 0
+     * @param size  Il numero di risultati per pagina, null per usare quello predefinito
+     * @return      Ritorna un oggetto ResponseEntity contenente la pagina di risultati,
+     *              status "204 No Content" se non ci sono risultati,
+     *              status "400 Bad Request" se il testo o la paginazione non sono validi, o se la pagina
+     *              inizia oltre {@code biblioteca.search.max-offset} risultati.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<BookSearchResult> searchBooks(String query, int page, Integer size) {
+
+        int pageSize = size == null ? defaultPageSize : size;
+        List<String> terms = query == null ? List.of() : Arrays.stream(query.toLowerCase(Locale.ROOT).split("\\s+"))
+                .map(term -> term.replace("*", "").replace("?", ""))
+                .filter(term -> !term.isBlank())
+                .toList();
+
+        if (terms.isEmpty() || page < 0 || pageSize <= 0 || pageSize > maxPageSize) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Calcolato come long, perché page * pageSize supera Integer.MAX_VALUE con pagine molto grandi
+        long offset = (long) page * pageSize;
+
+        if (offset > maxOffset) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        SearchResult<BookEntity> result = Search.session(entityManager)
+                .search(BookEntity.class)
+                .where(f -> f.bool(b -> {
+                    for (String term : terms) {
+                        b.must(termPredicate(f, term));
+                    }
+                }))
+                .fetch((int) offset, pageSize);
+
+        if (result.hits().isEmpty()) {
+
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok(new BookSearchResult(result.total().hitCount(), result.hits()));
+
+    }
+
+    /**
+     * Ricostruisce da zero l'indice di ricerca leggendo tutti i libri dal database.
+     * Da usare dopo modifiche fatte direttamente sul database o dopo la perdita della cartella dell'indice.
+     *
+     * @return Ritorna un oggetto ResponseEntity con status "200 OK" e il tempo impiegato,
+     *         status "503 Service Unavailable" se la reindicizzazione viene interrotta.
+     */
+    public ResponseEntity<String> reindexBooks() {
+
+        long start = System.nanoTime();
+
+        try {
+
+            Search.mapping(entityManagerFactory)
+                    .scope(BookEntity.class)
+                    .massIndexer()
+                    .threadsToLoadObjects(reindexThreads)
+                    .startAndWait();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Reindex interrupted");
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return ResponseEntity.ok("Catalog reindexed in " + elapsedMillis + " ms");
+
+    }
+
+    /**
+     * Costruisce il predicato di una singola parola: basta che corrisponda come prefisso
+     * oppure in modo approssimato in almeno uno dei campi indicizzati.
+     *
+     * @param f    La factory dei predicati di Hibernate Search
+     * @param term La parola da cercare, già in minuscolo
+     * @return     Ritorna il predicato della parola
+     */
+    private PredicateFinalStep termPredicate(SearchPredicateFactory f, String term) {
+
+        // Le parole molto corte non tollerano errori, altrimenti corrisponderebbero quasi a tutto
+        int maxEdits = term.length() < 3 ? 0 : term.length() < 6 ? 1 : 2;
+
+        return f.bool()
+                .should(f.match()
+                        .field("title").boost(3.0f)
+                        .field("author").boost(2.0f)
+                        .field("description")
+                        .matching(term)
+                        .fuzzy(maxEdits, 1))
+                .should(f.wildcard()
+                        .field("title").boost(3.0f)
+                        .field("author").boost(2.0f)
+                        .field("description")
+                        .matching(term + "*"));
+
+    }
+
+}
@@ -1,25 +1,58 @@
 package com.bibliotecaTest.BibliotecaTest.services;
 
+import com.bibliotecaTest.BibliotecaTest.config.OptimisticRetryExecutor;
+import com.bibliotecaTest.BibliotecaTest.dto.BookPage;
 import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
 import com.bibliotecaTest.BibliotecaTest.execptions.NotFoundException;
 import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Contiene la logica di business relativa ai libri.
  * Tutti i servizi relativi ai libri sono implementati in questa classe.
  * Utilizzando l'annotazione {@code @Service} si indica a Spring che questa classe è un componente di servizio.
+ * Con l'annotazione {@code @Timed} ogni metodo pubblico viene misurato nella metrica {@code biblioteca.service}.
  *
  * @author Drumstyle92
  */
 @Service
+@Timed("biblioteca.service")
 public class BookService {
 
+    /**
+     * Campi del libro che un client può modificare con un documento JSON Merge Patch.
+     */
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("title", "author", "description", "numberOfCopiesAvailable");
+
     /**
      * Utilizzando L'annotazione {@code @Autowired} diamo il compito a Spring di fare l'iniezione delle dipendenze.
      * Il questo modo semplifico il processo di collegamento tra il servizio e il repository dei libri.
@@ -27,6 +60,85 @@ public class BookService {
     @Autowired
     BookRepository bookRepository;
 
+    /**
+     * Inventario in memoria delle copie, da avvisare quando le copie di un libro cambiano.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Code di attesa dei libri, da avvisare quando le copie di un libro aumentano o il libro viene eliminato.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
+    /**
+     * Mappa delle versioni dei libri, usata per rispondere alle GET condizionali senza leggere il database.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Esecutore che ripete le modifiche fallite per un conflitto di versione.
+     */
+    @Autowired
+    OptimisticRetryExecutor optimisticRetryExecutor;
+
+    /**
+     * Aggregati della dashboard, aggiornati quando un libro viene creato, modificato o eliminato.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Feed delle copie disponibili, da avvisare quando le copie cambiano con un UPDATE che non passa dall'entità.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Servizio che applica i documenti JSON Merge Patch.
+     */
+    @Autowired
+    MergePatchService mergePatchService;
+
+    /**
+     * Servizio che elimina i libri insieme alle loro prenotazioni.
+     */
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    /**
+     * ObjectMapper di Jackson configurato da Spring, usato per scrivere i libri in formato NDJSON.
+     */
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * Gestore delle transazioni, usato per aprire una transazione di sola lettura durante lo streaming.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * EntityManager condiviso, usato per staccare dal contesto di persistenza i libri già scritti
+     * in modo che la memoria resti costante durante lo streaming.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Numero di libri per pagina usato quando il client non ne specifica uno.
+     */
+    @Value("${biblioteca.books.page-size:50}")
+    int defaultPageSize;
+
+    /**
+     * Numero massimo di libri per pagina che un client può richiedere.
+     */
+    @Value("${biblioteca.books.max-page-size:500}")
+    int maxPageSize;
+
     /**
      * Recupera tutte i libri presenti nel database.
      *
@@ -35,6 +147,7 @@ public class BookService {
      *         Utilizzando la classe ResponseEntity ottengo una risposta più dettagliata e personalizzabile
      *         infatti è stata creata per le chiamate API.
      */
+    @Transactional(readOnly = true)
     public ResponseEntity<List<BookEntity>> getAllBooks() {
 
         List<BookEntity> books = bookRepository.findAll();
@@ -50,22 +163,34 @@ public class BookService {
     }
 
     /**
-     * Recupera un libro attraverso il suo ID.
+     * Recupera un libro attraverso il suo ID, rispondendo alle GET condizionali.
+     * Se la versione del libro è già nota e coincide con quella indicata dal client negli header
+     * If-None-Match o If-Modified-Since, la risposta "304 Not Modified" viene data senza leggere il libro.
      *
-     * @param id  L'ID del libro
-     * @return    Ritorna un oggetto ResponseEntity contenente il libro trovata, se presente
-     * @throws    NotFoundException se il libro con l'ID specificato non è presente nel database
-     *                              ritorna un'eccezione personalizzata
+     * @param id      L'ID del libro
+     * @param request La richiesta HTTP, usata per gli header condizionali
+     * @return        Ritorna un oggetto ResponseEntity contenente il libro trovato con ETag e Last-Modified,
+     *                oppure status "304 Not Modified" se il client ha già la versione attuale
+     * @throws        NotFoundException se il libro con l'ID specificato non è presente nel database
+     *                                  ritorna un'eccezione personalizzata
      */
-    public ResponseEntity<BookEntity> getBookById(Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<BookEntity> getBookById(Long id, WebRequest request) {
+
+        if (resourceVersionService.bookNotModified(id, request)) {
+
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
 
+        long stamp = resourceVersionService.stamp();
         Optional<BookEntity> bookOptional = bookRepository.findById(id);
 
         if (bookOptional.isPresent()) {
 
             BookEntity book = bookOptional.get();
+            ResourceVersionService.ResourceVersion version = resourceVersionService.rememberBook(book, stamp);
 
-            return ResponseEntity.ok(book);
+            return version.applyTo(ResponseEntity.ok()).body(book);
 
         } else {
 
@@ -84,6 +209,7 @@ public class BookService {
     public ResponseEntity<BookEntity> createBook(BookEntity book) {
 
         BookEntity createdBook = bookRepository.save(book);
+        availabilityStatsService.bookSaved(createdBook);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(createdBook);
 
@@ -91,40 +217,215 @@ public class BookService {
 
     /**
      * Modifica i dati di un libro selezionandolo tramite l'ID.
+     * La modifica usa la versione del libro ({@code @Version}): se un'altra richiesta modifica il libro
+     * tra la lettura e il salvataggio, ad esempio prenotandone una copia, la modifica viene ripetuta
+     * sui dati attuali da {@link OptimisticRetryExecutor} invece di sovrascrivere l'altra.
+     * Se il client indica la versione che ha letto con l'header If-Match e il libro nel frattempo è cambiato,
+     * la modifica non viene ripetuta e il client riceve il libro attuale per decidere come procedere.
      *
      * @param id         L'ID del libro da aggiornare
      * @param bookEdited Oggetto BookEntity contenente i dati aggiornati del libro
-     * @return           Ritorna un oggetto ResponseEntity che contiene i dati aggiornati del libro, se presente
+     * @param ifMatch    Il valore dell'header If-Match, null se il client non indica una versione
+     * @return           Ritorna un oggetto ResponseEntity che contiene i dati aggiornati del libro, se presente,
+     *                   status "409 Conflict" con il libro e la versione attuali se la versione indicata
+     *                   non è più quella attuale o i tentativi si esauriscono,
+     *                   status "400 Bad Request" se l'header If-Match non è valido.
      * @throws           NotFoundException se il libro non viene trovato nel database
      *                                     lancia un'eccezione personalizzata
      */
-    public ResponseEntity<BookEntity> updateBook(Long id, BookEntity bookEdited) {
+    public ResponseEntity<BookEntity> updateBook(Long id, BookEntity bookEdited, String ifMatch) {
 
-        Optional<BookEntity> bookUpdate = bookRepository.findById(id);
+        Long expectedVersion;
 
-        if (bookUpdate.isPresent()) {
+        try {
 
-            BookEntity book = bookUpdate.get();
+            expectedVersion = ResourceVersionService.ResourceVersion.parseIfMatch(ifMatch);
 
-            book.setAuthor(bookEdited.getAuthor());
-            book.setTitle(bookEdited.getTitle());
-            book.setDescription(bookEdited.getDescription());
-            book.setNumberOfCopiesAvailable(bookEdited.getNumberOfCopiesAvailable());
+        } catch (IllegalArgumentException e) {
 
-            BookEntity updatedBook = bookRepository.saveAndFlush(book);
+            return ResponseEntity.badRequest().build();
+        }
 
-            return ResponseEntity.ok(updatedBook);
+        try {
 
-        } else {
+            return optimisticRetryExecutor.execute("updateBook", status -> {
 
-            throw new NotFoundException("Book not found");
+                Optional<BookEntity> bookUpdate = bookRepository.findById(id);
+
+                if (bookUpdate.isEmpty()) {
+
+                    throw new NotFoundException("Book not found");
+                }
+
+                BookEntity book = bookUpdate.get();
+
+                if (expectedVersion != null && book.getVersion() != expectedVersion) {
+
+                    return conflict(book);
+                }
+
+                book.setAuthor(bookEdited.getAuthor());
+                book.setTitle(bookEdited.getTitle());
+                book.setDescription(bookEdited.getDescription());
+                book.setNumberOfCopiesAvailable(bookEdited.getNumberOfCopiesAvailable());
+
+                BookEntity updatedBook = bookRepository.saveAndFlush(book);
+                reservationInventoryService.invalidateBook(id);
+                availabilityStatsService.bookSaved(updatedBook);
+                waitlistService.copiesReturned(id);
+
+                return versionOf(updatedBook).applyTo(ResponseEntity.ok()).body(updatedBook);
+            });
+
+        } catch (OptimisticLockingFailureException e) {
+
+            return conflict(bookRepository.findById(id).orElseThrow(() -> new NotFoundException("Book not found")));
+        }
+
+    }
+
+    /**
+     * Modifica solo i campi del libro indicati in un documento JSON Merge Patch.
+     * Se il client indica la versione con l'header If-Match, il documento modifica solo le copie disponibili
+     * e il libro non è nella cache di secondo livello, la modifica diventa un unico UPDATE condizionato alla
+     * versione, senza leggere prima il libro. Titolo, autore e descrizione passano sempre dall'entità,
+     * perché Hibernate Search aggiorna l'indice full-text solo quando l'entità viene salvata.
+     * Negli altri casi il libro viene letto e il documento applicato come in {@link #updateBook},
+     * ma con {@code @DynamicUpdate} l'UPDATE contiene solo le colonne cambiate.
+     *
+     * @param id      L'ID del libro da modificare
+     * @param patch   Il documento JSON Merge Patch
+     * @param ifMatch Il valore dell'header If-Match, null se il client non indica una versione
+     * @return        Ritorna un oggetto ResponseEntity con il libro aggiornato e la sua versione,
+     *                status "204 No Content" con la nuova versione se il libro è stato modificato senza leggerlo,
+     *                status "409 Conflict" con il libro e la versione attuali se la versione indicata
+     *                non è più quella attuale o i tentativi si esauriscono,
+     *                status "400 Bad Request" se il documento o l'header If-Match non sono validi.
+     * @throws        NotFoundException se il libro non viene trovato nel database
+     *                                  lancia un'eccezione personalizzata
+     */
+    public ResponseEntity<BookEntity> patchBook(Long id, JsonNode patch, String ifMatch) {
+
+        Long expectedVersion;
 
+        try {
+
+            expectedVersion = ResourceVersionService.ResourceVersion.parseIfMatch(ifMatch);
+            mergePatchService.validate(patch, BookEntity.class, PATCHABLE_FIELDS);
+
+        } catch (IllegalArgumentException e) {
+
+            return ResponseEntity.badRequest().build();
         }
 
+        boolean onlyCopies = patch.size() == 1 && patch.has("numberOfCopiesAvailable");
+
+        try {
+
+            if (expectedVersion != null && onlyCopies && !mergePatchService.isCached(BookEntity.class, id)) {
+
+                return patchBookCopies(id, patch, expectedVersion);
+            }
+
+            return optimisticRetryExecutor.execute("patchBook", status -> {
+
+                BookEntity book = bookRepository.findById(id).orElseThrow(() -> new NotFoundException("Book not found"));
+
+                if (expectedVersion != null && book.getVersion() != expectedVersion) {
+
+                    return conflict(book);
+                }
+
+                int previousCopies = book.getNumberOfCopiesAvailable();
+                mergePatchService.apply(book, patch);
+
+                BookEntity updatedBook = bookRepository.saveAndFlush(book);
+                availabilityStatsService.bookSaved(updatedBook);
+
+                if (updatedBook.getNumberOfCopiesAvailable() != previousCopies) {
+
+                    reservationInventoryService.invalidateBook(id);
+                    waitlistService.copiesReturned(id);
+                }
+
+                return versionOf(updatedBook).applyTo(ResponseEntity.ok()).body(updatedBook);
+            });
+
+        } catch (IllegalArgumentException e) {
+
+            return ResponseEntity.badRequest().build();
+
+        } catch (OptimisticLockingFailureException e) {
+
+            return conflict(bookRepository.findById(id).orElseThrow(() -> new NotFoundException("Book not found")));
+        }
+
+    }
+
+    /**
+     * Modifica le copie disponibili con un unico UPDATE condizionato alla versione, senza leggere il libro.
+     * L'UPDATE non passa da {@link com.bibliotecaTest.BibliotecaTest.config.ResourceVersionListener},
+     * quindi versione, feed, inventario, aggregati e coda di attesa vengono avvisati qui.
+     * Il libro viene letto solo se l'UPDATE non modifica nessuna riga, per distinguere "404" da "409".
+     *
+     * @param id              L'ID del libro
+     * @param patch           Il documento JSON Merge Patch, con le sole copie disponibili
+     * @param expectedVersion La versione indicata dal client
+     * @return                Ritorna la risposta "204 No Content" con la nuova versione,
+     *                        oppure "409 Conflict" con il libro attuale
+     */
+    private ResponseEntity<BookEntity> patchBookCopies(Long id, JsonNode patch, long expectedVersion) {
+
+        Instant now = Instant.now();
+        int copies = patch.get("numberOfCopiesAvailable").asInt();
+
+        return new TransactionTemplate(transactionManager).execute(status -> {
+
+            if (mergePatchService.update(BookEntity.class, "bookId", id, expectedVersion, patch, now) == 0) {
+
+                return conflict(bookRepository.findById(id).orElseThrow(() -> new NotFoundException("Book not found")));
+            }
+
+            resourceVersionService.evictBook(id);
+            availabilityFeedService.bookChanged(id);
+            reservationInventoryService.invalidateBook(id);
+            availabilityStatsService.copiesSet(id, copies);
+            waitlistService.copiesReturned(id);
+
+            return new ResourceVersionService.ResourceVersion(expectedVersion + 1, now)
+                    .applyTo(ResponseEntity.status(HttpStatus.NO_CONTENT)).build();
+        });
+
+    }
+
+    /**
+     * Crea la risposta "409 Conflict" con il libro attuale e la sua versione negli header ETag e Last-Modified.
+     *
+     * @param book Il libro attuale
+     * @return     Ritorna la risposta di conflitto
+     */
+    private ResponseEntity<BookEntity> conflict(BookEntity book) {
+
+        return versionOf(book).applyTo(ResponseEntity.status(HttpStatus.CONFLICT)).body(book);
+
     }
 
     /**
-     * Elimina un libro in base all'ID.
+     * Restituisce la versione del libro come inviata al client.
+     *
+     * @param book Il libro
+     * @return     Ritorna la versione del libro
+     */
+    private ResourceVersionService.ResourceVersion versionOf(BookEntity book) {
+
+        return new ResourceVersionService.ResourceVersion(book.getVersion(), book.getLastModified());
+
+    }
+
+    /**
+     * Elimina un libro in base all'ID, insieme alle sue prenotazioni.
+     * L'eliminazione è quella in blocco di {@link BulkDeleteService} con un solo ID: il libro non viene
+     * caricato e le prenotazioni che lo riferiscono vengono eliminate invece di far fallire il DELETE.
      *
      * @param id ID del libro da eliminare
      * @return Ritorna un oggetto ResponseEntity vuoto con uno status "OK" se il libro viene trovato ed eliminato,
@@ -132,11 +433,8 @@ public class BookService {
      */
     public ResponseEntity<Void> deleteBook(Long id) {
 
-        Optional<BookEntity> bookEntity = bookRepository.findById(id);
-
-        if (bookEntity.isPresent()) {
+        if (bulkDeleteService.deleteBook(id)) {
 
-            bookRepository.deleteById(id);
             return ResponseEntity.status(200).build();
 
         } else {
@@ -150,25 +448,179 @@ public class BookService {
 
 
     /**
-     * Restituisce il numero di copie disponibili di un libro specificato tramite ID.
+     * Restituisce il numero di copie disponibili di un libro specificato tramite ID, rispondendo alle GET
+     * condizionali con la stessa versione usata per il libro.
      *
-     * @param id L'ID del libro per il quale si desidera conoscere il numero di copie disponibili
-     * @return   Ritorna un oggetto ResponseEntity con status "200 OK" e un messaggio
-     *           contenente il numero di copie disponibili se esistono copie disponibili,
-     *           status "404 Not Found" e un messaggio di errore se il libro non esiste o non sono disponibili copie.
+     * @param id      L'ID del libro per il quale si desidera conoscere il numero di copie disponibili
+     * @param request La richiesta HTTP, usata per gli header condizionali
+     * @return        Ritorna un oggetto ResponseEntity con status "200 OK" e un messaggio
+     *                contenente il numero di copie disponibili se esistono copie disponibili,
+     *                status "304 Not Modified" se il client ha già la versione attuale,
+     *                status "404 Not Found" e un messaggio di errore se il libro non esiste o non sono disponibili copie.
      */
-    public ResponseEntity<String> copiesAvailableByBookId(Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<String> copiesAvailableByBookId(Long id, WebRequest request) {
 
-            Integer copiesAvailable = bookRepository.copiesAvailableByBookId(id);
+        if (resourceVersionService.bookNotModified(id, request)) {
 
-            if (copiesAvailable == null || copiesAvailable == 0) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
 
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body("Copies not available for book with ID: " + id);
+        long stamp = resourceVersionService.stamp();
+        Optional<BookEntity> bookOptional = bookRepository.findById(id);
+
+        if (bookOptional.isEmpty() || bookOptional.get().getNumberOfCopiesAvailable() == 0) {
+
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Copies not available for book with ID: " + id);
+        }
+
+        BookEntity book = bookOptional.get();
+        ResourceVersionService.ResourceVersion version = resourceVersionService.rememberBook(book, stamp);
+
+        return version.applyTo(ResponseEntity.ok()).body("Copies available: " + book.getNumberOfCopiesAvailable());
+
+    }
+
+    /**
+     * Recupera una pagina del catalogo usando la paginazione a cursore (keyset) sull'ID del libro.
+     * Il cursore è un valore opaco restituito dalla pagina precedente, se assente si parte dall'inizio.
+     *
+     * @param cursor Il cursore ottenuto dalla pagina precedente, null per la prima pagina
+     * @param size   Il numero di libri richiesti, null per usare la dimensione predefinita
+     * @return       Ritorna un oggetto ResponseEntity contenente la pagina di libri e il cursore successivo,
+     *               status "204 No Content" se non ci sono libri da restituire,
+     *               status "400 Bad Request" se il cursore o la dimensione della pagina non sono validi.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<BookPage> getBooksPage(String cursor, Integer size) {
+
+        int pageSize = size == null ? defaultPageSize : size;
+        Long lastBookId = decodeCursor(cursor);
+
+        if (pageSize <= 0 || pageSize > maxPageSize || lastBookId == null) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Si legge un libro in più per sapere se esiste una pagina successiva senza una COUNT
+        List<BookEntity> books = bookRepository.findByBookIdGreaterThanOrderByBookIdAsc(
+                lastBookId, PageRequest.of(0, pageSize + 1));
+
+        if (books.isEmpty()) {
+
+            return ResponseEntity.noContent().build();
+        }
+
+        String nextCursor = null;
+
+        if (books.size() > pageSize) {
+
+            books = books.subList(0, pageSize);
+            nextCursor = encodeCursor(books.get(pageSize - 1).getBookId());
+        }
+
+        return ResponseEntity.ok(new BookPage(books, nextCursor));
+
+    }
+
+    /**
+     * Scrive tutto il catalogo nella risposta in formato NDJSON (un libro JSON per riga),
+     * leggendo le righe dal cursore JDBC man mano che vengono scritte.
+     * In questo modo la memoria usata resta costante indipendentemente dalla dimensione del catalogo.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente il corpo della risposta da scrivere in streaming
+     */
+    public ResponseEntity<StreamingResponseBody> streamAllBooks() {
+
+        TransactionTemplate readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        StreamingResponseBody body = outputStream -> readOnlyTransaction.executeWithoutResult(status -> {
+
+            try (Stream<BookEntity> books = bookRepository.streamAllOrderByBookId()) {
+
+                writeNdjson(books.iterator(), outputStream);
+            }
+
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+
+    }
+
+    /**
+     * Scrive i libri sullo stream di uscita, una riga JSON per libro,
+     * staccando ogni libro dal contesto di persistenza dopo averlo scritto.
+     *
+     * @param books        I libri da scrivere
+     * @param outputStream Lo stream della risposta HTTP
+     */
+    private void writeNdjson(Iterator<BookEntity> books, OutputStream outputStream) {
+
+        try {
+
+            while (books.hasNext()) {
+
+                BookEntity book = books.next();
+                outputStream.write(objectMapper.writeValueAsBytes(book));
+                outputStream.write('\n');
+                entityManager.detach(book);
+            }
+
+            outputStream.flush();
+
+        } catch (IOException e) {
+
+            throw new UncheckedIOException(e);
+        }
+
+    }
+
+    /**
+     * Codifica l'ultimo ID letto in un cursore opaco per il client.
+     *
+     * @param bookId L'ultimo ID della pagina
+     * @return       Ritorna il cursore codificato in Base64 URL-safe
+     */
+    private String encodeCursor(Long bookId) {
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("book:" + bookId).getBytes(StandardCharsets.UTF_8));
+
+    }
+
+    /**
+     * Decodifica il cursore ricevuto dal client nell'ultimo ID letto.
+     *
+     * @param cursor Il cursore ricevuto, null o vuoto per la prima pagina
+     * @return       Ritorna l'ultimo ID letto, 0 per la prima pagina, null se il cursore non è valido
+     */
+    private Long decodeCursor(String cursor) {
+
+        if (cursor == null || cursor.isBlank()) {
+
+            return 0L;
+        }
+
+        try {
+
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+
+            if (!decoded.startsWith("book:")) {
+
+                return null;
             }
 
-            return ResponseEntity.ok("Copies available: " + copiesAvailable);
+            return Long.parseLong(decoded.substring("book:".length()));
+
+        } catch (IllegalArgumentException e) {
+
+            return null;
         }
 
     }
 
+}
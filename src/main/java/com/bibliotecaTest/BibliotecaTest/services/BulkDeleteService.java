@@ -0,0 +1,393 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.BulkDeleteReport;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.search.mapper.orm.Search;
+import org.hibernate.search.mapper.orm.work.SearchIndexingPlan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Elimina libri e utenti insieme alle loro prenotazioni con istruzioni in blocco, senza caricare le entità.
+ * Gli ID vengono ordinati ed eliminati a blocchi di {@code biblioteca.bulk-delete.chunk-size}, ognuno in una
+ * transazione: le righe da eliminare vengono prima bloccate, così che nessuna prenotazione possa essere creata
+ * nel frattempo, poi le prenotazioni collegate vengono eliminate con un solo DELETE e registrate nel registro
+ * degli eventi, che ne conserva lo storico. Eliminando un utente le copie delle sue prenotazioni tornano ai libri
+ * con pochi UPDATE in blocco, come nella scadenza delle prenotazioni.
+ * Gli UPDATE e i DELETE in blocco non passano dai listener JPA né da Hibernate Search, quindi versioni, feed,
+ * inventario, aggregati, code di attesa e indice full-text vengono avvisati qui.
+ * Un blocco che fallisce, ad esempio per un deadlock con una prenotazione concorrente, viene annullato e
+ * riportato nel report senza fermare gli altri: ripetere la richiesta elimina gli ID rimasti.
+ *
+ * @author Drumstyle92
+ */
+@Service
+@Timed("biblioteca.service")
+public class BulkDeleteService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BulkDeleteService.class);
+
+    /**
+     * Repository dei libri, usato per eliminare i libri e restituire le copie.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Repository degli utenti, usato per eliminare gli utenti.
+     */
+    @Autowired
+    UserRepository userRepository;
+
+    /**
+     * Repository delle prenotazioni, usato per leggere ed eliminare le prenotazioni collegate.
+     */
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Gestore delle transazioni, usato per eseguire ogni blocco in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * EntityManager condiviso, usato per togliere i libri eliminati dall'indice full-text.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Inventario in memoria delle copie, da avvisare per i libri e gli utenti eliminati.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Mappa delle versioni di libri e utenti, da aggiornare dopo ogni blocco.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Aggregati della dashboard, aggiornati per ogni libro e prenotazione eliminati.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni, dove restano le prenotazioni eliminate.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Code di attesa dei libri, da avvisare per i libri e gli utenti eliminati e per le copie restituite.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
+    /**
+     * Flusso della disponibilità, da avvisare per i libri eliminati o che riacquistano copie.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Registro delle metriche, usato per misurare la durata dei blocchi.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Numero massimo di ID eliminati in una singola transazione.
+     */
+    @Value("${biblioteca.bulk-delete.chunk-size:500}")
+    int chunkSize;
+
+    /**
+     * Numero massimo di ID accettati in una singola richiesta.
+     */
+    @Value("${biblioteca.bulk-delete.max-ids:10000}")
+    int maxIds;
+
+    /**
+     * Elimina i libri indicati con le loro prenotazioni.
+     *
+     * @param bookIds Gli ID dei libri da eliminare
+     * @return        Ritorna un oggetto ResponseEntity contenente il report dell'eliminazione con la durata
+     *                di ogni blocco, status "400 Bad Request" se la lista è vuota, contiene null o supera
+     *                il numero massimo di ID.
+     */
+    public ResponseEntity<BulkDeleteReport> deleteBooks(List<Long> bookIds) {
+
+        return deleteAll("book", bookIds, this::deleteBookChunk);
+
+    }
+
+    /**
+     * Elimina gli utenti indicati con le loro prenotazioni, restituendo le copie ai libri.
+     *
+     * @param userIds Gli ID degli utenti da eliminare
+     * @return        Ritorna un oggetto ResponseEntity contenente il report dell'eliminazione con la durata
+     *                di ogni blocco, status "400 Bad Request" se la lista è vuota, contiene null o supera
+     *                il numero massimo di ID.
+     */
+    public ResponseEntity<BulkDeleteReport> deleteUsers(List<Long> userIds) {
+
+        return deleteAll("user", userIds, this::deleteUserChunk);
+
+    }
+
+    /**
+     * Elimina un solo libro con le sue prenotazioni, come un blocco di un solo ID.
+     *
+     * @param bookId L'ID del libro
+     * @return       true se il libro esisteva ed è stato eliminato
+     */
+    public boolean deleteBook(Long bookId) {
+
+        return !deleteBookChunk(List.of(bookId)).deletedIds().isEmpty();
+
+    }
+
+    /**
+     * Elimina un solo utente con le sue prenotazioni, come un blocco di un solo ID.
+     *
+     * @param userId L'ID dell'utente
+     * @return       true se l'utente esisteva ed è stato eliminato
+     */
+    public boolean deleteUser(Long userId) {
+
+        return !deleteUserChunk(List.of(userId)).deletedIds().isEmpty();
+
+    }
+
+    /**
+     * Divide gli ID in blocchi ordinati e li elimina uno alla volta, misurando ogni blocco.
+     *
+     * @param entity      Il tipo di entità, usato come tag della metrica
+     * @param ids         Gli ID da eliminare
+     * @param deleteChunk L'eliminazione di un blocco
+     * @return            Ritorna il report dell'eliminazione, oppure "400 Bad Request"
+     */
+    private ResponseEntity<BulkDeleteReport> deleteAll(String entity, List<Long> ids,
+                                                       Function<List<Long>, DeletedChunk> deleteChunk) {
+
+        if (ids == null || ids.isEmpty() || ids.contains(null)) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Blocchi in ordine di ID: richieste concorrenti bloccano le righe sempre nello stesso ordine
+        List<Long> distinct = ids.stream().distinct().sorted().toList();
+
+        if (distinct.size() > maxIds) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        long start = System.nanoTime();
+        List<BulkDeleteReport.Chunk> chunks = new ArrayList<>();
+
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+
+            List<Long> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+            long chunkStart = System.nanoTime();
+            DeletedChunk result = null;
+            String error = null;
+
+            try {
+
+                result = deleteChunk.apply(chunk);
+
+            } catch (RuntimeException e) {
+
+                log.warn("Failed to delete {} chunk {} ({} ids)", entity, chunks.size(), chunk.size(), e);
+                error = e.getMessage();
+            }
+
+            long elapsedNanos = System.nanoTime() - chunkStart;
+            meterRegistry.timer("biblioteca.bulk-delete.chunk", "entity", entity, "outcome", error == null ? "deleted" : "failed")
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+            chunks.add(new BulkDeleteReport.Chunk(chunks.size(), chunk.size(),
+                    result == null ? 0 : result.deletedIds().size(),
+                    result == null ? 0 : result.reservationsDeleted(),
+                    elapsedNanos / 1_000_000, error));
+        }
+
+        return ResponseEntity.ok(new BulkDeleteReport(distinct.size(), (System.nanoTime() - start) / 1_000_000, chunks));
+
+    }
+
+    /**
+     * Elimina un blocco di libri e le loro prenotazioni in una sola transazione.
+     * Le copie delle prenotazioni non vengono restituite perché il libro stesso viene eliminato.
+     *
+     * @param ids Gli ID dei libri, ordinati
+     * @return    Ritorna gli ID eliminati e il numero di prenotazioni eliminate
+     */
+    private DeletedChunk deleteBookChunk(List<Long> ids) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        DeletedChunk chunk = transaction.execute(status -> {
+
+            List<Long> existing = bookRepository.lockExistingIds(ids);
+
+            if (existing.isEmpty()) {
+
+                return new DeletedChunk(List.of(), 0, Set.of());
+            }
+
+            List<Object[]> reservations = reservationRepository.findByBookIdsForUpdate(existing);
+
+            if (!reservations.isEmpty()) {
+
+                for (Object[] row : reservations) {
+
+                    LocalDate date = (LocalDate) row[3];
+
+                    availabilityStatsService.reservationDeleted((Long) row[2], date);
+                    reservationEventService.reservationDeleted((Long) row[0], (Long) row[1], (Long) row[2], date);
+                }
+
+                reservationRepository.deleteByBookIds(existing);
+            }
+
+            bookRepository.deleteByBookIds(existing);
+
+            SearchIndexingPlan indexingPlan = Search.session(entityManager).indexingPlan();
+
+            for (Long bookId : existing) {
+
+                indexingPlan.purge(BookEntity.class, bookId, null);
+                resourceVersionService.evictBook(bookId);
+                availabilityFeedService.bookChanged(bookId);
+                availabilityStatsService.bookDeleted(bookId);
+            }
+
+            return new DeletedChunk(existing, reservations.size(), Set.of());
+        });
+
+        if (chunk == null) {
+
+            return new DeletedChunk(List.of(), 0, Set.of());
+        }
+
+        chunk.deletedIds().forEach(reservationInventoryService::invalidateBook);
+        chunk.deletedIds().forEach(waitlistService::bookDeleted);
+
+        return chunk;
+
+    }
+
+    /**
+     * Elimina un blocco di utenti e le loro prenotazioni in una sola transazione,
+     * restituendo ai libri le copie delle prenotazioni eliminate.
+     *
+     * @param ids Gli ID degli utenti, ordinati
+     * @return    Ritorna gli ID eliminati, il numero di prenotazioni eliminate e i libri che hanno riavuto copie
+     */
+    private DeletedChunk deleteUserChunk(List<Long> ids) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        DeletedChunk chunk = transaction.execute(status -> {
+
+            List<Long> existing = userRepository.lockExistingIds(ids);
+
+            if (existing.isEmpty()) {
+
+                return new DeletedChunk(List.of(), 0, Set.of());
+            }
+
+            List<Object[]> reservations = reservationRepository.findByUserIdsForUpdate(existing);
+            Map<Long, Integer> copiesByBook = new HashMap<>();
+
+            if (!reservations.isEmpty()) {
+
+                for (Object[] row : reservations) {
+
+                    Long bookId = (Long) row[2];
+                    LocalDate date = (LocalDate) row[3];
+
+                    if (bookId != null) {
+
+                        copiesByBook.merge(bookId, 1, Integer::sum);
+                        availabilityStatsService.reservationDeleted(bookId, date);
+                        resourceVersionService.evictBook(bookId);
+                        availabilityFeedService.bookChanged(bookId);
+                    }
+
+                    reservationEventService.reservationDeleted((Long) row[0], (Long) row[1], bookId, date);
+                }
+
+                // Un UPDATE per ogni numero distinto di copie: di solito uno solo, con tutti i libri del blocco
+                Instant now = Instant.now();
+                copiesByBook.entrySet().stream()
+                        .collect(Collectors.groupingBy(Map.Entry::getValue,
+                                Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                        .forEach((copies, books) -> bookRepository.incrementCopiesAvailable(books, copies, now));
+
+                reservationRepository.deleteByUserIds(existing);
+            }
+
+            waitlistService.usersDeleted(existing);
+            userRepository.deleteByUserIds(existing);
+            existing.forEach(resourceVersionService::evictUser);
+
+            return new DeletedChunk(existing, reservations.size(), copiesByBook.keySet());
+        });
+
+        if (chunk == null) {
+
+            return new DeletedChunk(List.of(), 0, Set.of());
+        }
+
+        chunk.deletedIds().forEach(reservationInventoryService::invalidateUser);
+        chunk.bookIds().forEach(reservationInventoryService::invalidateBook);
+        chunk.bookIds().forEach(waitlistService::copiesReturned);
+
+        return chunk;
+
+    }
+
+    /**
+     * Esito di un blocco eliminato.
+     *
+     * @param deletedIds          gli ID eliminati
+     * @param reservationsDeleted il numero di prenotazioni collegate eliminate
+     * @param bookIds             gli ID dei libri a cui sono state restituite copie
+     */
+    record DeletedChunk(List<Long> deletedIds, int reservationsDeleted, Set<Long> bookIds) {}
+
+}
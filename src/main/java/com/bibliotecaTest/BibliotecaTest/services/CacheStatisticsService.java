@@ -0,0 +1,84 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.config.CacheConfig;
+import com.bibliotecaTest.BibliotecaTest.config.CacheEvictionCounter;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Raccoglie le statistiche della cache di secondo livello di Hibernate.
+ * Per ogni regione restituisce hit, miss, inserimenti, voci in memoria, voci rimosse e voci scadute.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class CacheStatisticsService {
+
+    /**
+     * EntityManagerFactory da cui si ottengono le statistiche di Hibernate.
+     */
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Contatore delle voci rimosse o scadute in ogni regione.
+     */
+    @Autowired
+    CacheEvictionCounter cacheEvictionCounter;
+
+    /**
+     * Recupera le statistiche di tutte le regioni della cache di secondo livello.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente le statistiche di ogni regione
+     */
+    public ResponseEntity<Map<String, Map<String, Long>>> getCacheStatistics() {
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        Map<String, Map<String, Long>> regions = new LinkedHashMap<>();
+        regions.put(CacheConfig.BOOK_REGION, regionStatistics(
+                CacheConfig.BOOK_REGION, statistics.getDomainDataRegionStatistics(CacheConfig.BOOK_REGION)));
+        regions.put(CacheConfig.USER_REGION, regionStatistics(
+                CacheConfig.USER_REGION, statistics.getDomainDataRegionStatistics(CacheConfig.USER_REGION)));
+        regions.put(CacheConfig.QUERY_RESULTS_REGION, regionStatistics(
+                CacheConfig.QUERY_RESULTS_REGION, statistics.getQueryRegionStatistics(CacheConfig.QUERY_RESULTS_REGION)));
+
+        return ResponseEntity.ok(regions);
+
+    }
+
+    /**
+     * Converte le statistiche di una regione in una mappa da restituire al client.
+     *
+     * @param region     il nome della regione
+     * @param statistics le statistiche di Hibernate della regione, null se non disponibili
+     * @return           Ritorna la mappa con i valori delle statistiche
+     */
+    private Map<String, Long> regionStatistics(String region, CacheRegionStatistics statistics) {
+
+        Map<String, Long> values = new LinkedHashMap<>();
+
+        if (statistics != null) {
+
+            values.put("hits", statistics.getHitCount());
+            values.put("misses", statistics.getMissCount());
+            values.put("puts", statistics.getPutCount());
+            values.put("elementsInMemory", statistics.getElementCountInMemory());
+        }
+
+        values.put("evictions", cacheEvictionCounter.getEvictions(region));
+        values.put("expirations", cacheEvictionCounter.getExpirations(region));
+
+        return values;
+
+    }
+
+}
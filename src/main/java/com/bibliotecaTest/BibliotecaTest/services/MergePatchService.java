@@ -0,0 +1,192 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applica i documenti JSON Merge Patch (RFC 7396) a libri e utenti.
+ * Un campo presente nel documento sostituisce il valore salvato, un campo null lo cancella e un campo assente
+ * resta invariato. Il documento può essere applicato all'entità già letta, e con {@code @DynamicUpdate}
+ * Hibernate aggiorna solo le colonne cambiate, oppure tradotto direttamente in un UPDATE JPQL condizionato
+ * alla versione, senza leggere l'entità. Il secondo modo conviene solo se l'entità non è nella cache
+ * di secondo livello: altrimenti leggerla non costa una query, mentre l'UPDATE in blocco invalida la regione.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class MergePatchService {
+
+    /**
+     * ObjectMapper di Jackson configurato da Spring, usato per convertire i valori del documento.
+     */
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * EntityManager condiviso, usato per costruire ed eseguire gli UPDATE parziali.
+     */
+    @PersistenceContext
+    EntityManager entityManager;
+
+    /**
+     * Controlla che il documento sia un oggetto JSON che modifica solo i campi consentiti,
+     * e che non cancelli campi che non possono essere null.
+     *
+     * @param patch     Il documento JSON Merge Patch
+     * @param entity    La classe dell'entità da modificare
+     * @param patchable I nomi dei campi che il client può modificare
+     * @throws IllegalArgumentException se il documento non è valido
+     */
+    public void validate(JsonNode patch, Class<?> entity, Set<String> patchable) {
+
+        if (patch == null || !patch.isObject() || patch.isEmpty()) {
+
+            throw new IllegalArgumentException("The patch must be a non-empty JSON object");
+        }
+
+        EntityType<?> type = entityManager.getMetamodel().entity(entity);
+
+        for (Iterator<Map.Entry<String, JsonNode>> fields = patch.fields(); fields.hasNext(); ) {
+
+            Map.Entry<String, JsonNode> field = fields.next();
+
+            if (!patchable.contains(field.getKey())) {
+
+                throw new IllegalArgumentException("Field " + field.getKey() + " cannot be patched");
+            }
+
+            if (field.getValue().isNull() && type.getAttribute(field.getKey()).getJavaType().isPrimitive()) {
+
+                throw new IllegalArgumentException("Field " + field.getKey() + " cannot be null");
+            }
+        }
+
+    }
+
+    /**
+     * Controlla se l'entità è nella cache di secondo livello, dove leggerla non costa una query.
+     *
+     * @param entity La classe dell'entità
+     * @param id     L'ID dell'entità
+     * @return       true se l'entità è in cache
+     */
+    public boolean isCached(Class<?> entity, Long id) {
+
+        return entityManager.getEntityManagerFactory().getCache().contains(entity, id);
+
+    }
+
+    /**
+     * Applica il documento all'entità già letta, che Hibernate salverà al commit.
+     *
+     * @param entity L'entità da modificare
+     * @param patch  Il documento JSON Merge Patch, già validato
+     * @param <T>    Il tipo dell'entità
+     * @throws IllegalArgumentException se un valore non è convertibile nel tipo del campo
+     */
+    public <T> void apply(T entity, JsonNode patch) {
+
+        try {
+
+            objectMapper.readerForUpdating(entity).readValue(patch);
+
+        } catch (JsonProcessingException e) {
+
+            throw new IllegalArgumentException("Invalid patch: " + e.getOriginalMessage(), e);
+
+        } catch (IOException e) {
+
+            throw new IllegalArgumentException("Invalid patch: " + e.getMessage(), e);
+        }
+
+    }
+
+    /**
+     * Traduce il documento in un unico UPDATE delle sole colonne indicate, eseguito solo se la versione
+     * salvata è quella attesa. Lo stesso UPDATE incrementa la versione e aggiorna la data di modifica,
+     * come farebbe Hibernate salvando l'entità.
+     * Come ogni UPDATE in blocco non passa dai listener JPA né da Hibernate Search, e invalida la regione
+     * della cache di secondo livello dell'entità: il chiamante deve avvisare gli altri componenti.
+     *
+     * @param entity          La classe dell'entità
+     * @param idAttribute     Il nome dell'attributo ID
+     * @param id              L'ID dell'entità
+     * @param expectedVersion La versione attesa
+     * @param patch           Il documento JSON Merge Patch, già validato
+     * @param now             La nuova data di modifica
+     * @return                Ritorna 1 se l'entità è stata aggiornata, 0 se non esiste o la versione è cambiata
+     * @throws IllegalArgumentException se un valore non è convertibile nel tipo del campo
+     */
+    public int update(Class<?> entity, String idAttribute, Long id, long expectedVersion, JsonNode patch, Instant now) {
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Object> update = builder.createCriteriaUpdate(castEntity(entity));
+        Root<Object> root = update.from(castEntity(entity));
+        EntityType<?> type = entityManager.getMetamodel().entity(entity);
+
+        for (Iterator<Map.Entry<String, JsonNode>> fields = patch.fields(); fields.hasNext(); ) {
+
+            Map.Entry<String, JsonNode> field = fields.next();
+            Class<?> javaType = type.getAttribute(field.getKey()).getJavaType();
+
+            update.set(field.getKey(), field.getValue().isNull() ? null : convert(field.getValue(), javaType));
+        }
+
+        update.set(root.<Long>get("version"), builder.sum(root.<Long>get("version"), 1L));
+        update.set("lastModified", now);
+        update.where(builder.equal(root.get(idAttribute), id), builder.equal(root.get("version"), expectedVersion));
+
+        return entityManager.createQuery(update).executeUpdate();
+
+    }
+
+    /**
+     * Converte un valore del documento nel tipo del campo.
+     *
+     * @param value    Il valore JSON
+     * @param javaType Il tipo del campo
+     * @return         Ritorna il valore convertito
+     * @throws IllegalArgumentException se il valore non è convertibile
+     */
+    private Object convert(JsonNode value, Class<?> javaType) {
+
+        try {
+
+            return objectMapper.treeToValue(value, javaType);
+
+        } catch (JsonProcessingException e) {
+
+            throw new IllegalArgumentException("Invalid value " + value + ": " + e.getOriginalMessage(), e);
+        }
+
+    }
+
+    /**
+     * Adatta la classe dell'entità al tipo generico richiesto dalla Criteria API.
+     *
+     * @param entity La classe dell'entità
+     * @return       Ritorna la stessa classe
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<Object> castEntity(Class<?> entity) {
+
+        return (Class<Object>) entity;
+
+    }
+
+}
@@ -0,0 +1,554 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEventEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationEventRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.SchedulerLeaseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro in sola aggiunta delle modifiche alle prenotazioni, scritto fuori dal thread della richiesta.
+ * I servizi registrano ogni prenotazione creata, spostata o eliminata; dopo il commit l'evento viene messo
+ * in una coda senza lock di capacità limitata, che un thread pianificato svuota a blocchi nella tabella
+ * {@code reservation_event}, un blocco per transazione.
+ * Se la coda è piena l'evento viene scartato e contato, così che il registro non rallenti mai le prenotazioni:
+ * la metrica {@code biblioteca.journal.queued} mostra il riempimento della coda e
+ * {@code biblioteca.journal.events} gli eventi accodati, scritti, scartati e persi dopo troppi errori.
+ * Gli ID degli eventi vengono da una sequenza pooled e con più istanze non seguono l'ordine dei commit:
+ * dopo la scrittura un'unica istanza alla volta, quella che possiede il lease {@code reservation-event-sequencer},
+ * assegna agli eventi già visibili una posizione crescente nel registro. Un evento scritto più tardi riceve quindi
+ * sempre una posizione più alta di quelle già lette, e nessun consumatore può superarlo.
+ * I consumatori rileggono il registro da una posizione con {@link #getEvents(Long, int)}, senza accedere
+ * alle tabelle delle prenotazioni. Il registro si disattiva con la proprietà {@code biblioteca.journal.enabled}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class ReservationEventService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReservationEventService.class);
+
+    /**
+     * Nome del lease dell'ordinamento degli eventi, creato dalle migrazioni.
+     */
+    static final String LEASE_NAME = "reservation-event-sequencer";
+
+    /**
+     * Identificativo di questa istanza come proprietaria del lease.
+     */
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    /**
+     * Evento in attesa di scrittura.
+     *
+     * @param event    l'evento da scrivere
+     * @param attempts il numero di tentativi di scrittura già falliti
+     */
+    record PendingEvent(ReservationEventEntity event, int attempts) {}
+
+    /**
+     * Repository degli eventi.
+     */
+    @Autowired
+    ReservationEventRepository reservationEventRepository;
+
+    /**
+     * Repository dei lease, usato per ordinare gli eventi su una sola istanza.
+     */
+    @Autowired
+    SchedulerLeaseRepository schedulerLeaseRepository;
+
+    /**
+     * Gestore delle transazioni, usato per scrivere ogni blocco di eventi in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Registro delle metriche, usato per il riempimento della coda e per gli esiti degli eventi.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Indica se il registro è attivo.
+     */
+    @Value("${biblioteca.journal.enabled:true}")
+    boolean enabled;
+
+    /**
+     * Numero massimo di eventi in attesa di scrittura.
+     */
+    @Value("${biblioteca.journal.capacity:100000}")
+    int capacity;
+
+    /**
+     * Numero massimo di eventi scritti in una singola transazione.
+     */
+    @Value("${biblioteca.journal.batch-size:500}")
+    int batchSize;
+
+    /**
+     * Numero massimo di tentativi di scrittura di un evento prima di scartarlo.
+     */
+    @Value("${biblioteca.journal.max-attempts:3}")
+    int maxAttempts;
+
+    /**
+     * Numero massimo di eventi restituiti da una lettura del registro.
+     */
+    @Value("${biblioteca.journal.max-replay-size:1000}")
+    int maxReplaySize;
+
+    /**
+     * Durata del lease dell'ordinamento in millisecondi, rinnovato prima di ogni blocco.
+     */
+    @Value("${biblioteca.journal.lease-ms:30000}")
+    long leaseMillis;
+
+    /**
+     * Coda degli eventi in attesa di scrittura.
+     */
+    private final ConcurrentLinkedQueue<PendingEvent> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Numero di eventi nella coda, mantenuto a parte perché {@code ConcurrentLinkedQueue.size()} scorre la coda.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Contatore degli eventi accodati.
+     */
+    private Counter enqueuedEvents;
+
+    /**
+     * Contatore degli eventi scritti sul database.
+     */
+    private Counter writtenEvents;
+
+    /**
+     * Contatore degli eventi scartati perché la coda era piena.
+     */
+    private Counter droppedEvents;
+
+    /**
+     * Contatore degli eventi scartati dopo {@code maxAttempts} scritture fallite.
+     */
+    private Counter failedEvents;
+
+    /**
+     * Registra le metriche del registro.
+     */
+    @PostConstruct
+    public void registerMetrics() {
+
+        enqueuedEvents = meterRegistry.counter("biblioteca.journal.events", "outcome", "enqueued");
+        writtenEvents = meterRegistry.counter("biblioteca.journal.events", "outcome", "written");
+        droppedEvents = meterRegistry.counter("biblioteca.journal.events", "outcome", "dropped");
+        failedEvents = meterRegistry.counter("biblioteca.journal.events", "outcome", "failed");
+
+        Gauge.builder("biblioteca.journal.queued", queued, AtomicInteger::get).register(meterRegistry);
+
+    }
+
+    /**
+     * Registra la creazione di una prenotazione già salvata.
+     *
+     * @param reservation La prenotazione creata
+     */
+    public void reservationCreated(ReservationEntity reservation) {
+
+        record(ReservationEventEntity.Type.CREATED, reservation, null, null);
+
+    }
+
+    /**
+     * Registra la creazione di una prenotazione salvata senza entità, ad esempio dall'API reattiva.
+     *
+     * @param reservationId L'ID della prenotazione creata
+     * @param userId        L'ID dell'utente
+     * @param bookId        L'ID del libro
+     * @param date          La data della prenotazione
+     */
+    public void reservationCreated(Long reservationId, Long userId, Long bookId, LocalDate date) {
+
+        record(ReservationEventEntity.Type.CREATED, reservationId, userId, bookId, date, null, null);
+
+    }
+
+    /**
+     * Registra lo spostamento di una prenotazione.
+     *
+     * @param reservation    La prenotazione aggiornata
+     * @param previousBookId L'ID del libro prenotato in precedenza
+     * @param previousDate   La data precedente
+     */
+    public void reservationMoved(ReservationEntity reservation, Long previousBookId, LocalDate previousDate) {
+
+        record(ReservationEventEntity.Type.MOVED, reservation, previousBookId, previousDate);
+
+    }
+
+    /**
+     * Registra lo spostamento di una prenotazione salvata senza entità, ad esempio dall'API reattiva.
+     *
+     * @param reservationId  L'ID della prenotazione spostata
+     * @param userId         L'ID dell'utente
+     * @param bookId         L'ID del nuovo libro
+     * @param date           La nuova data
+     * @param previousBookId L'ID del libro prenotato in precedenza
+     * @param previousDate   La data precedente
+     */
+    public void reservationMoved(Long reservationId, Long userId, Long bookId, LocalDate date,
+                                 Long previousBookId, LocalDate previousDate) {
+
+        record(ReservationEventEntity.Type.MOVED, reservationId, userId, bookId, date, previousBookId, previousDate);
+
+    }
+
+    /**
+     * Registra l'eliminazione di una prenotazione.
+     *
+     * @param reservation La prenotazione eliminata
+     */
+    public void reservationDeleted(ReservationEntity reservation) {
+
+        record(ReservationEventEntity.Type.DELETED, reservation, null, null);
+
+    }
+
+    /**
+     * Registra l'eliminazione di una prenotazione eliminata senza caricarne l'entità,
+     * ad esempio insieme al suo libro o al suo utente.
+     *
+     * @param reservationId L'ID della prenotazione eliminata
+     * @param userId        L'ID dell'utente
+     * @param bookId        L'ID del libro
+     * @param date          La data della prenotazione
+     */
+    public void reservationDeleted(Long reservationId, Long userId, Long bookId, LocalDate date) {
+
+        record(ReservationEventEntity.Type.DELETED, reservationId, userId, bookId, date, null, null);
+
+    }
+
+    /**
+     * Registra la scadenza di una prenotazione, eliminata senza caricarne l'entità.
+     *
+     * @param reservationId L'ID della prenotazione scaduta
+     * @param userId        L'ID dell'utente
+     * @param bookId        L'ID del libro
+     * @param date          La data della prenotazione
+     */
+    public void reservationExpired(Long reservationId, Long userId, Long bookId, LocalDate date) {
+
+        record(ReservationEventEntity.Type.EXPIRED, reservationId, userId, bookId, date, null, null);
+
+    }
+
+    /**
+     * Legge gli eventi successivi alla posizione indicata, in ordine di posizione nel registro.
+     * Gli eventi scritti ma non ancora ordinati compaiono alla lettura successiva, dopo quelli già restituiti.
+     * Con una replica configurata la lettura avviene sulla replica.
+     *
+     * @param after La posizione ({@code logPosition}) dell'ultimo evento già letto, 0 per leggere dall'inizio
+     * @param limit Il numero massimo di eventi da leggere
+     * @return      Ritorna un oggetto ResponseEntity contenente gli eventi,
+     *              status "204 No Content" se non ci sono eventi successivi,
+     *              status "400 Bad Request" se i parametri non sono validi.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<ReservationEventEntity>> getEvents(Long after, int limit) {
+
+        if (after == null || after < 0 || limit <= 0 || limit > maxReplaySize) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<ReservationEventEntity> events = reservationEventRepository.findByLogPositionGreaterThanOrderByLogPositionAsc(
+                after, PageRequest.of(0, limit));
+
+        if (events.isEmpty()) {
+
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok(events);
+
+    }
+
+    /**
+     * Scrive sul database gli eventi in attesa, a blocchi di dimensione massima {@code batchSize}.
+     * Gli eventi scritti non hanno ancora una posizione: la riceveranno da {@link #sequence()}.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.journal.flush-interval-ms:200}")
+    public void flush() {
+
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+        PendingEvent next;
+
+        while ((next = queue.poll()) != null) {
+
+            queued.decrementAndGet();
+            batch.add(next);
+
+            if (batch.size() == batchSize) {
+
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+
+            writeBatch(batch);
+        }
+
+    }
+
+    /**
+     * Assegna una posizione nel registro agli eventi scritti e non ancora ordinati, a blocchi di {@code batchSize},
+     * se questa istanza possiede il lease. Le posizioni continuano dall'ultima assegnata, quindi seguono l'ordine
+     * in cui gli eventi diventano visibili; l'indice univoco sulla posizione impedisce di assegnare la stessa
+     * posizione due volte anche se il lease passa a un'altra istanza durante un blocco.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.journal.sequence-interval-ms:200}")
+    public synchronized void sequence() {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int sequenced;
+
+        do {
+
+            if (!acquireLease()) {
+
+                return;
+            }
+
+            Integer count = transaction.execute(status -> {
+
+                List<ReservationEventEntity> events = reservationEventRepository
+                        .findByLogPositionIsNullOrderByOccurredAtAscEventIdAsc(PageRequest.of(0, batchSize));
+                long position = reservationEventRepository.maxLogPosition();
+
+                for (ReservationEventEntity event : events) {
+
+                    event.setLogPosition(++position);
+                }
+
+                return events.size();
+            });
+
+            sequenced = count == null ? 0 : count;
+
+        } while (sequenced == batchSize);
+
+    }
+
+    /**
+     * Acquisisce o rinnova il lease dell'ordinamento degli eventi.
+     *
+     * @return true se questa istanza possiede il lease
+     */
+    private boolean acquireLease() {
+
+        Instant now = Instant.now();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        Integer updated = transaction.execute(status -> schedulerLeaseRepository.acquire(
+                LEASE_NAME, instanceId, now, now.plusMillis(leaseMillis)));
+
+        return updated != null && updated == 1;
+
+    }
+
+    /**
+     * Scrive gli eventi rimasti in coda prima dello spegnimento dell'applicazione.
+     */
+    @PreDestroy
+    public void shutdown() {
+
+        flush();
+
+    }
+
+    /**
+     * Prepara l'evento con i dati attuali della prenotazione.
+     *
+     * @param type           Il tipo dell'evento
+     * @param reservation    La prenotazione modificata
+     * @param previousBookId L'ID del libro prima dello spostamento
+     * @param previousDate   La data prima dello spostamento
+     */
+    private void record(ReservationEventEntity.Type type, ReservationEntity reservation, Long previousBookId,
+                        LocalDate previousDate) {
+
+        Long userId = reservation.getUserReservation() == null ? null : reservation.getUserReservation().getUserId();
+        Long bookId = reservation.getBookReservation() == null ? null : reservation.getBookReservation().getBookId();
+
+        record(type, reservation.getReservationId(), userId, bookId, reservation.getDateReservation(),
+                previousBookId, previousDate);
+
+    }
+
+    /**
+     * Accoda l'evento dopo il commit della transazione in corso, così che le modifiche annullate
+     * non finiscano nel registro.
+     *
+     * @param type           Il tipo dell'evento
+     * @param reservationId  L'ID della prenotazione
+     * @param userId         L'ID dell'utente
+     * @param bookId         L'ID del libro
+     * @param date           La data della prenotazione
+     * @param previousBookId L'ID del libro prima dello spostamento
+     * @param previousDate   La data prima dello spostamento
+     */
+    private void record(ReservationEventEntity.Type type, Long reservationId, Long userId, Long bookId,
+                        LocalDate date, Long previousBookId, LocalDate previousDate) {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        Runnable enqueue = () -> enqueue(new ReservationEventEntity(type, reservationId, userId, bookId, date,
+                previousBookId, previousDate, Instant.now()));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue.run();
+                }
+            });
+        } else {
+
+            enqueue.run();
+        }
+
+    }
+
+    /**
+     * Mette l'evento in coda se c'è posto, altrimenti lo scarta.
+     *
+     * @param event L'evento da accodare
+     */
+    private void enqueue(ReservationEventEntity event) {
+
+        if (offer(new PendingEvent(event, 0))) {
+
+            enqueuedEvents.increment();
+        }
+
+    }
+
+    /**
+     * Mette in coda un evento nuovo o da ritentare se la coda non ha raggiunto {@code capacity},
+     * altrimenti lo scarta e lo conta tra gli eventi scartati.
+     *
+     * @param pendingEvent L'evento da accodare
+     * @return             true se l'evento è stato accodato
+     */
+    private boolean offer(PendingEvent pendingEvent) {
+
+        if (queued.incrementAndGet() > capacity) {
+
+            queued.decrementAndGet();
+            droppedEvents.increment();
+            return false;
+        }
+
+        queue.offer(pendingEvent);
+
+        return true;
+
+    }
+
+    /**
+     * Scrive un blocco di eventi in una sola transazione. Se la scrittura fallisce gli eventi tornano in coda
+     * fino a {@code maxAttempts} tentativi, solo se la coda ha ancora posto: con il database lento o irraggiungibile
+     * i nuovi tentativi non possono far crescere la coda oltre {@code capacity}.
+     *
+     * @param batch Gli eventi da scrivere
+     */
+    private void writeBatch(List<PendingEvent> batch) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        try {
+
+            transaction.executeWithoutResult(status ->
+                    reservationEventRepository.saveAll(batch.stream().map(PendingEvent::event).toList()));
+
+        } catch (RuntimeException e) {
+
+            log.error("Failed to write {} reservation events", batch.size(), e);
+
+            for (PendingEvent pendingEvent : batch) {
+
+                if (pendingEvent.attempts() + 1 < maxAttempts) {
+
+                    offer(new PendingEvent(copyOf(pendingEvent.event()), pendingEvent.attempts() + 1));
+                } else {
+
+                    failedEvents.increment();
+                }
+            }
+
+            return;
+        }
+
+        writtenEvents.increment(batch.size());
+
+    }
+
+    /**
+     * Copia un evento senza ID, perché dopo una transazione annullata l'ID assegnato non è più valido.
+     *
+     * @param event L'evento da copiare
+     * @return      Ritorna la copia dell'evento
+     */
+    private static ReservationEventEntity copyOf(ReservationEventEntity event) {
+
+        return new ReservationEventEntity(event.getType(), event.getReservationId(), event.getUserId(),
+                event.getBookId(), event.getDateReservation(), event.getPreviousBookId(),
+                event.getPreviousDateReservation(), event.getOccurredAt());
+
+    }
+
+}
@@ -0,0 +1,281 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.SchedulerLeaseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Elimina le prenotazioni scadute e restituisce le copie ai libri.
+ * Una prenotazione scade quando la sua data è più vecchia di {@code biblioteca.expiry.loan-days} giorni.
+ * Le prenotazioni scadute vengono lette a blocchi con una query sull'indice della data e bloccate fino al commit;
+ * le copie vengono restituite con pochi UPDATE in blocco, uno per ogni numero distinto di copie da restituire,
+ * e le prenotazioni eliminate con un solo DELETE, senza caricare le entità.
+ * Con più istanze l'attività viene eseguita solo da quella che possiede il lease {@code reservation-expiry}
+ * nella tabella {@code scheduler_lease}; la durata del lease deve superare la differenza tra gli orologi delle istanze.
+ * La scadenza è disattivata di default e si abilita con la proprietà {@code biblioteca.expiry.enabled}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class ReservationExpiryService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReservationExpiryService.class);
+
+    /**
+     * Nome del lease dell'attività, creato dalle migrazioni.
+     */
+    static final String LEASE_NAME = "reservation-expiry";
+
+    /**
+     * Identificativo di questa istanza come proprietaria del lease.
+     */
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+
+    /**
+     * Repository delle prenotazioni, usato per leggere ed eliminare le prenotazioni scadute.
+     */
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Repository dei libri, usato per restituire le copie.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Repository dei lease, usato per eseguire l'attività su una sola istanza.
+     */
+    @Autowired
+    SchedulerLeaseRepository schedulerLeaseRepository;
+
+    /**
+     * Gestore delle transazioni, usato per eseguire ogni blocco in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Inventario in memoria delle copie, da avvisare quando le copie di un libro cambiano.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Mappa delle versioni dei libri, da aggiornare dopo la restituzione delle copie.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Aggregati della dashboard, aggiornati per ogni prenotazione scaduta.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Code di attesa dei libri, a cui vanno prima le copie restituite dalle prenotazioni scadute.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
+    /**
+     * Flusso della disponibilità, da avvisare per i libri che riacquistano copie.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Registro delle metriche, usato per contare le prenotazioni scadute.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Indica se la scadenza delle prenotazioni è attiva.
+     */
+    @Value("${biblioteca.expiry.enabled:false}")
+    boolean enabled;
+
+    /**
+     * Durata del prestito in giorni: le prenotazioni più vecchie scadono.
+     */
+    @Value("${biblioteca.expiry.loan-days:30}")
+    int loanDays;
+
+    /**
+     * Numero massimo di prenotazioni eliminate in una singola transazione.
+     */
+    @Value("${biblioteca.expiry.batch-size:500}")
+    int batchSize;
+
+    /**
+     * Numero massimo di blocchi per esecuzione, così che un arretrato molto grande venga smaltito
+     * in più esecuzioni senza tenere occupato a lungo il thread dello scheduler.
+     */
+    @Value("${biblioteca.expiry.max-batches:20}")
+    int maxBatches;
+
+    /**
+     * Durata del lease in millisecondi, rinnovato prima di ogni blocco.
+     */
+    @Value("${biblioteca.expiry.lease-ms:300000}")
+    long leaseMillis;
+
+    /**
+     * Elimina le prenotazioni scadute a blocchi, finché ce ne sono o fino a {@code maxBatches} blocchi,
+     * se questa istanza possiede il lease.
+     */
+    @Scheduled(initialDelayString = "${biblioteca.expiry.interval-ms:60000}",
+            fixedDelayString = "${biblioteca.expiry.interval-ms:60000}")
+    public void expireReservations() {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        LocalDate cutoff = LocalDate.now().minusDays(loanDays);
+        long expired = 0;
+
+        for (int i = 0; i < maxBatches && acquireLease(); i++) {
+
+            int count = expireBatch(cutoff);
+            expired += count;
+
+            if (count < batchSize) {
+
+                break;
+            }
+        }
+
+        if (expired > 0) {
+
+            meterRegistry.counter("biblioteca.reservations.expired").increment(expired);
+            log.info("Expired {} reservations older than {}", expired, cutoff);
+        }
+
+    }
+
+    /**
+     * Acquisisce o rinnova il lease dell'attività.
+     *
+     * @return true se questa istanza possiede il lease
+     */
+    private boolean acquireLease() {
+
+        Instant now = Instant.now();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        Integer updated = transaction.execute(status -> schedulerLeaseRepository.acquire(
+                LEASE_NAME, instanceId, now, now.plusMillis(leaseMillis)));
+
+        return updated != null && updated == 1;
+
+    }
+
+    /**
+     * Elimina un blocco di prenotazioni scadute in una sola transazione e restituisce le copie ai libri.
+     *
+     * @param cutoff La prima data non scaduta
+     * @return       Ritorna il numero di prenotazioni eliminate
+     */
+    private int expireBatch(LocalDate cutoff) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        ExpiredBatch batch = transaction.execute(status -> {
+
+            List<Object[]> rows = reservationRepository.findExpiredForUpdate(cutoff, PageRequest.of(0, batchSize));
+
+            if (rows.isEmpty()) {
+
+                return new ExpiredBatch(0, Set.of());
+            }
+
+            List<Long> reservationIds = new ArrayList<>(rows.size());
+            Map<Long, Integer> copiesByBook = new HashMap<>();
+
+            for (Object[] row : rows) {
+
+                Long reservationId = (Long) row[0];
+                Long userId = (Long) row[1];
+                Long bookId = (Long) row[2];
+                LocalDate date = (LocalDate) row[3];
+
+                reservationIds.add(reservationId);
+
+                if (bookId != null) {
+
+                    copiesByBook.merge(bookId, 1, Integer::sum);
+                    availabilityStatsService.reservationDeleted(bookId, date);
+                    resourceVersionService.evictBook(bookId);
+                    availabilityFeedService.bookChanged(bookId);
+                }
+
+                reservationEventService.reservationExpired(reservationId, userId, bookId, date);
+            }
+
+            // Un UPDATE per ogni numero distinto di copie: di solito uno solo, con tutti i libri del blocco
+            Instant now = Instant.now();
+            copiesByBook.entrySet().stream()
+                    .collect(Collectors.groupingBy(Map.Entry::getValue,
+                            Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                    .forEach((copies, books) -> bookRepository.incrementCopiesAvailable(books, copies, now));
+
+            reservationRepository.deleteAllByIdInBatch(reservationIds);
+
+            return new ExpiredBatch(reservationIds.size(), copiesByBook.keySet());
+        });
+
+        if (batch == null) {
+
+            return 0;
+        }
+
+        batch.bookIds().forEach(reservationInventoryService::invalidateBook);
+        batch.bookIds().forEach(waitlistService::copiesReturned);
+
+        return batch.expired();
+
+    }
+
+    /**
+     * Esito di un blocco di prenotazioni scadute.
+     *
+     * @param expired il numero di prenotazioni eliminate
+     * @param bookIds gli ID dei libri a cui sono state restituite copie
+     */
+    record ExpiredBatch(int expired, Set<Long> bookIds) {}
+
+}
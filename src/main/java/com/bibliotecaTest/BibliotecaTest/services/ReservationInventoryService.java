@@ -0,0 +1,689 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.PendingReservationStatus;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inventario in memoria delle copie disponibili, posto davanti a {@code BookEntity.numberOfCopiesAvailable}.
+ * Per ogni libro mantiene un contatore atomico che permette di accettare o rifiutare una prenotazione
+ * senza interrogare il database; le prenotazioni accettate vengono poi scritte in modo asincrono,
+ * a blocchi, attraverso {@code ReservationRepository}.
+ * Ogni prenotazione accettata riceve un ID con cui il client può leggere l'esito della scrittura:
+ * se un blocco fallisce le sue prenotazioni vengono riscritte una alla volta, così che una riga non valida
+ * non faccia fallire le altre, e una prenotazione che non può essere scritta risulta {@code FAILED}
+ * invece di sparire dopo la risposta.
+ * I contatori vengono inizializzati al primo accesso e riallineati periodicamente con
+ * {@code BookRepository.copiesAvailableByBookId}. L'inventario è disattivato di default e si abilita
+ * con la proprietà {@code biblioteca.inventory.enabled}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class ReservationInventoryService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ReservationInventoryService.class);
+
+    /**
+     * Esito della richiesta di una copia all'inventario.
+     */
+    public enum Admission {
+
+        /**
+         * La copia è stata riservata e la prenotazione verrà scritta sul database.
+         */
+        ACCEPTED,
+
+        /**
+         * Il libro non ha copie disponibili.
+         */
+        NO_COPIES,
+
+        /**
+         * Il libro o l'utente non esistono.
+         */
+        NOT_FOUND
+
+    }
+
+    /**
+     * Esito della richiesta di una copia all'inventario, con l'ID assegnato alla prenotazione accettata.
+     *
+     * @param admission l'esito della richiesta
+     * @param ticket    l'ID con cui leggere lo stato della scrittura, null se la richiesta non è stata accettata
+     */
+    public record Result(Admission admission, Long ticket) {}
+
+    /**
+     * Prenotazione accettata dall'inventario e in attesa di essere scritta sul database.
+     *
+     * @param ticket   l'ID assegnato alla prenotazione accettata
+     * @param userId   l'ID dell'utente
+     * @param bookId   l'ID del libro
+     * @param date     la data della prenotazione
+     * @param attempts il numero di tentativi di scrittura già falliti
+     * @param retryAt  il momento, in millisecondi, da cui la scrittura può essere ritentata
+     */
+    record PendingReservation(long ticket, Long userId, Long bookId, LocalDate date, int attempts, long retryAt) {}
+
+    /**
+     * Repository dei libri, usato per leggere le copie e per il decremento condizionale in scrittura.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Repository delle prenotazioni, usato per scrivere le prenotazioni accettate.
+     */
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Repository degli utenti, usato per verificare l'esistenza di un utente la prima volta che prenota.
+     */
+    @Autowired
+    UserRepository userRepository;
+
+    /**
+     * Gestore delle transazioni, usato per scrivere ogni blocco di prenotazioni in una sola transazione.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Mappa delle versioni dei libri, da aggiornare quando le copie cambiano sul database.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Aggregati della dashboard, aggiornati dopo il commit di ogni blocco di prenotazioni.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni, a cui vengono aggiunte le prenotazioni di ogni blocco scritto.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Flusso della disponibilità, da avvisare quando le copie cambiano sul database.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Registro delle metriche, usato per contare gli esiti delle scritture.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Indica se l'inventario in memoria è attivo.
+     */
+    @Value("${biblioteca.inventory.enabled:false}")
+    boolean enabled;
+
+    /**
+     * Numero massimo di prenotazioni scritte in una singola transazione.
+     */
+    @Value("${biblioteca.inventory.batch-size:200}")
+    int batchSize;
+
+    /**
+     * Numero massimo di tentativi di scrittura di una prenotazione prima di scartarla.
+     */
+    @Value("${biblioteca.inventory.max-attempts:3}")
+    int maxAttempts;
+
+    /**
+     * Attesa prima del primo nuovo tentativo di scrittura, raddoppiata a ogni tentativo successivo.
+     */
+    @Value("${biblioteca.inventory.retry-backoff-ms:500}")
+    long retryBackoffMillis;
+
+    /**
+     * Per quanto tempo resta leggibile lo stato di una prenotazione dopo la fine della scrittura.
+     */
+    @Value("${biblioteca.inventory.status-ttl-ms:600000}")
+    long statusTtlMillis;
+
+    /**
+     * Copie ancora prenotabili per ogni libro, già al netto delle prenotazioni in attesa di scrittura.
+     */
+    private final Map<Long, AtomicInteger> copies = new ConcurrentHashMap<>();
+
+    /**
+     * Numero di prenotazioni accettate ma non ancora scritte per ogni libro.
+     */
+    private final Map<Long, AtomicInteger> pending = new ConcurrentHashMap<>();
+
+    /**
+     * ID degli utenti di cui è già stata verificata l'esistenza.
+     */
+    private final Set<Long> knownUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Coda delle prenotazioni accettate in attesa di scrittura.
+     */
+    private final ConcurrentLinkedQueue<PendingReservation> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Prenotazioni da riscrivere dopo un errore temporaneo, lette solo da {@link #flush()} una volta
+     * trascorsa l'attesa, così che non vengano ritentate subito nella stessa scrittura.
+     */
+    private final List<PendingReservation> retries = new ArrayList<>();
+
+    /**
+     * Stato della scrittura di ogni prenotazione accettata, per ID assegnato.
+     */
+    private final Map<Long, PendingReservationStatus> statuses = new ConcurrentHashMap<>();
+
+    /**
+     * Ultimo ID assegnato a una prenotazione accettata.
+     */
+    private final AtomicLong tickets = new AtomicLong();
+
+    /**
+     * Indica se l'inventario in memoria è attivo.
+     *
+     * @return true se le prenotazioni devono passare dall'inventario
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Prova a riservare una copia del libro per l'utente indicato senza accedere al database,
+     * tranne la prima volta che si incontrano il libro o l'utente.
+     * Il contatore in attesa viene incrementato prima di togliere la copia, in modo che il riallineamento
+     * concorrente non possa mai sovrastimare le copie disponibili.
+     *
+     * @param userId L'ID dell'utente che prenota
+     * @param bookId L'ID del libro da prenotare
+     * @return       Ritorna l'esito della richiesta e, se accettata, l'ID con cui leggere lo stato della scrittura
+     */
+    public Result reserve(Long userId, Long bookId) {
+
+        if (!knownUsers.contains(userId)) {
+
+            if (!userRepository.existsById(userId)) {
+
+                return new Result(Admission.NOT_FOUND, null);
+            }
+
+            knownUsers.add(userId);
+        }
+
+        AtomicInteger available = counterFor(bookId);
+
+        if (available == null) {
+
+            return new Result(Admission.NOT_FOUND, null);
+        }
+
+        AtomicInteger pendingForBook = pending.computeIfAbsent(bookId, id -> new AtomicInteger());
+        pendingForBook.incrementAndGet();
+
+        int current;
+
+        do {
+
+            current = available.get();
+
+            if (current <= 0) {
+
+                pendingForBook.decrementAndGet();
+                return new Result(Admission.NO_COPIES, null);
+            }
+
+        } while (!available.compareAndSet(current, current - 1));
+
+        long ticket = tickets.incrementAndGet();
+        statuses.put(ticket, new PendingReservationStatus(ticket, userId, bookId,
+                PendingReservationStatus.Status.PENDING, null, null, null));
+        queue.offer(new PendingReservation(ticket, userId, bookId, LocalDate.now(), 0, 0));
+
+        return new Result(Admission.ACCEPTED, ticket);
+
+    }
+
+    /**
+     * Restituisce lo stato della scrittura di una prenotazione accettata.
+     *
+     * @param ticket L'ID assegnato alla prenotazione accettata
+     * @return       Ritorna lo stato della scrittura, vuoto se l'ID non esiste o lo stato è scaduto
+     */
+    public Optional<PendingReservationStatus> status(long ticket) {
+
+        return Optional.ofNullable(statuses.get(ticket));
+
+    }
+
+    /**
+     * Scarta il contatore di un libro le cui copie sono state modificate sul database da un altro percorso,
+     * così che al prossimo accesso venga ricaricato. Se è in corso una transazione il contatore viene scartato
+     * di nuovo alla sua fine, perché un'accettazione concorrente potrebbe averlo ricaricato dai dati
+     * precedenti al commit.
+     *
+     * @param bookId L'ID del libro modificato
+     */
+    public void invalidateBook(Long bookId) {
+
+        copies.remove(bookId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    copies.remove(bookId);
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Scarta l'utente dall'elenco degli utenti verificati, ad esempio dopo la sua eliminazione.
+     *
+     * @param userId L'ID dell'utente
+     */
+    public void invalidateUser(Long userId) {
+
+        knownUsers.remove(userId);
+
+    }
+
+    /**
+     * Scrive sul database le prenotazioni in attesa, a blocchi di dimensione massima {@code batchSize},
+     * insieme a quelle da ritentare la cui attesa è trascorsa.
+     * Ogni blocco viene scritto in una sola transazione e il decremento condizionale sul database resta
+     * l'ultima garanzia contro la vendita di copie inesistenti.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.inventory.flush-interval-ms:200}")
+    public void flush() {
+
+        flush(false);
+
+    }
+
+    /**
+     * Scrive sul database le prenotazioni in attesa e quelle da ritentare, e scarta gli stati scaduti.
+     * È sincronizzato perché la scrittura pianificata e quella dello spegnimento non si sovrappongano.
+     *
+     * @param force Se true ritenta subito anche le prenotazioni la cui attesa non è ancora trascorsa
+     */
+    private synchronized void flush(boolean force) {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<PendingReservation> batch = new ArrayList<>(batchSize);
+
+        for (Iterator<PendingReservation> due = retries.iterator(); due.hasNext(); ) {
+
+            PendingReservation retry = due.next();
+
+            if (force || retry.retryAt() <= now) {
+
+                due.remove();
+                batch.add(retry);
+
+                if (batch.size() == batchSize) {
+
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        PendingReservation next;
+
+        while ((next = queue.poll()) != null) {
+
+            batch.add(next);
+
+            if (batch.size() == batchSize) {
+
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+
+            writeBatch(batch);
+        }
+
+        statuses.values().removeIf(status -> status.getCompletedAt() != null
+                && status.getCompletedAt().toEpochMilli() + statusTtlMillis < now);
+
+    }
+
+    /**
+     * Riallinea i contatori in memoria con le copie salvate sul database, sottraendo le prenotazioni
+     * ancora in attesa di scrittura. All'avvio non ci sono contatori da riallineare, perché ognuno viene
+     * caricato dal database al primo accesso al libro, quindi il primo riallineamento parte dopo un intervallo.
+     */
+    @Scheduled(initialDelayString = "${biblioteca.inventory.reconcile-interval-ms:30000}",
+            fixedDelayString = "${biblioteca.inventory.reconcile-interval-ms:30000}")
+    public void reconcile() {
+
+        if (!enabled) {
+
+            return;
+        }
+
+        for (Map.Entry<Long, AtomicInteger> entry : copies.entrySet()) {
+
+            Long bookId = entry.getKey();
+            AtomicInteger available = entry.getValue();
+
+            while (true) {
+
+                // L'ordine delle letture (contatore, attese, database) rende la stima sempre prudente
+                int current = available.get();
+                int inFlight = pendingCount(bookId);
+                Integer stored = bookRepository.copiesAvailableByBookId(bookId);
+
+                if (stored == null) {
+
+                    copies.remove(bookId, available);
+                    break;
+                }
+
+                if (available.compareAndSet(current, Math.max(0, stored - inFlight))) {
+
+                    break;
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Scrive le prenotazioni rimaste in coda prima dello spegnimento dell'applicazione,
+     * ritentando subito anche quelle in attesa di un nuovo tentativo.
+     */
+    @PreDestroy
+    public void shutdown() {
+
+        flush(true);
+
+    }
+
+    /**
+     * Restituisce il contatore del libro, caricandolo dal database se non è ancora in memoria.
+     *
+     * @param bookId L'ID del libro
+     * @return       Ritorna il contatore del libro, null se il libro non esiste
+     */
+    private AtomicInteger counterFor(Long bookId) {
+
+        AtomicInteger available = copies.get(bookId);
+
+        if (available != null) {
+
+            return available;
+        }
+
+        Integer stored = bookRepository.copiesAvailableByBookId(bookId);
+
+        if (stored == null) {
+
+            return null;
+        }
+
+        return copies.computeIfAbsent(bookId,
+                id -> new AtomicInteger(Math.max(0, stored - pendingCount(id))));
+
+    }
+
+    /**
+     * Scrive un blocco di prenotazioni in una sola transazione.
+     * Se la transazione fallisce, ad esempio per la chiave esterna di un utente eliminato nel frattempo,
+     * nessuna riga è stata scritta e le prenotazioni vengono riscritte una alla volta con {@link #writeOne}.
+     *
+     * @param batch Le prenotazioni da scrivere
+     */
+    private void writeBatch(List<PendingReservation> batch) {
+
+        Map<PendingReservation, ReservationEntity> written;
+
+        try {
+
+            written = new TransactionTemplate(transactionManager).execute(status -> insert(batch));
+
+        } catch (RuntimeException e) {
+
+            log.warn("Failed to write {} reservations in one transaction, writing them one by one", batch.size(), e);
+            batch.forEach(this::writeOne);
+
+            return;
+        }
+
+        written.forEach(this::completed);
+
+    }
+
+    /**
+     * Scrive una sola prenotazione nella propria transazione.
+     * Un errore temporaneo, come un timeout di lock, rimette la prenotazione tra quelle da ritentare dopo
+     * un'attesa crescente, fino a {@code maxAttempts} tentativi; qualsiasi altro errore, o l'ultimo tentativo,
+     * la segna come fallita.
+     *
+     * @param pendingReservation La prenotazione da scrivere
+     */
+    private void writeOne(PendingReservation pendingReservation) {
+
+        Map<PendingReservation, ReservationEntity> written;
+
+        try {
+
+            written = new TransactionTemplate(transactionManager).execute(status -> insert(List.of(pendingReservation)));
+
+        } catch (RuntimeException e) {
+
+            boolean transientError = e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException;
+
+            if (transientError && pendingReservation.attempts() + 1 < maxAttempts) {
+
+                long backoff = retryBackoffMillis << pendingReservation.attempts();
+
+                log.warn("Retrying reservation of book {} for user {} in {} ms",
+                        pendingReservation.bookId(), pendingReservation.userId(), backoff, e);
+                retries.add(new PendingReservation(pendingReservation.ticket(), pendingReservation.userId(),
+                        pendingReservation.bookId(), pendingReservation.date(), pendingReservation.attempts() + 1,
+                        System.currentTimeMillis() + backoff));
+                recordWrite("retried");
+
+                return;
+            }
+
+            log.error("Failed to write reservation of book {} for user {}",
+                    pendingReservation.bookId(), pendingReservation.userId(), e);
+            failed(pendingReservation, NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+
+            // La transazione è stata annullata, quindi la copia tolta in memoria non è stata tolta sul database
+            AtomicInteger available = copies.get(pendingReservation.bookId());
+
+            if (available != null) {
+
+                available.incrementAndGet();
+            }
+
+            invalidateUser(pendingReservation.userId());
+
+            return;
+        }
+
+        written.forEach(this::completed);
+
+    }
+
+    /**
+     * Inserisce le prenotazioni nella transazione corrente, togliendo una copia a ogni libro con
+     * il decremento condizionale.
+     *
+     * @param batch Le prenotazioni da scrivere
+     * @return      Ritorna la prenotazione salvata per ogni prenotazione in attesa, null se il libro
+     *              non aveva più copie sul database
+     */
+    private Map<PendingReservation, ReservationEntity> insert(List<PendingReservation> batch) {
+
+        Map<PendingReservation, ReservationEntity> written = new LinkedHashMap<>();
+        List<ReservationEntity> reservations = new ArrayList<>(batch.size());
+
+        for (PendingReservation pendingReservation : batch) {
+
+            if (bookRepository.decrementCopiesAvailable(pendingReservation.bookId()) == 0) {
+
+                written.put(pendingReservation, null);
+                continue;
+            }
+
+            resourceVersionService.evictBook(pendingReservation.bookId());
+            availabilityFeedService.bookChanged(pendingReservation.bookId());
+            availabilityStatsService.reservationCreated(pendingReservation.bookId(), pendingReservation.date());
+
+            ReservationEntity reservation = new ReservationEntity();
+            reservation.setUserReservation(userRepository.getReferenceById(pendingReservation.userId()));
+            reservation.setBookReservation(bookRepository.getReferenceById(pendingReservation.bookId()));
+            reservation.setDateReservation(pendingReservation.date());
+            reservations.add(reservation);
+            written.put(pendingReservation, reservation);
+        }
+
+        reservationRepository.saveAll(reservations);
+        reservations.forEach(reservationEventService::reservationCreated);
+
+        return written;
+
+    }
+
+    /**
+     * Aggiorna lo stato di una prenotazione dopo il commit della sua transazione.
+     * Se il libro non aveva più copie sul database il contatore in memoria era troppo ottimista:
+     * la prenotazione risulta fallita e il contatore viene ricaricato al prossimo accesso.
+     *
+     * @param pendingReservation La prenotazione in attesa
+     * @param reservation        La prenotazione salvata, null se il libro non aveva più copie
+     */
+    private void completed(PendingReservation pendingReservation, ReservationEntity reservation) {
+
+        if (reservation == null) {
+
+            log.warn("Reservation of book {} for user {} rejected: no copies left on the database",
+                    pendingReservation.bookId(), pendingReservation.userId());
+            failed(pendingReservation, "No copies left on the database");
+            invalidateBook(pendingReservation.bookId());
+
+            return;
+        }
+
+        statuses.put(pendingReservation.ticket(), new PendingReservationStatus(pendingReservation.ticket(),
+                pendingReservation.userId(), pendingReservation.bookId(), PendingReservationStatus.Status.WRITTEN,
+                reservation.getReservationId(), null, Instant.now()));
+        releasePending(pendingReservation.bookId());
+        recordWrite("written");
+
+    }
+
+    /**
+     * Segna una prenotazione come non scritta.
+     *
+     * @param pendingReservation La prenotazione in attesa
+     * @param error              Il motivo del fallimento
+     */
+    private void failed(PendingReservation pendingReservation, String error) {
+
+        statuses.put(pendingReservation.ticket(), new PendingReservationStatus(pendingReservation.ticket(),
+                pendingReservation.userId(), pendingReservation.bookId(), PendingReservationStatus.Status.FAILED,
+                null, error, Instant.now()));
+        releasePending(pendingReservation.bookId());
+        recordWrite("failed");
+
+    }
+
+    /**
+     * Incrementa il contatore {@code biblioteca.inventory.writes} con l'esito della scrittura di una prenotazione.
+     *
+     * @param outcome L'esito della scrittura: written, retried oppure failed
+     */
+    private void recordWrite(String outcome) {
+
+        meterRegistry.counter("biblioteca.inventory.writes", "outcome", outcome).increment();
+
+    }
+
+    /**
+     * Decrementa il numero di prenotazioni in attesa di un libro.
+     *
+     * @param bookId L'ID del libro
+     */
+    private void releasePending(Long bookId) {
+
+        AtomicInteger pendingForBook = pending.get(bookId);
+
+        if (pendingForBook != null) {
+
+            pendingForBook.decrementAndGet();
+        }
+
+    }
+
+    /**
+     * Restituisce il numero di prenotazioni in attesa di scrittura di un libro.
+     *
+     * @param bookId L'ID del libro
+     * @return       Ritorna il numero di prenotazioni in attesa
+     */
+    private int pendingCount(Long bookId) {
+
+        AtomicInteger pendingForBook = pending.get(bookId);
+
+        return pendingForBook == null ? 0 : pendingForBook.get();
+
+    }
+
+}
@@ -1,5 +1,10 @@
 package com.bibliotecaTest.BibliotecaTest.services;
 
+import com.bibliotecaTest.BibliotecaTest.config.OptimisticRetryExecutor;
+import com.bibliotecaTest.BibliotecaTest.dto.BatchReservationResult;
+import com.bibliotecaTest.BibliotecaTest.dto.PendingReservationStatus;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationListing;
+import com.bibliotecaTest.BibliotecaTest.dto.ReservationSummary;
 import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
 import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
 import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
@@ -7,24 +12,53 @@ import com.bibliotecaTest.BibliotecaTest.execptions.NotFoundException;
 import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
 import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
 import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.net.URI;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Contiene la logica di business relativa alle prenotazioni.
  * Tutti i servizi relativi alle prenotazioni sono implementati in questa classe.
  * Utilizzando l'annotazione {@code @Service} si indica a Spring che questa classe è un componente di servizio.
+ * Con l'annotazione {@code @Timed} ogni metodo pubblico viene misurato nella metrica {@code biblioteca.service}.
  *
  * @author Drumstyle92
  */
 @Service
+@Timed("biblioteca.service")
 public class ReservationService {
 
+    /**
+     * Data usata come limite inferiore quando lo storico non ne indica uno: è la prima data valida
+     * per il tipo DATE di MySQL, così che la query usi sempre lo stesso intervallo sull'indice.
+     */
+    private static final LocalDate FIRST_DATE = LocalDate.of(1000, 1, 1);
+
+    /**
+     * Data usata come limite superiore quando lo storico non ne indica uno, l'ultima valida per MySQL.
+     */
+    private static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+
     /**
      * Utilizzando L'annotazione {@code @Autowired} diamo il compito a Spring di fare l'iniezione delle dipendenze.
      * Il questo modo semplifico il processo di collegamento tra il servizio e il repository delle prenotazioni.
@@ -46,6 +80,68 @@ public class ReservationService {
     @Autowired
     BookRepository bookRepository;
 
+    /**
+     * Inventario in memoria delle copie, usato per accettare le prenotazioni senza accedere al database
+     * quando è abilitato con la proprietà {@code biblioteca.inventory.enabled}.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Registro delle metriche, usato per contare le prenotazioni accettate e rifiutate.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Mappa delle versioni dei libri, da aggiornare quando le copie cambiano con un UPDATE in blocco.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Aggregati della dashboard, aggiornati a ogni prenotazione creata, spostata o eliminata.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni, scritto in modo asincrono dopo il commit.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Code di attesa dei libri: un libro con richieste in attesa non accetta prenotazioni dirette,
+     * e le copie restituite vengono assegnate prima alla coda.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
+    /**
+     * Flusso della disponibilità, da avvisare quando le copie cambiano con un UPDATE in blocco.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Esecutore che ripete le modifiche fallite per un conflitto di versione.
+     */
+    @Autowired
+    OptimisticRetryExecutor optimisticRetryExecutor;
+
+    /**
+     * Numero massimo di prenotazioni per pagina che un client può richiedere.
+     */
+    @Value("${biblioteca.reservations.max-page-size:500}")
+    int maxPageSize;
+
+    /**
+     * Numero massimo di libri che si possono prenotare con una sola richiesta multipla.
+     */
+    @Value("${biblioteca.reservations.max-batch-size:50}")
+    int maxBatchSize;
+
     /**
      * Recupera tutte le prenotazioni presenti nel database.
      *
@@ -54,6 +150,7 @@ public class ReservationService {
      *         Utilizzando la classe ResponseEntity ottengo una risposta più dettagliata e personalizzabile
      *         infatti è stata creata per le chiamate API.
      */
+    @Transactional(readOnly = true)
     public ResponseEntity<List<ReservationEntity>> getAllReservations() {
 
         List<ReservationEntity> reservations = reservationRepository.findAll();
@@ -68,6 +165,143 @@ public class ReservationService {
 
     }
 
+    /**
+     * Recupera tutte le prenotazioni in forma piatta, con libri e utenti elencati una sola volta.
+     * Le prenotazioni vengono lette con la stessa query di {@link #getAllReservations()}.
+     *
+     * @return Ritorna un oggetto ResponseEntity contenente l'elenco piatto delle prenotazioni, se presenti,
+     *         altrimenti una risposta vuota con stato HTTP 204 No Content.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<ReservationListing> getReservationListing() {
+
+        List<ReservationEntity> reservations = reservationRepository.findAll();
+
+        if (!reservations.isEmpty()) {
+
+            return ResponseEntity.ok(ReservationListing.of(reservations));
+        } else {
+
+            return ResponseEntity.noContent().build();
+        }
+
+    }
+
+    /**
+     * Recupera una pagina di prenotazioni come proiezione ridotta con ID, titolo del libro e nome dell'utente.
+     * Ogni pagina viene letta con un'unica query, indipendentemente dal numero di libri e utenti coinvolti.
+     *
+     * @param page Il numero della pagina, partendo da 0
+     * @param size Il numero di prenotazioni per pagina
+     * @return     Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni,
+     *             status "204 No Content" se la pagina è vuota,
+     *             status "400 Bad Request" se la paginazione non è valida.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<Slice<ReservationSummary>> getReservationsPage(int page, int size) {
+
+        if (page < 0 || size <= 0 || size > maxPageSize) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        Slice<ReservationSummary> reservations = reservationRepository.findAllSummaries(PageRequest.of(page, size));
+
+        if (reservations.hasContent()) {
+
+            return ResponseEntity.ok(reservations);
+        } else {
+
+            return ResponseEntity.noContent().build();
+        }
+
+    }
+
+    /**
+     * Recupera una pagina delle prenotazioni di un utente, dalla più recente, eventualmente limitate
+     * a un intervallo di date.
+     *
+     * @param userId L'ID dell'utente
+     * @param from   La prima data compresa, null per nessun limite
+     * @param to     L'ultima data compresa, null per nessun limite
+     * @param page   Il numero della pagina, partendo da 0
+     * @param size   Il numero di prenotazioni per pagina
+     * @return       Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni,
+     *               status "204 No Content" se la pagina è vuota,
+     *               status "404 Not Found" se l'utente non esiste,
+     *               status "400 Bad Request" se la paginazione o l'intervallo non sono validi.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<Slice<ReservationSummary>> getUserReservations(Long userId, LocalDate from, LocalDate to,
+                                                                         int page, int size) {
+
+        if (!isValidHistoryRequest(from, to, page, size)) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        Slice<ReservationSummary> reservations = reservationRepository.findUserHistory(userId,
+                from == null ? FIRST_DATE : from, to == null ? LAST_DATE : to, PageRequest.of(page, size));
+
+        if (reservations.hasContent()) {
+
+            return ResponseEntity.ok(reservations);
+        }
+
+        return userRepository.existsById(userId) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+
+    }
+
+    /**
+     * Recupera una pagina delle prenotazioni di un libro, dalla più recente, eventualmente limitate
+     * a un intervallo di date.
+     *
+     * @param bookId L'ID del libro
+     * @param from   La prima data compresa, null per nessun limite
+     * @param to     L'ultima data compresa, null per nessun limite
+     * @param page   Il numero della pagina, partendo da 0
+     * @param size   Il numero di prenotazioni per pagina
+     * @return       Ritorna un oggetto ResponseEntity contenente la pagina di prenotazioni,
+     *               status "204 No Content" se la pagina è vuota,
+     *               status "404 Not Found" se il libro non esiste,
+     *               status "400 Bad Request" se la paginazione o l'intervallo non sono validi.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<Slice<ReservationSummary>> getBookReservations(Long bookId, LocalDate from, LocalDate to,
+                                                                         int page, int size) {
+
+        if (!isValidHistoryRequest(from, to, page, size)) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        Slice<ReservationSummary> reservations = reservationRepository.findBookHistory(bookId,
+                from == null ? FIRST_DATE : from, to == null ? LAST_DATE : to, PageRequest.of(page, size));
+
+        if (reservations.hasContent()) {
+
+            return ResponseEntity.ok(reservations);
+        }
+
+        return bookRepository.existsById(bookId) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+
+    }
+
+    /**
+     * Controlla paginazione e intervallo di date di una richiesta dello storico delle prenotazioni.
+     *
+     * @param from La prima data, può essere null
+     * @param to   L'ultima data, può essere null
+     * @param page Il numero della pagina
+     * @param size Il numero di prenotazioni per pagina
+     * @return     true se la richiesta è valida
+     */
+    private boolean isValidHistoryRequest(LocalDate from, LocalDate to, int page, int size) {
+
+        return page >= 0 && size > 0 && size <= maxPageSize && (from == null || to == null || !from.isAfter(to));
+
+    }
+
     /**
      * Recupera una prenotazione attraverso il suo ID.
      *
@@ -76,6 +310,7 @@ public class ReservationService {
      * @throws    NotFoundException se la prenotazione con l'ID specificato non è presente nel database
      *                              ritorna un'eccezione personalizzata
      */
+    @Transactional(readOnly = true)
     public ResponseEntity<ReservationEntity> getReservationById(Long id) {
 
         Optional<ReservationEntity> reservationOptional = reservationRepository.findById(id);
@@ -105,41 +340,199 @@ public class ReservationService {
      *               - ResponseEntity con status "400 Bad Request" e un messaggio di errore se il libro
      *                 non è al momento disponibile per la prenotazione.
      *               - ResponseEntity con status "404 Not Found" se l'utente o il libro non esistono nel database.
+     *               Le copie vengono decrementate con un UPDATE condizionale atomico e l'annotazione
+     *               {@code @Transactional} garantisce che prenotazione e decremento vengano salvati insieme.
+     *               Se l'inventario in memoria è abilitato la richiesta viene accettata o rifiutata da
+     *               {@link ReservationInventoryService} e la prenotazione viene scritta in modo asincrono:
+     *               la risposta è "202 Accepted", con l'indirizzo da cui leggere l'esito della scrittura
+     *               nell'header Location.
+     *               Se il libro ha richieste in coda la prenotazione viene rifiutata come se non ci fossero copie,
+     *               così che le copie restituite vadano a chi è in attesa da più tempo.
      */
+    @Transactional
     public ResponseEntity<String> createReservation(Long userId, Long bookId ) {
 
+        if (waitlistService.hasWaiters(bookId)) {
+
+            recordOutcome("no_copies");
+            return ResponseEntity.badRequest().body("The book is not currently available for pre-order.");
+        }
+
+        if (reservationInventoryService.isEnabled()) {
+
+            ReservationInventoryService.Result result = reservationInventoryService.reserve(userId, bookId);
+            recordOutcome(result.admission().name().toLowerCase());
+
+            return switch (result.admission()) {
+                case ACCEPTED -> ResponseEntity.accepted()
+                        .location(URI.create("/apiReservation/pending/" + result.ticket()))
+                        .body("Reservation accepted, pending write with ticket " + result.ticket());
+                case NO_COPIES -> ResponseEntity.badRequest().body("The book is not currently available for pre-order.");
+                case NOT_FOUND -> ResponseEntity.notFound().build();
+            };
+        }
+
+        Optional<UserEntity> userOp = userRepository.findById(userId);
+
+        if (userOp.isEmpty()) {
+
+            recordOutcome("not_found");
+            return ResponseEntity.notFound().build();
+        }
+
+        // Il controllo delle copie e il decremento avvengono in un unico UPDATE condizionale
+        if (bookRepository.decrementCopiesAvailable(bookId) == 0) {
+
+            if (!bookRepository.existsById(bookId)) {
+
+                recordOutcome("not_found");
+                return ResponseEntity.notFound().build();
+            }
+
+            recordOutcome("no_copies");
+            return ResponseEntity.badRequest().body("The book is not currently available for pre-order.");
+        }
+
+        resourceVersionService.evictBook(bookId);
+        availabilityFeedService.bookChanged(bookId);
+
+        ReservationEntity reservation = new ReservationEntity();
+        reservation.setUserReservation(userOp.get());
+        reservation.setBookReservation(bookRepository.getReferenceById(bookId));
+        reservation.setDateReservation(LocalDate.now());
+
+        reservationRepository.save(reservation);
+        availabilityStatsService.reservationCreated(bookId, reservation.getDateReservation());
+        reservationEventService.reservationCreated(reservation);
+
+        recordOutcome("accepted");
+        return ResponseEntity.status(200).body("Book booked successfully!");
+
+    }
+
+    /**
+     * Recupera lo stato della scrittura di una prenotazione accettata dall'inventario in memoria.
+     *
+     * @param ticket L'ID assegnato alla prenotazione accettata
+     * @return       Ritorna un oggetto ResponseEntity contenente lo stato della scrittura
+     * @throws       NotFoundException se l'ID non esiste o il suo stato è scaduto
+     */
+    public ResponseEntity<PendingReservationStatus> getPendingReservation(long ticket) {
+
+        return reservationInventoryService.status(ticket)
+                .map(ResponseEntity::ok)
+                .orElseThrow(() -> new NotFoundException("Pending reservation not found"));
+
+    }
+
+    /**
+     * Prenota più libri per lo stesso utente in un'unica transazione.
+     * I libri vengono letti tutti con una sola query che ne blocca le righe, le copie vengono decrementate
+     * sulle entità lette e le prenotazioni inserite insieme, così che Hibernate invii UPDATE e INSERT
+     * raggruppati in batch JDBC invece di eseguire le query di una prenotazione singola per ogni libro.
+     * Un libro presente più volte nella richiesta viene prenotato più volte, se ha abbastanza copie.
+     *
+     * @param userId  L'ID dell'utente per il quale creare le prenotazioni
+     * @param bookIds Gli ID dei libri da prenotare
+     * @param partial Se true prenota i libri disponibili anche se altri non lo sono,
+     *                se false prenota tutti i libri oppure nessuno
+     * @return        Ritorna un oggetto ResponseEntity contenente l'esito di ogni libro:
+     *                - status "200 OK" se tutti i libri sono stati prenotati, oppure in modalità parziale;
+     *                - status "400 Bad Request" se un libro non ha copie disponibili e nessun libro è stato prenotato;
+     *                - status "404 Not Found" se un libro non esiste e nessun libro è stato prenotato;
+     *                - status "404 Not Found" senza corpo se l'utente non esiste;
+     *                - status "400 Bad Request" senza corpo se la lista dei libri è vuota o troppo lunga.
+     */
+    @Transactional
+    public ResponseEntity<BatchReservationResult> createReservations(Long userId, List<Long> bookIds, boolean partial) {
+
+        if (bookIds == null || bookIds.isEmpty() || bookIds.size() > maxBatchSize || bookIds.contains(null)) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
         Optional<UserEntity> userOp = userRepository.findById(userId);
-        Optional<BookEntity> bookOp = bookRepository.findById(bookId);
 
-        if (userOp.isPresent() && bookOp.isPresent()) {
+        if (userOp.isEmpty()) {
+
+            recordOutcome("not_found");
+            return ResponseEntity.notFound().build();
+        }
 
-            UserEntity user = userOp.get();
-            BookEntity book = bookOp.get();
+        Map<Long, BookEntity> books = bookRepository.findAllByIdForUpdate(new HashSet<>(bookIds)).stream()
+                .collect(Collectors.toMap(BookEntity::getBookId, Function.identity()));
 
-            if (book.getNumberOfCopiesAvailable() > 0) {
+        List<BatchReservationResult.Item> items = new ArrayList<>(bookIds.size());
+        List<ReservationEntity> reservations = new ArrayList<>(bookIds.size());
+        LocalDate today = LocalDate.now();
 
-                ReservationEntity reservation = new ReservationEntity();
-                reservation.setUserReservation(user);
-                reservation.setBookReservation(book);
-                reservation.setDateReservation(LocalDate.now());
+        for (Long bookId : bookIds) {
 
-                reservationRepository.saveAndFlush(reservation);
+            BookEntity book = books.get(bookId);
+            BatchReservationResult.Outcome outcome;
 
-                book.setNumberOfCopiesAvailable((book.getNumberOfCopiesAvailable() - 1));
+            if (book == null) {
 
-                bookRepository.saveAndFlush(book);
+                outcome = BatchReservationResult.Outcome.NOT_FOUND;
+            } else if (book.getNumberOfCopiesAvailable() <= 0 || waitlistService.hasWaiters(bookId)) {
 
-                return ResponseEntity.status(200).body("Book booked successfully!");
+                outcome = BatchReservationResult.Outcome.NO_COPIES;
             } else {
 
-                return ResponseEntity.badRequest().body("The book is not currently available for pre-order.");
+                book.setNumberOfCopiesAvailable(book.getNumberOfCopiesAvailable() - 1);
+                reservations.add(new ReservationEntity(null, today, book, userOp.get()));
+                outcome = BatchReservationResult.Outcome.ACCEPTED;
             }
 
+            items.add(new BatchReservationResult.Item(bookId, outcome));
+        }
+
+        boolean failed = reservations.size() < bookIds.size();
+
+        if (failed && !partial) {
+
+            // Le copie decrementate sulle entità non devono arrivare al database
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+            items = items.stream()
+                    .map(item -> item.outcome() == BatchReservationResult.Outcome.ACCEPTED
+                            ? new BatchReservationResult.Item(item.bookId(), BatchReservationResult.Outcome.ROLLED_BACK)
+                            : item)
+                    .toList();
         } else {
 
-            return ResponseEntity.notFound().build();
+            reservationRepository.saveAll(reservations);
+            books.keySet().forEach(reservationInventoryService::invalidateBook);
+            reservations.forEach(reservation -> availabilityStatsService.reservationCreated(
+                    reservation.getBookReservation().getBookId(), reservation.getDateReservation()));
+            reservations.forEach(reservationEventService::reservationCreated);
         }
 
+        items.forEach(item -> recordOutcome(item.outcome().name().toLowerCase()));
+
+        BatchReservationResult result = new BatchReservationResult(userId, partial, items);
+
+        if (!failed || partial) {
+
+            return ResponseEntity.ok(result);
+        }
+
+        boolean missingBook = items.stream()
+                .anyMatch(item -> item.outcome() == BatchReservationResult.Outcome.NOT_FOUND);
+
+        return ResponseEntity.status(missingBook ? 404 : 400).body(result);
+
+    }
+
+    /**
+     * Incrementa il contatore {@code biblioteca.reservations} con l'esito della richiesta di prenotazione.
+     *
+     * @param outcome L'esito della richiesta: accepted, no_copies, not_found oppure rolled_back
+     */
+    private void recordOutcome(String outcome) {
+
+        meterRegistry.counter("biblioteca.reservations", "outcome", outcome).increment();
+
     }
 
 
@@ -148,77 +541,164 @@ public class ReservationService {
      * Aggiorna una prenotazione specificata tramite l'ID della prenotazione,
      * modificando la data, l'utente e il libro associato, inoltre aggiunge una copia disponibile
      * al libro precedentemente prenotato e ne toglie una a quello nuovo.
+     * Prenotazione e libri hanno una versione ({@code @Version}): se una richiesta concorrente modifica
+     * la prenotazione o le copie di uno dei due libri prima del salvataggio, l'aggiornamento viene ripetuto
+     * sui dati attuali da {@link OptimisticRetryExecutor}, così che nessuna delle due modifiche vada persa.
      *
      * @param reservationId L'ID della prenotazione da aggiornare
      * @param date          La nuova data di prenotazione da assegnare
      * @param userId        L'ID del nuovo utente associato alla prenotazione
      * @param bookId        L'ID del nuovo libro associato alla prenotazione
+     * @param ifMatch       Il valore dell'header If-Match con la versione letta dal client, null se assente
      * @return              Ritorna un oggetto ResponseEntity con status "200 OK" e
      *                      l'oggetto ReservationEntity aggiornato
-     *                      se l'aggiornamento è avvenuto con successo.
+     *                      se l'aggiornamento è avvenuto con successo,
+     *                      status "409 Conflict" con la prenotazione e la versione attuali se la versione
+     *                      indicata non è più quella attuale o i tentativi si esauriscono,
+     *                      status "400 Bad Request" se l'header If-Match non è valido
+     *                      o se il nuovo libro non ha copie disponibili o ha richieste in coda.
      * @throws              NotFoundException Se la prenotazione, l'utente o il libro non esistono nel database viene
      *                                        lanciata un'eccezione personalizzata
      */
-    public ResponseEntity<ReservationEntity> updateReservation(Long reservationId, LocalDate date, Long userId, Long bookId) {
+    public ResponseEntity<ReservationEntity> updateReservation(Long reservationId, LocalDate date, Long userId,
+                                                               Long bookId, String ifMatch) {
 
-        Optional<ReservationEntity> reservationUpdate = reservationRepository.findById(reservationId);
-        Optional<UserEntity> userUpdate = userRepository.findById(userId);
-        Optional<BookEntity> bookUpdate = bookRepository.findById(bookId);
-        if (reservationUpdate.isPresent() && userUpdate.isPresent() && bookUpdate.isPresent()) {
+        Long expectedVersion;
 
-            ReservationEntity reservation = reservationUpdate.get();
-            reservation.getBookReservation().setNumberOfCopiesAvailable(
-                    (reservation.getBookReservation().getNumberOfCopiesAvailable() + 1));
+        try {
 
-            UserEntity userEntity = userUpdate.get();
-            BookEntity bookEntity = bookUpdate.get();
-            bookEntity.setNumberOfCopiesAvailable((bookEntity.getNumberOfCopiesAvailable() - 1));
+            expectedVersion = ResourceVersionService.ResourceVersion.parseIfMatch(ifMatch);
 
+        } catch (IllegalArgumentException e) {
 
-            reservation.setDateReservation(date);
-            reservation.setUserReservation(userEntity);
-            reservation.setBookReservation(bookEntity);
+            return ResponseEntity.badRequest().build();
+        }
 
+        try {
 
-            ReservationEntity updatedReservation = reservationRepository.saveAndFlush(reservation);
+            return optimisticRetryExecutor.execute("updateReservation", status -> {
 
-            return ResponseEntity.ok(updatedReservation);
+                Optional<ReservationEntity> reservationUpdate = reservationRepository.findById(reservationId);
+                Optional<UserEntity> userUpdate = userRepository.findById(userId);
+                Optional<BookEntity> bookUpdate = bookRepository.findById(bookId);
 
-        } else {
+                if (reservationUpdate.isEmpty() || userUpdate.isEmpty() || bookUpdate.isEmpty()) {
+
+                    throw new NotFoundException("Reservation not found");
+                }
+
+                ReservationEntity reservation = reservationUpdate.get();
+
+                if (expectedVersion != null && reservation.getVersion() != expectedVersion) {
+
+                    return conflict(reservation);
+                }
+
+                Long previousBookId = reservation.getBookReservation().getBookId();
+                LocalDate previousDate = reservation.getDateReservation();
+                UserEntity userEntity = userUpdate.get();
+                BookEntity bookEntity = bookUpdate.get();
+
+                // Restando sullo stesso libro la copia restituita compensa quella tolta; le copie di un libro
+                // con richieste in coda spettano a chi è in attesa, come in createReservation
+                if (!previousBookId.equals(bookId)
+                        && (bookEntity.getNumberOfCopiesAvailable() <= 0 || waitlistService.hasWaiters(bookId))) {
+
+                    return ResponseEntity.badRequest().<ReservationEntity>build();
+                }
+
+                reservation.getBookReservation().setNumberOfCopiesAvailable(
+                        (reservation.getBookReservation().getNumberOfCopiesAvailable() + 1));
+                bookEntity.setNumberOfCopiesAvailable((bookEntity.getNumberOfCopiesAvailable() - 1));
+
+
+                reservation.setDateReservation(date);
+                reservation.setUserReservation(userEntity);
+                reservation.setBookReservation(bookEntity);
 
-            throw new NotFoundException("Reservation not found");
 
+                ReservationEntity updatedReservation = reservationRepository.saveAndFlush(reservation);
+
+                reservationInventoryService.invalidateBook(previousBookId);
+                reservationInventoryService.invalidateBook(bookId);
+                availabilityStatsService.reservationMoved(previousBookId, previousDate, bookId, date);
+                reservationEventService.reservationMoved(updatedReservation, previousBookId, previousDate);
+
+                if (!previousBookId.equals(bookId)) {
+
+                    waitlistService.copiesReturned(previousBookId);
+                }
+
+                return versionOf(updatedReservation).applyTo(ResponseEntity.ok()).body(updatedReservation);
+            });
+
+        } catch (OptimisticLockingFailureException e) {
+
+            return conflict(reservationRepository.findById(reservationId)
+                    .orElseThrow(() -> new NotFoundException("Reservation not found")));
         }
+
+    }
+
+    /**
+     * Crea la risposta "409 Conflict" con la prenotazione attuale e la sua versione nell'header ETag.
+     *
+     * @param reservation La prenotazione attuale
+     * @return            Ritorna la risposta di conflitto
+     */
+    private ResponseEntity<ReservationEntity> conflict(ReservationEntity reservation) {
+
+        return versionOf(reservation).applyTo(ResponseEntity.status(HttpStatus.CONFLICT)).body(reservation);
+
     }
 
     /**
-     * Elimina una prenotazione in base all'ID.
+     * Restituisce la versione della prenotazione come inviata al client.
+     *
+     * @param reservation La prenotazione
+     * @return            Ritorna la versione della prenotazione, senza data di modifica
+     */
+    private ResourceVersionService.ResourceVersion versionOf(ReservationEntity reservation) {
+
+        return new ResourceVersionService.ResourceVersion(reservation.getVersion(), null);
+
+    }
+
+    /**
+     * Elimina una prenotazione in base all'ID e restituisce la copia al libro, in un'unica transazione.
+     * La prenotazione viene eliminata con un DELETE condizionale e la copia restituita con un UPDATE
+     * relativo, come nella scadenza delle prenotazioni: le prenotazioni concorrenti dello stesso libro
+     * non causano conflitti di versione e due eliminazioni concorrenti restituiscono una sola copia.
      *
      * @param id ID della prenotazione da eliminare
      * @return Ritorna un oggetto ResponseEntity vuoto con uno status "OK"
      *         se la prenotazione viene trovata ed eliminata,
-     *         altrimenti restituisce uno status "Not Found"
+     *         altrimenti restituisce uno status "No Content"
      */
+    @Transactional
     public ResponseEntity<Void> deleteReservation(Long id) {
 
         Optional<ReservationEntity> reservationEntity = reservationRepository.findById(id);
 
-        if(reservationEntity.isPresent()) {
-
-            ReservationEntity reservation =  reservationEntity.get();
-            reservation.getBookReservation().setNumberOfCopiesAvailable(
-                    (reservation.getBookReservation().getNumberOfCopiesAvailable() + 1));
+        // Se un'eliminazione concorrente è arrivata prima il DELETE non trova più la riga
+        if (reservationEntity.isEmpty() || reservationRepository.deleteByReservationId(id) == 0) {
 
-            reservationRepository.saveAndFlush(reservation);
-            reservationRepository.deleteById(id);
+            return ResponseEntity.noContent().build();
+        }
 
-            return ResponseEntity.status(200).build();
+        ReservationEntity reservation = reservationEntity.get();
+        Long bookId = reservation.getBookReservation().getBookId();
 
-        }else {
+        bookRepository.incrementCopiesAvailable(List.of(bookId), 1, Instant.now());
 
-            return ResponseEntity.noContent().build();
+        resourceVersionService.evictBook(bookId);
+        availabilityFeedService.bookChanged(bookId);
+        reservationInventoryService.invalidateBook(bookId);
+        availabilityStatsService.reservationDeleted(bookId, reservation.getDateReservation());
+        reservationEventService.reservationDeleted(reservation);
+        waitlistService.copiesReturned(bookId);
 
-        }
+        return ResponseEntity.status(200).build();
 
     }
 
@@ -0,0 +1,346 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mappa in memoria delle versioni di libri e utenti, usata per rispondere alle GET condizionali
+ * con "304 Not Modified" senza caricare l'entità dal database.
+ * Una versione viene registrata quando l'entità viene letta e rimossa quando l'entità cambia;
+ * la rimozione viene ripetuta alla fine della transazione, così che una lettura concorrente non possa
+ * lasciare in memoria una versione già superata. Le letture iniziate prima di una rimozione non registrano
+ * la versione letta.
+ * Ogni versione scade dopo {@code biblioteca.http.version-cache.ttl-ms}: le modifiche fatte da un'altra istanza
+ * o direttamente sul database non passano da questa mappa, quindi una versione superata viene usata
+ * al massimo per questo intervallo.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class ResourceVersionService {
+
+    /**
+     * Versioni note dei libri, per ID.
+     */
+    private final Map<Long, KnownVersion> books = new ConcurrentHashMap<>();
+
+    /**
+     * Versioni note degli utenti, per ID.
+     */
+    private final Map<Long, KnownVersion> users = new ConcurrentHashMap<>();
+
+    /**
+     * Numero di rimozioni eseguite, usato per scartare le versioni lette prima di una rimozione.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Numero massimo di versioni tenute in memoria per ogni tipo di entità.
+     */
+    @Value("${biblioteca.http.version-cache.max-entries:10000}")
+    int maxEntries;
+
+    /**
+     * Millisecondi dopo i quali una versione registrata non viene più usata.
+     */
+    @Value("${biblioteca.http.version-cache.ttl-ms:30000}")
+    long ttlMillis;
+
+    /**
+     * URL della replica in lettura, vuoto se non è configurata.
+     */
+    @Value("${biblioteca.datasource.replica.url:}")
+    String replicaUrl;
+
+    /**
+     * Restituisce il contatore delle rimozioni, da leggere prima di caricare un'entità.
+     *
+     * @return il valore attuale del contatore
+     */
+    public long stamp() {
+
+        return evictions.get();
+
+    }
+
+    /**
+     * Controlla se la versione nota del libro corrisponde a quella indicata dal client.
+     *
+     * @param bookId  L'ID del libro
+     * @param request La richiesta HTTP con gli header If-None-Match e If-Modified-Since
+     * @return        true se il libro non è cambiato e la risposta è già stata impostata a "304 Not Modified"
+     */
+    public boolean bookNotModified(Long bookId, WebRequest request) {
+
+        return notModified(books, bookId, request);
+
+    }
+
+    /**
+     * Controlla se la versione nota dell'utente corrisponde a quella indicata dal client.
+     *
+     * @param userId  L'ID dell'utente
+     * @param request La richiesta HTTP con gli header If-None-Match e If-Modified-Since
+     * @return        true se l'utente non è cambiato e la risposta è già stata impostata a "304 Not Modified"
+     */
+    public boolean userNotModified(Long userId, WebRequest request) {
+
+        return notModified(users, userId, request);
+
+    }
+
+    /**
+     * Registra la versione di un libro appena letto.
+     *
+     * @param book  Il libro letto
+     * @param stamp Il contatore delle rimozioni letto prima di caricare il libro
+     * @return      Ritorna la versione del libro
+     */
+    public ResourceVersion rememberBook(BookEntity book, long stamp) {
+
+        return remember(books, book.getBookId(), new ResourceVersion(book.getVersion(), book.getLastModified()), stamp);
+
+    }
+
+    /**
+     * Registra la versione di un utente appena letto.
+     *
+     * @param user  L'utente letto
+     * @param stamp Il contatore delle rimozioni letto prima di caricare l'utente
+     * @return      Ritorna la versione dell'utente
+     */
+    public ResourceVersion rememberUser(UserEntity user, long stamp) {
+
+        return remember(users, user.getUserId(), new ResourceVersion(user.getVersion(), user.getLastModified()), stamp);
+
+    }
+
+    /**
+     * Rimuove la versione del libro, dopo il commit se è in corso una transazione.
+     *
+     * @param bookId L'ID del libro modificato o eliminato
+     */
+    public void evictBook(Long bookId) {
+
+        evictAfterCommit(books, bookId);
+
+    }
+
+    /**
+     * Rimuove la versione dell'utente, dopo il commit se è in corso una transazione.
+     *
+     * @param userId L'ID dell'utente modificato o eliminato
+     */
+    public void evictUser(Long userId) {
+
+        evictAfterCommit(users, userId);
+
+    }
+
+    /**
+     * Rimuove le versioni scadute, così che le entità non più lette non occupino la mappa fino al limite.
+     */
+    @Scheduled(fixedDelayString = "${biblioteca.http.version-cache.ttl-ms:30000}")
+    public void purgeExpired() {
+
+        long now = System.nanoTime();
+
+        books.values().removeIf(known -> known.expired(now));
+        users.values().removeIf(known -> known.expired(now));
+
+    }
+
+    /**
+     * Controlla la versione nota con gli header della richiesta. Una versione scaduta viene rimossa
+     * e la richiesta prosegue come se non fosse nota.
+     *
+     * @param versions La mappa delle versioni
+     * @param id       L'ID dell'entità
+     * @param request  La richiesta HTTP
+     * @return         true se la risposta è "304 Not Modified"
+     */
+    private boolean notModified(Map<Long, KnownVersion> versions, Long id, WebRequest request) {
+
+        KnownVersion known = versions.get(id);
+
+        if (known == null) {
+
+            return false;
+        }
+
+        if (known.expired(System.nanoTime())) {
+
+            versions.remove(id, known);
+            return false;
+        }
+
+        return request.checkNotModified(known.version().eTag(), known.version().lastModifiedMillis());
+
+    }
+
+    /**
+     * Registra una versione se nessuna rimozione è avvenuta dopo la lettura e c'è ancora spazio.
+     * Con una replica configurata le versioni lette in transazioni di sola lettura non vengono registrate.
+     *
+     * @param versions La mappa delle versioni
+     * @param id       L'ID dell'entità
+     * @param version  La versione letta
+     * @param stamp    Il contatore delle rimozioni letto prima della lettura
+     * @return         Ritorna la versione letta
+     */
+    private ResourceVersion remember(Map<Long, KnownVersion> versions, Long id, ResourceVersion version, long stamp) {
+
+        // Una versione letta da una replica in ritardo potrebbe essere già superata quando viene registrata
+        boolean replicaRead = !replicaUrl.isEmpty() && TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+
+        if (replicaRead || evictions.get() != stamp || versions.size() >= maxEntries) {
+
+            return version;
+        }
+
+        KnownVersion known = new KnownVersion(version, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis));
+        versions.put(id, known);
+
+        // Una rimozione arrivata durante l'inserimento potrebbe aver trovato la mappa ancora vuota
+        if (evictions.get() != stamp) {
+
+            versions.remove(id, known);
+        }
+
+        return version;
+
+    }
+
+    /**
+     * Rimuove una versione subito oppure alla fine della transazione in corso.
+     *
+     * @param versions La mappa delle versioni
+     * @param id       L'ID dell'entità
+     */
+    private void evictAfterCommit(Map<Long, KnownVersion> versions, Long id) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(versions, id);
+                }
+            });
+        }
+
+        evict(versions, id);
+
+    }
+
+    /**
+     * Rimuove una versione e incrementa il contatore delle rimozioni.
+     *
+     * @param versions La mappa delle versioni
+     * @param id       L'ID dell'entità
+     */
+    private void evict(Map<Long, KnownVersion> versions, Long id) {
+
+        evictions.incrementAndGet();
+        versions.remove(id);
+
+    }
+
+    /**
+     * Versione registrata nella mappa, con il momento in cui scade.
+     *
+     * @param version   la versione letta
+     * @param expiresAt il valore di {@link System#nanoTime()} dopo il quale la versione scade
+     */
+    private record KnownVersion(ResourceVersion version, long expiresAt) {
+
+        /**
+         * Controlla se la versione è scaduta.
+         *
+         * @param now il valore attuale di {@link System#nanoTime()}
+         * @return true se la versione è scaduta
+         */
+        boolean expired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+    }
+
+    /**
+     * Versione di un'entità come inviata al client.
+     *
+     * @param version      il numero di versione
+     * @param lastModified la data dell'ultima modifica, null se non registrata
+     */
+    public record ResourceVersion(long version, Instant lastModified) {
+
+        /**
+         * Restituisce l'ETag forte della versione.
+         *
+         * @return l'ETag tra virgolette
+         */
+        public String eTag() {
+            return "\"" + version + "\"";
+        }
+
+        /**
+         * Legge il numero di versione da un header If-Match, che contiene un ETag di {@link #eTag()}.
+         *
+         * @param ifMatch il valore dell'header, null se assente
+         * @return il numero di versione, null se l'header è assente o vale {@code *}
+         * @throws IllegalArgumentException se l'header non contiene un numero di versione
+         */
+        public static Long parseIfMatch(String ifMatch) {
+            if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+                return null;
+            }
+            String value = ifMatch.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            try {
+                return Long.parseLong(value.replace("\"", ""));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid If-Match header: " + ifMatch, e);
+            }
+        }
+
+        /**
+         * Restituisce la data dell'ultima modifica in millisecondi.
+         *
+         * @return i millisecondi, oppure -1 se la data non è registrata
+         */
+        public long lastModifiedMillis() {
+            return lastModified == null ? -1 : lastModified.toEpochMilli();
+        }
+
+        /**
+         * Aggiunge alla risposta gli header ETag e Last-Modified della versione.
+         *
+         * @param response la risposta da completare
+         * @return la risposta con gli header di versione
+         */
+        public ResponseEntity.BodyBuilder applyTo(ResponseEntity.BodyBuilder response) {
+            response.eTag(eTag());
+            if (lastModified != null) {
+                response.lastModified(lastModified);
+            }
+            return response;
+        }
+
+    }
+
+}
@@ -1,25 +1,42 @@
 package com.bibliotecaTest.BibliotecaTest.services;
 
+import com.bibliotecaTest.BibliotecaTest.config.OptimisticRetryExecutor;
 import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
 import com.bibliotecaTest.BibliotecaTest.execptions.NotFoundException;
 import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.WebRequest;
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Contiene la logica di business relativa agli utenti.
  * Tutti i servizi relativi agli utenti sono implementati in questa classe.
  * Utilizzando l'annotazione {@code @Service} si indica a Spring che questa classe è un componente di servizio.
+ * Con l'annotazione {@code @Timed} ogni metodo pubblico viene misurato nella metrica {@code biblioteca.service}.
  *
  * @author Drumstyle92
  */
 @Service
+@Timed("biblioteca.service")
 public class UserService {
 
+    /**
+     * Campi dell'utente che un client può modificare con un documento JSON Merge Patch.
+     */
+    private static final Set<String> PATCHABLE_FIELDS = Set.of("firstName", "lastName", "address", "telephone");
+
     /**
      * Utilizzando L'annotazione {@code @Autowired} diamo il compito a Spring di fare l'iniezione delle dipendenze.
      * Il questo modo semplifico il processo di collegamento tra il servizio e il repository degli utenti.
@@ -27,6 +44,36 @@ public class UserService {
     @Autowired
     UserRepository userRepository;
 
+    /**
+     * Servizio che elimina gli utenti insieme alle loro prenotazioni.
+     */
+    @Autowired
+    BulkDeleteService bulkDeleteService;
+
+    /**
+     * Mappa delle versioni degli utenti, usata per rispondere alle GET condizionali senza leggere il database.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Esecutore che ripete le modifiche fallite per un conflitto di versione.
+     */
+    @Autowired
+    OptimisticRetryExecutor optimisticRetryExecutor;
+
+    /**
+     * Servizio che applica i documenti JSON Merge Patch.
+     */
+    @Autowired
+    MergePatchService mergePatchService;
+
+    /**
+     * Gestore delle transazioni, usato per eseguire gli UPDATE parziali che non leggono l'utente.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
     /**
      * Recupera tutti gli utenti presenti nel database.
      *
@@ -35,6 +82,7 @@ public class UserService {
      * Utilizzando la classe ResponseEntity ottengo una risposta più dettagliata e personalizzabile
      * infatti è stata creata per le chiamate API.
      */
+    @Transactional(readOnly = true)
     public ResponseEntity<List<UserEntity>> getAllUsers() {
         List<UserEntity> users = userRepository.findAll();
 
@@ -49,21 +97,33 @@ public class UserService {
     }
 
     /**
-     * Recupera un utente attraverso il suo ID.
+     * Recupera un utente attraverso il suo ID, rispondendo alle GET condizionali.
+     * Se la versione dell'utente è già nota e coincide con quella indicata dal client negli header
+     * If-None-Match o If-Modified-Since, la risposta "304 Not Modified" viene data senza leggere l'utente.
      *
-     * @param id L'ID dell'utente
-     * @return   Ritorna un oggetto ResponseEntity contenente l'utente trovato, se presente
-     * @throws   NotFoundException se l'utente con l'ID specificato non è presente nel database
-     *                             ritorna un'eccezione personalizzata
+     * @param id      L'ID dell'utente
+     * @param request La richiesta HTTP, usata per gli header condizionali
+     * @return        Ritorna un oggetto ResponseEntity contenente l'utente trovato con ETag e Last-Modified,
+     *                oppure status "304 Not Modified" se il client ha già la versione attuale
+     * @throws        NotFoundException se l'utente con l'ID specificato non è presente nel database
+     *                                  ritorna un'eccezione personalizzata
      */
-    public ResponseEntity<UserEntity> getUserById(Long id) {
+    @Transactional(readOnly = true)
+    public ResponseEntity<UserEntity> getUserById(Long id, WebRequest request) {
+
+        if (resourceVersionService.userNotModified(id, request)) {
+
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
 
+        long stamp = resourceVersionService.stamp();
         Optional<UserEntity> userOptional = userRepository.findById(id);
 
         if (userOptional.isPresent()) {
             UserEntity user = userOptional.get();
+            ResourceVersionService.ResourceVersion version = resourceVersionService.rememberUser(user, stamp);
 
-            return ResponseEntity.ok(user);
+            return version.applyTo(ResponseEntity.ok()).body(user);
         } else {
 
             throw new NotFoundException("User not found");
@@ -116,7 +176,129 @@ public class UserService {
     }
 
     /**
-     * Elimina un utente in base all'ID.
+     * Modifica solo i campi dell'utente indicati in un documento JSON Merge Patch.
+     * Se il client indica la versione con l'header If-Match e l'utente non è nella cache di secondo livello,
+     * la modifica diventa un unico UPDATE delle sole colonne indicate, condizionato alla versione,
+     * senza leggere prima l'utente. Altrimenti l'utente viene letto, dalla cache se presente,
+     * e con {@code @DynamicUpdate} l'UPDATE contiene solo le colonne cambiate.
+     *
+     * @param id      L'ID dell'utente da modificare
+     * @param patch   Il documento JSON Merge Patch
+     * @param ifMatch Il valore dell'header If-Match, null se il client non indica una versione
+     * @return        Ritorna un oggetto ResponseEntity con l'utente aggiornato e la sua versione,
+     *                status "204 No Content" con la nuova versione se l'utente è stato modificato senza leggerlo,
+     *                status "409 Conflict" con l'utente e la versione attuali se la versione indicata
+     *                non è più quella attuale o i tentativi si esauriscono,
+     *                status "400 Bad Request" se il documento o l'header If-Match non sono validi.
+     * @throws        NotFoundException se l'utente non viene trovato nel database
+     *                                  lancia un'eccezione personalizzata
+     */
+    public ResponseEntity<UserEntity> patchUser(Long id, JsonNode patch, String ifMatch) {
+
+        Long expectedVersion;
+
+        try {
+
+            expectedVersion = ResourceVersionService.ResourceVersion.parseIfMatch(ifMatch);
+            mergePatchService.validate(patch, UserEntity.class, PATCHABLE_FIELDS);
+
+        } catch (IllegalArgumentException e) {
+
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+
+            if (expectedVersion != null && !mergePatchService.isCached(UserEntity.class, id)) {
+
+                return patchUserDirectly(id, patch, expectedVersion);
+            }
+
+            return optimisticRetryExecutor.execute("patchUser", status -> {
+
+                UserEntity user = userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found"));
+
+                if (expectedVersion != null && user.getVersion() != expectedVersion) {
+
+                    return conflict(user);
+                }
+
+                mergePatchService.apply(user, patch);
+                UserEntity updatedUser = userRepository.saveAndFlush(user);
+
+                return versionOf(updatedUser).applyTo(ResponseEntity.ok()).body(updatedUser);
+            });
+
+        } catch (IllegalArgumentException e) {
+
+            return ResponseEntity.badRequest().build();
+
+        } catch (OptimisticLockingFailureException e) {
+
+            return conflict(userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found")));
+        }
+
+    }
+
+    /**
+     * Modifica l'utente con un unico UPDATE condizionato alla versione, senza leggerlo.
+     * L'UPDATE non passa da {@link com.bibliotecaTest.BibliotecaTest.config.ResourceVersionListener},
+     * quindi la versione nota viene rimossa qui.
+     * L'utente viene letto solo se l'UPDATE non modifica nessuna riga, per distinguere "404" da "409".
+     *
+     * @param id              L'ID dell'utente
+     * @param patch           Il documento JSON Merge Patch
+     * @param expectedVersion La versione indicata dal client
+     * @return                Ritorna la risposta "204 No Content" con la nuova versione,
+     *                        oppure "409 Conflict" con l'utente attuale
+     */
+    private ResponseEntity<UserEntity> patchUserDirectly(Long id, JsonNode patch, long expectedVersion) {
+
+        Instant now = Instant.now();
+
+        return new TransactionTemplate(transactionManager).execute(status -> {
+
+            if (mergePatchService.update(UserEntity.class, "userId", id, expectedVersion, patch, now) == 0) {
+
+                return conflict(userRepository.findById(id).orElseThrow(() -> new NotFoundException("User not found")));
+            }
+
+            resourceVersionService.evictUser(id);
+
+            return new ResourceVersionService.ResourceVersion(expectedVersion + 1, now)
+                    .applyTo(ResponseEntity.status(HttpStatus.NO_CONTENT)).build();
+        });
+
+    }
+
+    /**
+     * Crea la risposta "409 Conflict" con l'utente attuale e la sua versione negli header ETag e Last-Modified.
+     *
+     * @param user L'utente attuale
+     * @return     Ritorna la risposta di conflitto
+     */
+    private ResponseEntity<UserEntity> conflict(UserEntity user) {
+
+        return versionOf(user).applyTo(ResponseEntity.status(HttpStatus.CONFLICT)).body(user);
+
+    }
+
+    /**
+     * Restituisce la versione dell'utente come inviata al client.
+     *
+     * @param user L'utente
+     * @return     Ritorna la versione dell'utente
+     */
+    private ResourceVersionService.ResourceVersion versionOf(UserEntity user) {
+
+        return new ResourceVersionService.ResourceVersion(user.getVersion(), user.getLastModified());
+
+    }
+
+    /**
+     * Elimina un utente in base all'ID, insieme alle sue prenotazioni, le cui copie tornano ai libri.
+     * L'eliminazione è quella in blocco di {@link BulkDeleteService} con un solo ID: l'utente non viene
+     * caricato e le prenotazioni che lo riferiscono vengono eliminate invece di far fallire il DELETE.
      *
      * @param id ID dell'utente da eliminare
      * @return Ritorna un oggetto ResponseEntity vuoto con uno status "OK" se l'utente viene trovato ed eliminato,
@@ -124,10 +306,7 @@ public class UserService {
      */
     public ResponseEntity<Void> deleteUser(Long id) {
 
-        Optional<UserEntity> userEntity = userRepository.findById(id);
-
-        if (userEntity.isPresent()) {
-            userRepository.deleteById(id);
+        if (bulkDeleteService.deleteUser(id)) {
 
             return ResponseEntity.status(200).build();
         } else {
@@ -0,0 +1,517 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.WaitlistStatus;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.WaitlistEntryEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.WaitlistRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Code di attesa dei libri senza copie disponibili.
+ * Un utente che non trova copie entra nella coda del libro invece di ripetere la prenotazione; quando una copia
+ * torna disponibile la prima richiesta della coda viene promossa a prenotazione, in un'unica transazione che
+ * decrementa le copie, crea la prenotazione e segna la richiesta come promossa.
+ * Il client attende l'esito con una richiesta long-poll che viene completata appena la promozione è salvata.
+ * La tabella {@code waitlist_entry} è la coda persistente; in memoria ogni istanza tiene un indice delle richieste
+ * in attesa per libro, usato per sapere senza accedere al database se un libro ha una coda. L'indice viene
+ * riallineato periodicamente con il database, e allo stesso tempo vengono promosse le richieste dei libri
+ * che hanno copie disponibili, ad esempio perché la copia è stata restituita su un'altra istanza.
+ *
+ * @author Drumstyle92
+ */
+@Service
+public class WaitlistService {
+
+    /**
+     * Logger della classe.
+     */
+    private static final Logger log = LoggerFactory.getLogger(WaitlistService.class);
+
+    /**
+     * Repository delle code di attesa.
+     */
+    @Autowired
+    WaitlistRepository waitlistRepository;
+
+    /**
+     * Repository dei libri, usato per il decremento condizionale delle copie durante la promozione.
+     */
+    @Autowired
+    BookRepository bookRepository;
+
+    /**
+     * Repository degli utenti, usato per verificare l'utente che entra in coda.
+     */
+    @Autowired
+    UserRepository userRepository;
+
+    /**
+     * Repository delle prenotazioni, usato per salvare le prenotazioni promosse.
+     */
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Gestore delle transazioni, usato per eseguire ogni promozione in una transazione separata.
+     */
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Inventario in memoria delle copie, da avvisare quando una promozione toglie una copia.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Mappa delle versioni dei libri, da aggiornare quando una promozione toglie una copia.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Aggregati della dashboard, aggiornati per ogni promozione.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni, a cui vengono aggiunte le prenotazioni promosse.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Flusso della disponibilità, da avvisare quando una promozione toglie una copia.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Registro delle metriche, usato per contare ingressi in coda e promozioni.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Tempo massimo di attesa di una richiesta long-poll, in millisecondi.
+     */
+    @Value("${biblioteca.waitlist.max-wait-ms:60000}")
+    long maxWaitMillis;
+
+    /**
+     * ID delle richieste in attesa per ogni libro, in ordine di coda.
+     */
+    private final Map<Long, ConcurrentSkipListSet<Long>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Richieste long-poll in attesa dell'esito di ogni richiesta in coda.
+     */
+    private final Map<Long, Set<DeferredResult<ResponseEntity<WaitlistStatus>>>> pollers = new ConcurrentHashMap<>();
+
+    /**
+     * Mette l'utente in coda per il libro indicato. Se l'utente è già in coda restituisce la richiesta esistente.
+     * Se il libro ha già una copia disponibile la richiesta viene promossa subito dopo il commit.
+     *
+     * @param userId L'ID dell'utente
+     * @param bookId L'ID del libro
+     * @return       Ritorna un oggetto ResponseEntity contenente lo stato della richiesta:
+     *               status "202 Accepted" se la richiesta è stata creata,
+     *               status "200 OK" se l'utente era già in coda,
+     *               status "404 Not Found" se l'utente o il libro non esistono.
+     */
+    @Transactional
+    public ResponseEntity<WaitlistStatus> join(Long userId, Long bookId) {
+
+        if (!userRepository.existsById(userId) || !bookRepository.existsById(bookId)) {
+
+            return ResponseEntity.notFound().build();
+        }
+
+        Optional<WaitlistEntryEntity> existing = waitlistRepository.findFirstByBookIdAndUserIdAndStatus(
+                bookId, userId, WaitlistEntryEntity.Status.WAITING);
+
+        if (existing.isPresent()) {
+
+            return ResponseEntity.ok(statusOf(existing.get()));
+        }
+
+        WaitlistEntryEntity entry = waitlistRepository.save(new WaitlistEntryEntity(bookId, userId, Instant.now()));
+        Long entryId = entry.getEntryId();
+        meterRegistry.counter("biblioteca.waitlist", "outcome", "joined").increment();
+
+        afterCommit(() -> {
+
+            queues.computeIfAbsent(bookId, id -> new ConcurrentSkipListSet<>()).add(entryId);
+            promote(bookId);
+        });
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(statusOf(entry));
+
+    }
+
+    /**
+     * Attende l'esito di una richiesta in coda per al massimo il tempo indicato (long-poll).
+     * La risposta arriva appena la richiesta viene promossa o annullata, oppure alla scadenza
+     * con lo stato e la posizione attuali.
+     *
+     * @param entryId    L'ID della richiesta
+     * @param waitMillis Il tempo massimo di attesa in millisecondi, limitato a {@code maxWaitMillis}
+     * @return           Ritorna il risultato differito con lo stato della richiesta,
+     *                   status "404 Not Found" se la richiesta non esiste.
+     */
+    public DeferredResult<ResponseEntity<WaitlistStatus>> await(Long entryId, long waitMillis) {
+
+        DeferredResult<ResponseEntity<WaitlistStatus>> result =
+                new DeferredResult<>(Math.max(1, Math.min(waitMillis, maxWaitMillis)));
+
+        Set<DeferredResult<ResponseEntity<WaitlistStatus>>> entryPollers =
+                pollers.computeIfAbsent(entryId, id -> ConcurrentHashMap.newKeySet());
+        entryPollers.add(result);
+
+        result.onCompletion(() -> entryPollers.remove(result));
+        result.onTimeout(() -> result.setResult(currentStatus(entryId)));
+
+        // Lo stato viene letto dopo la registrazione, così che una promozione appena avvenuta non vada persa
+        ResponseEntity<WaitlistStatus> current = currentStatus(entryId);
+
+        if (current.getBody() == null || current.getBody().getStatus() != WaitlistEntryEntity.Status.WAITING) {
+
+            result.setResult(current);
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Annulla una richiesta ancora in attesa.
+     *
+     * @param entryId L'ID della richiesta
+     * @return        Ritorna un oggetto ResponseEntity vuoto con status "200 OK" se la richiesta è stata annullata,
+     *                "404 Not Found" se non esiste, "409 Conflict" se è già stata promossa o annullata.
+     */
+    @Transactional
+    public ResponseEntity<Void> cancel(Long entryId) {
+
+        Optional<WaitlistEntryEntity> entry = waitlistRepository.findById(entryId);
+
+        if (entry.isEmpty()) {
+
+            return ResponseEntity.notFound().build();
+        }
+
+        if (waitlistRepository.cancel(entryId, WaitlistEntryEntity.Status.WAITING, WaitlistEntryEntity.Status.CANCELLED) == 0) {
+
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        Long bookId = entry.get().getBookId();
+        meterRegistry.counter("biblioteca.waitlist", "outcome", "cancelled").increment();
+
+        afterCommit(() -> {
+
+            removeFromQueue(bookId, entryId);
+            notifyPollers(entryId);
+        });
+
+        return ResponseEntity.ok().build();
+
+    }
+
+    /**
+     * Indica se il libro ha richieste in attesa, con una query di esistenza sull'indice {@code idx_waitlist_book_status}.
+     * Le prenotazioni dirette di un libro con una coda vengono rifiutate, così che le copie restituite
+     * vadano prima a chi è in attesa. L'indice in memoria non basta: non contiene le richieste entrate in coda
+     * su altre istanze fino al riallineamento successivo.
+     *
+     * @param bookId L'ID del libro
+     * @return       true se il libro ha una coda
+     */
+    public boolean hasWaiters(Long bookId) {
+
+        return waitlistRepository.existsByBookIdAndStatus(bookId, WaitlistEntryEntity.Status.WAITING);
+
+    }
+
+    /**
+     * Segnala che il libro potrebbe avere nuove copie disponibili: dopo il commit della transazione in corso,
+     * se il libro ha una coda, le prime richieste vengono promosse finché ci sono copie.
+     *
+     * @param bookId L'ID del libro
+     */
+    public void copiesReturned(Long bookId) {
+
+        afterCommit(() -> {
+
+            if (hasWaiters(bookId)) {
+
+                promote(bookId);
+            }
+        });
+
+    }
+
+    /**
+     * Annulla le richieste in attesa di un libro eliminato.
+     *
+     * @param bookId L'ID del libro eliminato
+     */
+    public void bookDeleted(Long bookId) {
+
+        if (!hasWaiters(bookId)) {
+
+            return;
+        }
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+                status -> waitlistRepository.cancelAllByBookId(bookId,
+                        WaitlistEntryEntity.Status.WAITING, WaitlistEntryEntity.Status.CANCELLED));
+
+        Set<Long> queue = queues.remove(bookId);
+
+        if (queue != null) {
+
+            queue.forEach(this::notifyPollers);
+        }
+
+    }
+
+    /**
+     * Annulla nella transazione in corso le richieste in attesa degli utenti eliminati e,
+     * dopo il commit, le toglie dalle code così che non blocchino più le prenotazioni dirette.
+     *
+     * @param userIds Gli ID degli utenti eliminati
+     */
+    public void usersDeleted(Collection<Long> userIds) {
+
+        List<Object[]> entries = waitlistRepository.findWaitingByUserIds(userIds, WaitlistEntryEntity.Status.WAITING);
+
+        if (entries.isEmpty()) {
+
+            return;
+        }
+
+        waitlistRepository.cancelAllByUserIds(userIds, WaitlistEntryEntity.Status.WAITING,
+                WaitlistEntryEntity.Status.CANCELLED);
+
+        afterCommit(() -> {
+
+            for (Object[] entry : entries) {
+
+                removeFromQueue((Long) entry[0], (Long) entry[1]);
+                notifyPollers((Long) entry[1]);
+            }
+        });
+
+    }
+
+    /**
+     * Riallinea l'indice in memoria con le richieste in attesa sul database e promuove le richieste
+     * dei libri che hanno copie disponibili.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${biblioteca.waitlist.sweep-interval-ms:5000}")
+    public void sweep() {
+
+        Map<Long, ConcurrentSkipListSet<Long>> waiting = new HashMap<>();
+
+        for (Object[] row : waitlistRepository.findWaitingEntries(WaitlistEntryEntity.Status.WAITING)) {
+
+            waiting.computeIfAbsent((Long) row[0], id -> new ConcurrentSkipListSet<>()).add((Long) row[1]);
+        }
+
+        queues.keySet().retainAll(waiting.keySet());
+        queues.putAll(waiting);
+
+        for (Long bookId : waitlistRepository.findPromotableBookIds(WaitlistEntryEntity.Status.WAITING)) {
+
+            promote(bookId);
+        }
+
+    }
+
+    /**
+     * Promuove le prime richieste in attesa del libro, una per transazione, finché ci sono copie disponibili.
+     * La riga della richiesta viene bloccata e la copia tolta con l'UPDATE condizionale, quindi la stessa
+     * copia non può essere data a due richieste né a una prenotazione diretta concorrente.
+     *
+     * @param bookId L'ID del libro
+     */
+    private void promote(Long bookId) {
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        while (true) {
+
+            WaitlistEntryEntity promoted;
+
+            try {
+
+                promoted = transaction.execute(status -> {
+
+                    List<WaitlistEntryEntity> head = waitlistRepository.findHeadForUpdate(bookId,
+                            WaitlistEntryEntity.Status.WAITING, PageRequest.of(0, 1));
+
+                    if (head.isEmpty() || bookRepository.decrementCopiesAvailable(bookId) == 0) {
+
+                        return null;
+                    }
+
+                    WaitlistEntryEntity entry = head.get(0);
+
+                    ReservationEntity reservation = new ReservationEntity(null, LocalDate.now(),
+                            bookRepository.getReferenceById(bookId), userRepository.getReferenceById(entry.getUserId()));
+                    reservationRepository.save(reservation);
+                    entry.promote(reservation.getReservationId());
+
+                    resourceVersionService.evictBook(bookId);
+                    availabilityFeedService.bookChanged(bookId);
+                    availabilityStatsService.reservationCreated(bookId, reservation.getDateReservation());
+                    reservationEventService.reservationCreated(reservation);
+
+                    return entry;
+                });
+
+            } catch (RuntimeException e) {
+
+                log.error("Failed to promote the waitlist of book {}", bookId, e);
+                return;
+            }
+
+            if (promoted == null) {
+
+                return;
+            }
+
+            meterRegistry.counter("biblioteca.waitlist", "outcome", "promoted").increment();
+            reservationInventoryService.invalidateBook(bookId);
+            removeFromQueue(bookId, promoted.getEntryId());
+
+            Set<DeferredResult<ResponseEntity<WaitlistStatus>>> entryPollers = pollers.remove(promoted.getEntryId());
+
+            if (entryPollers != null) {
+
+                entryPollers.forEach(result -> result.setResult(ResponseEntity.ok(statusOf(promoted))));
+            }
+        }
+
+    }
+
+    /**
+     * Completa le richieste long-poll di una richiesta con il suo stato attuale.
+     *
+     * @param entryId L'ID della richiesta
+     */
+    private void notifyPollers(Long entryId) {
+
+        Set<DeferredResult<ResponseEntity<WaitlistStatus>>> entryPollers = pollers.remove(entryId);
+
+        if (entryPollers != null && !entryPollers.isEmpty()) {
+
+            ResponseEntity<WaitlistStatus> current = currentStatus(entryId);
+            entryPollers.forEach(result -> result.setResult(current));
+        }
+
+    }
+
+    /**
+     * Toglie una richiesta dall'indice in memoria del libro.
+     *
+     * @param bookId  L'ID del libro
+     * @param entryId L'ID della richiesta
+     */
+    private void removeFromQueue(Long bookId, Long entryId) {
+
+        queues.computeIfPresent(bookId, (id, queue) -> {
+
+            queue.remove(entryId);
+            return queue.isEmpty() ? null : queue;
+        });
+
+    }
+
+    /**
+     * Legge lo stato attuale di una richiesta dal database.
+     *
+     * @param entryId L'ID della richiesta
+     * @return        Ritorna un oggetto ResponseEntity contenente lo stato, "404 Not Found" se non esiste
+     */
+    private ResponseEntity<WaitlistStatus> currentStatus(Long entryId) {
+
+        return waitlistRepository.findById(entryId)
+                .map(entry -> ResponseEntity.ok(statusOf(entry)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+
+    }
+
+    /**
+     * Crea lo stato della richiesta, con la posizione nella coda se è in attesa.
+     *
+     * @param entry La richiesta
+     * @return      Ritorna lo stato della richiesta
+     */
+    private WaitlistStatus statusOf(WaitlistEntryEntity entry) {
+
+        Long position = entry.getStatus() == WaitlistEntryEntity.Status.WAITING
+                ? waitlistRepository.countByBookIdAndStatusAndEntryIdLessThan(
+                        entry.getBookId(), WaitlistEntryEntity.Status.WAITING, entry.getEntryId())
+                : null;
+
+        return new WaitlistStatus(entry, position);
+
+    }
+
+    /**
+     * Esegue l'operazione dopo il commit della transazione in corso, oppure subito se non c'è transazione.
+     *
+     * @param action L'operazione da eseguire
+     */
+    private void afterCommit(Runnable action) {
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+
+            action.run();
+        }
+
+    }
+
+}
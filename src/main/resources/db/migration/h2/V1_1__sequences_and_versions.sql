@@ -0,0 +1,15 @@
+-- Sequenze degli ID di libri e prenotazioni, generati da Hibernate a blocchi invece che dalla colonna identity,
+-- e colonne per il controllo ottimistico della concorrenza e la data di modifica di libri e utenti.
+-- Come su MySQL ogni sequenza parte 50 oltre l'ID più alto già assegnato dalla colonna identity.
+
+CREATE SEQUENCE book_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE book_seq RESTART WITH (SELECT COALESCE(MAX(book_id), 0) + 50 FROM book);
+
+CREATE SEQUENCE reservation_seq START WITH 1 INCREMENT BY 50;
+ALTER SEQUENCE reservation_seq RESTART WITH (SELECT COALESCE(MAX(reservation_id), 0) + 50 FROM reservation);
+
+ALTER TABLE book ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE book ADD COLUMN last_modified TIMESTAMP(6) WITH TIME ZONE;
+
+ALTER TABLE user_ ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE user_ ADD COLUMN last_modified TIMESTAMP(6) WITH TIME ZONE;
@@ -0,0 +1,30 @@
+-- Schema iniziale per H2, usato dai test, dai benchmark e dalle verifiche in locale.
+-- Deve restare equivalente a db/migration/mysql: le chiavi generate dal database sono colonne identity.
+
+CREATE TABLE book (
+    book_id          BIGINT       GENERATED BY DEFAULT AS IDENTITY,
+    author           VARCHAR(255),
+    copies_available INTEGER      NOT NULL,
+    description      VARCHAR(255),
+    title            VARCHAR(255),
+    PRIMARY KEY (book_id)
+);
+
+CREATE TABLE user_ (
+    user_id    BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    address    VARCHAR(255),
+    first_name VARCHAR(255),
+    last_name  VARCHAR(255),
+    telephone  BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+);
+
+CREATE TABLE reservation (
+    reservation_id   BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    date_reservation DATE,
+    book_reservation BIGINT,
+    user_reservation BIGINT,
+    PRIMARY KEY (reservation_id),
+    CONSTRAINT fk_reservation_book FOREIGN KEY (book_reservation) REFERENCES book (book_id),
+    CONSTRAINT fk_reservation_user FOREIGN KEY (user_reservation) REFERENCES user_ (user_id)
+);
@@ -0,0 +1,10 @@
+-- Indici per le ricerche delle prenotazioni per utente, per libro e per data.
+CREATE INDEX idx_reservation_user_date ON reservation (user_reservation, date_reservation);
+CREATE INDEX idx_reservation_book_date ON reservation (book_reservation, date_reservation);
+CREATE INDEX idx_reservation_date ON reservation (date_reservation);
+
+-- Dimensioni delle colonne di testo allineate ai dati.
+ALTER TABLE book ALTER COLUMN author SET DATA TYPE VARCHAR(150);
+ALTER TABLE book ALTER COLUMN description SET DATA TYPE VARCHAR(2000);
+ALTER TABLE user_ ALTER COLUMN first_name SET DATA TYPE VARCHAR(100);
+ALTER TABLE user_ ALTER COLUMN last_name SET DATA TYPE VARCHAR(100);
@@ -0,0 +1,15 @@
+-- Registro in sola aggiunta delle modifiche alle prenotazioni, scritto da ReservationEventService.
+CREATE TABLE reservation_event (
+    event_id                  BIGINT       NOT NULL,
+    type                      VARCHAR(16)  NOT NULL,
+    reservation_id            BIGINT       NOT NULL,
+    user_id                   BIGINT,
+    book_id                   BIGINT,
+    date_reservation          DATE,
+    previous_book_id          BIGINT,
+    previous_date_reservation DATE,
+    occurred_at               TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (event_id)
+);
+
+CREATE SEQUENCE reservation_event_seq START WITH 1 INCREMENT BY 50;
@@ -0,0 +1,9 @@
+-- Lease delle attività pianificate che devono girare su una sola istanza alla volta.
+CREATE TABLE scheduler_lease (
+    name       VARCHAR(64)  NOT NULL,
+    owner      VARCHAR(128),
+    expires_at TIMESTAMP(6) WITH TIME ZONE,
+    PRIMARY KEY (name)
+);
+
+INSERT INTO scheduler_lease (name) VALUES ('reservation-expiry');
@@ -0,0 +1,14 @@
+-- Code di attesa dei libri senza copie disponibili, gestite da WaitlistService.
+CREATE TABLE waitlist_entry (
+    entry_id       BIGINT       NOT NULL,
+    book_id        BIGINT       NOT NULL,
+    user_id        BIGINT       NOT NULL,
+    status         VARCHAR(16)  NOT NULL,
+    created_at     TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+    reservation_id BIGINT,
+    PRIMARY KEY (entry_id)
+);
+
+CREATE INDEX idx_waitlist_book_status ON waitlist_entry (book_id, status, entry_id);
+
+CREATE SEQUENCE waitlist_entry_seq START WITH 1 INCREMENT BY 50;
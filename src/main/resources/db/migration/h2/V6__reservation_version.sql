@@ -0,0 +1,3 @@
+-- Versione delle prenotazioni per il controllo ottimistico della concorrenza: le righe esistenti partono da 0.
+ALTER TABLE reservation
+    ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
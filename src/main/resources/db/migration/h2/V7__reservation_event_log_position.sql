@@ -0,0 +1,12 @@
+-- Posizione degli eventi nel registro, assegnata in ordine di commit da una sola istanza alla volta
+-- (lease "reservation-event-sequencer"). Gli ID vengono da una sequenza pooled, quindi con più istanze
+-- non seguono l'ordine dei commit; i consumatori leggono in ordine di posizione.
+-- Gli eventi esistenti mantengono l'ordine di ID.
+ALTER TABLE reservation_event
+    ADD COLUMN log_position BIGINT;
+
+UPDATE reservation_event SET log_position = event_id;
+
+CREATE UNIQUE INDEX idx_reservation_event_log_position ON reservation_event (log_position);
+
+INSERT INTO scheduler_lease (name) VALUES ('reservation-event-sequencer');
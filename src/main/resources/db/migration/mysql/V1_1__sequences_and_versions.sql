@@ -0,0 +1,25 @@
+-- Sequenze degli ID di libri e prenotazioni, generati da Hibernate a blocchi invece che dalla colonna AUTO_INCREMENT,
+-- e colonne per il controllo ottimistico della concorrenza e la data di modifica di libri e utenti.
+-- Le righe esistenti partono dalla versione 0 e senza data di modifica.
+-- Hibernate legge il valore della sequenza e usa i 50 ID che lo precedono, quindi la sequenza parte
+-- 50 oltre l'ID più alto già assegnato dalla colonna AUTO_INCREMENT: il primo blocco inizia da MAX(ID) + 1.
+
+CREATE TABLE book_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO book_seq SELECT COALESCE(MAX(book_id), 0) + 50 FROM book;
+
+CREATE TABLE reservation_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO reservation_seq SELECT COALESCE(MAX(reservation_id), 0) + 50 FROM reservation;
+
+ALTER TABLE book
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN last_modified TIMESTAMP(6) NULL;
+
+ALTER TABLE user_
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN last_modified TIMESTAMP(6) NULL;
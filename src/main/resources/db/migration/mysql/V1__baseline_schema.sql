@@ -0,0 +1,31 @@
+-- Schema iniziale, uguale a quello creato finora da Hibernate con ddl-auto a partire dalle entità originali.
+-- Sui database esistenti non viene eseguito: spring.flyway.baseline-on-migrate li registra alla versione 1,
+-- quindi ogni colonna o tabella aggiunta dopo va creata da una migrazione successiva.
+
+CREATE TABLE book (
+    book_id          BIGINT       NOT NULL AUTO_INCREMENT,
+    author           VARCHAR(255),
+    copies_available INTEGER      NOT NULL,
+    description      VARCHAR(255),
+    title            VARCHAR(255),
+    PRIMARY KEY (book_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE user_ (
+    user_id    BIGINT NOT NULL AUTO_INCREMENT,
+    address    VARCHAR(255),
+    first_name VARCHAR(255),
+    last_name  VARCHAR(255),
+    telephone  BIGINT NOT NULL,
+    PRIMARY KEY (user_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE reservation (
+    reservation_id   BIGINT NOT NULL AUTO_INCREMENT,
+    date_reservation DATE,
+    book_reservation BIGINT,
+    user_reservation BIGINT,
+    PRIMARY KEY (reservation_id),
+    CONSTRAINT fk_reservation_book FOREIGN KEY (book_reservation) REFERENCES book (book_id),
+    CONSTRAINT fk_reservation_user FOREIGN KEY (user_reservation) REFERENCES user_ (user_id)
+) ENGINE = InnoDB;
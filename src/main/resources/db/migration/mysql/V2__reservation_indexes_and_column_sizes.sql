@@ -0,0 +1,17 @@
+-- Indici per le ricerche delle prenotazioni per utente, per libro e per data.
+-- Gli indici creati da MySQL per le chiavi esterne vengono rimossi automaticamente,
+-- perché quelli composti iniziano con la stessa colonna.
+CREATE INDEX idx_reservation_user_date ON reservation (user_reservation, date_reservation);
+CREATE INDEX idx_reservation_book_date ON reservation (book_reservation, date_reservation);
+CREATE INDEX idx_reservation_date ON reservation (date_reservation);
+
+-- Dimensioni delle colonne di testo allineate ai dati: la descrizione non entra in 255 caratteri,
+-- autore e nomi non ne hanno bisogno. Con la modalità strict di MySQL la migrazione fallisce invece
+-- di troncare eventuali valori più lunghi già presenti.
+ALTER TABLE book
+    MODIFY author VARCHAR(150),
+    MODIFY description VARCHAR(2000);
+
+ALTER TABLE user_
+    MODIFY first_name VARCHAR(100),
+    MODIFY last_name VARCHAR(100);
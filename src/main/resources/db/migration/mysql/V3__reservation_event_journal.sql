@@ -0,0 +1,21 @@
+-- Registro in sola aggiunta delle modifiche alle prenotazioni, scritto da ReservationEventService.
+-- Non ha chiavi esterne, così che gli eventi restino anche dopo l'eliminazione di prenotazioni, libri e utenti;
+-- i consumatori lo leggono in ordine di chiave primaria.
+CREATE TABLE reservation_event (
+    event_id                  BIGINT       NOT NULL,
+    type                      ENUM ('CREATED', 'MOVED', 'DELETED') NOT NULL,
+    reservation_id            BIGINT       NOT NULL,
+    user_id                   BIGINT,
+    book_id                   BIGINT,
+    date_reservation          DATE,
+    previous_book_id          BIGINT,
+    previous_date_reservation DATE,
+    occurred_at               TIMESTAMP(6) NOT NULL,
+    PRIMARY KEY (event_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE reservation_event_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO reservation_event_seq VALUES (1);
@@ -0,0 +1,13 @@
+-- Lease delle attività pianificate che devono girare su una sola istanza alla volta.
+CREATE TABLE scheduler_lease (
+    name       VARCHAR(64)  NOT NULL,
+    owner      VARCHAR(128),
+    expires_at TIMESTAMP(6) NULL,
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+INSERT INTO scheduler_lease (name) VALUES ('reservation-expiry');
+
+-- Evento registrato quando una prenotazione scade.
+ALTER TABLE reservation_event
+    MODIFY type ENUM ('CREATED', 'MOVED', 'DELETED', 'EXPIRED') NOT NULL;
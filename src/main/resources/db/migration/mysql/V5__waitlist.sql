@@ -0,0 +1,20 @@
+-- Code di attesa dei libri senza copie disponibili, gestite da WaitlistService.
+-- Le richieste di un libro vengono servite in ordine di entry_id; le righe promosse o annullate restano
+-- nella tabella con il loro esito.
+CREATE TABLE waitlist_entry (
+    entry_id       BIGINT       NOT NULL,
+    book_id        BIGINT       NOT NULL,
+    user_id        BIGINT       NOT NULL,
+    status         ENUM ('WAITING', 'PROMOTED', 'CANCELLED') NOT NULL,
+    created_at     TIMESTAMP(6) NOT NULL,
+    reservation_id BIGINT,
+    PRIMARY KEY (entry_id)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_waitlist_book_status ON waitlist_entry (book_id, status, entry_id);
+
+CREATE TABLE waitlist_entry_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO waitlist_entry_seq VALUES (1);
@@ -0,0 +1,243 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationEventService;
+import com.bibliotecaTest.BibliotecaTest.services.WaitlistService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica le API reattive delle prenotazioni su WebFlux e su un database H2 in memoria condiviso
+ * da R2DBC e JPA, così che le modifiche reattive siano visibili ai servizi JPA e viceversa.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive-api;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive-api;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa", "spring.r2dbc.password="})
+@ActiveProfiles("reactive")
+@AutoConfigureWebTestClient
+class ReactiveReservationApiTest {
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    WaitlistService waitlistService;
+
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Creazione, spostamento ed eliminazione aggiornano copie e versione della prenotazione
+     * e finiscono nel registro degli eventi, come nella versione servlet.
+     */
+    @Test
+    void reservationLifecycleMatchesServletApi() {
+
+        Long firstBookId = saveBook(1);
+        Long secondBookId = saveBook(1);
+        Long userId = saveUser(3_000_000_101L);
+
+        webTestClient.post().uri("/apiReservation/createReservation?userId={userId}&bookId={bookId}", userId, firstBookId)
+                .exchange()
+                .expectStatus().isOk();
+
+        Long reservationId = jdbcTemplate.queryForObject(
+                "SELECT reservation_id FROM reservation WHERE user_reservation = ?", Long.class, userId);
+
+        assertEquals(0, copiesOf(firstBookId));
+        assertEquals(0L, versionOf(reservationId));
+
+        webTestClient.put().uri("/apiReservation/putReservation/{id}?date={date}&userId={userId}&bookId={bookId}",
+                        reservationId, LocalDate.now().plusDays(1), userId, secondBookId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.bookReservation.bookId").isEqualTo(secondBookId);
+
+        assertEquals(1, copiesOf(firstBookId));
+        assertEquals(0, copiesOf(secondBookId));
+        assertEquals(1L, versionOf(reservationId));
+
+        webTestClient.delete().uri("/apiReservation/deleteReservation/{id}", reservationId)
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.delete().uri("/apiReservation/deleteReservation/{id}", reservationId)
+                .exchange()
+                .expectStatus().isNoContent();
+
+        assertEquals(1, copiesOf(secondBookId));
+
+        reservationEventService.flush();
+
+        assertEquals(List.of("CREATED", "MOVED", "DELETED"), jdbcTemplate.queryForList(
+                "SELECT type FROM reservation_event WHERE reservation_id = ? ORDER BY event_id", String.class, reservationId));
+
+    }
+
+    /**
+     * Uno spostamento verso un libro senza copie viene rifiutato e non restituisce la copia al libro precedente.
+     */
+    @Test
+    void moveToBookWithoutCopiesIsRejected() {
+
+        Long bookId = saveBook(1);
+        Long emptyBookId = saveBook(0);
+        Long userId = saveUser(3_000_000_102L);
+
+        webTestClient.post().uri("/apiReservation/createReservation?userId={userId}&bookId={bookId}", userId, bookId)
+                .exchange()
+                .expectStatus().isOk();
+
+        Long reservationId = jdbcTemplate.queryForObject(
+                "SELECT reservation_id FROM reservation WHERE user_reservation = ?", Long.class, userId);
+
+        webTestClient.put().uri("/apiReservation/putReservation/{id}?date={date}&userId={userId}&bookId={bookId}",
+                        reservationId, LocalDate.now(), userId, emptyBookId)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertEquals(0, copiesOf(bookId));
+        assertEquals(0, copiesOf(emptyBookId));
+        assertEquals(0L, versionOf(reservationId));
+
+    }
+
+    /**
+     * Un libro con richieste in coda non accetta prenotazioni dirette, anche se ha copie disponibili.
+     */
+    @Test
+    void bookWithWaitersRejectsDirectReservations() {
+
+        Long bookId = saveBook(0);
+        Long waitingUserId = saveUser(3_000_000_103L);
+        Long userId = saveUser(3_000_000_104L);
+
+        waitlistService.join(waitingUserId, bookId);
+        jdbcTemplate.update("UPDATE book SET copies_available = 1 WHERE book_id = ?", bookId);
+
+        webTestClient.post().uri("/apiReservation/createReservation?userId={userId}&bookId={bookId}", userId, bookId)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertEquals(1, copiesOf(bookId));
+
+    }
+
+    /**
+     * Una prenotazione non può essere spostata su un libro con richieste in coda, come una prenotazione diretta.
+     */
+    @Test
+    void moveToBookWithWaitersIsRejected() {
+
+        Long bookId = saveBook(1);
+        Long queuedBookId = saveBook(0);
+        Long waitingUserId = saveUser(3_000_000_105L);
+        Long userId = saveUser(3_000_000_106L);
+
+        webTestClient.post().uri("/apiReservation/createReservation?userId={userId}&bookId={bookId}", userId, bookId)
+                .exchange()
+                .expectStatus().isOk();
+
+        Long reservationId = jdbcTemplate.queryForObject(
+                "SELECT reservation_id FROM reservation WHERE user_reservation = ?", Long.class, userId);
+
+        waitlistService.join(waitingUserId, queuedBookId);
+        jdbcTemplate.update("UPDATE book SET copies_available = 1 WHERE book_id = ?", queuedBookId);
+
+        webTestClient.put().uri("/apiReservation/putReservation/{id}?date={date}&userId={userId}&bookId={bookId}",
+                        reservationId, LocalDate.now(), userId, queuedBookId)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        assertEquals(0, copiesOf(bookId));
+        assertEquals(1, copiesOf(queuedBookId));
+
+    }
+
+    /**
+     * Le API servlet non vengono registrate con il profilo reattivo.
+     */
+    @Test
+    void servletControllersAreNotRegistered() {
+
+        webTestClient.get().uri("/apiBook/allBooks").exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/apiUser/allUsers").exchange().expectStatus().isNotFound();
+        webTestClient.get().uri("/apiStats/availability").exchange().expectStatus().isNotFound();
+
+    }
+
+    /**
+     * Salva un libro con le copie indicate.
+     *
+     * @param copies le copie disponibili
+     * @return Ritorna l'ID del libro
+     */
+    private Long saveBook(int copies) {
+
+        return bookRepository.save(new BookEntity(null, "Description", "Title", "Author", copies)).getBookId();
+
+    }
+
+    /**
+     * Salva un utente con il telefono indicato.
+     *
+     * @param telephone il telefono dell'utente
+     * @return Ritorna l'ID dell'utente
+     */
+    private Long saveUser(long telephone) {
+
+        return userRepository.save(new UserEntity(null, "Name", "Surname", "Street", telephone)).getUserId();
+
+    }
+
+    /**
+     * Legge le copie disponibili di un libro dal database.
+     *
+     * @param bookId l'ID del libro
+     * @return Ritorna le copie disponibili
+     */
+    private int copiesOf(Long bookId) {
+
+        return jdbcTemplate.queryForObject("SELECT copies_available FROM book WHERE book_id = ?", Integer.class, bookId);
+
+    }
+
+    /**
+     * Legge la versione di una prenotazione dal database.
+     *
+     * @param reservationId l'ID della prenotazione
+     * @return Ritorna la versione
+     */
+    private long versionOf(Long reservationId) {
+
+        return jdbcTemplate.queryForObject("SELECT version FROM reservation WHERE reservation_id = ?", Long.class,
+                reservationId);
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Riga della tabella dei libri letta con R2DBC.
+ * Corrisponde a {@code BookEntity}, ma è mappata con Spring Data Relational invece che con JPA.
+ *
+ * @param bookId                  l'ID del libro
+ * @param description             la descrizione del libro
+ * @param title                   il titolo del libro
+ * @param author                  l'autore del libro
+ * @param numberOfCopiesAvailable il numero di copie disponibili del libro
+ * @author Drumstyle92
+ */
+@Table("book")
+public record BookRow(@Id Long bookId,
+                      String description,
+                      String title,
+                      String author,
+                      @Column("copies_available") int numberOfCopiesAvailable) {}
@@ -0,0 +1,42 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository reattivo dei libri basato su R2DBC.
+ * Contiene solo le operazioni necessarie all'API reattiva delle prenotazioni.
+ * Gli UPDATE incrementano anche la versione del libro, come quelli di {@code BookRepository}.
+ *
+ * @author Drumstyle92
+ */
+@Repository
+public interface ReactiveBookRepository extends R2dbcRepository<BookRow, Long> {
+
+    /**
+     * Toglie una copia disponibile al libro solo se ne ha almeno una, con un unico UPDATE condizionale.
+     *
+     * @param bookId l'ID del libro
+     * @return Ritorna il numero di righe aggiornate: 1 se la copia è stata tolta, 0 altrimenti
+     */
+    @Modifying
+    @Query("UPDATE book SET copies_available = copies_available - 1, version = version + 1, last_modified = CURRENT_TIMESTAMP "
+            + "WHERE book_id = :bookId AND copies_available > 0")
+    Mono<Integer> decrementCopiesAvailable(@Param("bookId") Long bookId);
+
+    /**
+     * Restituisce una copia al libro.
+     *
+     * @param bookId l'ID del libro
+     * @return Ritorna il numero di righe aggiornate
+     */
+    @Modifying
+    @Query("UPDATE book SET copies_available = copies_available + 1, version = version + 1, last_modified = CURRENT_TIMESTAMP "
+            + "WHERE book_id = :bookId")
+    Mono<Integer> incrementCopiesAvailable(@Param("bookId") Long bookId);
+
+}
@@ -0,0 +1,69 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+/**
+ * DataSource e gestore delle transazioni JPA quando si compila con il profilo Maven {@code reactive},
+ * in cui JPA e R2DBC convivono. Spring Boot non crea il DataSource JDBC se esiste una {@code ConnectionFactory} R2DBC,
+ * e non crea il gestore JPA se esiste già il gestore reattivo: senza questa configurazione i servizi JPA condivisi
+ * dall'API reattiva (code di attesa, statistiche, registro degli eventi, tentativi ottimistici) non potrebbero partire.
+ * Non dipende dal profilo Spring, perché la {@code ConnectionFactory} è presente anche quando l'applicazione
+ * compilata con il profilo Maven parte con le API servlet, come nei loro test.
+ * Il DataSource legge le stesse proprietà {@code spring.datasource.*} della versione servlet; il gestore JPA
+ * è il principale per i metodi {@code @Transactional}, mentre quello R2DBC resta l'unico gestore reattivo.
+ *
+ * @author Drumstyle92
+ */
+@Configuration
+public class ReactiveJpaConfig {
+
+    /**
+     * Legge le proprietà {@code spring.datasource.*}.
+     *
+     * @return Ritorna le proprietà del DataSource
+     */
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+
+        return new DataSourceProperties();
+
+    }
+
+    /**
+     * Crea il pool di connessioni JDBC usato da JPA e Flyway, configurabile con {@code spring.datasource.hikari.*}.
+     *
+     * @param dataSourceProperties le proprietà del DataSource
+     * @return Ritorna il DataSource
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+
+    }
+
+    /**
+     * Crea il gestore delle transazioni JPA.
+     *
+     * @param entityManagerFactory l'EntityManagerFactory dell'applicazione
+     * @return Ritorna il gestore delle transazioni JPA
+     */
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+
+        return new JpaTransactionManager(entityManagerFactory);
+
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+/**
+ * Versione reattiva di {@code ReservationController}, con gli stessi percorsi e gli stessi parametri.
+ * I metodi restituiscono {@code Mono} e {@code Flux}, così che WebFlux possa servire le richieste
+ * senza bloccare i thread in attesa del database.
+ * Il controller è attivo solo con il profilo Spring {@code reactive}, che disattiva quello servlet.
+ *
+ * @author Drumstyle92
+ */
+@RestController
+@RequestMapping("/apiReservation")
+@Profile("reactive")
+public class ReactiveReservationController {
+
+    /**
+     * Servizio reattivo delle prenotazioni.
+     */
+    @Autowired
+    ReactiveReservationService reservationService;
+
+    /**
+     * Ottiene la lista delle prenotazioni dal database.
+     *
+     * @return Ritorna le prenotazioni con libro e utente
+     */
+    @GetMapping("/allReservations")
+    public Flux<ReservationView> getAllReservations() {
+
+        return reservationService.getAllReservations();
+
+    }
+
+    /**
+     * Ottiene una prenotazione con l'ID specificato.
+     *
+     * @param id l'ID della prenotazione
+     * @return   Ritorna la prenotazione con l'ID specificato
+     */
+    @GetMapping("/getReservation/{id}")
+    public Mono<ReservationView> getReservationById(@PathVariable Long id) {
+
+        return reservationService.getReservationById(id);
+
+    }
+
+    /**
+     * Aggiorna una prenotazione esistente.
+     *
+     * @param reservationId l'ID della prenotazione da aggiornare
+     * @param date          la data di prenotazione aggiornata
+     * @param userId        l'ID dell'utente associato alla prenotazione
+     * @param bookId        l'ID del libro associato alla prenotazione
+     * @return              Ritorna la risposta contenente la prenotazione aggiornata
+     */
+    @PutMapping("/putReservation/{reservationId}")
+    public Mono<ResponseEntity<ReservationView>> updateReservation(@PathVariable Long reservationId,
+                                                                   @RequestParam LocalDate date,
+                                                                   @RequestParam Long userId,
+                                                                   @RequestParam Long bookId) {
+
+        return reservationService.updateReservation(reservationId, date, userId, bookId);
+
+    }
+
+    /**
+     * Elimina una prenotazione esistente.
+     *
+     * @param id l'ID della prenotazione da eliminare
+     * @return   Ritorna la risposta vuota con lo status HTTP
+     */
+    @DeleteMapping("/deleteReservation/{id}")
+    public Mono<ResponseEntity<Void>> deleteReservation(@PathVariable Long id) {
+
+        return reservationService.deleteReservation(id);
+
+    }
+
+    /**
+     * Crea una nuova prenotazione.
+     *
+     * @param userId l'ID dell'utente per cui creare la prenotazione
+     * @param bookId l'ID del libro da prenotare
+     * @return       Ritorna la risposta contenente una stringa di conferma
+     */
+    @PostMapping("/createReservation")
+    public Mono<ResponseEntity<String>> createReservation(@RequestParam Long userId, @RequestParam Long bookId) {
+
+        return reservationService.createReservation(userId, bookId);
+
+    }
+
+}
@@ -0,0 +1,511 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import com.bibliotecaTest.BibliotecaTest.execptions.NotFoundException;
+import com.bibliotecaTest.BibliotecaTest.services.AvailabilityFeedService;
+import com.bibliotecaTest.BibliotecaTest.services.AvailabilityStatsService;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationEventService;
+import com.bibliotecaTest.BibliotecaTest.services.ReservationInventoryService;
+import com.bibliotecaTest.BibliotecaTest.services.ResourceVersionService;
+import com.bibliotecaTest.BibliotecaTest.services.WaitlistService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+/**
+ * Versione reattiva della logica di business delle prenotazioni, equivalente a {@code ReservationService}.
+ * Tutti gli accessi al database passano da R2DBC, quindi nessun thread resta bloccato in attesa di JDBC,
+ * e ogni operazione di scrittura è eseguita in un'unica transazione reattiva.
+ * Le risposte hanno gli stessi status e gli stessi messaggi della versione servlet, e dopo ogni commit vengono
+ * avvisati gli stessi servizi: code di attesa, flusso della disponibilità, aggregati e registro degli eventi.
+ * Questi servizi sono bloccanti, quindi vengono chiamati sullo scheduler {@code boundedElastic}.
+ * Il servizio è attivo solo con il profilo Spring {@code reactive}.
+ *
+ * @author Drumstyle92
+ */
+@Service
+@Profile("reactive")
+public class ReactiveReservationService {
+
+    /**
+     * Query delle prenotazioni con libro e utente, letti in un'unica JOIN.
+     */
+    private static final String RESERVATION_VIEW_SQL = """
+            SELECT r.reservation_id, r.date_reservation,
+                   b.book_id, b.title, b.author, b.description, b.copies_available,
+                   u.user_id, u.first_name, u.last_name, u.address, u.telephone
+            FROM reservation r
+            JOIN book b ON b.book_id = r.book_reservation
+            JOIN user_ u ON u.user_id = r.user_reservation
+            """;
+
+    /**
+     * Repository reattivo delle prenotazioni.
+     */
+    @Autowired
+    ReactiveReservationRepository reservationRepository;
+
+    /**
+     * Repository reattivo degli utenti.
+     */
+    @Autowired
+    ReactiveUserRepository userRepository;
+
+    /**
+     * Repository reattivo dei libri.
+     */
+    @Autowired
+    ReactiveBookRepository bookRepository;
+
+    /**
+     * Template R2DBC usato per inserire le prenotazioni con l'ID già assegnato.
+     */
+    @Autowired
+    R2dbcEntityTemplate entityTemplate;
+
+    /**
+     * Assegna gli ID delle nuove prenotazioni dalla stessa sequenza usata da Hibernate.
+     */
+    @Autowired
+    ReservationIdAllocator reservationIdAllocator;
+
+    /**
+     * Client R2DBC usato per leggere le prenotazioni insieme a libro e utente.
+     */
+    @Autowired
+    DatabaseClient databaseClient;
+
+    /**
+     * Operatore delle transazioni reattive, basato sul gestore delle transazioni R2DBC.
+     */
+    @Autowired
+    TransactionalOperator transactionalOperator;
+
+    /**
+     * Inventario in memoria delle copie, invalidato dopo ogni modifica così da restare allineato al database.
+     */
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    /**
+     * Mappa delle versioni dei libri usata dalle GET condizionali, aggiornata dopo ogni commit.
+     */
+    @Autowired
+    ResourceVersionService resourceVersionService;
+
+    /**
+     * Code di attesa dei libri: un libro con richieste in attesa non accetta prenotazioni dirette,
+     * e le copie restituite vengono assegnate prima alla coda.
+     */
+    @Autowired
+    WaitlistService waitlistService;
+
+    /**
+     * Flusso della disponibilità, avvisato dopo ogni modifica delle copie.
+     */
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    /**
+     * Aggregati della dashboard, aggiornati a ogni prenotazione creata, spostata o eliminata.
+     */
+    @Autowired
+    AvailabilityStatsService availabilityStatsService;
+
+    /**
+     * Registro degli eventi delle prenotazioni.
+     */
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    /**
+     * Registro delle metriche, usato per contare le prenotazioni accettate e rifiutate.
+     */
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Recupera tutte le prenotazioni presenti nel database.
+     *
+     * @return Ritorna le prenotazioni con libro e utente, ordinate per ID
+     */
+    public Flux<ReservationView> getAllReservations() {
+
+        return databaseClient.sql(RESERVATION_VIEW_SQL + "ORDER BY r.reservation_id")
+                .map(ReactiveReservationService::toView)
+                .all();
+
+    }
+
+    /**
+     * Recupera una prenotazione attraverso il suo ID.
+     *
+     * @param id L'ID della prenotazione
+     * @return   Ritorna la prenotazione trovata, oppure un errore {@link NotFoundException} se non esiste
+     */
+    public Mono<ReservationView> getReservationById(Long id) {
+
+        return findView(id)
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Reservation not found")));
+
+    }
+
+    /**
+     * Crea una prenotazione con la data odierna.
+     * Le copie vengono decrementate con lo stesso UPDATE condizionale della versione servlet,
+     * nella stessa transazione dell'inserimento della prenotazione, che riceve l'ID da {@link ReservationIdAllocator}.
+     * Come nella versione servlet, un libro con richieste in coda non accetta prenotazioni dirette e,
+     * dopo il commit, vengono aggiornati flusso della disponibilità, aggregati e registro degli eventi.
+     *
+     * @param userId L'ID dell'utente per il quale creare la prenotazione
+     * @param bookId L'ID del libro scelto per la prenotazione
+     * @return       Ritorna la risposta con status "200 OK" se la prenotazione è stata effettuata,
+     *               "400 Bad Request" se il libro non ha copie disponibili o ha richieste in coda,
+     *               "404 Not Found" se l'utente o il libro non esistono nel database
+     */
+    public Mono<ResponseEntity<String>> createReservation(Long userId, Long bookId) {
+
+        AtomicReference<ReservationRow> created = new AtomicReference<>();
+
+        Mono<ResponseEntity<String>> reservation = userRepository.existsById(userId)
+                .flatMap(userExists -> {
+
+                    if (!userExists) {
+
+                        recordOutcome("not_found");
+                        return Mono.just(ResponseEntity.notFound().<String>build());
+                    }
+
+                    return bookRepository.decrementCopiesAvailable(bookId)
+                            .flatMap(updated -> {
+
+                                if (updated == 0) {
+
+                                    return noCopiesOrNotFound(bookId);
+                                }
+
+                                // Con l'ID già assegnato l'INSERT è esplicito, senza passare dal controllo di save()
+                                return reservationIdAllocator.nextId()
+                                        .flatMap(id -> entityTemplate.insert(
+                                                new ReservationRow(id, LocalDate.now(), bookId, userId, null)))
+                                        .map(saved -> {
+
+                                            created.set(saved);
+                                            recordOutcome("accepted");
+                                            return ResponseEntity.ok("Book booked successfully!");
+                                        });
+                            });
+                });
+
+        return blocking(() -> waitlistService.hasWaiters(bookId))
+                .flatMap(waiting -> {
+
+                    if (waiting) {
+
+                        recordOutcome("no_copies");
+                        return Mono.just(ResponseEntity.badRequest().body("The book is not currently available for pre-order."));
+                    }
+
+                    return reservation.as(transactionalOperator::transactional)
+                            .flatMap(response -> afterCommit(response, () -> {
+
+                                invalidateBooks(bookId);
+
+                                ReservationRow saved = created.get();
+
+                                if (saved != null) {
+
+                                    availabilityStatsService.reservationCreated(bookId, saved.dateReservation());
+                                    reservationEventService.reservationCreated(saved.reservationId(), userId, bookId,
+                                            saved.dateReservation());
+                                }
+                            }));
+                });
+
+    }
+
+    /**
+     * Aggiorna data, utente e libro di una prenotazione, restituendo una copia al libro precedente
+     * e togliendone una al nuovo con un UPDATE condizionale.
+     * Il salvataggio controlla e incrementa la versione della prenotazione, come {@code @Version} nella versione servlet;
+     * dopo il commit vengono aggiornati flusso della disponibilità, aggregati e registro degli eventi,
+     * e la copia restituita al libro precedente viene assegnata alla sua coda.
+     *
+     * @param reservationId L'ID della prenotazione da aggiornare
+     * @param date          La nuova data di prenotazione
+     * @param userId        L'ID del nuovo utente
+     * @param bookId        L'ID del nuovo libro
+     * @return              Ritorna la risposta con status "200 OK" e la prenotazione aggiornata,
+     *                      "400 Bad Request" se il nuovo libro non ha copie disponibili,
+     *                      "409 Conflict" con la prenotazione attuale se una richiesta concorrente l'ha modificata,
+     *                      oppure un errore {@link NotFoundException} se la prenotazione, l'utente o il libro non esistono
+     */
+    public Mono<ResponseEntity<ReservationView>> updateReservation(Long reservationId, LocalDate date,
+                                                                   Long userId, Long bookId) {
+
+        AtomicReference<ReservationRow> previousRow = new AtomicReference<>();
+
+        Mono<ResponseEntity<ReservationView>> update = Mono.zip(
+                        reservationRepository.findById(reservationId),
+                        userRepository.existsById(userId),
+                        bookRepository.existsById(bookId))
+                .filter(found -> found.getT2() && found.getT3())
+                .switchIfEmpty(Mono.error(() -> new NotFoundException("Reservation not found")))
+                .flatMap(found -> {
+
+                    ReservationRow previous = found.getT1();
+                    previousRow.set(previous);
+
+                    // Le copie di un altro libro con richieste in coda spettano a chi è in attesa
+                    Mono<Boolean> waiters = previous.bookId().equals(bookId)
+                            ? Mono.just(false)
+                            : blocking(() -> waitlistService.hasWaiters(bookId));
+
+                    return waiters
+                            .flatMap(hasWaiters -> hasWaiters
+                                    ? Mono.<Integer>error(new NoCopiesAvailableException())
+                                    : bookRepository.incrementCopiesAvailable(previous.bookId()))
+                            .then(bookRepository.decrementCopiesAvailable(bookId))
+                            .flatMap(updated -> {
+
+                                if (updated == 0) {
+
+                                    // Annulla anche la restituzione della copia al libro precedente
+                                    return Mono.<ResponseEntity<ReservationView>>error(new NoCopiesAvailableException());
+                                }
+
+                                return reservationRepository.save(
+                                                new ReservationRow(reservationId, date, bookId, userId, previous.version()))
+                                        .then(findView(reservationId))
+                                        .map(ResponseEntity::ok);
+                            });
+                });
+
+        return update.as(transactionalOperator::transactional)
+                .flatMap(response -> afterCommit(response, () -> {
+
+                    ReservationRow previous = previousRow.get();
+
+                    invalidateBooks(previous.bookId(), bookId);
+                    availabilityStatsService.reservationMoved(previous.bookId(), previous.dateReservation(), bookId, date);
+                    reservationEventService.reservationMoved(reservationId, userId, bookId, date,
+                            previous.bookId(), previous.dateReservation());
+
+                    if (!previous.bookId().equals(bookId)) {
+
+                        waitlistService.copiesReturned(previous.bookId());
+                    }
+                }))
+                .onErrorResume(NoCopiesAvailableException.class,
+                        e -> Mono.just(ResponseEntity.badRequest().build()))
+                .onErrorResume(OptimisticLockingFailureException.class,
+                        e -> getReservationById(reservationId)
+                                .map(current -> ResponseEntity.status(HttpStatus.CONFLICT).body(current)));
+
+    }
+
+    /**
+     * Elimina una prenotazione in base all'ID e restituisce la copia al libro.
+     * La copia viene restituita solo se la DELETE ha eliminato la riga, così che due eliminazioni concorrenti
+     * della stessa prenotazione non restituiscano la copia due volte.
+     *
+     * @param id ID della prenotazione da eliminare
+     * @return   Ritorna la risposta con status "200 OK" se la prenotazione è stata eliminata,
+     *           altrimenti "204 No Content"
+     */
+    public Mono<ResponseEntity<Void>> deleteReservation(Long id) {
+
+        AtomicReference<ReservationRow> deleted = new AtomicReference<>();
+
+        Mono<ResponseEntity<Void>> delete = reservationRepository.findById(id)
+                .flatMap(reservation -> entityTemplate.delete(query(where("reservationId").is(id)), ReservationRow.class)
+                        .flatMap(rows -> {
+
+                            if (rows == 0) {
+
+                                return Mono.<ResponseEntity<Void>>empty();
+                            }
+
+                            deleted.set(reservation);
+
+                            return bookRepository.incrementCopiesAvailable(reservation.bookId())
+                                    .thenReturn(ResponseEntity.status(200).<Void>build());
+                        }))
+                .defaultIfEmpty(ResponseEntity.noContent().build());
+
+        return delete.as(transactionalOperator::transactional)
+                .flatMap(response -> afterCommit(response, () -> {
+
+                    ReservationRow reservation = deleted.get();
+
+                    if (reservation != null) {
+
+                        invalidateBooks(reservation.bookId());
+                        availabilityStatsService.reservationDeleted(reservation.bookId(), reservation.dateReservation());
+                        reservationEventService.reservationDeleted(reservation.reservationId(), reservation.userId(),
+                                reservation.bookId(), reservation.dateReservation());
+                        waitlistService.copiesReturned(reservation.bookId());
+                    }
+                }));
+
+    }
+
+    /**
+     * Distingue tra libro inesistente e libro senza copie dopo un decremento non riuscito.
+     *
+     * @param bookId L'ID del libro
+     * @return       Ritorna la risposta "404 Not Found" oppure "400 Bad Request"
+     */
+    private Mono<ResponseEntity<String>> noCopiesOrNotFound(Long bookId) {
+
+        return bookRepository.existsById(bookId)
+                .map(bookExists -> {
+
+                    if (!bookExists) {
+
+                        recordOutcome("not_found");
+                        return ResponseEntity.notFound().<String>build();
+                    }
+
+                    recordOutcome("no_copies");
+                    return ResponseEntity.badRequest().body("The book is not currently available for pre-order.");
+                });
+
+    }
+
+    /**
+     * Legge una prenotazione con libro e utente.
+     *
+     * @param id L'ID della prenotazione
+     * @return   Ritorna la prenotazione, oppure un Mono vuoto se non esiste
+     */
+    private Mono<ReservationView> findView(Long id) {
+
+        return databaseClient.sql(RESERVATION_VIEW_SQL + "WHERE r.reservation_id = :id")
+                .bind("id", id)
+                .map(ReactiveReservationService::toView)
+                .one();
+
+    }
+
+    /**
+     * Costruisce la prenotazione con libro e utente da una riga della JOIN.
+     *
+     * @param row La riga letta dal database
+     * @return    Ritorna la prenotazione
+     */
+    private static ReservationView toView(Readable row) {
+
+        BookRow book = new BookRow(row.get("book_id", Long.class), row.get("description", String.class),
+                row.get("title", String.class), row.get("author", String.class),
+                row.get("copies_available", Integer.class));
+
+        UserRow user = new UserRow(row.get("user_id", Long.class), row.get("first_name", String.class),
+                row.get("last_name", String.class), row.get("address", String.class),
+                row.get("telephone", Long.class));
+
+        return new ReservationView(row.get("reservation_id", Long.class),
+                row.get("date_reservation", LocalDate.class), book, user);
+
+    }
+
+    /**
+     * Esegue una chiamata bloccante sullo scheduler {@code boundedElastic}, fuori dai thread di WebFlux.
+     *
+     * @param call La chiamata da eseguire
+     * @return     Ritorna il risultato della chiamata
+     * @param <T>  Il tipo del risultato
+     */
+    private static <T> Mono<T> blocking(Callable<T> call) {
+
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+
+    }
+
+    /**
+     * Avvisa i servizi interessati dopo il commit di una transazione reattiva, che non esegue
+     * le sincronizzazioni di Spring: senza una transazione attiva i servizi applicano subito la modifica.
+     *
+     * @param response La risposta da restituire al termine
+     * @param hooks    Le notifiche da eseguire
+     * @return         Ritorna la risposta, dopo le notifiche
+     * @param <T>      Il tipo della risposta
+     */
+    private static <T> Mono<T> afterCommit(T response, Runnable hooks) {
+
+        return blocking(() -> {
+
+            hooks.run();
+            return response;
+        });
+
+    }
+
+    /**
+     * Scarta i libri indicati dall'inventario in memoria e dalla mappa delle versioni, e li segnala
+     * al flusso della disponibilità.
+     * Va chiamato dopo il commit, dato che le transazioni reattive non notificano la fine della transazione
+     * a {@link ResourceVersionService}.
+     *
+     * @param bookIds Gli ID dei libri modificati, null se nessun libro è stato modificato
+     */
+    private void invalidateBooks(Long... bookIds) {
+
+        for (Long bookId : bookIds) {
+
+            if (bookId != null) {
+
+                reservationInventoryService.invalidateBook(bookId);
+                resourceVersionService.evictBook(bookId);
+                availabilityFeedService.bookChanged(bookId);
+            }
+        }
+
+    }
+
+    /**
+     * Incrementa il contatore {@code biblioteca.reservations} con l'esito della richiesta di prenotazione.
+     *
+     * @param outcome L'esito della richiesta: accepted, no_copies oppure not_found
+     */
+    private void recordOutcome(String outcome) {
+
+        meterRegistry.counter("biblioteca.reservations", "outcome", outcome).increment();
+
+    }
+
+    /**
+     * Segnala che il nuovo libro di una prenotazione non ha copie disponibili,
+     * così che la transazione venga annullata prima di rispondere "400 Bad Request".
+     */
+    private static final class NoCopiesAvailableException extends RuntimeException {
+
+        /**
+         * Crea l'eccezione senza stack trace, dato che serve solo ad annullare la transazione.
+         */
+        NoCopiesAvailableException() {
+
+            super("The book is not currently available for pre-order.", null, false, false);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository reattivo degli utenti basato su R2DBC.
+ *
+ * @author Drumstyle92
+ */
+@Repository
+public interface ReactiveUserRepository extends R2dbcRepository<UserRow, Long> {
+
+}
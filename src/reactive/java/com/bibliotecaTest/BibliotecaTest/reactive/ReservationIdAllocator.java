@@ -0,0 +1,106 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Assegna gli ID delle prenotazioni inserite con R2DBC usando la stessa sequenza {@code reservation_seq}
+ * di {@code ReservationEntity}, così che le prenotazioni create dalle due API non possano avere lo stesso ID.
+ * Si comporta come l'ottimizzatore pooled di Hibernate: ogni lettura della sequenza la fa avanzare di 50
+ * e riserva i 50 ID che precedono il valore letto, che vengono poi assegnati dalla memoria.
+ * La sequenza viene letta con una connessione separata e in autocommit, fuori dalla transazione della prenotazione,
+ * così che su MySQL il lock sulla riga di {@code reservation_seq} duri solo il tempo dell'UPDATE.
+ *
+ * @author Drumstyle92
+ */
+@Component
+@Profile("reactive")
+public class ReservationIdAllocator {
+
+    /**
+     * ID riservati a ogni lettura della sequenza, uguale all'{@code allocationSize} di {@code ReservationEntity}.
+     */
+    static final int ALLOCATION_SIZE = 50;
+
+    /**
+     * Factory delle connessioni R2DBC, usata direttamente per non partecipare alla transazione reattiva in corso.
+     */
+    @Autowired
+    ConnectionFactory connectionFactory;
+
+    /**
+     * Blocco di ID riservato più di recente, null finché la sequenza non è stata letta.
+     */
+    private final AtomicReference<Block> current = new AtomicReference<>();
+
+    /**
+     * Restituisce un nuovo ID di prenotazione, leggendo la sequenza solo quando il blocco riservato è esaurito.
+     * Se più richieste esauriscono il blocco insieme ognuna ne riserva uno nuovo, e gli ID non usati vanno persi.
+     *
+     * @return Ritorna il nuovo ID
+     */
+    public Mono<Long> nextId() {
+
+        Block block = current.get();
+
+        if (block != null) {
+
+            long id = block.next().getAndIncrement();
+
+            if (id <= block.hi()) {
+
+                return Mono.just(id);
+            }
+        }
+
+        return Mono.usingWhen(connectionFactory.create(), this::readSequence, Connection::close)
+                .map(hi -> {
+
+                    long first = Math.max(1, hi - ALLOCATION_SIZE + 1);
+                    current.set(new Block(new AtomicLong(first + 1), hi));
+
+                    return first;
+                });
+
+    }
+
+    /**
+     * Legge il valore della sequenza e la fa avanzare di {@link #ALLOCATION_SIZE}.
+     * Su H2 è una vera sequenza; su MySQL è la tabella {@code reservation_seq}, aggiornata con
+     * {@code LAST_INSERT_ID()} così che il valore letto sia quello precedente all'UPDATE della stessa connessione.
+     *
+     * @param connection La connessione in autocommit
+     * @return           Ritorna il valore letto, l'ultimo ID del blocco riservato
+     */
+    private Mono<Long> readSequence(Connection connection) {
+
+        if (connectionFactory.getMetadata().getName().startsWith("H2")) {
+
+            return Mono.from(connection.createStatement("SELECT NEXT VALUE FOR reservation_seq").execute())
+                    .flatMap(result -> Mono.from(result.map((row, metadata) -> row.get(0, Long.class))));
+        }
+
+        return Mono.from(connection.createStatement(
+                        "UPDATE reservation_seq SET next_val = LAST_INSERT_ID(next_val) + " + ALLOCATION_SIZE).execute())
+                .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                .then(Mono.from(connection.createStatement("SELECT LAST_INSERT_ID()").execute()))
+                .flatMap(result -> Mono.from(result.map((row, metadata) -> row.get(0, Long.class))));
+
+    }
+
+    /**
+     * Blocco di ID riservato: il prossimo ID da assegnare e l'ultimo ID del blocco.
+     *
+     * @param next il prossimo ID da assegnare
+     * @param hi   l'ultimo ID del blocco
+     */
+    private record Block(AtomicLong next, long hi) {}
+
+}
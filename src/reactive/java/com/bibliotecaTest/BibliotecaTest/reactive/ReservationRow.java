@@ -0,0 +1,28 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDate;
+
+/**
+ * Riga della tabella delle prenotazioni letta e scritta con R2DBC.
+ * Al posto delle relazioni di {@code ReservationEntity} contiene solo gli ID del libro e dell'utente.
+ * La versione è la stessa colonna di {@code ReservationEntity}: ogni salvataggio la controlla e la incrementa,
+ * così che le modifiche reattive e quelle JPA si escludano a vicenda.
+ *
+ * @param reservationId   l'ID della prenotazione
+ * @param dateReservation la data della prenotazione
+ * @param bookId          l'ID del libro prenotato
+ * @param userId          l'ID dell'utente che ha prenotato
+ * @param version         la versione della prenotazione, null per una prenotazione non ancora inserita
+ * @author Drumstyle92
+ */
+@Table("reservation")
+public record ReservationRow(@Id Long reservationId,
+                             LocalDate dateReservation,
+                             @Column("book_reservation") Long bookId,
+                             @Column("user_reservation") Long userId,
+                             @Version Long version) {}
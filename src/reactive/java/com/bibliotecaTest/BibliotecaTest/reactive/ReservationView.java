@@ -0,0 +1,18 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import java.time.LocalDate;
+
+/**
+ * Prenotazione restituita dall'API reattiva, con libro e utente annidati
+ * come nella risposta JSON di {@code ReservationEntity}.
+ *
+ * @param reservationId   l'ID della prenotazione
+ * @param dateReservation la data della prenotazione
+ * @param bookReservation il libro prenotato
+ * @param userReservation l'utente che ha prenotato
+ * @author Drumstyle92
+ */
+public record ReservationView(Long reservationId,
+                              LocalDate dateReservation,
+                              BookRow bookReservation,
+                              UserRow userReservation) {}
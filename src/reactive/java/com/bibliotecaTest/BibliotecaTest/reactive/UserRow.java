@@ -0,0 +1,22 @@
+package com.bibliotecaTest.BibliotecaTest.reactive;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Riga della tabella degli utenti letta con R2DBC.
+ * Corrisponde a {@code UserEntity}, ma è mappata con Spring Data Relational invece che con JPA.
+ *
+ * @param userId    l'ID dell'utente
+ * @param firstName il nome dell'utente
+ * @param lastName  il cognome dell'utente
+ * @param address   l'indirizzo dell'utente
+ * @param telephone il numero di telefono dell'utente
+ * @author Drumstyle92
+ */
+@Table("user_")
+public record UserRow(@Id Long userId,
+                      String firstName,
+                      String lastName,
+                      String address,
+                      long telephone) {}
@@ -0,0 +1,77 @@
+package com.bibliotecaTest.BibliotecaTest;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che un database creato da Hibernate prima delle migrazioni Flyway venga portato allo schema attuale.
+ * Lo schema originale coincide con la migrazione V1, quindi viene creato eseguendo quello script fuori da Flyway,
+ * con un libro e un utente già salvati; all'avvio l'applicazione lo registra alla versione 1, applica le migrazioni
+ * successive e Hibernate, con {@code ddl-auto=validate}, verifica che corrisponda alle entità.
+ *
+ * @author Drumstyle92
+ */
+class SchemaMigrationTest {
+
+    /**
+     * Un database esistente senza storico Flyway riceve tutte le migrazioni successive alla 1,
+     * le righe già presenti partono dalla versione 0 e libri e prenotazioni nuovi ricevono ID successivi a quelli esistenti.
+     */
+    @Test
+    void existingDatabaseIsBaselinedAndMigrated() {
+
+        String url = "jdbc:h2:mem:legacy-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+        JdbcTemplate legacy = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+
+        legacy.execute("RUNSCRIPT FROM 'classpath:db/migration/h2/V1__baseline_schema.sql'");
+        legacy.update("INSERT INTO book (book_id, title, author, description, copies_available) VALUES (7, 'Title', 'Author', 'Description', 3)");
+        legacy.update("INSERT INTO user_ (user_id, first_name, last_name, address, telephone) VALUES (7, 'Name', 'Surname', 'Street', 3000000007)");
+        legacy.update("INSERT INTO reservation (reservation_id, date_reservation, book_reservation, user_reservation) VALUES (7, CURRENT_DATE, 7, 7)");
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BibliotecaTestApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=" + url)) {
+
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+            assertEquals("1", jdbcTemplate.queryForObject(
+                    "SELECT \"version\" FROM \"flyway_schema_history\" WHERE \"type\" = 'BASELINE'", String.class));
+            assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM book WHERE book_id = 7", Long.class));
+            assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM user_ WHERE user_id = 7", Long.class));
+            assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM reservation WHERE reservation_id = 7", Long.class));
+
+            List<BookEntity> books = context.getBean(BookRepository.class).saveAll(IntStream.range(0, 10)
+                    .mapToObj(i -> new BookEntity(null, "Description", "Title " + i, "Author", 1))
+                    .toList());
+
+            assertTrue(books.stream().allMatch(book -> book.getBookId() > 7), () -> "Book ids collide: " + books);
+
+            List<ReservationEntity> reservations = context.getBean(ReservationRepository.class).saveAll(books.stream()
+                    .map(book -> new ReservationEntity(null, LocalDate.now(), book,
+                            context.getBean(UserRepository.class).getReferenceById(7L)))
+                    .toList());
+
+            assertTrue(reservations.stream().allMatch(reservation -> reservation.getReservationId() > 7),
+                    () -> "Reservation ids collide: " + reservations);
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.bibliotecaTest.BibliotecaTest.controllers;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifica le modifiche parziali JSON Merge Patch di libri e utenti: la modifica del libro in cache
+ * passa dall'entità, quella delle sole copie di un libro non in cache diventa un UPDATE condizionato alla versione,
+ * e in entrambi i casi una versione superata riceve "409 Conflict".
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class MergePatchControllerTest {
+
+    /**
+     * Tipo del documento JSON Merge Patch.
+     */
+    private static final MediaType MERGE_PATCH = MediaType.parseMediaType("application/merge-patch+json");
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Un libro in cache viene letto e modificato come entità: la risposta è "200 OK" con il libro
+     * e la nuova versione, e i campi assenti dal documento restano invariati.
+     */
+    @Test
+    void cachedBookIsPatchedThroughTheEntity() throws Exception {
+
+        Long bookId = saveBook(3);
+        bookRepository.findById(bookId);
+
+        assertTrue(entityManagerFactory.getCache().contains(BookEntity.class, bookId));
+
+        patchBook(bookId, "\"0\"", "{\"numberOfCopiesAvailable\":5}")
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(jsonPath("$.numberOfCopiesAvailable").value(5))
+                .andExpect(jsonPath("$.title").value("Title"));
+
+        assertEquals(5, copiesOf(bookId));
+
+    }
+
+    /**
+     * Le sole copie di un libro non in cache vengono modificate con un UPDATE condizionato alla versione,
+     * senza leggere il libro: la risposta è "204 No Content" con la nuova versione nell'ETag.
+     */
+    @Test
+    void uncachedCopiesArePatchedWithoutReadingTheBook() throws Exception {
+
+        Long bookId = saveBook(3);
+        entityManagerFactory.getCache().evict(BookEntity.class, bookId);
+
+        patchBook(bookId, "\"0\"", "{\"numberOfCopiesAvailable\":7}")
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+                .andExpect(content().string(""));
+
+        assertEquals(7, copiesOf(bookId));
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT version FROM book WHERE book_id = ?", Long.class, bookId));
+        assertFalse(entityManagerFactory.getCache().contains(BookEntity.class, bookId));
+
+    }
+
+    /**
+     * Una versione superata riceve "409 Conflict" con la versione attuale, sia dall'UPDATE senza lettura
+     * sia dalla modifica dell'entità, e il libro non cambia.
+     */
+    @Test
+    void staleIfMatchIsRejectedWithConflict() throws Exception {
+
+        Long bookId = saveBook(3);
+        jdbcTemplate.update("UPDATE book SET version = 4 WHERE book_id = ?", bookId);
+        entityManagerFactory.getCache().evict(BookEntity.class, bookId);
+
+        patchBook(bookId, "\"0\"", "{\"numberOfCopiesAvailable\":9}")
+                .andExpect(status().isConflict())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+        patchBook(bookId, "\"0\"", "{\"title\":\"New title\"}")
+                .andExpect(status().isConflict())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.title").value("Title"));
+
+        assertEquals(3, copiesOf(bookId));
+
+    }
+
+    /**
+     * Un documento che cancella un campo primitivo, modifica un campo non consentito
+     * o ha un valore non convertibile riceve "400 Bad Request".
+     */
+    @Test
+    void invalidPatchesAreRejected() throws Exception {
+
+        Long bookId = saveBook(3);
+
+        patchBook(bookId, null, "{\"numberOfCopiesAvailable\":null}").andExpect(status().isBadRequest());
+        patchBook(bookId, "\"0\"", "{\"numberOfCopiesAvailable\":null}").andExpect(status().isBadRequest());
+        patchBook(bookId, null, "{\"version\":5}").andExpect(status().isBadRequest());
+        patchBook(bookId, null, "{\"bookId\":5}").andExpect(status().isBadRequest());
+        patchBook(bookId, null, "{\"numberOfCopiesAvailable\":\"many\"}").andExpect(status().isBadRequest());
+
+        assertEquals(3, copiesOf(bookId));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT version FROM book WHERE book_id = ?", Long.class, bookId));
+
+    }
+
+    /**
+     * Un utente non in cache con la versione indicata viene modificato senza leggerlo, con "204 No Content";
+     * un campo cancellato diventa null e gli altri restano invariati.
+     */
+    @Test
+    void userIsPatchedWithTheNewVersion() throws Exception {
+
+        Long userId = userRepository.save(new UserEntity(null, "Name", "Surname", "Street", 3_000_000_301L)).getUserId();
+        entityManagerFactory.getCache().evict(UserEntity.class, userId);
+
+        mockMvc.perform(patch("/apiUser/patchUser/{id}", userId)
+                        .contentType(MERGE_PATCH)
+                        .header(HttpHeaders.IF_MATCH, "\"0\"")
+                        .content("{\"address\":null,\"telephone\":3331234567}"))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+        assertEquals(3331234567L, jdbcTemplate.queryForObject(
+                "SELECT telephone FROM user_ WHERE user_id = ?", Long.class, userId));
+        assertEquals(null, jdbcTemplate.queryForObject(
+                "SELECT address FROM user_ WHERE user_id = ?", String.class, userId));
+        assertEquals("Name", jdbcTemplate.queryForObject(
+                "SELECT first_name FROM user_ WHERE user_id = ?", String.class, userId));
+
+        mockMvc.perform(patch("/apiUser/patchUser/{id}", userId)
+                        .contentType(MERGE_PATCH)
+                        .content("{\"telephone\":null}"))
+                .andExpect(status().isBadRequest());
+
+    }
+
+    /**
+     * Invia un documento JSON Merge Patch a un libro.
+     *
+     * @param bookId  l'ID del libro
+     * @param ifMatch il valore dell'header If-Match, null per non inviarlo
+     * @param body    il documento
+     * @return Ritorna il risultato della richiesta
+     */
+    private ResultActions patchBook(Long bookId, String ifMatch, String body) throws Exception {
+
+        var request = patch("/apiBook/patchBook/{id}", bookId).contentType(MERGE_PATCH).content(body);
+
+        if (ifMatch != null) {
+
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+
+        return mockMvc.perform(request);
+
+    }
+
+    /**
+     * Salva un libro con le copie indicate.
+     *
+     * @param copies le copie disponibili
+     * @return Ritorna l'ID del libro
+     */
+    private Long saveBook(int copies) {
+
+        return bookRepository.save(new BookEntity(null, "Description", "Title", "Author", copies)).getBookId();
+
+    }
+
+    /**
+     * Legge le copie disponibili di un libro direttamente dal database.
+     *
+     * @param bookId l'ID del libro
+     * @return Ritorna le copie disponibili
+     */
+    private int copiesOf(Long bookId) {
+
+        return jdbcTemplate.queryForObject("SELECT copies_available FROM book WHERE book_id = ?", Integer.class, bookId);
+
+    }
+
+}
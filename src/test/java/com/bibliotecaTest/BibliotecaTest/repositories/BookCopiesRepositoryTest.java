@@ -0,0 +1,66 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che gli UPDATE delle copie rimuovano dalla cache di secondo livello solo i libri aggiornati.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest
+class BookCopiesRepositoryTest {
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    /**
+     * Dopo il decremento di un libro, quel libro non deve più essere in cache e deve essere riletto
+     * con le copie aggiornate, mentre l'altro libro deve restare in cache.
+     */
+    @Test
+    void copiesUpdateEvictsOnlyTheUpdatedBooks() {
+
+        Long updatedId = bookRepository.save(new BookEntity(null, "Description", "Updated", "Author", 3)).getBookId();
+        Long untouchedId = bookRepository.save(new BookEntity(null, "Description", "Untouched", "Author", 3)).getBookId();
+        Cache cache = entityManagerFactory.getCache();
+
+        bookRepository.findById(updatedId);
+        bookRepository.findById(untouchedId);
+
+        assertTrue(cache.contains(BookEntity.class, updatedId));
+        assertTrue(cache.contains(BookEntity.class, untouchedId));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        assertEquals(Integer.valueOf(1), transaction.<Integer>execute(status -> bookRepository.decrementCopiesAvailable(updatedId, Instant.now())));
+        assertFalse(cache.contains(BookEntity.class, updatedId));
+        assertTrue(cache.contains(BookEntity.class, untouchedId));
+        assertEquals(2, bookRepository.copiesAvailableByBookId(updatedId));
+
+        assertEquals(Integer.valueOf(1), transaction.<Integer>execute(status -> bookRepository.incrementCopiesAvailable(List.of(updatedId), 2, Instant.now())));
+        assertTrue(cache.contains(BookEntity.class, untouchedId));
+        assertEquals(4, bookRepository.copiesAvailableByBookId(updatedId));
+
+    }
+
+}
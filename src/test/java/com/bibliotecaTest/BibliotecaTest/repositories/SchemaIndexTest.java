@@ -0,0 +1,139 @@
+package com.bibliotecaTest.BibliotecaTest.repositories;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Verifica che le query principali sulle prenotazioni usino gli indici creati dalle migrazioni.
+ * Il database H2 creato da Flyway viene popolato, le statistiche aggiornate e il piano di {@code EXPLAIN}
+ * di ogni query non deve contenere una scansione completa di tabella.
+ * Usa un database dedicato, perché inserisce righe con ID espliciti che non passano dalle sequenze.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:schema-index;DB_CLOSE_DELAY=-1")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SchemaIndexTest {
+
+    /**
+     * Numero di libri inseriti.
+     */
+    private static final int BOOKS = 1000;
+
+    /**
+     * Numero di utenti inseriti.
+     */
+    private static final int USERS = 1000;
+
+    /**
+     * Numero di prenotazioni inserite, distribuite sull'ultimo anno.
+     */
+    private static final int RESERVATIONS = 50_000;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Popola libri, utenti e prenotazioni direttamente con JDBC e aggiorna le statistiche di H2.
+     */
+    @BeforeAll
+    void populate() {
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO book (book_id, title, author, description, copies_available, version) VALUES (?, ?, ?, ?, 10, 0)",
+                rows(BOOKS, i -> new Object[]{i, "Title " + i, "Author " + i, "Description " + i}));
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO user_ (user_id, first_name, last_name, address, telephone, version) VALUES (?, ?, ?, ?, ?, 0)",
+                rows(USERS, i -> new Object[]{i, "Name " + i, "Surname " + i, "Street " + i, 3_000_000_000L + i}));
+
+        LocalDate today = LocalDate.now();
+
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO reservation (reservation_id, date_reservation, book_reservation, user_reservation) VALUES (?, ?, ?, ?)",
+                rows(RESERVATIONS, i -> new Object[]{i, Date.valueOf(today.minusDays(i % 365)), i % BOOKS + 1, (i * 7L) % USERS + 1}));
+        jdbcTemplate.execute("ANALYZE");
+
+    }
+
+    /**
+     * Il piano della query non deve contenere una scansione completa di tabella,
+     * che H2 indica con il commento "tableScan".
+     *
+     * @param name il nome della query
+     * @param sql  la query da verificare
+     */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    void queryUsesAnIndex(String name, String sql) {
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+
+        assertFalse(plan.contains("tableScan"), () -> name + " uses a full table scan:\n" + plan);
+
+    }
+
+    /**
+     * Le query principali sulle prenotazioni, con lo stesso filtro usato dai repository.
+     *
+     * @return il nome e il testo di ogni query
+     */
+    static Stream<Arguments> queries() {
+
+        String since = "DATE '" + LocalDate.now().minusDays(30) + "'";
+
+        return Stream.of(
+                Arguments.of("reservations of a user by date",
+                        "SELECT * FROM reservation WHERE user_reservation = 1 AND date_reservation >= " + since
+                                + " ORDER BY date_reservation DESC, reservation_id DESC LIMIT 50"),
+                Arguments.of("reservations of a book by date",
+                        "SELECT * FROM reservation WHERE book_reservation = 1 AND date_reservation >= " + since
+                                + " ORDER BY date_reservation DESC, reservation_id DESC LIMIT 50"),
+                Arguments.of("reservations per day",
+                        "SELECT date_reservation, COUNT(*) FROM reservation WHERE date_reservation >= " + since
+                                + " GROUP BY date_reservation"),
+                Arguments.of("expired reservations",
+                        "SELECT reservation_id, user_reservation, book_reservation, date_reservation FROM reservation "
+                                + "WHERE date_reservation < DATE '" + LocalDate.now().minusDays(335) + "' "
+                                + "ORDER BY date_reservation, reservation_id LIMIT 500"),
+                Arguments.of("reservation with book and user",
+                        "SELECT r.reservation_id, b.title, u.first_name FROM reservation r "
+                                + "JOIN book b ON b.book_id = r.book_reservation "
+                                + "JOIN user_ u ON u.user_id = r.user_reservation WHERE r.reservation_id = 1"),
+                Arguments.of("conditional decrement of copies",
+                        "UPDATE book SET copies_available = copies_available - 1 WHERE book_id = 1 AND copies_available > 0"));
+
+    }
+
+    /**
+     * Crea i parametri di {@code count} righe, numerate da 1.
+     *
+     * @param count il numero di righe
+     * @param row   la funzione che crea i parametri di una riga dal suo numero
+     * @return la lista dei parametri
+     */
+    private static List<Object[]> rows(int count, IntFunction<Object[]> row) {
+
+        List<Object[]> rows = new ArrayList<>(count);
+        IntStream.rangeClosed(1, count).mapToObj(row).forEach(rows::add);
+
+        return rows;
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica che il flusso della disponibilità legga anche i cambiamenti fatti da altre istanze,
+ * che non passano da {@link AvailabilityFeedService#bookChanged(Long)}.
+ * L'invio pianificato è rimandato di un'ora, così che il test scelga quando inviare,
+ * e la lettura dei cambiamenti delle altre istanze avviene a ogni invio.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = {"biblioteca.feed.flush-interval-ms=3600000", "biblioteca.feed.poll-interval-ms=0"})
+class AvailabilityFeedServiceTest {
+
+    @Autowired
+    AvailabilityFeedService availabilityFeedService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /**
+     * Un libro aggiornato direttamente sul database, come farebbe un'altra istanza, arriva all'iscritto
+     * al primo invio; un secondo invio senza altri cambiamenti non lo manda di nuovo.
+     */
+    @Test
+    void changeFromAnotherInstanceReachesSubscribers() throws InterruptedException {
+
+        Long bookId = bookRepository.save(new BookEntity(null, "Description", "Title", "Author", 5)).getBookId();
+        Counter sent = meterRegistry.counter("biblioteca.feed.events", "outcome", "sent");
+        double before = sent.count();
+
+        assertEquals(HttpStatus.OK, availabilityFeedService.subscribe(List.of(bookId)).getStatusCode());
+        awaitCount(sent, before + 1);
+
+        jdbcTemplate.update("UPDATE book SET copies_available = 2, version = version + 1, last_modified = ? WHERE book_id = ?",
+                Timestamp.from(Instant.now()), bookId);
+        availabilityFeedService.flush();
+        awaitCount(sent, before + 2);
+
+        availabilityFeedService.flush();
+        Thread.sleep(200);
+
+        assertEquals(before + 2, sent.count());
+
+    }
+
+    /**
+     * Attende che il contatore raggiunga il valore atteso, scritto dai thread di invio.
+     *
+     * @param counter  il contatore degli eventi inviati
+     * @param expected il valore atteso
+     */
+    private void awaitCount(Counter counter, double expected) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (counter.count() < expected && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(10);
+        }
+
+        assertEquals(expected, counter.count());
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.AvailabilitySummary;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Verifica che il ricalcolo degli aggregati non perda gli aggiornamenti notificati mentre legge il database.
+ *
+ * @author Drumstyle92
+ */
+class AvailabilityStatsServiceTest {
+
+    /**
+     * Una prenotazione notificata dopo la lettura dei libri, e quindi assente dai conteggi letti,
+     * deve comparire negli aggregati ricalcolati.
+     */
+    @Test
+    void updateDuringRebuildSurvivesTheSwap() {
+
+        LocalDate today = LocalDate.now();
+        AvailabilityStatsService availabilityStatsService = new AvailabilityStatsService();
+        availabilityStatsService.days = 30;
+        availabilityStatsService.topTitles = 10;
+        availabilityStatsService.rebuildIntervalMillis = 0;
+        availabilityStatsService.transactionManager = mock(PlatformTransactionManager.class);
+        availabilityStatsService.bookRepository = mock(BookRepository.class);
+        availabilityStatsService.reservationRepository = mock(ReservationRepository.class);
+
+        when(availabilityStatsService.bookRepository.streamAvailability())
+                .thenReturn(Stream.<Object[]>of(new Object[]{1L, "Title", 5}));
+
+        // La prenotazione arriva dopo che i libri sono già stati letti con 5 copie
+        when(availabilityStatsService.reservationRepository.countByBook()).thenAnswer(invocation -> {
+
+            availabilityStatsService.reservationCreated(1L, today);
+            return List.<Object[]>of(new Object[]{1L, 2L});
+        });
+
+        when(availabilityStatsService.reservationRepository.countByDaySince(any()))
+                .thenReturn(List.<Object[]>of(new Object[]{today, 2L}));
+
+        availabilityStatsService.rebuild();
+
+        AvailabilitySummary summary = availabilityStatsService.getSummary().getBody();
+
+        assertEquals(4, summary.getTotalCopiesAvailable());
+        assertEquals(3, summary.getReservationsPerDay().get(today));
+        assertEquals(3, summary.getTopReservedTitles().get(0).reservations());
+
+    }
+
+}
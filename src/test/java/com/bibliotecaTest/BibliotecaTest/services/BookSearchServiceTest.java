@@ -0,0 +1,33 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica la validazione della paginazione della ricerca full-text.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest
+class BookSearchServiceTest {
+
+    @Autowired
+    BookSearchService bookSearchService;
+
+    /**
+     * Una pagina il cui primo risultato supera il limite, anche quando page * size non entra in un int,
+     * deve essere rifiutata con "400 Bad Request" invece di arrivare a Lucene con un offset negativo.
+     */
+    @Test
+    void pageBeyondMaxOffsetIsRejected() {
+
+        assertEquals(400, bookSearchService.searchBooks("tolkien", Integer.MAX_VALUE, 100).getStatusCode().value());
+        assertEquals(400, bookSearchService.searchBooks("tolkien", 50_000_000, 100).getStatusCode().value());
+        assertEquals(400, bookSearchService.searchBooks("tolkien", 1001, 10).getStatusCode().value());
+
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.BookSearchResult;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifica l'eliminazione in blocco di libri e utenti dagli endpoint {@code /deleteBooks} e {@code /deleteUsers}.
+ * I blocchi sono di due ID, così che poche righe bastino a dividere la richiesta in più transazioni.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = "biblioteca.bulk-delete.chunk-size=2")
+@AutoConfigureMockMvc
+class BulkDeleteServiceTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    @Autowired
+    BookSearchService bookSearchService;
+
+    @Autowired
+    WaitlistService waitlistService;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Tre libri con le loro prenotazioni vengono eliminati in due blocchi: nessuno resta nel database,
+     * nella cache di secondo livello o nell'indice full-text, mentre il libro non indicato resta cercabile.
+     * Un ID inesistente viene contato come non trovato.
+     */
+    @Test
+    void booksAreDeletedInChunksFromDatabaseCacheAndIndex() throws Exception {
+
+        UserEntity user = userRepository.save(new UserEntity(null, "Name", "Surname", "Street", 3_400_000_000L));
+        BookEntity first = saveBook("Bulkdeletedtitle", 2);
+        BookEntity second = saveBook("Bulkdeletedtitle", 2);
+        BookEntity third = saveBook("Bulkdeletedtitle", 2);
+        BookEntity kept = saveBook("Bulkdeletedtitle", 2);
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), first, user));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), third, user));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), third, user));
+
+        List<Long> deleted = List.of(first.getBookId(), second.getBookId(), third.getBookId());
+        deleted.forEach(bookRepository::findById);
+
+        assertTrue(entityManagerFactory.getCache().contains(BookEntity.class, first.getBookId()));
+        assertEquals(4L, bookSearchService.searchBooks("bulkdeletedtitle", 0, null).getBody().getTotalHits());
+
+        mockMvc.perform(post("/apiBook/deleteBooks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + third.getBookId() + "," + first.getBookId() + "," + second.getBookId() + ",999999]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(4))
+                .andExpect(jsonPath("$.deleted").value(3))
+                .andExpect(jsonPath("$.notFound").value(1))
+                .andExpect(jsonPath("$.failed").value(0))
+                .andExpect(jsonPath("$.reservationsDeleted").value(3))
+                .andExpect(jsonPath("$.chunks.length()").value(2))
+                .andExpect(jsonPath("$.chunks[0].deleted").value(2))
+                .andExpect(jsonPath("$.chunks[1].ids").value(2))
+                .andExpect(jsonPath("$.chunks[1].deleted").value(1));
+
+        for (Long bookId : deleted) {
+
+            assertFalse(entityManagerFactory.getCache().contains(BookEntity.class, bookId));
+            assertFalse(bookRepository.findById(bookId).isPresent());
+        }
+
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reservation WHERE book_reservation IN (?, ?, ?)", Integer.class,
+                first.getBookId(), second.getBookId(), third.getBookId()));
+
+        ResponseEntity<BookSearchResult> search = bookSearchService.searchBooks("bulkdeletedtitle", 0, null);
+
+        assertEquals(1L, search.getBody().getTotalHits());
+        assertEquals(kept.getBookId(), search.getBody().getBooks().get(0).getBookId());
+
+    }
+
+    /**
+     * Eliminando tre utenti in due blocchi le loro prenotazioni spariscono e ogni libro riceve
+     * una copia per ogni prenotazione eliminata, mentre le prenotazioni degli altri utenti restano.
+     */
+    @Test
+    void usersAreDeletedInChunksAndCopiesReturned() throws Exception {
+
+        BookEntity book = saveBook("Usersbooktitle", 1);
+        BookEntity other = saveBook("Usersbooktitle", 0);
+        UserEntity first = userRepository.save(new UserEntity(null, "First", "Surname", "Street", 3_400_000_001L));
+        UserEntity second = userRepository.save(new UserEntity(null, "Second", "Surname", "Street", 3_400_000_002L));
+        UserEntity third = userRepository.save(new UserEntity(null, "Third", "Surname", "Street", 3_400_000_003L));
+        UserEntity kept = userRepository.save(new UserEntity(null, "Kept", "Surname", "Street", 3_400_000_004L));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), book, first));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), book, second));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), other, second));
+        reservationRepository.save(new ReservationEntity(null, LocalDate.now(), book, third));
+        Long keptReservation = reservationRepository.save(
+                new ReservationEntity(null, LocalDate.now(), book, kept)).getReservationId();
+
+        userRepository.findById(first.getUserId());
+
+        assertTrue(entityManagerFactory.getCache().contains(UserEntity.class, first.getUserId()));
+
+        mockMvc.perform(post("/apiUser/deleteUsers")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + first.getUserId() + "," + second.getUserId() + "," + third.getUserId() + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(3))
+                .andExpect(jsonPath("$.failed").value(0))
+                .andExpect(jsonPath("$.reservationsDeleted").value(4))
+                .andExpect(jsonPath("$.chunks.length()").value(2))
+                .andExpect(jsonPath("$.chunks[0].reservationsDeleted").value(3))
+                .andExpect(jsonPath("$.chunks[1].reservationsDeleted").value(1));
+
+        assertFalse(entityManagerFactory.getCache().contains(UserEntity.class, first.getUserId()));
+        assertFalse(userRepository.findById(first.getUserId()).isPresent());
+        assertEquals(4, copiesOf(book.getBookId()));
+        assertEquals(1, copiesOf(other.getBookId()));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reservation WHERE book_reservation IN (?, ?)", Integer.class,
+                book.getBookId(), other.getBookId()));
+        assertTrue(reservationRepository.existsById(keptReservation));
+
+    }
+
+    /**
+     * Le richieste in coda per un libro eliminato vengono annullate e il libro non ha più richieste in attesa.
+     */
+    @Test
+    void waitlistOfDeletedBookIsCancelled() throws Exception {
+
+        BookEntity book = saveBook("Waitlisttitle", 0);
+        UserEntity user = userRepository.save(new UserEntity(null, "Name", "Surname", "Street", 3_400_000_005L));
+        Long entryId = waitlistService.join(user.getUserId(), book.getBookId()).getBody().getEntryId();
+
+        assertTrue(waitlistService.hasWaiters(book.getBookId()));
+
+        mockMvc.perform(post("/apiBook/deleteBooks")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + book.getBookId() + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted").value(1));
+
+        assertFalse(waitlistService.hasWaiters(book.getBookId()));
+        assertEquals("CANCELLED", jdbcTemplate.queryForObject(
+                "SELECT status FROM waitlist_entry WHERE entry_id = ?", String.class, entryId));
+
+    }
+
+    /**
+     * Una lista vuota o con un ID nullo riceve "400 Bad Request".
+     */
+    @Test
+    void invalidListsAreRejected() throws Exception {
+
+        mockMvc.perform(post("/apiBook/deleteBooks").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/apiUser/deleteUsers").contentType(MediaType.APPLICATION_JSON).content("[1,null]"))
+                .andExpect(status().isBadRequest());
+
+    }
+
+    /**
+     * Salva un libro con il titolo e le copie indicati.
+     *
+     * @param title  il titolo
+     * @param copies le copie disponibili
+     * @return Ritorna il libro salvato
+     */
+    private BookEntity saveBook(String title, int copies) {
+
+        return bookRepository.save(new BookEntity(null, "Description", title, "Author", copies));
+
+    }
+
+    /**
+     * Legge le copie disponibili di un libro direttamente dal database.
+     *
+     * @param bookId l'ID del libro
+     * @return Ritorna le copie disponibili
+     */
+    private int copiesOf(Long bookId) {
+
+        return jdbcTemplate.queryForObject("SELECT copies_available FROM book WHERE book_id = ?", Integer.class, bookId);
+
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che le modifiche concorrenti di prenotazioni e libri non si sovrascrivano.
+ * Ogni spostamento restituisce una copia a un libro e la toglie all'altro, ogni nuova prenotazione toglie una copia
+ * e ogni eliminazione la restituisce: se nessun aggiornamento va perso, la somma delle copie dei libri
+ * e delle loro prenotazioni resta quella iniziale.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest
+class OptimisticConcurrencyTest {
+
+    /**
+     * Copie iniziali di ognuno dei due libri.
+     */
+    private static final int COPIES = 10_000;
+
+    /**
+     * Numero di thread che spostano prenotazioni.
+     */
+    private static final int MOVERS = 8;
+
+    /**
+     * Numero di thread che creano prenotazioni.
+     */
+    private static final int CREATORS = 4;
+
+    /**
+     * Prenotazioni di ogni thread che sposta prenotazioni.
+     */
+    private static final int RESERVATIONS_PER_MOVER = 5;
+
+    /**
+     * Operazioni eseguite da ogni thread.
+     */
+    private static final int OPERATIONS = 100;
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Più thread spostano contemporaneamente le proprie prenotazioni tra due libri mentre altri creano
+     * nuove prenotazioni degli stessi libri: ogni richiesta deve riuscire o ricevere "409 Conflict",
+     * la somma di copie e prenotazioni non deve cambiare e una modifica con una versione superata
+     * deve ricevere "409 Conflict".
+     */
+    @Test
+    void concurrentMovesAndReservationsDoNotLoseUpdates() throws Exception {
+
+        BookEntity first = bookRepository.save(new BookEntity(null, "Description", "Title 1", "Author 1", COPIES));
+        BookEntity second = bookRepository.save(new BookEntity(null, "Description", "Title 2", "Author 2", COPIES));
+        List<Long> moverUsers = new ArrayList<>();
+        List<List<Long>> moverReservations = new ArrayList<>();
+        List<Long> creatorUsers = new ArrayList<>();
+
+        for (int mover = 0; mover < MOVERS; mover++) {
+
+            UserEntity user = userRepository.save(new UserEntity(null, "Mover " + mover, "Surname", "Street", 3_100_000_000L + mover));
+            List<Long> reservations = new ArrayList<>();
+
+            for (int i = 0; i < RESERVATIONS_PER_MOVER; i++) {
+
+                reservations.add(reservationRepository.save(
+                        new ReservationEntity(null, LocalDate.now(), first, user)).getReservationId());
+            }
+
+            moverUsers.add(user.getUserId());
+            moverReservations.add(reservations);
+        }
+
+        for (int creator = 0; creator < CREATORS; creator++) {
+
+            creatorUsers.add(userRepository.save(
+                    new UserEntity(null, "Creator " + creator, "Surname", "Street", 3_200_000_000L + creator)).getUserId());
+        }
+
+        long before = total(first.getBookId(), second.getBookId());
+        AtomicInteger moved = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(MOVERS + CREATORS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+
+            for (int mover = 0; mover < MOVERS; mover++) {
+
+                Long userId = moverUsers.get(mover);
+                List<Long> reservations = moverReservations.get(mover);
+
+                futures.add(executor.submit(() -> {
+
+                    start.await();
+
+                    for (int i = 0; i < OPERATIONS; i++) {
+
+                        Long reservationId = reservations.get(i % RESERVATIONS_PER_MOVER);
+                        Long bookId = (i / RESERVATIONS_PER_MOVER) % 2 == 0 ? second.getBookId() : first.getBookId();
+
+                        ResponseEntity<ReservationEntity> response = reservationService.updateReservation(
+                                reservationId, LocalDate.now(), userId, bookId, null);
+
+                        if (response.getStatusCode().value() == 409) {
+                            conflicts.incrementAndGet();
+                        } else {
+                            assertEquals(200, response.getStatusCode().value());
+                            moved.incrementAndGet();
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            for (Long userId : creatorUsers) {
+
+                futures.add(executor.submit(() -> {
+
+                    start.await();
+
+                    for (int i = 0; i < OPERATIONS; i++) {
+
+                        Long bookId = i % 2 == 0 ? first.getBookId() : second.getBookId();
+                        assertEquals(200, reservationService.createReservation(userId, bookId).getStatusCode().value());
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(120, TimeUnit.SECONDS);
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(MOVERS * OPERATIONS, moved.get() + conflicts.get());
+        assertTrue(moved.get() > 0);
+        assertEquals(before, total(first.getBookId(), second.getBookId()));
+
+        BookEntity edit = new BookEntity();
+        edit.setTitle("Title 1");
+        edit.setAuthor("Author 1");
+        edit.setNumberOfCopiesAvailable(COPIES);
+
+        // Il primo libro è stato modificato molte volte, quindi la versione 0 è sicuramente superata
+        assertEquals(409, bookService.updateBook(first.getBookId(), edit, "\"0\"").getStatusCode().value());
+
+    }
+
+    /**
+     * Più thread eliminano insieme la stessa prenotazione: una sola eliminazione deve riuscire
+     * e al libro deve tornare una sola copia.
+     */
+    @Test
+    void concurrentDeletesReturnOneCopy() throws Exception {
+
+        BookEntity book = bookRepository.save(new BookEntity(null, "Description", "Deleted title", "Author", 0));
+        UserEntity user = userRepository.save(new UserEntity(null, "Name", "Surname", "Street", 3_300_000_000L));
+        Long reservationId = reservationRepository.save(
+                new ReservationEntity(null, LocalDate.now(), book, user)).getReservationId();
+
+        AtomicInteger deleted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(MOVERS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+
+            for (int i = 0; i < MOVERS; i++) {
+
+                futures.add(executor.submit(() -> {
+
+                    start.await();
+
+                    if (reservationService.deleteReservation(reservationId).getStatusCode().value() == 200) {
+                        deleted.incrementAndGet();
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, deleted.get());
+        assertFalse(reservationRepository.existsById(reservationId));
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM book WHERE book_id = ?", Integer.class, book.getBookId()));
+
+    }
+
+    /**
+     * Spostare una prenotazione su un libro senza copie viene rifiutato con "400 Bad Request"
+     * senza modificare le copie dei due libri.
+     */
+    @Test
+    void moveToBookWithoutCopiesIsRejected() {
+
+        BookEntity from = bookRepository.save(new BookEntity(null, "Description", "From title", "Author", 3));
+        BookEntity to = bookRepository.save(new BookEntity(null, "Description", "Empty title", "Author", 0));
+        UserEntity user = userRepository.save(new UserEntity(null, "Name", "Surname", "Street", 3_300_000_001L));
+        Long reservationId = reservationRepository.save(
+                new ReservationEntity(null, LocalDate.now(), from, user)).getReservationId();
+
+        ResponseEntity<ReservationEntity> response = reservationService.updateReservation(
+                reservationId, LocalDate.now(), user.getUserId(), to.getBookId(), null);
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM book WHERE book_id = ?", Integer.class, from.getBookId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM book WHERE book_id = ?", Integer.class, to.getBookId()));
+
+    }
+
+    /**
+     * Somma le copie disponibili dei due libri e il numero delle loro prenotazioni.
+     *
+     * @param firstBookId  l'ID del primo libro
+     * @param secondBookId l'ID del secondo libro
+     * @return Ritorna la somma
+     */
+    private long total(Long firstBookId, Long secondBookId) {
+
+        return jdbcTemplate.queryForObject(
+                "SELECT (SELECT SUM(copies_available) FROM book WHERE book_id IN (?, ?)) + "
+                        + "(SELECT COUNT(*) FROM reservation WHERE book_reservation IN (?, ?))",
+                Long.class, firstBookId, secondBookId, firstBookId, secondBookId);
+
+    }
+
+}
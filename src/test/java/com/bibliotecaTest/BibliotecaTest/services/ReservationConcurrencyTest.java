@@ -0,0 +1,129 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che le prenotazioni concorrenti sullo stesso libro non superino mai le copie disponibili:
+ * più thread prenotano insieme un libro con poche copie, e solo tante prenotazioni quante sono le copie
+ * devono riuscire, lasciando il libro a zero copie.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest
+class ReservationConcurrencyTest {
+
+    /**
+     * Numero di copie del libro conteso.
+     */
+    private static final int COPIES = 25;
+
+    /**
+     * Numero di thread che prenotano contemporaneamente.
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * Numero di prenotazioni tentate da ogni thread.
+     */
+    private static final int ATTEMPTS_PER_THREAD = 10;
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Più thread prenotano lo stesso libro partendo insieme: le prenotazioni riuscite devono essere
+     * esattamente quante le copie, le altre devono essere rifiutate con 400, e nel database il libro
+     * deve restare con zero copie e con una prenotazione per ogni copia.
+     */
+    @Test
+    void concurrentReservationsNeverOversellTheBook() throws Exception {
+
+        Long bookId = bookRepository.save(new BookEntity(null, "Hot book", "Hot title", "Hot author", COPIES)).getBookId();
+
+        List<Long> userIds = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+
+            userIds.add(userRepository.save(new UserEntity(null, "Name " + i, "Surname " + i, "Street " + i, 3_000_000_000L + i)).getUserId());
+        }
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+
+            for (Long userId : userIds) {
+
+                futures.add(executor.submit(() -> {
+
+                    start.await();
+
+                    for (int attempt = 0; attempt < ATTEMPTS_PER_THREAD; attempt++) {
+
+                        ResponseEntity<String> response = reservationService.createReservation(userId, bookId);
+
+                        if (response.getStatusCode().value() == 200) {
+                            accepted.incrementAndGet();
+                        } else {
+                            assertEquals(400, response.getStatusCode().value());
+                            rejected.incrementAndGet();
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(COPIES, accepted.get());
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - COPIES, rejected.get());
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM book WHERE book_id = ?", Integer.class, bookId));
+        assertEquals(COPIES, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM reservation WHERE book_reservation = ?", Integer.class, bookId));
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    }
+
+}
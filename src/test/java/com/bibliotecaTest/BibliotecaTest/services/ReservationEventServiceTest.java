@@ -0,0 +1,67 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEventEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica che il registro degli eventi venga letto in ordine di commit e non di ID.
+ * Usa un database dedicato, perché inserisce eventi con ID espliciti che non passano dalla sequenza.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:reservation-events;DB_CLOSE_DELAY=-1")
+class ReservationEventServiceTest {
+
+    @Autowired
+    ReservationEventService reservationEventService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Un evento con un ID più basso scritto dopo che un consumatore ha già letto un evento con ID più alto,
+     * come succede con due istanze che usano blocchi diversi della sequenza, deve comparire alla lettura successiva.
+     */
+    @Test
+    void lateEventWithLowerIdIsNotSkipped() {
+
+        insertEvent(1000L);
+        reservationEventService.sequence();
+
+        List<ReservationEventEntity> first = reservationEventService.getEvents(0L, 10).getBody();
+
+        assertEquals(1, first.size());
+        assertEquals(1000L, first.get(0).getEventId());
+
+        insertEvent(10L);
+        reservationEventService.sequence();
+
+        List<ReservationEventEntity> next = reservationEventService.getEvents(first.get(0).getLogPosition(), 10).getBody();
+
+        assertEquals(1, next.size());
+        assertEquals(10L, next.get(0).getEventId());
+
+    }
+
+    /**
+     * Inserisce un evento già scritto da un'altra istanza, senza posizione.
+     *
+     * @param eventId l'ID dell'evento
+     */
+    private void insertEvent(Long eventId) {
+
+        jdbcTemplate.update("INSERT INTO reservation_event (event_id, type, reservation_id, occurred_at) VALUES (?, 'CREATED', ?, ?)",
+                eventId, eventId, Timestamp.from(Instant.now()));
+
+    }
+
+}
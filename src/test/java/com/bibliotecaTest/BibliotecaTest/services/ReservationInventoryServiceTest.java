@@ -0,0 +1,70 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.dto.PendingReservationStatus;
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Verifica la scrittura asincrona dell'inventario in memoria quando una riga del blocco non può essere scritta.
+ * La scrittura pianificata è rimandata di un'ora, così che il test scelga quando scrivere.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = {"biblioteca.inventory.enabled=true", "biblioteca.inventory.flush-interval-ms=3600000"})
+class ReservationInventoryServiceTest {
+
+    @Autowired
+    ReservationInventoryService reservationInventoryService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Un utente eliminato dopo l'accettazione fa fallire la chiave esterna della sua prenotazione:
+     * le altre prenotazioni dello stesso blocco devono essere scritte comunque, quella dell'utente eliminato
+     * deve risultare fallita e il database deve aver tolto solo le copie delle prenotazioni scritte.
+     */
+    @Test
+    void failingRowDoesNotFailTheWholeBatch() {
+
+        Long bookId = bookRepository.save(new BookEntity(null, "Description", "Title", "Author", 5)).getBookId();
+        Long keptUserId = userRepository.save(new UserEntity(null, "Kept", "User", "Street", 3_000_000_001L)).getUserId();
+        Long deletedUserId = userRepository.save(new UserEntity(null, "Deleted", "User", "Street", 3_000_000_002L)).getUserId();
+
+        ReservationInventoryService.Result kept = reservationInventoryService.reserve(keptUserId, bookId);
+        ReservationInventoryService.Result deleted = reservationInventoryService.reserve(deletedUserId, bookId);
+
+        assertEquals(ReservationInventoryService.Admission.ACCEPTED, kept.admission());
+        assertEquals(ReservationInventoryService.Admission.ACCEPTED, deleted.admission());
+
+        jdbcTemplate.update("DELETE FROM user_ WHERE user_id = ?", deletedUserId);
+        reservationInventoryService.flush();
+
+        PendingReservationStatus keptStatus = reservationInventoryService.status(kept.ticket()).orElseThrow();
+        PendingReservationStatus deletedStatus = reservationInventoryService.status(deleted.ticket()).orElseThrow();
+
+        assertEquals(PendingReservationStatus.Status.WRITTEN, keptStatus.getStatus());
+        assertNotNull(keptStatus.getReservationId());
+        assertEquals(PendingReservationStatus.Status.FAILED, deletedStatus.getStatus());
+        assertNotNull(deletedStatus.getError());
+        assertEquals(4, jdbcTemplate.queryForObject(
+                "SELECT copies_available FROM book WHERE book_id = ?", Integer.class, bookId));
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifica che gli elenchi delle prenotazioni eseguano lo stesso numero di istruzioni SQL
+ * indipendentemente dal numero di prenotazioni, libri e utenti (nessun problema N+1).
+ * Le istruzioni vengono contate da uno {@link StatementInspector} per thread, così che le query
+ * dei task pianificati eseguiti in parallelo non vengano contate.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.bibliotecaTest.BibliotecaTest.services.ReservationQueryCountTest$CountingInspector")
+class ReservationQueryCountTest {
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    /**
+     * Il numero di istruzioni di ogni elenco, serializzazione JSON compresa, non deve cambiare
+     * passando da 3 a 43 prenotazioni, ognuna con libro e utente diversi.
+     */
+    @Test
+    void statementCountDoesNotGrowWithReservations() {
+
+        addReservations(3);
+        Map<String, Integer> few = countStatements();
+
+        addReservations(40);
+        Map<String, Integer> many = countStatements();
+
+        assertEquals(few, many);
+        assertEquals(1, many.get("allReservations"));
+
+    }
+
+    /**
+     * Crea le prenotazioni indicate, ognuna con un libro e un utente nuovi.
+     *
+     * @param count il numero di prenotazioni da creare
+     */
+    private void addReservations(int count) {
+
+        for (int i = 0; i < count; i++) {
+
+            BookEntity book = bookRepository.save(new BookEntity(null, "Description", "Title " + i, "Author " + i, 1));
+            UserEntity user = userRepository.save(new UserEntity(null, "Name " + i, "Surname " + i, "Street " + i, 3_000_000_000L + i));
+            reservationRepository.save(new ReservationEntity(null, LocalDate.now(), book, user));
+        }
+
+    }
+
+    /**
+     * Conta le istruzioni SQL di ogni elenco, partendo dalla cache di secondo livello vuota
+     * così che libri e utenti non possano essere letti dalla cache invece che con una query.
+     *
+     * @return il numero di istruzioni di ogni elenco
+     */
+    private Map<String, Integer> countStatements() {
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+
+        counts.put("allReservations", count(() -> reservationService.getAllReservations()));
+        counts.put("reservationListing", count(() -> reservationService.getReservationListing()));
+        counts.put("reservationsPage", count(() -> reservationService.getReservationsPage(0, 100)));
+
+        return counts;
+
+    }
+
+    /**
+     * Esegue l'elenco e ne serializza il corpo, contando le istruzioni SQL del thread corrente.
+     *
+     * @param listing l'elenco da eseguire
+     * @return il numero di istruzioni eseguite
+     */
+    private int count(Supplier<ResponseEntity<?>> listing) {
+
+        entityManagerFactory.getCache().evictAll();
+        CountingInspector.reset();
+
+        try {
+
+            objectMapper.writeValueAsString(listing.get().getBody());
+
+        } catch (JsonProcessingException e) {
+
+            throw new IllegalStateException(e);
+        }
+
+        return CountingInspector.count();
+
+    }
+
+    /**
+     * Conta le istruzioni SQL preparate da Hibernate, separatamente per ogni thread.
+     * Viene istanziato da Hibernate con la proprietà {@code hibernate.session_factory.statement_inspector}.
+     */
+    public static class CountingInspector implements StatementInspector {
+
+        /**
+         * Istruzioni preparate dal thread corrente dall'ultimo azzeramento.
+         */
+        private static final ThreadLocal<int[]> STATEMENTS = ThreadLocal.withInitial(() -> new int[1]);
+
+        @Override
+        public String inspect(String sql) {
+
+            STATEMENTS.get()[0]++;
+
+            return sql;
+
+        }
+
+        /**
+         * Azzera il contatore del thread corrente.
+         */
+        static void reset() {
+
+            STATEMENTS.get()[0] = 0;
+
+        }
+
+        /**
+         * Restituisce il contatore del thread corrente.
+         *
+         * @return il numero di istruzioni preparate dall'ultimo azzeramento
+         */
+        static int count() {
+
+            return STATEMENTS.get()[0];
+
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che le versioni registrate da {@link ResourceVersionService} smettano di essere usate dopo la scadenza,
+ * così che una modifica fatta da un'altra istanza non venga nascosta da un "304 Not Modified" a tempo indeterminato.
+ *
+ * @author Drumstyle92
+ */
+class ResourceVersionServiceTest {
+
+    /**
+     * Una versione registrata risponde "304 Not Modified" finché non scade, poi non viene più usata.
+     *
+     * @throws InterruptedException se l'attesa della scadenza viene interrotta
+     */
+    @Test
+    void versionExpiresAfterTtl() throws InterruptedException {
+
+        ResourceVersionService resourceVersionService = new ResourceVersionService();
+        resourceVersionService.maxEntries = 10;
+        resourceVersionService.ttlMillis = 50;
+        resourceVersionService.replicaUrl = "";
+
+        BookEntity book = new BookEntity(1L, "Description", "Title", "Author", 1);
+        resourceVersionService.rememberBook(book, resourceVersionService.stamp());
+
+        assertTrue(resourceVersionService.bookNotModified(1L, conditionalRequest()));
+
+        Thread.sleep(100);
+
+        assertFalse(resourceVersionService.bookNotModified(1L, conditionalRequest()));
+
+    }
+
+    /**
+     * La pulizia pianificata rimuove le versioni scadute anche se nessuno le legge più.
+     *
+     * @throws InterruptedException se l'attesa della scadenza viene interrotta
+     */
+    @Test
+    void purgeRemovesExpiredVersions() throws InterruptedException {
+
+        ResourceVersionService resourceVersionService = new ResourceVersionService();
+        resourceVersionService.maxEntries = 1;
+        resourceVersionService.ttlMillis = 50;
+        resourceVersionService.replicaUrl = "";
+
+        resourceVersionService.rememberBook(new BookEntity(1L, "Description", "Title", "Author", 1),
+                resourceVersionService.stamp());
+
+        Thread.sleep(100);
+        resourceVersionService.purgeExpired();
+
+        // Con la mappa di nuovo vuota c'è posto per un altro libro, nonostante il limite di una versione
+        resourceVersionService.ttlMillis = 60_000;
+        resourceVersionService.rememberBook(new BookEntity(2L, "Description", "Title", "Author", 1),
+                resourceVersionService.stamp());
+
+        assertTrue(resourceVersionService.bookNotModified(2L, conditionalRequest()));
+
+    }
+
+    /**
+     * Crea una GET condizionale con l'ETag della versione 0.
+     *
+     * @return Ritorna la richiesta
+     */
+    private static ServletWebRequest conditionalRequest() {
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/apiBook/getBook/1");
+        request.addHeader("If-None-Match", "\"0\"");
+
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.bibliotecaTest.BibliotecaTest.services;
+
+import com.bibliotecaTest.BibliotecaTest.entities.BookEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.ReservationEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.UserEntity;
+import com.bibliotecaTest.BibliotecaTest.entities.WaitlistEntryEntity;
+import com.bibliotecaTest.BibliotecaTest.repositories.BookRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.ReservationRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.UserRepository;
+import com.bibliotecaTest.BibliotecaTest.repositories.WaitlistRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifica che le code di attesa vengano lette dal database, così che una richiesta entrata in coda
+ * su un'altra istanza blocchi subito le prenotazioni dirette anche su questa.
+ * Il riallineamento pianificato è rimandato di un'ora, così che non promuova la richiesta durante il test.
+ *
+ * @author Drumstyle92
+ */
+@SpringBootTest(properties = "biblioteca.waitlist.sweep-interval-ms=3600000")
+class WaitlistServiceTest {
+
+    @Autowired
+    WaitlistService waitlistService;
+
+    @Autowired
+    ReservationService reservationService;
+
+    @Autowired
+    WaitlistRepository waitlistRepository;
+
+    @Autowired
+    BookRepository bookRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    ReservationRepository reservationRepository;
+
+    /**
+     * Una richiesta salvata senza passare da questa istanza, e quindi assente dall'indice in memoria,
+     * fa rifiutare la prenotazione diretta del libro anche se ha copie disponibili.
+     */
+    @Test
+    void waiterFromAnotherInstanceBlocksDirectReservations() {
+
+        Long bookId = bookRepository.save(new BookEntity(null, "Description", "Title", "Author", 1)).getBookId();
+        Long waitingUserId = userRepository.save(new UserEntity(null, "Waiting", "User", "Street", 3_000_000_201L)).getUserId();
+        Long userId = userRepository.save(new UserEntity(null, "Direct", "User", "Street", 3_000_000_202L)).getUserId();
+
+        waitlistRepository.save(new WaitlistEntryEntity(bookId, waitingUserId, Instant.now()));
+
+        assertTrue(waitlistService.hasWaiters(bookId));
+        assertEquals(HttpStatus.BAD_REQUEST, reservationService.createReservation(userId, bookId).getStatusCode());
+        assertEquals(1, bookRepository.copiesAvailableByBookId(bookId));
+
+    }
+
+    /**
+     * Spostare una prenotazione su un libro con richieste in coda viene rifiutato come una prenotazione diretta,
+     * senza togliere la copia a chi è in attesa.
+     */
+    @Test
+    void moveToBookWithWaitersIsRejected() {
+
+        Long fromId = bookRepository.save(new BookEntity(null, "Description", "From", "Author", 1)).getBookId();
+        Long toId = bookRepository.save(new BookEntity(null, "Description", "To", "Author", 1)).getBookId();
+        Long waitingUserId = userRepository.save(new UserEntity(null, "Waiting", "User", "Street", 3_000_000_203L)).getUserId();
+        UserEntity user = userRepository.save(new UserEntity(null, "Moving", "User", "Street", 3_000_000_204L));
+        Long reservationId = reservationRepository.save(new ReservationEntity(null, LocalDate.now(),
+                bookRepository.findById(fromId).orElseThrow(), user)).getReservationId();
+
+        waitlistRepository.save(new WaitlistEntryEntity(toId, waitingUserId, Instant.now()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, reservationService.updateReservation(
+                reservationId, LocalDate.now(), user.getUserId(), toId, null).getStatusCode());
+        assertEquals(1, bookRepository.copiesAvailableByBookId(fromId));
+        assertEquals(1, bookRepository.copiesAvailableByBookId(toId));
+        assertEquals(fromId, reservationRepository.findById(reservationId).orElseThrow().getBookReservation().getBookId());
+
+    }
+
+}